@@ -0,0 +1,30 @@
+package org.redis.db;
+
+/**
+ * @author zsy
+ * @Description 键空间事件回调
+ *
+ * RedisDB只负责数据的组织，过期删除、键被修改等事件需要由服务端继续处理(例如向从节点传播DEL、
+ * 向缓存了该键的客户端发送失效消息)，
+ * 通过该接口回调给服务端，避免db层反向依赖server层。
+ *
+ * @ClassName KeyspaceListener
+ * @Version 1.0
+ */
+public interface KeyspaceListener {
+
+    /**
+     * 键因过期被删除(惰性删除或定期删除)
+     */
+    void keyExpired(RedisDB db, String key);
+
+    /**
+     * 键被写命令修改(包括创建和删除)，对应Redis中的signalModifiedKey
+     */
+    void keyModified(RedisDB db, String key);
+
+    /**
+     * 数据库被清空
+     */
+    void keyspaceFlushed(RedisDB db);
+}
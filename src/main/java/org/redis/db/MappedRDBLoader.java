@@ -0,0 +1,225 @@
+package org.redis.db;
+
+import org.redis.lang.RedisObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * @author zsy
+ * @Description 以内存映射的方式加载RDB文件
+ *
+ * 1. 用FileChannel.map把整个文件映射为只读缓冲区，直接在映射区域上解析：
+ *    未经LZF压缩的listpack、intset、ziplist直接引用映射区域中的一段作为值的底层数据，不复制、不重新编码，
+ *    修改时才复制到堆内(写时复制)。因此加载后文件不能被原地修改，保存RDB应先写临时文件再rename；
+ * 2. 打开时先顺序扫描一遍文件，只跳过值不创建对象，为每个数据库建立 键 -> 记录偏移 的索引；
+ * 3. 之后由事件循环调用loadChunk分批加载，每批大约LOADING_PROCESS_EVENTS_INTERVAL_BYTES字节，
+ *    批次之间可以服务客户端。加载完成前处于只读的热备状态，尚未加载的键按索引直接从映射区域解析(lookupKey)。
+ * ByteBuffer以int寻址，文件不能超过2GB。
+ *
+ * @ClassName MappedRDBLoader
+ * @Version 1.0
+ */
+public class MappedRDBLoader {
+
+    /** 每批加载的字节数，与Redis的loading-process-events-interval-bytes默认值相同 */
+    static final int LOADING_PROCESS_EVENTS_INTERVAL_BYTES = 2 * 1024 * 1024;
+
+    private static final int KEY_INDEX_INITIAL_SIZE = 16;
+
+    private final ByteBuffer map;
+
+    private final RedisDB[] dbs;
+
+    private final RDB.Loader loader;
+
+    /** 每个数据库一个索引，加载完成后释放 */
+    private KeyIndex[] index;
+
+    private boolean finished;
+
+    /**
+     * 映射文件并建立索引，不加载任何键
+     */
+    public static MappedRDBLoader open(File file, RedisDB[] dbs) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel ch = raf.getChannel();
+            long size = ch.size();
+            if (size > Integer.MAX_VALUE) throw new IOException("RDB file too large to map: " + size + " bytes");
+            // 映射建立后与通道无关，关闭文件不影响映射区域
+            return new MappedRDBLoader(ch.map(FileChannel.MapMode.READ_ONLY, 0, size), dbs);
+        }
+    }
+
+    MappedRDBLoader(ByteBuffer map, RedisDB[] dbs) throws IOException {
+        this.map = map;
+        this.dbs = dbs;
+        index = new KeyIndex[dbs.length];
+        for (int j = 0; j < dbs.length; j++) index[j] = new KeyIndex();
+        buildIndex();
+        loader = new RDB.Loader(new RDB.BufferInput(map, 0), dbs);
+        loader.loadHeader();
+    }
+
+    /**
+     * 扫描整个文件：记录每个键值对的起始偏移，值只跳过不解析
+     */
+    private void buildIndex() throws IOException {
+        RDB.BufferInput in = new RDB.BufferInput(map, 0);
+        RDB.Loader scan = new RDB.Loader(in, dbs);
+        scan.loadHeader();
+        int type;
+        while ((type = scan.nextType()) != -1) {
+            int offset = (int) scan.getRecordStart();
+            int hash = keyHash(in);
+            RDB.skipObject(in, type);
+            index[scan.getDbid()].insert(hash, offset);
+        }
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * 加载一批键值对，读取超过LOADING_PROCESS_EVENTS_INTERVAL_BYTES字节后返回
+     *
+     * @return 全部加载完成返回true
+     */
+    public boolean loadChunk() throws IOException {
+        if (finished) return true;
+        long until = loader.getInput().position() + LOADING_PROCESS_EVENTS_INTERVAL_BYTES;
+        while (loader.getInput().position() < until) {
+            if (!loader.loadNext()) {
+                finished = true;
+                index = null;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void loadAll() throws IOException {
+        while (!loadChunk()) ;
+    }
+
+    /**
+     * 热备模式：按索引直接从映射区域解析键的值，紧凑编码的值同样引用映射区域
+     *
+     * @return 键不存在或已过期返回null
+     */
+    public RedisObject lookupKey(int dbid, String key) {
+        if (finished) return null;
+        try {
+            int offset = index[dbid].find(key);
+            if (offset < 0) return null;
+            RDB.BufferInput in = new RDB.BufferInput(map, offset);
+            RDB.Loader record = new RDB.Loader(in, dbs);
+            int type = record.nextType();
+            RDB.skipString(in);
+            long expire = record.getExpiretime();
+            if (expire != -1 && System.currentTimeMillis() > expire) return null;
+            return RDB.loadObject(in, type);
+        } catch (IOException e) {
+            throw new IllegalStateException("Corrupted RDB record in mapped file", e);
+        }
+    }
+
+    /**
+     * 读取offset处记录的键
+     */
+    private String keyAt(int offset) throws IOException {
+        RDB.BufferInput in = new RDB.BufferInput(map, offset);
+        new RDB.Loader(in, dbs).nextType();
+        return RDB.loadString(in);
+    }
+
+    /**
+     * 计算键的哈希值并跳过键：未经编码的键直接在映射区域上计算，不创建字符串
+     */
+    private int keyHash(RDB.BufferInput in) throws IOException {
+        if ((in.peekByte() & 0xC0) == 0xC0) return hash(RDB.loadString(in));
+        long len = RDB.loadLen(in);
+        int start = (int) in.position();
+        in.skip(len);
+        int h = 0x811C9DC5;
+        for (int i = 0; i < len; i++) {
+            h ^= map.get(start + i) & 0xFF;
+            h *= 0x01000193;
+        }
+        return h;
+    }
+
+    /**
+     * FNV-1a，字符串以ISO-8859-1与字节一一对应，与keyHash的结果一致
+     */
+    private static int hash(String key) {
+        int h = 0x811C9DC5;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i) & 0xFF;
+            h *= 0x01000193;
+        }
+        return h;
+    }
+
+    /**
+     * 键 -> 记录偏移 的开放寻址表，线性探测，负载因子不超过0.5。
+     * 每个槽位两个int：键的哈希值和偏移+1(0表示空槽)，不保存键本身，哈希值相同时从映射区域读取键比较
+     */
+    private class KeyIndex {
+
+        private int[] slots = new int[KEY_INDEX_INITIAL_SIZE * 2];
+
+        private int used;
+
+        /**
+         * 重复的键以后出现的为准，与顺序加载的结果一致
+         */
+        private void insert(int hash, int offset) throws IOException {
+            if ((used + 1) * 2 > slots.length / 2) grow();
+            int mask = slots.length / 2 - 1;
+            for (int i = hash & mask; ; i = (i + 1) & mask) {
+                int cur = slots[i * 2 + 1];
+                if (cur == 0) {
+                    slots[i * 2] = hash;
+                    slots[i * 2 + 1] = offset + 1;
+                    used++;
+                    return;
+                }
+                if (slots[i * 2] == hash && keyAt(cur - 1).equals(keyAt(offset))) {
+                    slots[i * 2 + 1] = offset + 1;
+                    return;
+                }
+            }
+        }
+
+        /**
+         * @return 记录偏移，不存在返回-1
+         */
+        private int find(String key) throws IOException {
+            int hash = hash(key);
+            int mask = slots.length / 2 - 1;
+            for (int i = hash & mask; ; i = (i + 1) & mask) {
+                int cur = slots[i * 2 + 1];
+                if (cur == 0) return -1;
+                if (slots[i * 2] == hash && keyAt(cur - 1).equals(key)) return cur - 1;
+            }
+        }
+
+        private void grow() {
+            int[] old = slots;
+            slots = new int[old.length * 2];
+            int mask = slots.length / 2 - 1;
+            for (int j = 0; j < old.length; j += 2) {
+                if (old[j + 1] == 0) continue;
+                int i = old[j] & mask;
+                while (slots[i * 2 + 1] != 0) i = (i + 1) & mask;
+                slots[i * 2] = old[j];
+                slots[i * 2 + 1] = old[j + 1];
+            }
+        }
+    }
+}
@@ -1,10 +1,1135 @@
 package org.redis.db;
 
+import org.redis.lang.RedisHash;
+import org.redis.lang.RedisList;
+import org.redis.lang.RedisObject;
+import org.redis.lang.RedisSet;
+import org.redis.lang.RedisStream;
+import org.redis.lang.RedisZSet;
+import org.redis.lang.basis.Dict;
+import org.redis.lang.basis.IntSet;
+import org.redis.lang.basis.ListPack;
+import org.redis.lang.basis.Rax;
+import org.redis.lang.basis.ZipList;
+import org.redis.lang.basis.skip.SkipList;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+
 /**
  * @author zsy
  * @Description Redis的RDB持久化支持
+ *
+ * 文件格式：
+ *      "REDIS" + 4位版本号
+ *      [SELECTDB dbid] [RESIZEDB dbsize expiressize]
+ *      [EXPIRETIME_MS 8字节小端时间戳] type key value ...
+ *      EOF + 8字节校验和(为0表示不校验)
+ *
+ * 保存只依赖OutputStream。rdbSave一次写出整个文件；无盘复制时由Saver逐个键值对保存，
+ * 每生成一块就发送给从节点，不在内存中保存完整的RDB。
+ * 加载通过Input读取：从InputStream读取时每段数据都要复制；从ByteBuffer(例如内存映射的文件)读取时，
+ * listpack、intset、ziplist等紧凑编码的值直接引用缓冲区中的一段，不复制、不重新编码(见MappedRDBLoader)。
+ * 加载由Loader逐个键值对进行，可以在两个键值对之间暂停，用于分批加载。
+ *
  * @ClassName RDB
  * @Version 1.0
  */
 public class RDB {
+
+    public static final int RDB_VERSION = 11;
+
+    /** 值类型 */
+    public static final int RDB_TYPE_STRING = 0;
+    public static final int RDB_TYPE_LIST = 1;
+    public static final int RDB_TYPE_SET = 2;
+    public static final int RDB_TYPE_ZSET = 3;
+    public static final int RDB_TYPE_HASH = 4;
+    public static final int RDB_TYPE_ZSET_2 = 5;
+    public static final int RDB_TYPE_LIST_ZIPLIST = 10;
+    public static final int RDB_TYPE_SET_INTSET = 11;
+    public static final int RDB_TYPE_ZSET_ZIPLIST = 12;
+    public static final int RDB_TYPE_HASH_ZIPLIST = 13;
+    public static final int RDB_TYPE_LIST_QUICKLIST = 14;
+    public static final int RDB_TYPE_STREAM_LISTPACKS = 15;
+    public static final int RDB_TYPE_HASH_LISTPACK = 16;
+    public static final int RDB_TYPE_ZSET_LISTPACK = 17;
+    public static final int RDB_TYPE_LIST_QUICKLIST_2 = 18;
+    public static final int RDB_TYPE_STREAM_LISTPACKS_2 = 19;
+    public static final int RDB_TYPE_SET_LISTPACK = 20;
+
+    /** 操作码 */
+    public static final int RDB_OPCODE_IDLE = 248;
+    public static final int RDB_OPCODE_FREQ = 249;
+    public static final int RDB_OPCODE_AUX = 250;
+    public static final int RDB_OPCODE_RESIZEDB = 251;
+    public static final int RDB_OPCODE_EXPIRETIME_MS = 252;
+    public static final int RDB_OPCODE_EXPIRETIME = 253;
+    public static final int RDB_OPCODE_SELECTDB = 254;
+    public static final int RDB_OPCODE_EOF = 255;
+
+    /** 长度编码：高两位表示长度占用的位数 */
+    private static final int RDB_6BITLEN = 0;
+    private static final int RDB_14BITLEN = 1;
+    private static final int RDB_32BITLEN = 0x80;
+    private static final int RDB_64BITLEN = 0x81;
+    private static final int RDB_ENCVAL = 3;
+
+    /** RDB_ENCVAL的低6位：字符串的特殊编码 */
+    private static final int RDB_ENC_INT8 = 0;
+    private static final int RDB_ENC_INT16 = 1;
+    private static final int RDB_ENC_INT32 = 2;
+    private static final int RDB_ENC_LZF = 3;
+
+    /** quicklist节点的容器类型 */
+    private static final int QUICKLIST_NODE_CONTAINER_PLAIN = 1;
+    private static final int QUICKLIST_NODE_CONTAINER_PACKED = 2;
+
+    /**
+     * 把所有数据库保存到out，调用方负责关闭out
+     */
+    public static void rdbSave(OutputStream out, RedisDB[] dbs) throws IOException {
+        saveHeader(out);
+
+        for (RedisDB db : dbs) {
+            if (db.dbSize() == 0) continue;
+
+            out.write(RDB_OPCODE_SELECTDB);
+            saveLen(out, db.getId());
+            // 预先告知键数量，加载时可以一次性扩容字典
+            out.write(RDB_OPCODE_RESIZEDB);
+            saveLen(out, db.dbSize());
+            saveLen(out, db.expiresSize());
+
+            for (Dict.DictEntry<String, RedisObject> de : db.dict) {
+                saveKey(out, de.getKey(), de.getVal(), db.getExpire(de.getKey()));
+            }
+        }
+
+        saveTrailer(out);
+        out.flush();
+    }
+
+    private static void saveHeader(OutputStream out) throws IOException {
+        out.write(String.format("REDIS%04d", RDB_VERSION).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void saveTrailer(OutputStream out) throws IOException {
+        out.write(RDB_OPCODE_EOF);
+        // 校验和为0表示未开启校验
+        saveLongLE(out, 0);
+    }
+
+    /**
+     * 过期时间(-1表示没有)和键值对
+     */
+    private static void saveKey(OutputStream out, String key, RedisObject o, long expire) throws IOException {
+        if (expire != -1) {
+            out.write(RDB_OPCODE_EXPIRETIME_MS);
+            saveLongLE(out, expire);
+        }
+        saveKeyValuePair(out, key, o);
+    }
+
+    private static void saveKeyValuePair(OutputStream out, String key, RedisObject o) throws IOException {
+        switch (o.getType()) {
+            case RedisObject.OBJ_STRING:
+                out.write(RDB_TYPE_STRING);
+                saveString(out, key);
+                saveString(out, (String) o.getPtr());
+                break;
+            case RedisObject.OBJ_ZSET:
+                out.write(RDB_TYPE_ZSET_2);
+                saveString(out, key);
+                RedisZSet zset = (RedisZSet) o.getPtr();
+                saveLen(out, zset.zcard());
+                // 从尾部开始保存，加载时每次插入都落在跳表头部附近
+                for (SkipList.SkipNode ln = zset.last(); ln != null; ln = ln.previous()) {
+                    saveString(out, ln.getValue());
+                    saveLongLE(out, Double.doubleToLongBits(ln.getScore()));
+                }
+                break;
+            case RedisObject.OBJ_LIST:
+                out.write(RDB_TYPE_LIST);
+                saveString(out, key);
+                RedisList list = (RedisList) o.getPtr();
+                saveLen(out, list.length());
+                for (Iterator<String> it = list.iterator(); it.hasNext(); ) saveString(out, it.next());
+                break;
+            case RedisObject.OBJ_SET:
+                saveSet(out, key, (RedisSet) o.getPtr());
+                break;
+            case RedisObject.OBJ_HASH:
+                saveHash(out, key, (RedisHash) o.getPtr());
+                break;
+            case RedisObject.OBJ_STREAM:
+                out.write(RDB_TYPE_STREAM_LISTPACKS);
+                saveString(out, key);
+                saveStream(out, (RedisStream) o.getPtr());
+                break;
+            default:
+                throw new IllegalStateException("Unknown object type " + o.getType());
+        }
+    }
+
+    /**
+     * intset和listpack编码的集合原样保存
+     */
+    private static void saveSet(OutputStream out, String key, RedisSet set) throws IOException {
+        switch (set.getEncoding()) {
+            case RedisSet.ENCODING_INTSET:
+                out.write(RDB_TYPE_SET_INTSET);
+                saveString(out, key);
+                saveBuffer(out, set.getIntSet().buffer());
+                break;
+            case RedisSet.ENCODING_LISTPACK:
+                out.write(RDB_TYPE_SET_LISTPACK);
+                saveString(out, key);
+                saveBuffer(out, set.getListPack().buffer());
+                break;
+            default:
+                out.write(RDB_TYPE_SET);
+                saveString(out, key);
+                saveLen(out, set.size());
+                for (Dict.DictEntry<String, Boolean> de : set.getDict()) saveString(out, de.getKey());
+        }
+    }
+
+    /**
+     * ziplist和listpack编码的散列表原样保存
+     */
+    private static void saveHash(OutputStream out, String key, RedisHash hash) throws IOException {
+        switch (hash.getEncoding()) {
+            case RedisHash.ENCODING_ZIPLIST:
+                out.write(RDB_TYPE_HASH_ZIPLIST);
+                saveString(out, key);
+                saveBuffer(out, hash.getZipList().buffer());
+                break;
+            case RedisHash.ENCODING_LISTPACK:
+                out.write(RDB_TYPE_HASH_LISTPACK);
+                saveString(out, key);
+                saveBuffer(out, hash.getListPack().buffer());
+                break;
+            default:
+                out.write(RDB_TYPE_HASH);
+                saveString(out, key);
+                saveLen(out, hash.length());
+                for (Dict.DictEntry<String, String> de : hash.getDict()) {
+                    saveString(out, de.getKey());
+                    saveString(out, de.getVal());
+                }
+        }
+    }
+
+    /**
+     * 每个节点保存为 master ID(16字节) + listpack的原始字节，不需要逐条编码消息
+     */
+    private static void saveStream(OutputStream out, RedisStream s) throws IOException {
+        Rax<ListPack> rax = s.getRax();
+        saveLen(out, rax.size());
+        Rax<ListPack>.RaxIterator it = rax.iterator().seekFirst();
+        while (it.next()) {
+            saveString(out, it.key());
+            saveBuffer(out, it.data().buffer());
+        }
+        saveLen(out, s.length());
+        saveLen(out, s.getLastId().getMs());
+        saveLen(out, s.getLastId().getSeq());
+        // 消费者组数量
+        saveLen(out, 0);
+    }
+
+    /**
+     * 逐个键值对保存创建时刻的快照，用于无盘复制时边生成边发送RDB。
+     *
+     * 创建时记录每个数据库当前的全部键(只引用键，不复制值)，之后每次调用saveNext保存一个键值对。
+     * 两次调用之间数据集会被写命令修改，Redis由fork的写时复制保证子进程看到的是快照，这里以键为单位做写时复制：
+     * RedisDB在键被修改、删除或改变过期时间之前回调beforeKeyModified，尚未保存的键先按修改前的值写出；
+     * 快照之后新增的键不属于快照，由复制流传给从节点。数据库被清空时旧的dict整体脱离数据库，不会再被修改，
+     * 其中尚未保存的键按原样继续保存。
+     * 额外的内存为每个键一个引用和一个dict节点，与值的大小无关；提前写出的旧值由调用方尽快发送。
+     */
+    public static class Saver {
+
+        private final OutputStream out;
+
+        private final RedisDB[] dbs;
+
+        private final DbSnapshot[] snapshots;
+
+        /** 正在按顺序保存的数据库 */
+        private int dbid;
+
+        /** out中最后一次SELECTDB的数据库，提前写出其他数据库的旧值时需要切换 */
+        private int seldb = -1;
+
+        private boolean finished;
+
+        public Saver(OutputStream out, RedisDB[] dbs) throws IOException {
+            this.out = out;
+            this.dbs = dbs;
+            snapshots = new DbSnapshot[dbs.length];
+            for (int j = 0; j < dbs.length; j++) {
+                snapshots[j] = new DbSnapshot(dbs[j]);
+                dbs[j].addSaver(this);
+            }
+            saveHeader(out);
+        }
+
+        /**
+         * 保存下一个键值对，所有键都保存后写出EOF并停止跟踪数据库的修改
+         *
+         * @return 写出EOF后返回false
+         */
+        public boolean saveNext() throws IOException {
+            if (finished) return false;
+            for (; dbid < snapshots.length; dbid++) {
+                DbSnapshot s = snapshots[dbid];
+                if (s.pos == 0 && s.pending.size() > 0) {
+                    // 预先告知键数量，加载时可以一次性扩容字典
+                    selectDb(dbid);
+                    out.write(RDB_OPCODE_RESIZEDB);
+                    saveLen(out, s.keys.length);
+                    saveLen(out, s.expires.size());
+                }
+                while (s.pos < s.keys.length) {
+                    String key = s.keys[s.pos++];
+                    // 已经在修改前提前保存
+                    if (s.pending.delete(key) == null) continue;
+                    save(dbid, s, key);
+                    return true;
+                }
+            }
+            saveTrailer(out);
+            close();
+            return false;
+        }
+
+        /**
+         * 键即将被修改：属于快照且尚未保存时，先写出当前的值
+         */
+        void beforeKeyModified(RedisDB db, String key) {
+            DbSnapshot s = snapshots[db.getId()];
+            // 数据库已被清空，快照中的dict不会再被修改
+            if (s.dict != db.dict) return;
+            if (s.pending.size() == 0 || s.pending.delete(key) == null) return;
+            try {
+                save(db.getId(), s, key);
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to save RDB record before modification", e);
+            }
+        }
+
+        private void save(int id, DbSnapshot s, String key) throws IOException {
+            selectDb(id);
+            Long expire = s.expires.size() == 0 ? null : s.expires.fetchValue(key);
+            saveKey(out, key, s.dict.fetchValue(key), expire == null ? -1 : expire);
+        }
+
+        private void selectDb(int id) throws IOException {
+            if (seldb == id) return;
+            out.write(RDB_OPCODE_SELECTDB);
+            saveLen(out, id);
+            seldb = id;
+        }
+
+        /**
+         * 停止跟踪数据库的修改，可以重复调用；未保存完就关闭时(例如从节点断开)，生成的RDB不完整
+         */
+        public void close() {
+            if (finished) return;
+            finished = true;
+            for (RedisDB db : dbs) db.removeSaver(this);
+        }
+
+        /**
+         * 一个数据库在快照时刻的键空间
+         */
+        private static class DbSnapshot {
+
+            private final Dict<String, RedisObject> dict;
+
+            private final Dict<String, Long> expires;
+
+            /** 保存顺序 */
+            private final String[] keys;
+
+            /** 尚未保存的键 */
+            private final Dict<String, Boolean> pending = new Dict<>();
+
+            private int pos;
+
+            private DbSnapshot(RedisDB db) {
+                dict = db.dict;
+                expires = db.expires;
+                keys = new String[dict.size()];
+                int i = 0;
+                for (Dict.DictEntry<String, RedisObject> de : dict) {
+                    keys[i++] = de.getKey();
+                    pending.add(de.getKey(), Boolean.TRUE);
+                }
+            }
+        }
+    }
+
+    /**
+     * 从in中加载数据到dbs，加载前不会清空dbs
+     */
+    public static void rdbLoad(InputStream in, RedisDB[] dbs) throws IOException {
+        Loader loader = new Loader(new StreamInput(in), dbs);
+        loader.loadHeader();
+        while (loader.loadNext()) ;
+    }
+
+    /**
+     * 逐个键值对加载，每次调用loadNext只读取一个键值对及其之前的操作码
+     */
+    static class Loader {
+
+        private final Input in;
+
+        private final RedisDB[] dbs;
+
+        private int dbid;
+
+        /** 当前键的过期时间，-1表示没有 */
+        private long expiretime = -1;
+
+        /** 当前键值对记录的起始位置，包括之前的过期时间等操作码 */
+        private long recordStart;
+
+        Loader(Input in, RedisDB[] dbs) {
+            this.in = in;
+            this.dbs = dbs;
+        }
+
+        Input getInput() {
+            return in;
+        }
+
+        int getDbid() {
+            return dbid;
+        }
+
+        long getExpiretime() {
+            return expiretime;
+        }
+
+        long getRecordStart() {
+            return recordStart;
+        }
+
+        void loadHeader() throws IOException {
+            String header = new String(in.readBytes(9), StandardCharsets.US_ASCII);
+            if (!header.startsWith("REDIS")) {
+                throw new IOException("Wrong signature trying to load DB from file");
+            }
+            int version;
+            try {
+                version = Integer.parseInt(header.substring(5));
+            } catch (NumberFormatException e) {
+                throw new IOException("Wrong signature trying to load DB from file");
+            }
+            if (version < 1 || version > RDB_VERSION) {
+                throw new IOException("Can't handle RDB format version " + version);
+            }
+        }
+
+        /**
+         * 处理操作码直到下一个键值对，返回值类型，之后紧跟键和值；读到EOF返回-1
+         */
+        int nextType() throws IOException {
+            expiretime = -1;
+            recordStart = in.position();
+            while (true) {
+                int type = in.readByte();
+                switch (type) {
+                    case RDB_OPCODE_EXPIRETIME:
+                        expiretime = readIntLE(in) * 1000L;
+                        continue;
+                    case RDB_OPCODE_EXPIRETIME_MS:
+                        expiretime = readLongLE(in);
+                        continue;
+                    case RDB_OPCODE_IDLE:
+                        // LRU空闲时间，当前不需要
+                        loadLen(in);
+                        continue;
+                    case RDB_OPCODE_FREQ:
+                        // LFU计数，当前不需要
+                        in.readByte();
+                        continue;
+                    case RDB_OPCODE_SELECTDB:
+                        int id = (int) loadLen(in);
+                        if (id >= dbs.length) {
+                            throw new IOException("FATAL: Data file was created with a Redis server configured to handle more than "
+                                    + dbs.length + " databases");
+                        }
+                        dbid = id;
+                        break;
+                    case RDB_OPCODE_RESIZEDB:
+                        loadLen(in);
+                        loadLen(in);
+                        break;
+                    case RDB_OPCODE_AUX:
+                        // 辅助字段(redis-ver等)，当前不需要
+                        skipString(in);
+                        skipString(in);
+                        break;
+                    case RDB_OPCODE_EOF:
+                        // 校验和，为0时跳过校验
+                        readLongLE(in);
+                        return -1;
+                    default:
+                        return type;
+                }
+                // 不属于任何键的操作码，下一条记录从这里开始
+                recordStart = in.position();
+            }
+        }
+
+        /**
+         * 加载下一个键值对
+         *
+         * @return 读到EOF返回false
+         */
+        boolean loadNext() throws IOException {
+            int type = nextType();
+            if (type < 0) return false;
+            String key = loadString(in);
+            RedisObject val = loadObject(in, type);
+            // 空的紧凑编码值直接跳过，与Redis一致
+            if (val == null) return true;
+            RedisDB db = dbs[dbid];
+            db.dbDelete(key);
+            db.dbAdd(key, val);
+            if (expiretime != -1) db.setExpire(key, expiretime);
+            return true;
+        }
+    }
+
+    /**
+     * 加载一个值，紧凑编码的值为空时返回null
+     */
+    static RedisObject loadObject(Input in, int type) throws IOException {
+        switch (type) {
+            case RDB_TYPE_STRING:
+                return RedisObject.createStringObject(loadString(in));
+            case RDB_TYPE_ZSET:
+            case RDB_TYPE_ZSET_2: {
+                RedisObject o = RedisObject.createZsetObject();
+                RedisZSet zset = (RedisZSet) o.getPtr();
+                long len = loadLen(in);
+                while (len-- > 0) {
+                    String member = loadString(in);
+                    double score = type == RDB_TYPE_ZSET_2 ? Double.longBitsToDouble(readLongLE(in)) : loadDoubleValue(in);
+                    zset.zadd(score, member);
+                }
+                return o;
+            }
+            case RDB_TYPE_LIST: {
+                RedisObject o = RedisObject.createListObject();
+                RedisList list = (RedisList) o.getPtr();
+                long len = loadLen(in);
+                while (len-- > 0) list.push(loadString(in), RedisList.LIST_TAIL);
+                return o;
+            }
+            case RDB_TYPE_SET: {
+                RedisObject o = RedisObject.createSetObject();
+                RedisSet set = (RedisSet) o.getPtr();
+                long len = loadLen(in);
+                while (len-- > 0) set.add(loadString(in));
+                return o;
+            }
+            case RDB_TYPE_HASH: {
+                RedisObject o = RedisObject.createHashObject();
+                RedisHash hash = (RedisHash) o.getPtr();
+                long len = loadLen(in);
+                while (len-- > 0) hash.set(loadString(in), loadString(in));
+                return o;
+            }
+            case RDB_TYPE_SET_INTSET: {
+                IntSet is;
+                try {
+                    is = IntSet.adopt(loadStringBuffer(in));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Intset integrity check failed.");
+                }
+                return is.length() == 0 ? null : new RedisObject(RedisObject.OBJ_SET, new RedisSet(is));
+            }
+            case RDB_TYPE_SET_LISTPACK: {
+                ListPack lp = loadListPack(in);
+                if (!validateDups(lp, false)) throw new IOException("Set listpack integrity check failed.");
+                return lp.first() < 0 ? null : new RedisObject(RedisObject.OBJ_SET, new RedisSet(lp));
+            }
+            case RDB_TYPE_HASH_ZIPLIST: {
+                ZipList zl = loadZipList(in);
+                if (!validateDups(zl)) throw new IOException("Hash ziplist integrity check failed.");
+                return zl.first() < 0 ? null : new RedisObject(RedisObject.OBJ_HASH, new RedisHash(zl));
+            }
+            case RDB_TYPE_HASH_LISTPACK: {
+                ListPack lp = loadListPack(in);
+                if (!validateDups(lp, true)) throw new IOException("Hash listpack integrity check failed.");
+                return lp.first() < 0 ? null : new RedisObject(RedisObject.OBJ_HASH, new RedisHash(lp));
+            }
+            case RDB_TYPE_LIST_ZIPLIST:
+            case RDB_TYPE_LIST_QUICKLIST:
+            case RDB_TYPE_LIST_QUICKLIST_2:
+                return loadList(in, type);
+            case RDB_TYPE_ZSET_ZIPLIST: {
+                // 有序集合只有 dict + skiplist 编码，逐个成员插入
+                RedisObject o = RedisObject.createZsetObject();
+                RedisZSet zset = (RedisZSet) o.getPtr();
+                ZipList zl = loadZipList(in);
+                if (!validateDups(zl)) throw new IOException("Zset ziplist integrity check failed.");
+                for (int p = zl.first(); p >= 0; p = zl.next(zl.next(p))) {
+                    zset.zadd(Double.parseDouble(zl.get(zl.next(p))), zl.get(p));
+                }
+                return zset.zcard() == 0 ? null : o;
+            }
+            case RDB_TYPE_ZSET_LISTPACK: {
+                RedisObject o = RedisObject.createZsetObject();
+                RedisZSet zset = (RedisZSet) o.getPtr();
+                ListPack lp = loadListPack(in);
+                if (!validateDups(lp, true)) throw new IOException("Zset listpack integrity check failed.");
+                for (int p = lp.first(); p >= 0; p = lp.next(lp.next(p))) {
+                    zset.zadd(Double.parseDouble(lp.get(lp.next(p))), lp.get(p));
+                }
+                return zset.zcard() == 0 ? null : o;
+            }
+            case RDB_TYPE_STREAM_LISTPACKS:
+            case RDB_TYPE_STREAM_LISTPACKS_2:
+                return loadStream(in, type);
+            default:
+                throw new IOException("Unknown RDB encoding type " + type);
+        }
+    }
+
+    /**
+     * 列表只有双端队列一种编码，ziplist和quicklist节点中的元素逐个取出
+     */
+    private static RedisObject loadList(Input in, int type) throws IOException {
+        RedisObject o = RedisObject.createListObject();
+        RedisList list = (RedisList) o.getPtr();
+        long nodes = type == RDB_TYPE_LIST_ZIPLIST ? 1 : loadLen(in);
+        while (nodes-- > 0) {
+            if (type == RDB_TYPE_LIST_QUICKLIST_2) {
+                long container = loadLen(in);
+                if (container == QUICKLIST_NODE_CONTAINER_PLAIN) {
+                    // 大元素单独保存为一个节点
+                    list.push(loadString(in), RedisList.LIST_TAIL);
+                    continue;
+                }
+                if (container != QUICKLIST_NODE_CONTAINER_PACKED) {
+                    throw new IOException("Quicklist integrity check failed.");
+                }
+                ListPack lp = loadListPack(in);
+                for (int p = lp.first(); p >= 0; p = lp.next(p)) list.push(lp.get(p), RedisList.LIST_TAIL);
+            } else {
+                ZipList zl = loadZipList(in);
+                for (int p = zl.first(); p >= 0; p = zl.next(p)) list.push(zl.get(p), RedisList.LIST_TAIL);
+            }
+        }
+        return list.length() == 0 ? null : o;
+    }
+
+    /**
+     * 节点的listpack直接作为节点的值，不重新编码
+     */
+    private static RedisObject loadStream(Input in, int type) throws IOException {
+        RedisObject o = RedisObject.createStreamObject();
+        RedisStream s = (RedisStream) o.getPtr();
+        long nodes = loadLen(in);
+        while (nodes-- > 0) {
+            String nodekey = loadString(in);
+            if (nodekey.length() != 16) {
+                throw new IOException("Stream node key entry is not the size of a stream ID");
+            }
+            ListPack listpack;
+            try {
+                listpack = ListPack.adopt(loadStringBuffer(in));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Stream listpack integrity check failed");
+            }
+            if (listpack.first() < 0) throw new IOException("Empty listpack inside stream");
+            s.addNode(RedisStream.StreamID.decode(nodekey), listpack);
+        }
+        s.setLength(loadLen(in));
+        s.setLastId(new RedisStream.StreamID(loadLen(in), loadLen(in)));
+        if (type == RDB_TYPE_STREAM_LISTPACKS_2) {
+            // first_id、max_deleted_entry_id、entries_added，当前不需要
+            for (int i = 0; i < 5; i++) loadLen(in);
+        }
+        if (loadLen(in) != 0) throw new IOException("Stream consumer groups are not supported");
+        return o;
+    }
+
+    private static ZipList loadZipList(Input in) throws IOException {
+        try {
+            return ZipList.adopt(loadStringBuffer(in));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Ziplist integrity check failed.");
+        }
+    }
+
+    private static ListPack loadListPack(Input in) throws IOException {
+        try {
+            return ListPack.adopt(loadStringBuffer(in));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Listpack integrity check failed.");
+        }
+    }
+
+    /**
+     * 对应lpValidateIntegrityAndDups：pairs为true时元素按 field value 成对出现，数量必须为偶数，只检查field；
+     * 否则检查每个元素。field或成员重复时，紧凑编码上的计数和查找结果与dict编码不一致
+     */
+    private static boolean validateDups(ListPack lp, boolean pairs) {
+        Dict<String, Boolean> seen = new Dict<>();
+        int count = 0;
+        for (int p = lp.first(); p >= 0; p = lp.next(p), count++) {
+            if (pairs && (count & 1) == 1) continue;
+            if (!seen.add(lp.get(p), Boolean.TRUE)) return false;
+        }
+        return !pairs || (count & 1) == 0;
+    }
+
+    /**
+     * 对应ziplistPairsConvertAndValidateIntegrity：ziplist编码的散列表和有序集合都是成对保存的
+     */
+    private static boolean validateDups(ZipList zl) {
+        Dict<String, Boolean> seen = new Dict<>();
+        int count = 0;
+        for (int p = zl.first(); p >= 0; p = zl.next(p), count++) {
+            if ((count & 1) == 1) continue;
+            if (!seen.add(zl.get(p), Boolean.TRUE)) return false;
+        }
+        return (count & 1) == 0;
+    }
+
+    /**
+     * 旧版本有序集合的分值：1字节长度 + 十进制字符串，253/254/255分别表示NaN/+inf/-inf
+     */
+    private static double loadDoubleValue(Input in) throws IOException {
+        int len = in.readByte();
+        switch (len) {
+            case 253:
+                return Double.NaN;
+            case 254:
+                return Double.POSITIVE_INFINITY;
+            case 255:
+                return Double.NEGATIVE_INFINITY;
+            default:
+                try {
+                    return Double.parseDouble(new String(in.readBytes(len), StandardCharsets.US_ASCII));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid double value");
+                }
+        }
+    }
+
+    /**
+     * 跳过一个值，不创建任何对象
+     */
+    static void skipObject(Input in, int type) throws IOException {
+        long len;
+        switch (type) {
+            case RDB_TYPE_STRING:
+            case RDB_TYPE_LIST_ZIPLIST:
+            case RDB_TYPE_SET_INTSET:
+            case RDB_TYPE_ZSET_ZIPLIST:
+            case RDB_TYPE_HASH_ZIPLIST:
+            case RDB_TYPE_HASH_LISTPACK:
+            case RDB_TYPE_ZSET_LISTPACK:
+            case RDB_TYPE_SET_LISTPACK:
+                skipString(in);
+                return;
+            case RDB_TYPE_LIST:
+            case RDB_TYPE_SET:
+            case RDB_TYPE_LIST_QUICKLIST:
+                len = loadLen(in);
+                while (len-- > 0) skipString(in);
+                return;
+            case RDB_TYPE_HASH:
+                len = loadLen(in);
+                while (len-- > 0) {
+                    skipString(in);
+                    skipString(in);
+                }
+                return;
+            case RDB_TYPE_ZSET:
+                len = loadLen(in);
+                while (len-- > 0) {
+                    skipString(in);
+                    int dlen = in.readByte();
+                    if (dlen < 253) in.skip(dlen);
+                }
+                return;
+            case RDB_TYPE_ZSET_2:
+                len = loadLen(in);
+                while (len-- > 0) {
+                    skipString(in);
+                    in.skip(8);
+                }
+                return;
+            case RDB_TYPE_LIST_QUICKLIST_2:
+                len = loadLen(in);
+                while (len-- > 0) {
+                    loadLen(in);
+                    skipString(in);
+                }
+                return;
+            case RDB_TYPE_STREAM_LISTPACKS:
+            case RDB_TYPE_STREAM_LISTPACKS_2:
+                len = loadLen(in);
+                while (len-- > 0) {
+                    skipString(in);
+                    skipString(in);
+                }
+                for (int i = type == RDB_TYPE_STREAM_LISTPACKS ? 3 : 8; i > 0; i--) loadLen(in);
+                if (loadLen(in) != 0) throw new IOException("Stream consumer groups are not supported");
+                return;
+            default:
+                throw new IOException("Unknown RDB encoding type " + type);
+        }
+    }
+
+    static void saveLen(OutputStream out, long len) throws IOException {
+        if (len < (1 << 6)) {
+            out.write((int) (len & 0xFF) | (RDB_6BITLEN << 6));
+        } else if (len < (1 << 14)) {
+            out.write((int) ((len >> 8) & 0xFF) | (RDB_14BITLEN << 6));
+            out.write((int) (len & 0xFF));
+        } else if (len <= 0xFFFFFFFFL) {
+            // 32位长度使用大端序
+            out.write(RDB_32BITLEN);
+            out.write((int) (len >>> 24) & 0xFF);
+            out.write((int) (len >>> 16) & 0xFF);
+            out.write((int) (len >>> 8) & 0xFF);
+            out.write((int) len & 0xFF);
+        } else {
+            out.write(RDB_64BITLEN);
+            for (int i = 56; i >= 0; i -= 8) out.write((int) (len >>> i) & 0xFF);
+        }
+    }
+
+    static long loadLen(Input in) throws IOException {
+        return loadLen(in, in.readByte());
+    }
+
+    /**
+     * b为已经读取的第一个字节
+     */
+    private static long loadLen(Input in, int b) throws IOException {
+        int type = (b & 0xC0) >> 6;
+        if (type == RDB_6BITLEN) return b & 0x3F;
+        if (type == RDB_14BITLEN) return ((b & 0x3F) << 8) | in.readByte();
+        if (type == RDB_ENCVAL) throw new IOException("Unsupported RDB encoded value " + b);
+        long len = 0;
+        int n = b == RDB_32BITLEN ? 4 : 8;
+        if (b != RDB_32BITLEN && b != RDB_64BITLEN) throw new IOException("Unknown length encoding " + b);
+        for (int i = 0; i < n; i++) len = (len << 8) | in.readByte();
+        return len;
+    }
+
+    private static int checkedLen(long len) throws IOException {
+        if (len < 0 || len > Integer.MAX_VALUE) throw new IOException("Length too large loading DB: " + len);
+        return (int) len;
+    }
+
+    /**
+     * 字符串以ISO-8859-1与字节一一对应，保证二进制安全
+     */
+    static void saveString(OutputStream out, String s) throws IOException {
+        byte[] buf = s.getBytes(StandardCharsets.ISO_8859_1);
+        saveLen(out, buf.length);
+        out.write(buf);
+    }
+
+    /**
+     * 保存紧凑编码的原始字节
+     */
+    static void saveBuffer(OutputStream out, ByteBuffer b) throws IOException {
+        saveLen(out, b.remaining());
+        if (b.hasArray()) {
+            out.write(b.array(), b.arrayOffset() + b.position(), b.remaining());
+        } else {
+            byte[] buf = new byte[b.remaining()];
+            b.duplicate().get(buf);
+            out.write(buf);
+        }
+    }
+
+    static String loadString(Input in) throws IOException {
+        int b = in.readByte();
+        if (((b & 0xC0) >> 6) == RDB_ENCVAL) {
+            return new String(loadEncodedString(in, b & 0x3F), StandardCharsets.ISO_8859_1);
+        }
+        return new String(in.readBytes(checkedLen(loadLen(in, b))), StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * 读取字符串的原始字节：未压缩的字符串直接返回in中的一段(内存映射时不复制)，
+     * LZF压缩的字符串解压到堆内数组
+     */
+    static ByteBuffer loadStringBuffer(Input in) throws IOException {
+        int b = in.readByte();
+        if (((b & 0xC0) >> 6) == RDB_ENCVAL) return ByteBuffer.wrap(loadEncodedString(in, b & 0x3F));
+        return in.readSlice(checkedLen(loadLen(in, b)));
+    }
+
+    /**
+     * 整数编码或LZF压缩的字符串
+     */
+    private static byte[] loadEncodedString(Input in, int enc) throws IOException {
+        long v;
+        switch (enc) {
+            case RDB_ENC_INT8:
+                v = (byte) in.readByte();
+                break;
+            case RDB_ENC_INT16:
+                v = (short) (in.readByte() | (in.readByte() << 8));
+                break;
+            case RDB_ENC_INT32:
+                v = (int) readIntLE(in);
+                break;
+            case RDB_ENC_LZF: {
+                int clen = checkedLen(loadLen(in));
+                int len = checkedLen(loadLen(in));
+                byte[] out = new byte[len];
+                if (lzfDecompress(in.readBytes(clen), out) != len) {
+                    throw new IOException("Invalid LZF compressed string");
+                }
+                return out;
+            }
+            default:
+                throw new IOException("Unknown RDB string encoding type " + enc);
+        }
+        return Long.toString(v).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * 跳过一个字符串，压缩的字符串不解压
+     */
+    static void skipString(Input in) throws IOException {
+        int b = in.readByte();
+        if (((b & 0xC0) >> 6) != RDB_ENCVAL) {
+            in.skip(loadLen(in, b));
+            return;
+        }
+        switch (b & 0x3F) {
+            case RDB_ENC_INT8:
+                in.skip(1);
+                break;
+            case RDB_ENC_INT16:
+                in.skip(2);
+                break;
+            case RDB_ENC_INT32:
+                in.skip(4);
+                break;
+            case RDB_ENC_LZF: {
+                long clen = loadLen(in);
+                loadLen(in);
+                in.skip(clen);
+                break;
+            }
+            default:
+                throw new IOException("Unknown RDB string encoding type " + (b & 0x3F));
+        }
+    }
+
+    /**
+     * 与Redis的lzf_decompress相同：
+     *      000LLLLL <L+1个字面字节>
+     *      LLLooooo oooooooo          回溯复制L+2个字节，L为7时再读一个字节加到L上
+     *
+     * @return 解压后的长度，数据不合法返回-1
+     */
+    static int lzfDecompress(byte[] in, byte[] out) {
+        int ip = 0;
+        int op = 0;
+        while (ip < in.length) {
+            int ctrl = in[ip++] & 0xFF;
+            if (ctrl < (1 << 5)) {
+                ctrl++;
+                if (op + ctrl > out.length || ip + ctrl > in.length) return -1;
+                System.arraycopy(in, ip, out, op, ctrl);
+                ip += ctrl;
+                op += ctrl;
+            } else {
+                int len = ctrl >> 5;
+                int ref = op - ((ctrl & 0x1F) << 8) - 1;
+                if (len == 7) {
+                    if (ip >= in.length) return -1;
+                    len += in[ip++] & 0xFF;
+                }
+                if (ip >= in.length) return -1;
+                ref -= in[ip++] & 0xFF;
+                len += 2;
+                if (op + len > out.length || ref < 0) return -1;
+                // 回溯的区间可能与输出重叠，逐字节复制
+                while (len-- > 0) out[op++] = out[ref++];
+            }
+        }
+        return op;
+    }
+
+    static void saveLongLE(OutputStream out, long v) throws IOException {
+        for (int i = 0; i < 8; i++) out.write((int) (v >>> (8 * i)) & 0xFF);
+    }
+
+    static long readLongLE(Input in) throws IOException {
+        long v = 0;
+        for (int i = 0; i < 8; i++) v |= (long) in.readByte() << (8 * i);
+        return v;
+    }
+
+    static long readIntLE(Input in) throws IOException {
+        long v = 0;
+        for (int i = 0; i < 4; i++) v |= (long) in.readByte() << (8 * i);
+        return v;
+    }
+
+    // ------------------------------ 输入 ------------------------------
+
+    /**
+     * 加载时的数据源
+     */
+    abstract static class Input {
+
+        abstract int readByte() throws IOException;
+
+        abstract byte[] readBytes(int len) throws IOException;
+
+        /**
+         * 读取len个字节，返回的缓冲区可以被值直接引用
+         */
+        abstract ByteBuffer readSlice(int len) throws IOException;
+
+        abstract void skip(long len) throws IOException;
+
+        /** 已经读取的字节数 */
+        abstract long position();
+    }
+
+    /**
+     * 从InputStream读取，每段数据都复制到新的数组
+     */
+    static class StreamInput extends Input {
+
+        private final InputStream in;
+
+        private long pos;
+
+        StreamInput(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        int readByte() throws IOException {
+            int b = in.read();
+            if (b < 0) throw new EOFException("Short read loading DB");
+            pos++;
+            return b;
+        }
+
+        @Override
+        byte[] readBytes(int len) throws IOException {
+            byte[] buf = new byte[len];
+            int off = 0;
+            while (off < len) {
+                int n = in.read(buf, off, len - off);
+                if (n < 0) throw new EOFException("Short read loading DB");
+                off += n;
+            }
+            pos += len;
+            return buf;
+        }
+
+        @Override
+        ByteBuffer readSlice(int len) throws IOException {
+            return ByteBuffer.wrap(readBytes(len));
+        }
+
+        @Override
+        void skip(long len) throws IOException {
+            while (len > 0) {
+                long n = in.skip(len);
+                if (n <= 0) {
+                    readByte();
+                    n = 1;
+                } else {
+                    pos += n;
+                }
+                len -= n;
+            }
+        }
+
+        @Override
+        long position() {
+            return pos;
+        }
+    }
+
+    /**
+     * 从ByteBuffer读取，readSlice返回缓冲区的一段，不复制
+     */
+    static class BufferInput extends Input {
+
+        private final ByteBuffer buf;
+
+        private int pos;
+
+        BufferInput(ByteBuffer buf, int pos) {
+            this.buf = buf;
+            this.pos = pos;
+        }
+
+        private void need(long len) throws EOFException {
+            if (len > buf.limit() - pos) throw new EOFException("Short read loading DB");
+        }
+
+        int peekByte() throws IOException {
+            need(1);
+            return buf.get(pos) & 0xFF;
+        }
+
+        @Override
+        int readByte() throws IOException {
+            need(1);
+            return buf.get(pos++) & 0xFF;
+        }
+
+        @Override
+        byte[] readBytes(int len) throws IOException {
+            byte[] b = new byte[len];
+            readSlice(len).get(b);
+            return b;
+        }
+
+        @Override
+        ByteBuffer readSlice(int len) throws IOException {
+            need(len);
+            ByteBuffer b = buf.duplicate();
+            b.position(pos);
+            b.limit(pos + len);
+            pos += len;
+            return b.slice();
+        }
+
+        @Override
+        void skip(long len) throws IOException {
+            need(len);
+            pos += (int) len;
+        }
+
+        @Override
+        long position() {
+            return pos;
+        }
+    }
 }
@@ -1,10 +1,228 @@
 package org.redis.db;
 
+import org.redis.lang.RedisObject;
+import org.redis.lang.basis.Dict;
+
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * @author zsy
  * @Description Redis底层数据库实现
+ *
+ * 1. dict保存所有键值对，expires保存设置了过期时间的键及其过期时间戳(毫秒)；
+ * 2. 过期键采用 惰性删除 + 定期删除：访问键时检查是否过期，serverCron中随机抽样删除；
+ * 3. 从节点不主动删除过期键，只在读取时把它视为不存在，由主节点传播DEL保证主从一致；
+ * 4. 无盘复制正在生成RDB时，键被修改前先通知RDB.Saver，由它按修改前的值保存。
+ *
  * @ClassName RedisDB
  * @Version 1.0
  */
 public class RedisDB {
+
+    /** 数据库编号 */
+    private final int id;
+
+    /** 键空间 */
+    Dict<String, RedisObject> dict = new Dict<>();
+
+    /** 过期字典：键 -> 过期时间戳(毫秒) */
+    Dict<String, Long> expires = new Dict<>();
+
+    /** 正在保存该数据库快照的RDB.Saver */
+    private final List<RDB.Saver> savers = new ArrayList<>(0);
+
+    private KeyspaceListener listener;
+
+    /** 为true时由主节点负责过期：只判断不删除 */
+    private boolean expireByMaster;
+
+    public RedisDB(int id) {
+        this.id = id;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public void setListener(KeyspaceListener listener) {
+        this.listener = listener;
+    }
+
+    public void setExpireByMaster(boolean expireByMaster) {
+        this.expireByMaster = expireByMaster;
+    }
+
+    void addSaver(RDB.Saver saver) {
+        savers.add(saver);
+    }
+
+    void removeSaver(RDB.Saver saver) {
+        savers.remove(saver);
+    }
+
+    /**
+     * 键即将被修改(包括删除和改变过期时间)
+     */
+    private void beforeKeyModified(String key) {
+        for (int i = 0; i < savers.size(); i++) savers.get(i).beforeKeyModified(this, key);
+    }
+
+    private static long mstime() {
+        return System.currentTimeMillis();
+    }
+
+    private RedisObject lookupKey(String key) {
+        return dict.fetchValue(key);
+    }
+
+    /**
+     * 读操作查找键，已过期的键视为不存在
+     */
+    public RedisObject lookupKeyRead(String key) {
+        if (expireIfNeeded(key)) return null;
+        return lookupKey(key);
+    }
+
+    /**
+     * 写操作查找键：从节点上逻辑过期的键仍然返回，保证主节点传播来的写命令与主节点行为一致。
+     * 写命令会原地修改返回的值，返回前先通知正在保存快照的RDB.Saver
+     */
+    public RedisObject lookupKeyWrite(String key) {
+        expireIfNeeded(key);
+        if (!savers.isEmpty()) beforeKeyModified(key);
+        return lookupKey(key);
+    }
+
+    /**
+     * 添加新键，键必须不存在
+     */
+    public void dbAdd(String key, RedisObject val) {
+        boolean added = dict.add(key, val);
+        assert added : "key already exists: " + key;
+    }
+
+    /**
+     * 高层的SET操作：键存在则覆盖，并清除原有的过期时间
+     */
+    public void setKey(String key, RedisObject val) {
+        if (lookupKeyWrite(key) == null) {
+            dbAdd(key, val);
+        } else {
+            dict.replace(key, val);
+        }
+        removeExpire(key);
+        signalModifiedKey(key);
+    }
+
+    /**
+     * 通知键被修改。setKey之外的写操作(原地修改集合、删除、设置过期时间等)由命令在修改后调用，
+     * 加载RDB等不需要通知的场景直接使用dbAdd/dbDelete
+     */
+    public void signalModifiedKey(String key) {
+        if (listener != null) listener.keyModified(this, key);
+    }
+
+    /**
+     * 删除键及其过期时间
+     *
+     * @return 键存在返回true
+     */
+    public boolean dbDelete(String key) {
+        if (!savers.isEmpty()) beforeKeyModified(key);
+        if (expires.size() > 0) expires.delete(key);
+        return dict.delete(key) != null;
+    }
+
+    /**
+     * 设置过期时间戳(毫秒)，键必须存在
+     */
+    public void setExpire(String key, long when) {
+        if (!savers.isEmpty()) beforeKeyModified(key);
+        expires.replace(key, when);
+    }
+
+    /**
+     * 返回过期时间戳，没有设置过期时间返回-1
+     */
+    public long getExpire(String key) {
+        if (expires.size() == 0) return -1;
+        Long when = expires.fetchValue(key);
+        return when == null ? -1 : when;
+    }
+
+    public boolean removeExpire(String key) {
+        if (expires.size() == 0) return false;
+        if (!savers.isEmpty()) beforeKeyModified(key);
+        return expires.delete(key) != null;
+    }
+
+    public boolean keyIsExpired(String key) {
+        long when = getExpire(key);
+        return when >= 0 && mstime() > when;
+    }
+
+    /**
+     * 惰性删除：键已过期时删除并通知监听者
+     *
+     * @return 键已(逻辑)过期返回true
+     */
+    public boolean expireIfNeeded(String key) {
+        if (!keyIsExpired(key)) return false;
+        if (expireByMaster) return true;
+
+        deleteExpiredKey(key);
+        return true;
+    }
+
+    private void deleteExpiredKey(String key) {
+        dbDelete(key);
+        if (listener != null) listener.keyExpired(this, key);
+    }
+
+    /**
+     * 定期删除：从过期字典中随机抽样，删除其中已过期的键
+     *
+     * @return 删除的键数量
+     */
+    public int activeExpireCycle(int samples) {
+        if (expireByMaster) return 0;
+        int expired = 0;
+        long now = mstime();
+        while (samples-- > 0 && expires.size() > 0) {
+            Dict.DictEntry<String, Long> de = expires.randomEntry();
+            if (now > de.getVal()) {
+                deleteExpiredKey(de.getKey());
+                expired++;
+            }
+        }
+        return expired;
+    }
+
+    public int dbSize() {
+        return dict.size();
+    }
+
+    public int expiresSize() {
+        return expires.size();
+    }
+
+    /**
+     * 清空数据库
+     *
+     * @return 被删除的键数量
+     */
+    public int emptyData() {
+        int removed = dict.size();
+        if (savers.isEmpty()) {
+            dict.clear();
+            expires.clear();
+        } else {
+            // 旧的dict留给正在保存快照的RDB.Saver
+            dict = new Dict<>();
+            expires = new Dict<>();
+        }
+        if (removed > 0 && listener != null) listener.keyspaceFlushed(this);
+        return removed;
+    }
 }
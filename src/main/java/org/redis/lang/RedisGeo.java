@@ -0,0 +1,206 @@
+package org.redis.lang;
+
+import org.redis.lang.basis.skip.SkipList;
+import org.redis.lang.geo.GeoHash;
+import org.redis.lang.geo.GeoHashHelper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * @author zsy
+ * @Description Redis地理位置GEO
+ *
+ * GEO没有独立的数据类型，成员直接保存在有序集合中，分值为52位的geohash：
+ *      1. GEOADD：经纬度编码为52位geohash后ZADD；
+ *      2. GEOSEARCH：根据半径估算精度，计算中心网格和周围8个网格，
+ *         每个网格对应跳表中的一段分值区间 [min, max)，逐段做ZRANGEBYSCORE，
+ *         再用haversine公式对候选成员做精确过滤；
+ * 搜索只访问覆盖区域内的节点，复杂度为 O(9*logN + M)，而不是遍历整个集合。
+ *
+ * @ClassName RedisGeo
+ * @Version 1.0
+ */
+public class RedisGeo {
+
+    /** 结果不排序 */
+    public static final int SORT_NONE = 0;
+
+    /** 按距离升序 */
+    public static final int SORT_ASC = 1;
+
+    /** 按距离降序 */
+    public static final int SORT_DESC = 2;
+
+    /**
+     * 搜索结果中的一个点
+     */
+    public static class GeoPoint {
+
+        public String member;
+
+        /** 与中心点的距离(米) */
+        public double dist;
+
+        /** 有序集合中的分值，即52位geohash */
+        public double score;
+
+        public double longitude;
+
+        public double latitude;
+    }
+
+    private static final Comparator<GeoPoint> SORT_GP_ASC = new Comparator<GeoPoint>() {
+        @Override
+        public int compare(GeoPoint a, GeoPoint b) {
+            return Double.compare(a.dist, b.dist);
+        }
+    };
+
+    private static final Comparator<GeoPoint> SORT_GP_DESC = Collections.reverseOrder(SORT_GP_ASC);
+
+    /**
+     * 距离单位换算为米的系数，单位不支持时抛出异常
+     */
+    public static double extractUnit(String unit) {
+        switch (unit.toLowerCase()) {
+            case "m":
+                return 1;
+            case "km":
+                return 1000;
+            case "ft":
+                return 0.3048;
+            case "mi":
+                return 1609.34;
+            default:
+                throw new IllegalArgumentException("ERR unsupported unit provided. please use M, KM, FT, MI");
+        }
+    }
+
+    /**
+     * 经纬度编码为52位geohash，作为有序集合的分值
+     */
+    public static double encodeScore(double longitude, double latitude) {
+        GeoHash hash = GeoHash.encodeWGS84(longitude, latitude, GeoHash.GEO_STEP_MAX);
+        if (hash == null) {
+            throw new IllegalArgumentException(String.format(Locale.ROOT,
+                    "ERR invalid longitude,latitude pair %f,%f", longitude, latitude));
+        }
+        return (double) hash.align52Bits();
+    }
+
+    /**
+     * GEOADD：添加或更新成员的位置
+     *
+     * @return 新增成员返回true
+     */
+    public static boolean geoAdd(RedisZSet zset, double longitude, double latitude, String member) {
+        return zset.zadd(encodeScore(longitude, latitude), member);
+    }
+
+    /**
+     * GEOPOS：返回 {经度, 纬度}，成员不存在返回null
+     */
+    public static double[] geoPos(RedisZSet zset, String member) {
+        Double score = zset.zscore(member);
+        if (score == null) return null;
+        double[] xy = new double[2];
+        GeoHash.decodeToLongLatWGS84(score.longValue(), xy);
+        return xy;
+    }
+
+    /**
+     * GEODIST：两个成员间的距离(米)，任一成员不存在返回null
+     */
+    public static Double geoDist(RedisZSet zset, String member1, String member2) {
+        double[] xy1 = geoPos(zset, member1);
+        double[] xy2 = geoPos(zset, member2);
+        if (xy1 == null || xy2 == null) return null;
+        return GeoHashHelper.getDistance(xy1[0], xy1[1], xy2[0], xy2[1]);
+    }
+
+    /**
+     * GEOSEARCH：在有序集合中查找落在搜索形状内的成员
+     *
+     * @param sort  SORT_NONE / SORT_ASC / SORT_DESC
+     * @param count 最多返回的结果数，0表示不限制
+     * @param any   为true时找到count个结果立即停止扫描，结果不保证是最近的count个
+     */
+    public static List<GeoPoint> geoSearch(RedisZSet zset, GeoHashHelper.Shape shape,
+                                           int sort, int count, boolean any) {
+        List<GeoPoint> ga = new ArrayList<>();
+        // 只有ANY模式才能提前终止，否则必须找出全部结果后排序截断
+        int limit = any ? count : 0;
+
+        GeoHashHelper.Radius radius = GeoHashHelper.calculateAreasByShapeWGS84(shape);
+        GeoHash.Neighbors n = radius.neighbors;
+        GeoHash[] neighbors = {radius.hash, n.north, n.south, n.east, n.west,
+                n.northEast, n.northWest, n.southEast, n.southWest};
+
+        // 半径非常大时相邻网格可能相同，跳过与上一个处理过的网格相同的网格，避免重复结果
+        GeoHash lastProcessed = null;
+        double[] xy = new double[2];
+        for (GeoHash cell : neighbors) {
+            if (cell.isZero()) continue;
+            if (lastProcessed != null && cell.bits == lastProcessed.bits && cell.step == lastProcessed.step) {
+                continue;
+            }
+            if (limit > 0 && ga.size() >= limit) break;
+            membersOfGeoHashBox(zset, cell, shape, ga, limit, xy);
+            lastProcessed = cell;
+        }
+
+        if (sort == SORT_ASC) {
+            Collections.sort(ga, SORT_GP_ASC);
+        } else if (sort == SORT_DESC) {
+            Collections.sort(ga, SORT_GP_DESC);
+        }
+        if (count > 0 && ga.size() > count) {
+            return new ArrayList<>(ga.subList(0, count));
+        }
+        return ga;
+    }
+
+    /**
+     * 扫描一个网格对应的分值区间 [hash<<(52-2*step), (hash+1)<<(52-2*step))
+     */
+    private static void membersOfGeoHashBox(RedisZSet zset, GeoHash hash, GeoHashHelper.Shape shape,
+                                            List<GeoPoint> ga, int limit, double[] xy) {
+        long min = hash.align52Bits();
+        long max = new GeoHash(hash.bits + 1, hash.step).align52Bits();
+        SkipList.RangeSpec range = new SkipList.RangeSpec(min, false, max, true);
+
+        // O(logN) 定位到区间起点，之后沿最底层顺序遍历
+        SkipList.SkipNode ln = zset.firstInRange(range);
+        while (ln != null && range.valueLteMax(ln.getScore())) {
+            double distance = withinShape(shape, ln.getScore(), xy);
+            if (distance >= 0) {
+                GeoPoint gp = new GeoPoint();
+                gp.member = ln.getValue();
+                gp.dist = distance;
+                gp.score = ln.getScore();
+                gp.longitude = xy[0];
+                gp.latitude = xy[1];
+                ga.add(gp);
+                if (limit > 0 && ga.size() >= limit) break;
+            }
+            ln = ln.next();
+        }
+    }
+
+    /**
+     * 解码分值并判断是否在搜索形状内，在则返回距离(米)，否则返回-1
+     */
+    private static double withinShape(GeoHashHelper.Shape shape, double score, double[] xy) {
+        GeoHash.decodeToLongLatWGS84((long) score, xy);
+        if (shape.box) {
+            return GeoHashHelper.getDistanceIfInRectangle(shape.width * shape.conversion,
+                    shape.height * shape.conversion, shape.longitude, shape.latitude, xy[0], xy[1]);
+        }
+        return GeoHashHelper.getDistanceIfInRadius(shape.longitude, shape.latitude,
+                xy[0], xy[1], shape.radius * shape.conversion);
+    }
+}
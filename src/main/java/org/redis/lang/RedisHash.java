@@ -1,10 +1,141 @@
 package org.redis.lang;
 
+import org.redis.lang.basis.Dict;
+import org.redis.lang.basis.ListPack;
+import org.redis.lang.basis.ZipList;
+
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * @author zsy
  * @Description Redis散列表
+ *
+ * 三种编码：
+ *      1. ENCODING_HT：dict保存 field -> value；
+ *      2. ENCODING_LISTPACK / ENCODING_ZIPLIST：field和value依次相邻保存在一个紧凑列表中，
+ *         从RDB加载的小散列表直接使用文件中的字节，查找为线性扫描。
+ * 紧凑编码只用于读取，写入前先转换为dict编码。
+ *
  * @ClassName RedisHash
  * @Version 1.0
  */
 public class RedisHash {
+
+    public static final int ENCODING_HT = 0;
+
+    public static final int ENCODING_ZIPLIST = 1;
+
+    public static final int ENCODING_LISTPACK = 2;
+
+    private int encoding;
+
+    private Dict<String, String> dict;
+
+    private ZipList zl;
+
+    private ListPack lp;
+
+    public RedisHash() {
+        this.encoding = ENCODING_HT;
+        this.dict = new Dict<>();
+    }
+
+    public RedisHash(ZipList zl) {
+        this.encoding = ENCODING_ZIPLIST;
+        this.zl = zl;
+    }
+
+    public RedisHash(ListPack lp) {
+        this.encoding = ENCODING_LISTPACK;
+        this.lp = lp;
+    }
+
+    public int getEncoding() {
+        return encoding;
+    }
+
+    public Dict<String, String> getDict() {
+        return dict;
+    }
+
+    public ZipList getZipList() {
+        return zl;
+    }
+
+    public ListPack getListPack() {
+        return lp;
+    }
+
+    /**
+     * 字段数量
+     */
+    public int length() {
+        switch (encoding) {
+            case ENCODING_ZIPLIST:
+                return zl.size() / 2;
+            case ENCODING_LISTPACK:
+                return lp.size() / 2;
+            default:
+                return dict.size();
+        }
+    }
+
+    /**
+     * 返回字段的值，字段不存在返回null
+     */
+    public String get(String field) {
+        switch (encoding) {
+            case ENCODING_ZIPLIST: {
+                int p = zl.find(field, 1);
+                return p < 0 ? null : zl.get(zl.next(p));
+            }
+            case ENCODING_LISTPACK: {
+                int p = lp.find(field, 1);
+                return p < 0 ? null : lp.get(lp.next(p));
+            }
+            default:
+                return dict.fetchValue(field);
+        }
+    }
+
+    /**
+     * 设置字段的值，紧凑编码先转换为dict编码
+     *
+     * @return 新增字段返回true
+     */
+    public boolean set(String field, String value) {
+        if (encoding != ENCODING_HT) convertToHt();
+        return dict.replace(field, value);
+    }
+
+    /**
+     * 所有字段和值：field_1 value_1 field_2 value_2 ...
+     */
+    public List<String> entries() {
+        List<String> result = new ArrayList<>(length() * 2);
+        switch (encoding) {
+            case ENCODING_ZIPLIST:
+                for (int p = zl.first(); p >= 0; p = zl.next(p)) result.add(zl.get(p));
+                break;
+            case ENCODING_LISTPACK:
+                for (int p = lp.first(); p >= 0; p = lp.next(p)) result.add(lp.get(p));
+                break;
+            default:
+                for (Dict.DictEntry<String, String> de : dict) {
+                    result.add(de.getKey());
+                    result.add(de.getVal());
+                }
+        }
+        return result;
+    }
+
+    private void convertToHt() {
+        List<String> fv = entries();
+        dict = new Dict<>();
+        for (int i = 0; i < fv.size(); i += 2) dict.replace(fv.get(i), fv.get(i + 1));
+        encoding = ENCODING_HT;
+        zl = null;
+        lp = null;
+    }
 }
@@ -1,10 +1,79 @@
 package org.redis.lang;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
 /**
  * @author zsy
  * @Description Redis列表
+ *
+ * 以循环数组实现的双端队列保存元素，两端的PUSH/POP都是O(1)，
+ * 阻塞命令(BLPOP/BRPOP/BLMOVE)只需要在两端弹出元素。
+ * 对应Redis中quicklist的编码尚未实现(QuickList)，这里不做分段压缩。
+ *
  * @ClassName RedisList
  * @Version 1.0
  */
 public class RedisList {
+
+    public static final int LIST_HEAD = 0;
+
+    public static final int LIST_TAIL = 1;
+
+    private final ArrayDeque<String> elements = new ArrayDeque<>();
+
+    public void push(String value, int where) {
+        if (where == LIST_HEAD) {
+            elements.addFirst(value);
+        } else {
+            elements.addLast(value);
+        }
+    }
+
+    /**
+     * 从头部或尾部弹出一个元素，列表为空返回null
+     */
+    public String pop(int where) {
+        return where == LIST_HEAD ? elements.pollFirst() : elements.pollLast();
+    }
+
+    public int length() {
+        return elements.size();
+    }
+
+    /**
+     * 返回下标区间 [start, end] 内的元素，负数下标从尾部倒数
+     */
+    public List<String> range(long start, long end) {
+        long llen = elements.size();
+        if (start < 0) start = Math.max(llen + start, 0);
+        if (end < 0) end = llen + end;
+        if (end >= llen) end = llen - 1;
+        List<String> result = new ArrayList<>();
+        if (start > end || start >= llen) return result;
+
+        // 区间靠近尾部时从尾部反向遍历
+        int count = (int) (end - start + 1);
+        if (start > llen - 1 - end) {
+            Iterator<String> it = elements.descendingIterator();
+            for (long i = llen - 1; i > end; i--) it.next();
+            for (int i = 0; i < count; i++) result.add(it.next());
+            Collections.reverse(result);
+        } else {
+            Iterator<String> it = elements.iterator();
+            for (long i = 0; i < start; i++) it.next();
+            for (int i = 0; i < count; i++) result.add(it.next());
+        }
+        return result;
+    }
+
+    /**
+     * 从头到尾遍历，用于RDB保存
+     */
+    public Iterator<String> iterator() {
+        return elements.iterator();
+    }
 }
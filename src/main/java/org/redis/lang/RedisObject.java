@@ -3,8 +3,62 @@ package org.redis.lang;
 /**
  * @author zsy
  * @Description Redis对象
+ *
+ * 数据库中的每个值都包装为一个RedisObject：type记录对外的数据类型，
+ * ptr指向具体的底层实现(字符串直接保存为String，其余类型为对应的RedisXxx对象)。
+ *
  * @ClassName RedisObject
  * @Version 1.0
  */
 public class RedisObject {
+
+    /** 对象类型，取值与RDB中的类型编号无关 */
+    public static final int OBJ_STRING = 0;
+    public static final int OBJ_LIST = 1;
+    public static final int OBJ_SET = 2;
+    public static final int OBJ_ZSET = 3;
+    public static final int OBJ_HASH = 4;
+    public static final int OBJ_STREAM = 6;
+
+    private final int type;
+
+    /** 指向底层数据结构 */
+    private final Object ptr;
+
+    public RedisObject(int type, Object ptr) {
+        this.type = type;
+        this.ptr = ptr;
+    }
+
+    public static RedisObject createStringObject(String value) {
+        return new RedisObject(OBJ_STRING, value);
+    }
+
+    public static RedisObject createListObject() {
+        return new RedisObject(OBJ_LIST, new RedisList());
+    }
+
+    public static RedisObject createSetObject() {
+        return new RedisObject(OBJ_SET, new RedisSet());
+    }
+
+    public static RedisObject createHashObject() {
+        return new RedisObject(OBJ_HASH, new RedisHash());
+    }
+
+    public static RedisObject createZsetObject() {
+        return new RedisObject(OBJ_ZSET, new RedisZSet());
+    }
+
+    public static RedisObject createStreamObject() {
+        return new RedisObject(OBJ_STREAM, new RedisStream());
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public Object getPtr() {
+        return ptr;
+    }
 }
@@ -1,10 +1,128 @@
 package org.redis.lang;
 
+import org.redis.lang.basis.Dict;
+import org.redis.lang.basis.IntSet;
+import org.redis.lang.basis.ListPack;
+import org.redis.utils.NumberUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * @author zsy
  * @Description Redis有序集合Set
+ *
+ * 三种编码：
+ *      1. ENCODING_HT：dict保存所有成员；
+ *      2. ENCODING_INTSET：成员都是整数时保存为有序的intset，查找为二分查找；
+ *      3. ENCODING_LISTPACK：少量成员依次保存在listpack中，查找为线性扫描。
+ * 从RDB加载的intset和listpack直接使用文件中的字节；紧凑编码只用于读取，写入前先转换为dict编码。
+ *
  * @ClassName RedisSet
  * @Version 1.0
  */
 public class RedisSet {
+
+    public static final int ENCODING_HT = 0;
+
+    public static final int ENCODING_INTSET = 1;
+
+    public static final int ENCODING_LISTPACK = 2;
+
+    private int encoding;
+
+    private Dict<String, Boolean> dict;
+
+    private IntSet is;
+
+    private ListPack lp;
+
+    public RedisSet() {
+        this.encoding = ENCODING_HT;
+        this.dict = new Dict<>();
+    }
+
+    public RedisSet(IntSet is) {
+        this.encoding = ENCODING_INTSET;
+        this.is = is;
+    }
+
+    public RedisSet(ListPack lp) {
+        this.encoding = ENCODING_LISTPACK;
+        this.lp = lp;
+    }
+
+    public int getEncoding() {
+        return encoding;
+    }
+
+    public Dict<String, Boolean> getDict() {
+        return dict;
+    }
+
+    public IntSet getIntSet() {
+        return is;
+    }
+
+    public ListPack getListPack() {
+        return lp;
+    }
+
+    public int size() {
+        switch (encoding) {
+            case ENCODING_INTSET:
+                return is.length();
+            case ENCODING_LISTPACK:
+                return lp.size();
+            default:
+                return dict.size();
+        }
+    }
+
+    public boolean isMember(String member) {
+        switch (encoding) {
+            case ENCODING_INTSET: {
+                Long v = NumberUtil.string2ll(member);
+                return v != null && is.find(v);
+            }
+            case ENCODING_LISTPACK:
+                return lp.find(member, 0) >= 0;
+            default:
+                return dict.find(member) != null;
+        }
+    }
+
+    /**
+     * 添加成员，紧凑编码先转换为dict编码
+     *
+     * @return 新增成员返回true
+     */
+    public boolean add(String member) {
+        if (encoding != ENCODING_HT) convertToHt();
+        return dict.add(member, Boolean.TRUE);
+    }
+
+    public List<String> members() {
+        List<String> result = new ArrayList<>(size());
+        switch (encoding) {
+            case ENCODING_INTSET:
+                for (int i = 0; i < is.length(); i++) result.add(Long.toString(is.get(i)));
+                break;
+            case ENCODING_LISTPACK:
+                for (int p = lp.first(); p >= 0; p = lp.next(p)) result.add(lp.get(p));
+                break;
+            default:
+                for (Dict.DictEntry<String, Boolean> de : dict) result.add(de.getKey());
+        }
+        return result;
+    }
+
+    private void convertToHt() {
+        List<String> members = members();
+        dict = new Dict<>();
+        for (String m : members) dict.add(m, Boolean.TRUE);
+        encoding = ENCODING_HT;
+        is = null;
+        lp = null;
+    }
 }
@@ -1,10 +1,370 @@
 package org.redis.lang;
 
+import org.redis.lang.basis.ListPack;
+import org.redis.lang.basis.Rax;
+
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * @author zsy
  * @Description Redis数据流
+ *
+ * 与Redis的t_stream.c相同，采用 Rax + ListPack 的组合：
+ *      1. 基数树的键为节点中第一条消息(master entry)的ID，按16字节大端序编码，字节序即ID顺序；
+ *      2. 每个节点的值是一个listpack，最多保存STREAM_NODE_MAX_ENTRIES条消息或STREAM_NODE_MAX_BYTES字节，
+ *         只有尾部节点会被追加；
+ *      3. listpack的开头是master entry：
+ *              count | deleted | num-fields | field_1 ... field_N | 0
+ *         之后每条消息为：
+ *              flags | ms-diff | seq-diff | [num-fields field_1 value_1 ...] 或 [value_1 ... value_N] | lp-count
+ *         ID按与master ID的差值保存；字段与master entry相同的消息带SAMEFIELDS标志，只保存值。
+ * 节点的listpack可以原样写入RDB，也可以原样从RDB加载。
+ * ID的两部分按有符号64位整数保存，不支持超过 2^63-1 的ID。
+ *
  * @ClassName RedisStream
  * @Version 1.0
  */
 public class RedisStream {
+
+    public static final int STREAM_ITEM_FLAG_NONE = 0;
+
+    /** 消息已被删除 */
+    public static final int STREAM_ITEM_FLAG_DELETED = 1;
+
+    /** 字段与master entry相同，只保存值 */
+    public static final int STREAM_ITEM_FLAG_SAMEFIELDS = 1 << 1;
+
+    private static final int STREAM_NODE_MAX_BYTES = 4096;
+
+    private static final int STREAM_NODE_MAX_ENTRIES = 100;
+
+    /**
+     * 消息ID：毫秒时间戳-序号
+     */
+    public static class StreamID implements Comparable<StreamID> {
+
+        public static final StreamID MIN = new StreamID(0, 0);
+
+        public static final StreamID MAX = new StreamID(Long.MAX_VALUE, Long.MAX_VALUE);
+
+        private final long ms;
+
+        private final long seq;
+
+        public StreamID(long ms, long seq) {
+            this.ms = ms;
+            this.seq = seq;
+        }
+
+        public long getMs() {
+            return ms;
+        }
+
+        public long getSeq() {
+            return seq;
+        }
+
+        /**
+         * 下一个ID，已经是最大ID时返回null
+         */
+        public StreamID incr() {
+            if (seq != Long.MAX_VALUE) return new StreamID(ms, seq + 1);
+            if (ms != Long.MAX_VALUE) return new StreamID(ms + 1, 0);
+            return null;
+        }
+
+        /**
+         * 上一个ID，已经是最小ID时返回null
+         */
+        public StreamID decr() {
+            if (seq != 0) return new StreamID(ms, seq - 1);
+            if (ms != 0) return new StreamID(ms - 1, Long.MAX_VALUE);
+            return null;
+        }
+
+        /**
+         * 解析 ms-seq 或 ms，省略序号时使用missingSeq
+         */
+        public static StreamID parse(String s, long missingSeq) {
+            int dot = s.indexOf('-');
+            try {
+                long ms = Long.parseLong(dot < 0 ? s : s.substring(0, dot));
+                long seq = dot < 0 ? missingSeq : Long.parseLong(s.substring(dot + 1));
+                if (ms < 0 || seq < 0 || (dot >= 0 && s.charAt(dot + 1) == '+')) throw new NumberFormatException();
+                return new StreamID(ms, seq);
+            } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("ERR Invalid stream ID specified as stream command argument");
+            }
+        }
+
+        /**
+         * 编码为基数树的键：ms和seq各8字节大端序
+         */
+        public String encode() {
+            char[] key = new char[16];
+            for (int i = 0; i < 8; i++) {
+                key[i] = (char) ((ms >>> (56 - 8 * i)) & 0xFF);
+                key[8 + i] = (char) ((seq >>> (56 - 8 * i)) & 0xFF);
+            }
+            return new String(key);
+        }
+
+        public static StreamID decode(String key) {
+            long ms = 0;
+            long seq = 0;
+            for (int i = 0; i < 8; i++) {
+                ms = (ms << 8) | key.charAt(i);
+                seq = (seq << 8) | key.charAt(8 + i);
+            }
+            return new StreamID(ms, seq);
+        }
+
+        @Override
+        public int compareTo(StreamID o) {
+            if (ms != o.ms) return ms < o.ms ? -1 : 1;
+            return seq == o.seq ? 0 : (seq < o.seq ? -1 : 1);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof StreamID)) return false;
+            StreamID id = (StreamID) o;
+            return ms == id.ms && seq == id.seq;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (ms ^ (ms >>> 32)) * 31 + (int) (seq ^ (seq >>> 32));
+        }
+
+        @Override
+        public String toString() {
+            return ms + "-" + seq;
+        }
+    }
+
+    /**
+     * 一条消息，fields为 field_1 value_1 field_2 value_2 ...
+     */
+    public static class StreamEntry {
+
+        private final StreamID id;
+
+        private final String[] fields;
+
+        public StreamEntry(StreamID id, String[] fields) {
+            this.id = id;
+            this.fields = fields;
+        }
+
+        public StreamID getId() {
+            return id;
+        }
+
+        public String[] getFields() {
+            return fields;
+        }
+    }
+
+    /** master ID -> 节点 */
+    private final Rax<ListPack> rax = new Rax<>();
+
+    private long length;
+
+    private StreamID lastId = StreamID.MIN;
+
+    /** 尾部节点及其master ID，追加只发生在尾部节点 */
+    private ListPack tail;
+
+    private StreamID tailMaster;
+
+    public long length() {
+        return length;
+    }
+
+    public StreamID getLastId() {
+        return lastId;
+    }
+
+    /**
+     * XADD * 使用的ID：当前时间大于最后一条消息的时间时为 now-0，否则在最后一个ID上加一
+     *
+     * @return ID已经用尽时返回null
+     */
+    public StreamID nextId(long now) {
+        if (now > lastId.ms) return new StreamID(now, 0);
+        return lastId.incr();
+    }
+
+    /**
+     * 追加一条消息
+     *
+     * @param fieldsValues field_1 value_1 field_2 value_2 ...
+     * @return id不大于最后一条消息的ID时不追加，返回false
+     */
+    public boolean append(StreamID id, String[] fieldsValues) {
+        if (id.compareTo(lastId) <= 0) return false;
+        int numfields = fieldsValues.length / 2;
+
+        ListPack lp = tail;
+        StreamID master = tailMaster;
+        if (lp != null) {
+            int p = lp.first();
+            long count = lp.getInteger(p);
+            long deleted = lp.getInteger(lp.next(p));
+            if (lp.bytes() >= STREAM_NODE_MAX_BYTES || count + deleted >= STREAM_NODE_MAX_ENTRIES) lp = null;
+        }
+
+        int flags = STREAM_ITEM_FLAG_NONE;
+        if (lp == null) {
+            // 新节点：当前消息作为master entry，字段名只在这里保存一次
+            master = id;
+            lp = ListPack.create();
+            lp.appendInteger(1).appendInteger(0).appendInteger(numfields);
+            for (int i = 0; i < numfields; i++) lp.append(fieldsValues[i * 2]);
+            lp.appendInteger(0);
+            rax.insert(master.encode(), lp);
+            tail = lp;
+            tailMaster = master;
+            flags = STREAM_ITEM_FLAG_SAMEFIELDS;
+        } else {
+            int p = lp.first();
+            lp.replaceInteger(p, lp.getInteger(p) + 1);
+            p = lp.next(lp.next(p));
+            if (lp.getInteger(p) == numfields) {
+                boolean same = true;
+                for (int i = 0; i < numfields && same; i++) {
+                    p = lp.next(p);
+                    same = lp.get(p).equals(fieldsValues[i * 2]);
+                }
+                if (same) flags = STREAM_ITEM_FLAG_SAMEFIELDS;
+            }
+        }
+
+        lp.appendInteger(flags);
+        lp.appendInteger(id.ms - master.ms);
+        lp.appendInteger(id.seq - master.seq);
+        if ((flags & STREAM_ITEM_FLAG_SAMEFIELDS) != 0) {
+            for (int i = 0; i < numfields; i++) lp.append(fieldsValues[i * 2 + 1]);
+        } else {
+            lp.appendInteger(numfields);
+            for (String s : fieldsValues) lp.append(s);
+        }
+        // lp-count：flags、ms-diff、seq-diff和字段值的元素个数，用于反向遍历
+        long lpCount = numfields + 3;
+        if ((flags & STREAM_ITEM_FLAG_SAMEFIELDS) == 0) lpCount += numfields + 1;
+        lp.appendInteger(lpCount);
+
+        length++;
+        lastId = id;
+        return true;
+    }
+
+    /**
+     * 返回ID在 [start, end] 内的消息，count大于0时最多返回count条
+     */
+    public List<StreamEntry> range(StreamID start, StreamID end, long count) {
+        List<StreamEntry> result = new ArrayList<>();
+        if (length == 0 || start.compareTo(end) > 0) return result;
+
+        // start可能落在前一个节点中，从 master ID <= start 的最后一个节点开始
+        String from = rax.floorKey(start.encode());
+        Rax<ListPack>.RaxIterator it = rax.iterator();
+        if (from == null) {
+            it.seekFirst();
+        } else {
+            it.seek(from, true);
+        }
+        while (it.next()) {
+            StreamID master = StreamID.decode(it.key());
+            if (master.compareTo(end) > 0) break;
+            if (!rangeNode(master, it.data(), start, end, count, result)) break;
+        }
+        return result;
+    }
+
+    /**
+     * 遍历一个节点，把区间内的消息加入result
+     *
+     * @return 已经越过end或达到count时返回false
+     */
+    private static boolean rangeNode(StreamID master, ListPack lp, StreamID start, StreamID end,
+                                     long count, List<StreamEntry> result) {
+        int p = lp.next(lp.next(lp.first()));
+        int masterFields = (int) lp.getInteger(p);
+        String[] fieldNames = new String[masterFields];
+        for (int i = 0; i < masterFields; i++) {
+            p = lp.next(p);
+            fieldNames[i] = lp.get(p);
+        }
+        // 跳过master entry的结束标记0
+        p = lp.next(lp.next(p));
+
+        while (p >= 0) {
+            int flags = (int) lp.getInteger(p);
+            p = lp.next(p);
+            long ms = master.ms + lp.getInteger(p);
+            p = lp.next(p);
+            long seq = master.seq + lp.getInteger(p);
+            p = lp.next(p);
+            StreamID id = new StreamID(ms, seq);
+
+            boolean same = (flags & STREAM_ITEM_FLAG_SAMEFIELDS) != 0;
+            int numfields = same ? masterFields : (int) lp.getInteger(p);
+            if (!same) p = lp.next(p);
+            boolean wanted = (flags & STREAM_ITEM_FLAG_DELETED) == 0 && id.compareTo(start) >= 0;
+            if (id.compareTo(end) > 0) return false;
+
+            String[] fields = wanted ? new String[numfields * 2] : null;
+            for (int i = 0; i < numfields; i++) {
+                if (same) {
+                    if (wanted) {
+                        fields[i * 2] = fieldNames[i];
+                        fields[i * 2 + 1] = lp.get(p);
+                    }
+                    p = lp.next(p);
+                } else {
+                    if (wanted) fields[i * 2] = lp.get(p);
+                    p = lp.next(p);
+                    if (wanted) fields[i * 2 + 1] = lp.get(p);
+                    p = lp.next(p);
+                }
+            }
+            // 跳过lp-count
+            p = lp.next(p);
+
+            if (wanted) {
+                result.add(new StreamEntry(id, fields));
+                if (count > 0 && result.size() >= count) return false;
+            }
+        }
+        return true;
+    }
+
+    // ------------------------------ RDB ------------------------------
+
+    /**
+     * 所有节点，用于RDB保存
+     */
+    public Rax<ListPack> getRax() {
+        return rax;
+    }
+
+    /**
+     * RDB加载：直接挂上一个已编码的节点，节点需要按master ID递增的顺序加入
+     */
+    public void addNode(StreamID master, ListPack lp) {
+        rax.insert(master.encode(), lp);
+        tail = lp;
+        tailMaster = master;
+    }
+
+    public void setLength(long length) {
+        this.length = length;
+    }
+
+    public void setLastId(StreamID lastId) {
+        this.lastId = lastId;
+    }
 }
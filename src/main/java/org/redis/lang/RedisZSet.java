@@ -1,10 +1,107 @@
 package org.redis.lang;
 
+import org.redis.lang.basis.Dict;
+import org.redis.lang.basis.skip.SkipList;
+
 /**
  * @author zsy
  * @Description Redis有序集合Zst
+ *
+ * 采用 dict + skiplist 的组合编码：
+ *      1. dict保存 成员 -> 分值 的映射，ZSCORE等按成员查找的操作为O(1)；
+ *      2. skiplist按分值排序保存所有成员，ZRANGEBYSCORE等范围操作为 O(logN + M)；
+ * 两个结构共享同一份成员，修改时需要同时维护。
+ *
  * @ClassName RedisZSet
  * @Version 1.0
  */
 public class RedisZSet {
+
+    /** 成员 -> 分值 */
+    private final Dict<String, Double> dict = new Dict<>();
+
+    /** 按分值排序的跳表 */
+    private final SkipList zsl = SkipList.createZslList();
+
+    /**
+     * 添加成员或更新成员分值
+     *
+     * @return 新增成员返回true，更新已有成员返回false
+     */
+    public boolean zadd(double score, String member) {
+        if (Double.isNaN(score)) {
+            throw new IllegalArgumentException("ERR resulting score is not a number (NaN)");
+        }
+        Dict.DictEntry<String, Double> de = dict.find(member);
+        if (de != null) {
+            double curscore = de.getVal();
+            // 分值变化时先删除再插入，保证跳表有序
+            if (curscore != score) {
+                zsl.delete(curscore, member);
+                zsl.add(score, member);
+                de.setVal(score);
+            }
+            return false;
+        }
+        zsl.add(score, member);
+        dict.add(member, score);
+        return true;
+    }
+
+    /**
+     * 返回成员分值，成员不存在返回null
+     */
+    public Double zscore(String member) {
+        return dict.fetchValue(member);
+    }
+
+    /**
+     * 删除成员
+     *
+     * @return 成员存在返回true
+     */
+    public boolean zrem(String member) {
+        Double score = dict.delete(member);
+        if (score == null) return false;
+        zsl.delete(score, member);
+        return true;
+    }
+
+    public int zcard() {
+        return zsl.length();
+    }
+
+    /**
+     * 返回区间内分值最小的节点，通过 SkipNode.next() 向后遍历
+     */
+    public SkipList.SkipNode firstInRange(SkipList.RangeSpec range) {
+        return zsl.firstInRange(range);
+    }
+
+    /**
+     * 返回区间内分值最大的节点，通过 SkipNode.previous() 向前遍历
+     */
+    public SkipList.SkipNode lastInRange(SkipList.RangeSpec range) {
+        return zsl.lastInRange(range);
+    }
+
+    /** 分值最小的节点 */
+    public SkipList.SkipNode first() {
+        return zsl.first();
+    }
+
+    /** 分值最大的节点 */
+    public SkipList.SkipNode last() {
+        return zsl.last();
+    }
+
+    /**
+     * 弹出分值最小(max为false)或最大的成员，集合为空返回null
+     */
+    public SkipList.SkipNode pop(boolean max) {
+        SkipList.SkipNode ln = max ? zsl.last() : zsl.first();
+        if (ln == null) return null;
+        zrem(ln.getValue());
+        return ln;
+    }
 }
@@ -1,11 +1,407 @@
 package org.redis.lang.basis;
 
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+
 /**
  * @author zsy
  * @Description 字典
+ *
+ * 1. 字典内部有两张哈希表ht[0]和ht[1]，平时只使用ht[0]，ht[1]只在rehash时使用；
+ * 2. 哈希表大小总是2的幂，通过 hash & sizemask 计算索引，冲突时使用链地址法(头插)；
+ * 3. 扩容/缩容采用渐进式rehash：rehashidx记录ht[0]中下一个待迁移的桶，
+ *    每次增删操作顺带迁移一个桶，避免一次性迁移大字典造成阻塞。
+ *
  * @ClassName Dict
  * @Version 1.0
  */
-public class Dict {
+public class Dict<K, V> implements Iterable<Dict.DictEntry<K, V>> {
+
+    /** 哈希表初始大小 */
+    private static final int DICT_HT_INITIAL_SIZE = 4;
+
+    /** 两张哈希表，ht[1]只在rehash期间使用 */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private DictHt<K, V>[] ht = new DictHt[]{new DictHt<K, V>(), new DictHt<K, V>()};
+
+    /** rehash进度，-1表示当前没有进行rehash */
+    private int rehashidx = -1;
+
+    /** 结构修改次数，用于迭代器的"指纹"校验 */
+    private int modCount;
+
+    /**
+     * 哈希表节点
+     */
+    public static class DictEntry<K, V> {
+
+        private final K key;
+
+        private V val;
+
+        private final int hash;
+
+        /** 指向下一个哈希表节点，形成链表 */
+        private DictEntry<K, V> next;
+
+        private DictEntry(K key, V val, int hash) {
+            this.key = key;
+            this.val = val;
+            this.hash = hash;
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        public V getVal() {
+            return val;
+        }
+
+        public void setVal(V val) {
+            this.val = val;
+        }
+    }
+
+    /**
+     * 哈希表
+     */
+    private static class DictHt<K, V> {
+
+        /** 哈希表数组 */
+        private DictEntry<K, V>[] table;
+
+        /** 哈希表大小 */
+        private int size;
+
+        /** 掩码，总是等于 size-1 */
+        private int sizemask;
+
+        /** 已有节点数量 */
+        private int used;
+
+        private void reset() {
+            table = null;
+            size = 0;
+            sizemask = 0;
+            used = 0;
+        }
+    }
+
+    private static int dictHash(Object key) {
+        int h = key.hashCode();
+        // 扰动函数：让高位也参与索引计算
+        return h ^ (h >>> 16);
+    }
+
+    private boolean isRehashing() {
+        return rehashidx != -1;
+    }
+
+    /**
+     * 渐进式rehash：迁移n个桶，最多访问 n*10 个空桶，防止长时间阻塞。
+     * 节点在两张表之间移动会打乱迭代顺序，每迁移一个桶都算一次结构修改
+     *
+     * @return 还有待迁移的桶返回true，迁移完成返回false
+     */
+    private boolean rehash(int n) {
+        int emptyVisits = n * 10;
+        if (!isRehashing()) return false;
+
+        while (n-- > 0 && ht[0].used != 0) {
+            while (ht[0].table[rehashidx] == null) {
+                rehashidx++;
+                if (--emptyVisits == 0) return true;
+            }
+            DictEntry<K, V> de = ht[0].table[rehashidx];
+            modCount++;
+            // 把整个桶的链表迁移到ht[1]
+            while (de != null) {
+                DictEntry<K, V> nextde = de.next;
+                int idx = de.hash & ht[1].sizemask;
+                de.next = ht[1].table[idx];
+                ht[1].table[idx] = de;
+                ht[0].used--;
+                ht[1].used++;
+                de = nextde;
+            }
+            ht[0].table[rehashidx] = null;
+            rehashidx++;
+        }
+
+        // ht[0]迁移完毕，ht[1]成为新的ht[0]
+        if (ht[0].used == 0) {
+            DictHt<K, V> t = ht[0];
+            ht[0] = ht[1];
+            ht[1] = t;
+            ht[1].reset();
+            rehashidx = -1;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 增删操作时顺带执行一步rehash
+     */
+    private void rehashStep() {
+        rehash(1);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void expand(int size) {
+        int realsize = DICT_HT_INITIAL_SIZE;
+        while (realsize < size) realsize <<= 1;
+        if (isRehashing() || ht[0].used > size || realsize == ht[0].size) return;
+
+        DictHt<K, V> n = new DictHt<>();
+        n.size = realsize;
+        n.sizemask = realsize - 1;
+        n.table = new DictEntry[realsize];
+
+        // 第一次初始化，直接作为ht[0]
+        if (ht[0].table == null) {
+            ht[0] = n;
+            return;
+        }
+        // 否则作为ht[1]，开始渐进式rehash
+        ht[1] = n;
+        rehashidx = 0;
+        modCount++;
+    }
+
+    private void expandIfNeeded() {
+        if (isRehashing()) return;
+        if (ht[0].size == 0) {
+            expand(DICT_HT_INITIAL_SIZE);
+            return;
+        }
+        // 负载因子 >= 1 时扩容为 used*2
+        if (ht[0].used >= ht[0].size) {
+            expand(ht[0].used * 2);
+        }
+    }
+
+    /**
+     * 负载因子小于10%时缩容
+     */
+    private void shrinkIfNeeded() {
+        if (isRehashing() || ht[0].size <= DICT_HT_INITIAL_SIZE) return;
+        if (ht[0].used * 10 < ht[0].size) {
+            expand(Math.max(ht[0].used, DICT_HT_INITIAL_SIZE));
+        }
+    }
+
+    /**
+     * 查找key所在节点，rehash期间需要同时查找两张表
+     */
+    public DictEntry<K, V> find(Object key) {
+        if (size() == 0) return null;
+        int h = dictHash(key);
+        for (int table = 0; table <= 1; table++) {
+            if (ht[table].table == null) break;
+            DictEntry<K, V> he = ht[table].table[h & ht[table].sizemask];
+            while (he != null) {
+                if (he.hash == h && (he.key == key || he.key.equals(key))) return he;
+                he = he.next;
+            }
+            // 没有在rehash时，不需要查找ht[1]
+            if (!isRehashing()) break;
+        }
+        return null;
+    }
+
+    public V fetchValue(Object key) {
+        DictEntry<K, V> he = find(key);
+        return he == null ? null : he.val;
+    }
+
+    /**
+     * 添加节点，key已存在时返回null
+     */
+    public DictEntry<K, V> addRaw(K key, V val) {
+        if (isRehashing()) rehashStep();
+        if (find(key) != null) return null;
+        expandIfNeeded();
+
+        // rehash期间新节点只添加到ht[1]
+        DictHt<K, V> t = isRehashing() ? ht[1] : ht[0];
+        int h = dictHash(key);
+        int idx = h & t.sizemask;
+        DictEntry<K, V> entry = new DictEntry<>(key, val, h);
+        entry.next = t.table[idx];
+        t.table[idx] = entry;
+        t.used++;
+        modCount++;
+        return entry;
+    }
+
+    /**
+     * 添加键值对，key已存在时返回false
+     */
+    public boolean add(K key, V val) {
+        return addRaw(key, val) != null;
+    }
+
+    /**
+     * 添加或覆盖键值对
+     *
+     * @return key是新添加的返回true，覆盖旧值返回false
+     */
+    public boolean replace(K key, V val) {
+        if (add(key, val)) return true;
+        find(key).val = val;
+        return false;
+    }
+
+    /**
+     * 删除节点并返回被删除的值，key不存在时返回null
+     */
+    public V delete(Object key) {
+        if (size() == 0) return null;
+        if (isRehashing()) rehashStep();
+        V val = unlink(key);
+        if (val != null) shrinkIfNeeded();
+        return val;
+    }
+
+    private V unlink(Object key) {
+        int h = dictHash(key);
+        for (int table = 0; table <= 1; table++) {
+            if (ht[table].table == null) break;
+            int idx = h & ht[table].sizemask;
+            DictEntry<K, V> he = ht[table].table[idx];
+            DictEntry<K, V> prevHe = null;
+            while (he != null) {
+                if (he.hash == h && (he.key == key || he.key.equals(key))) {
+                    if (prevHe != null) {
+                        prevHe.next = he.next;
+                    } else {
+                        ht[table].table[idx] = he.next;
+                    }
+                    ht[table].used--;
+                    modCount++;
+                    return he.val;
+                }
+                prevHe = he;
+                he = he.next;
+            }
+            if (!isRehashing()) break;
+        }
+        return null;
+    }
+
+    public int size() {
+        return ht[0].used + ht[1].used;
+    }
+
+    /**
+     * 清空字典
+     */
+    public void clear() {
+        ht[0].reset();
+        ht[1].reset();
+        rehashidx = -1;
+        modCount++;
+    }
+
+    /**
+     * 随机返回一个节点：先随机选中一个非空桶，再在链表中随机选一个节点
+     */
+    public DictEntry<K, V> randomEntry() {
+        if (size() == 0) return null;
+        if (isRehashing()) rehashStep();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        DictEntry<K, V> he;
+        if (isRehashing()) {
+            // ht[0]中[0, rehashidx)的桶已经迁移，一定为空
+            do {
+                int h = rehashidx + random.nextInt(ht[0].size + ht[1].size - rehashidx);
+                he = h >= ht[0].size ? ht[1].table[h - ht[0].size] : ht[0].table[h];
+            } while (he == null);
+        } else {
+            do {
+                he = ht[0].table[random.nextInt(ht[0].size)];
+            } while (he == null);
+        }
+
+        int listlen = 0;
+        DictEntry<K, V> orighe = he;
+        while (he != null) {
+            he = he.next;
+            listlen++;
+        }
+        int listele = random.nextInt(listlen);
+        he = orighe;
+        while (listele-- > 0) he = he.next;
+        return he;
+    }
+
+    /**
+     * 非安全迭代器：迭代期间字典被修改(包括rehash)会抛出 ConcurrentModificationException，
+     * 对应Redis中迭代结束时的指纹校验。通过迭代器自身的remove()删除当前节点是安全的。
+     */
+    @Override
+    public Iterator<DictEntry<K, V>> iterator() {
+        return new DictIterator();
+    }
+
+    private class DictIterator implements Iterator<DictEntry<K, V>> {
+
+        private int table;
+
+        private int index = -1;
+
+        private DictEntry<K, V> entry;
+
+        private DictEntry<K, V> nextEntry;
+
+        private int expectedModCount = modCount;
+
+        private DictIterator() {
+            advance();
+        }
+
+        private void advance() {
+            nextEntry = nextEntry == null ? null : nextEntry.next;
+            while (nextEntry == null) {
+                index++;
+                if (ht[table].table == null || index >= ht[table].size) {
+                    if (table == 0 && isRehashing()) {
+                        table = 1;
+                        index = -1;
+                        continue;
+                    }
+                    return;
+                }
+                nextEntry = ht[table].table[index];
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextEntry != null;
+        }
+
+        @Override
+        public DictEntry<K, V> next() {
+            if (expectedModCount != modCount) throw new ConcurrentModificationException();
+            if (nextEntry == null) throw new NoSuchElementException();
+            entry = nextEntry;
+            advance();
+            return entry;
+        }
 
+        @Override
+        public void remove() {
+            if (entry == null) throw new IllegalStateException();
+            if (expectedModCount != modCount) throw new ConcurrentModificationException();
+            // 不能调用delete()，它会触发rehash步骤改变表结构
+            unlink(entry.key);
+            expectedModCount = modCount;
+            entry = null;
+        }
+    }
 }
@@ -1,10 +1,114 @@
 package org.redis.lang.basis;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 /**
  * @author zsy
  * @Description 整数集合
+ *
+ * 与Redis intset.c的内存布局一致，可以直接从RDB原样加载：
+ *      <encoding:uint32 LE> <length:uint32 LE> <contents>
+ * encoding为每个元素占用的字节数(2、4、8)，contents按小端序从小到大排列，查找为二分查找。
+ * 数据保存在ByteBuffer中，可以是内存映射区域的一段，这里只提供读取。
+ *
  * @ClassName IntSet
  * @Version 1.0
  */
 public class IntSet {
+
+    public static final int INTSET_ENC_INT16 = 2;
+
+    public static final int INTSET_ENC_INT32 = 4;
+
+    public static final int INTSET_ENC_INT64 = 8;
+
+    private static final int INTSET_HDR_SIZE = 8;
+
+    private final ByteBuffer buf;
+
+    private final int encoding;
+
+    private final int length;
+
+    private IntSet(ByteBuffer buf) {
+        this.buf = buf;
+        this.encoding = buf.getInt(0);
+        this.length = buf.getInt(4);
+    }
+
+    /**
+     * 直接使用已有的intset字节，不复制。
+     * 与intsetValidateIntegrity的深度检查一致，元素必须严格递增，否则二分查找的结果不可靠
+     *
+     * @throws IllegalArgumentException 编码不合法、长度与字节数不符或元素不是严格递增
+     */
+    public static IntSet adopt(ByteBuffer slice) {
+        ByteBuffer b = slice.slice().order(ByteOrder.LITTLE_ENDIAN);
+        if (b.limit() < INTSET_HDR_SIZE) throw new IllegalArgumentException("invalid intset");
+        int enc = b.getInt(0);
+        long len = b.getInt(4) & 0xFFFFFFFFL;
+        if ((enc != INTSET_ENC_INT16 && enc != INTSET_ENC_INT32 && enc != INTSET_ENC_INT64)
+                || INTSET_HDR_SIZE + len * enc != b.limit()) {
+            throw new IllegalArgumentException("invalid intset");
+        }
+        IntSet is = new IntSet(b);
+        for (int i = 1; i < is.length; i++) {
+            if (is.get(i - 1) >= is.get(i)) throw new IllegalArgumentException("invalid intset");
+        }
+        return is;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public int getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * 第pos个元素(从小到大)
+     */
+    public long get(int pos) {
+        int off = INTSET_HDR_SIZE + pos * encoding;
+        switch (encoding) {
+            case INTSET_ENC_INT16:
+                return buf.getShort(off);
+            case INTSET_ENC_INT32:
+                return buf.getInt(off);
+            default:
+                return buf.getLong(off);
+        }
+    }
+
+    /**
+     * 二分查找
+     */
+    public boolean find(long value) {
+        if (length == 0) return false;
+        // 超出当前编码的范围，一定不存在
+        if (encoding == INTSET_ENC_INT16 && (value < Short.MIN_VALUE || value > Short.MAX_VALUE)) return false;
+        if (encoding == INTSET_ENC_INT32 && (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)) return false;
+        int min = 0;
+        int max = length - 1;
+        while (min <= max) {
+            int mid = (min + max) >>> 1;
+            long cur = get(mid);
+            if (cur == value) return true;
+            if (cur < value) {
+                min = mid + 1;
+            } else {
+                max = mid - 1;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * intset的全部字节，只读视图
+     */
+    public ByteBuffer buffer() {
+        return buf.duplicate().asReadOnlyBuffer();
+    }
 }
@@ -1,11 +1,426 @@
 package org.redis.lang.basis;
 
+import org.redis.utils.NumberUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
 /**
  * @author zsy
  * @Description Streams的底层实现结构之一：和Rax.java结合使用
+ *
+ * 紧凑列表，与Redis listpack.c的内存布局完全一致，可以直接写入RDB或从RDB原样加载：
+ *      <total-bytes:uint32 LE> <num-elements:uint16 LE> <entry> ... <end:0xFF>
+ *      entry = <encoding-type + data> <backlen>
+ * 元素编码：
+ *      0xxxxxxx                          7位无符号整数
+ *      10xxxxxx <data>                   长度不超过63的字符串
+ *      110xxxxx yyyyyyyy                 13位有符号整数
+ *      1110xxxx yyyyyyyy <data>          长度不超过4095的字符串
+ *      11110000 <len:uint32> <data>      长字符串
+ *      11110001/11110010/11110011/11110100  16/24/32/64位有符号整数(小端)
+ * backlen为 encoding+data 的长度，按每字节7位逆序保存，用于从后向前遍历。
+ * 看起来像整数的字符串按整数编码，读取时还原为十进制字符串。
+ *
+ * 数据保存在ByteBuffer中，可以是堆内数组，也可以是只读的内存映射区域；
+ * 需要修改只读或容量不足的缓冲区时，先复制到新的堆内缓冲区(写时复制)。
+ *
  * @ClassName ListPack
  * @Version 1.0
  */
 public class ListPack {
 
+    public static final int LP_HDR_SIZE = 6;
+
+    public static final int LP_HDR_NUMELE_UNKNOWN = 0xFFFF;
+
+    public static final int LP_EOF = 0xFF;
+
+    private static final int LP_ENCODING_7BIT_UINT = 0;
+    private static final int LP_ENCODING_6BIT_STR = 0x80;
+    private static final int LP_ENCODING_13BIT_INT = 0xC0;
+    private static final int LP_ENCODING_12BIT_STR = 0xE0;
+    private static final int LP_ENCODING_32BIT_STR = 0xF0;
+    private static final int LP_ENCODING_16BIT_INT = 0xF1;
+    private static final int LP_ENCODING_24BIT_INT = 0xF2;
+    private static final int LP_ENCODING_32BIT_INT = 0xF3;
+    private static final int LP_ENCODING_64BIT_INT = 0xF4;
+
+    /** 小端序的缓冲区，[0, limit)为listpack的全部字节，capacity之外可以用于追加 */
+    private ByteBuffer buf;
+
+    private ListPack(ByteBuffer buf) {
+        this.buf = buf.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * 创建空的listpack
+     */
+    public static ListPack create() {
+        ByteBuffer b = ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN);
+        b.putInt(0, LP_HDR_SIZE + 1);
+        b.putShort(4, (short) 0);
+        b.put(LP_HDR_SIZE, (byte) LP_EOF);
+        b.limit(LP_HDR_SIZE + 1);
+        return new ListPack(b);
+    }
+
+    /**
+     * 直接使用已有的listpack字节(例如RDB中的一段)，不复制、不重新编码。
+     * 先完整遍历一次所有元素，之后的读取不再检查边界
+     *
+     * @throws IllegalArgumentException 头部、元素或结束符不合法
+     */
+    public static ListPack adopt(ByteBuffer slice) {
+        ByteBuffer b = slice.slice().order(ByteOrder.LITTLE_ENDIAN);
+        if (b.limit() < LP_HDR_SIZE + 1 || b.getInt(0) != b.limit()
+                || (b.get(b.limit() - 1) & 0xFF) != LP_EOF) {
+            throw new IllegalArgumentException("invalid listpack");
+        }
+        ListPack lp = new ListPack(b);
+        if (!lp.validateEntries()) throw new IllegalArgumentException("invalid listpack");
+        return lp;
+    }
+
+    /**
+     * 对应lpValidateIntegrity的深度检查：每个元素的编码合法、长度不越界、
+     * backlen与元素长度一致，并且元素数量与头部一致
+     */
+    private boolean validateEntries() {
+        int end = bytes() - 1;
+        int count = 0;
+        int p = LP_HDR_SIZE;
+        while ((buf.get(p) & 0xFF) != LP_EOF) {
+            int b = buf.get(p) & 0xFF;
+            // 0xF5-0xFE没有定义
+            if (b > LP_ENCODING_64BIT_INT) return false;
+            if (b == LP_ENCODING_32BIT_STR && (p + 5 > end || buf.getInt(p + 1) < 0 || buf.getInt(p + 1) > end)) {
+                return false;
+            }
+            int len = encodedSize(p);
+            int blen = backlenSize(len);
+            if ((long) p + len + blen > end) return false;
+            int backlen = 0;
+            for (int i = 0; i < blen; i++) backlen = (backlen << 7) | (buf.get(p + len + i) & 127);
+            if (backlen != len) return false;
+
+            p += len + blen;
+            count++;
+        }
+        if (p != end) return false;
+        int n = buf.getShort(4) & 0xFFFF;
+        return n == LP_HDR_NUMELE_UNKNOWN || n == count;
+    }
+
+    /**
+     * listpack的全部字节，只读视图
+     */
+    public ByteBuffer buffer() {
+        ByteBuffer b = buf.duplicate();
+        b.position(0);
+        b.limit(bytes());
+        return b.slice().asReadOnlyBuffer();
+    }
+
+    public int bytes() {
+        return buf.getInt(0);
+    }
+
+    /**
+     * 元素数量，头部计数溢出(65535)时遍历统计
+     */
+    public int size() {
+        int n = buf.getShort(4) & 0xFFFF;
+        if (n != LP_HDR_NUMELE_UNKNOWN) return n;
+        int count = 0;
+        for (int p = first(); p >= 0; p = next(p)) count++;
+        return count;
+    }
+
+    // ------------------------------ 遍历 ------------------------------
+
+    /**
+     * 第一个元素的偏移，没有元素返回-1
+     */
+    public int first() {
+        return (buf.get(LP_HDR_SIZE) & 0xFF) == LP_EOF ? -1 : LP_HDR_SIZE;
+    }
+
+    /**
+     * 下一个元素的偏移，p是最后一个元素时返回-1
+     */
+    public int next(int p) {
+        int len = encodedSize(p);
+        p += len + backlenSize(len);
+        return (buf.get(p) & 0xFF) == LP_EOF ? -1 : p;
+    }
+
+    /**
+     * 从第一个元素开始跳过index个元素
+     */
+    public int seek(int index) {
+        int p = first();
+        while (p >= 0 && index-- > 0) p = next(p);
+        return p;
+    }
+
+    /**
+     * encoding + data 占用的字节数
+     */
+    private int encodedSize(int p) {
+        int b = buf.get(p) & 0xFF;
+        if ((b & 0x80) == LP_ENCODING_7BIT_UINT) return 1;
+        if ((b & 0xC0) == LP_ENCODING_6BIT_STR) return 1 + (b & 0x3F);
+        if ((b & 0xE0) == LP_ENCODING_13BIT_INT) return 2;
+        if ((b & 0xF0) == LP_ENCODING_12BIT_STR) return 2 + (((b & 0x0F) << 8) | (buf.get(p + 1) & 0xFF));
+        switch (b) {
+            case LP_ENCODING_32BIT_STR:
+                return 5 + buf.getInt(p + 1);
+            case LP_ENCODING_16BIT_INT:
+                return 3;
+            case LP_ENCODING_24BIT_INT:
+                return 4;
+            case LP_ENCODING_32BIT_INT:
+                return 5;
+            case LP_ENCODING_64BIT_INT:
+                return 9;
+            default:
+                throw new IllegalStateException("invalid listpack encoding " + b);
+        }
+    }
+
+    private static int backlenSize(int len) {
+        if (len <= 127) return 1;
+        if (len < 16383) return 2;
+        if (len < 2097151) return 3;
+        if (len < 268435455) return 4;
+        return 5;
+    }
+
+    public boolean isInteger(int p) {
+        int b = buf.get(p) & 0xFF;
+        return (b & 0x80) == 0 || (b & 0xE0) == LP_ENCODING_13BIT_INT
+                || (b >= LP_ENCODING_16BIT_INT && b <= LP_ENCODING_64BIT_INT);
+    }
+
+    /**
+     * 读取整数元素
+     */
+    public long getInteger(int p) {
+        int b = buf.get(p) & 0xFF;
+        if ((b & 0x80) == 0) return b;
+        if ((b & 0xE0) == LP_ENCODING_13BIT_INT) {
+            int v = ((b & 0x1F) << 8) | (buf.get(p + 1) & 0xFF);
+            // 13位补码符号扩展
+            return (v << 19) >> 19;
+        }
+        switch (b) {
+            case LP_ENCODING_16BIT_INT:
+                return buf.getShort(p + 1);
+            case LP_ENCODING_24BIT_INT: {
+                int v = (buf.get(p + 1) & 0xFF) | ((buf.get(p + 2) & 0xFF) << 8) | ((buf.get(p + 3) & 0xFF) << 16);
+                return (v << 8) >> 8;
+            }
+            case LP_ENCODING_32BIT_INT:
+                return buf.getInt(p + 1);
+            case LP_ENCODING_64BIT_INT:
+                return buf.getLong(p + 1);
+            default:
+                // 字符串元素按十进制解析
+                return Long.parseLong(get(p));
+        }
+    }
+
+    /**
+     * 读取元素，整数元素返回十进制字符串
+     */
+    public String get(int p) {
+        if (isInteger(p)) return Long.toString(getInteger(p));
+        int off = stringOffset(p);
+        int len = stringLength(p);
+        byte[] s = new byte[len];
+        for (int i = 0; i < len; i++) s[i] = buf.get(off + i);
+        return new String(s, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * 从第一个元素开始，每隔skip个元素比较一次，返回与s相等的元素的偏移，不存在返回-1。
+     * 对应lpFind：字符串元素逐字节比较，整数元素与s转换后的整数比较，不创建临时对象
+     */
+    public int find(String s, int skip) {
+        Long sval = NumberUtil.string2ll(s);
+        int skipcnt = 0;
+        for (int p = first(); p >= 0; p = next(p)) {
+            if (skipcnt > 0) {
+                skipcnt--;
+                continue;
+            }
+            if (isInteger(p)) {
+                if (sval != null && sval == getInteger(p)) return p;
+            } else if (stringEquals(p, s)) {
+                return p;
+            }
+            skipcnt = skip;
+        }
+        return -1;
+    }
+
+    private int stringOffset(int p) {
+        int b = buf.get(p) & 0xFF;
+        if ((b & 0xC0) == LP_ENCODING_6BIT_STR) return p + 1;
+        if ((b & 0xF0) == LP_ENCODING_12BIT_STR) return p + 2;
+        return p + 5;
+    }
+
+    private int stringLength(int p) {
+        int b = buf.get(p) & 0xFF;
+        if ((b & 0xC0) == LP_ENCODING_6BIT_STR) return b & 0x3F;
+        if ((b & 0xF0) == LP_ENCODING_12BIT_STR) return ((b & 0x0F) << 8) | (buf.get(p + 1) & 0xFF);
+        return buf.getInt(p + 1);
+    }
+
+    private boolean stringEquals(int p, String s) {
+        int len = stringLength(p);
+        if (len != s.length()) return false;
+        int off = stringOffset(p);
+        for (int i = 0; i < len; i++) {
+            if ((buf.get(off + i) & 0xFF) != s.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    // ------------------------------ 修改 ------------------------------
+
+    /**
+     * 追加元素，可以表示为整数的字符串按整数编码
+     */
+    public ListPack append(String s) {
+        Long v = NumberUtil.string2ll(s);
+        return insertEntry(bytes() - 1, v != null ? encodeInteger(v) : encodeString(s), true);
+    }
+
+    public ListPack appendInteger(long v) {
+        return insertEntry(bytes() - 1, encodeInteger(v), true);
+    }
+
+    /**
+     * 用整数替换p处的元素，编码长度变化时移动后面的数据
+     */
+    public ListPack replaceInteger(int p, long v) {
+        int oldLen = encodedSize(p);
+        byte[] entry = encodeInteger(v);
+        splice(p, oldLen + backlenSize(oldLen), entry);
+        return this;
+    }
+
+    private ListPack insertEntry(int p, byte[] entry, boolean countElement) {
+        splice(p, 0, entry);
+        if (countElement) {
+            int n = buf.getShort(4) & 0xFFFF;
+            if (n < LP_HDR_NUMELE_UNKNOWN - 1) buf.putShort(4, (short) (n + 1));
+            else buf.putShort(4, (short) LP_HDR_NUMELE_UNKNOWN);
+        }
+        return this;
+    }
+
+    /**
+     * 把 [p, p+removed) 替换为entry(已包含backlen)
+     */
+    private void splice(int p, int removed, byte[] entry) {
+        int total = bytes();
+        int newTotal = total - removed + entry.length;
+        if (buf.isReadOnly() || buf.capacity() < newTotal) {
+            ByteBuffer n = ByteBuffer.allocate(Math.max(newTotal, total * 2)).order(ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer src = buf.duplicate();
+            src.position(0);
+            src.limit(total);
+            n.put(src);
+            buf = n;
+        }
+        buf.limit(buf.capacity());
+        // 移动尾部数据(包括结束符)
+        int tail = total - (p + removed);
+        if (entry.length != removed) {
+            ByteBuffer src = buf.duplicate();
+            src.position(p + removed);
+            src.limit(total);
+            ByteBuffer moved = ByteBuffer.allocate(tail);
+            moved.put(src);
+            moved.flip();
+            ByteBuffer dst = buf.duplicate();
+            dst.position(p + entry.length);
+            dst.put(moved);
+        }
+        ByteBuffer dst = buf.duplicate();
+        dst.position(p);
+        dst.put(entry);
+        buf.putInt(0, newTotal);
+        buf.limit(newTotal);
+    }
+
+    // ------------------------------ 编码 ------------------------------
+
+    private static byte[] encodeInteger(long v) {
+        byte[] data;
+        if (v >= 0 && v <= 127) {
+            data = new byte[]{(byte) v};
+        } else if (v >= -4096 && v <= 4095) {
+            int u = (int) v & 0x1FFF;
+            data = new byte[]{(byte) ((u >> 8) | LP_ENCODING_13BIT_INT), (byte) u};
+        } else if (v >= Short.MIN_VALUE && v <= Short.MAX_VALUE) {
+            data = new byte[]{(byte) LP_ENCODING_16BIT_INT, (byte) v, (byte) (v >> 8)};
+        } else if (v >= -8388608 && v <= 8388607) {
+            data = new byte[]{(byte) LP_ENCODING_24BIT_INT, (byte) v, (byte) (v >> 8), (byte) (v >> 16)};
+        } else if (v >= Integer.MIN_VALUE && v <= Integer.MAX_VALUE) {
+            data = new byte[]{(byte) LP_ENCODING_32BIT_INT, (byte) v, (byte) (v >> 8), (byte) (v >> 16), (byte) (v >> 24)};
+        } else {
+            data = new byte[9];
+            data[0] = (byte) LP_ENCODING_64BIT_INT;
+            for (int i = 0; i < 8; i++) data[1 + i] = (byte) (v >> (8 * i));
+        }
+        return withBacklen(data);
+    }
+
+    private static byte[] encodeString(String s) {
+        byte[] str = s.getBytes(StandardCharsets.ISO_8859_1);
+        int len = str.length;
+        byte[] data;
+        int hdr;
+        if (len < 64) {
+            data = new byte[1 + len];
+            data[0] = (byte) (LP_ENCODING_6BIT_STR | len);
+            hdr = 1;
+        } else if (len < 4096) {
+            data = new byte[2 + len];
+            data[0] = (byte) (LP_ENCODING_12BIT_STR | (len >> 8));
+            data[1] = (byte) len;
+            hdr = 2;
+        } else {
+            data = new byte[5 + len];
+            data[0] = (byte) LP_ENCODING_32BIT_STR;
+            for (int i = 0; i < 4; i++) data[1 + i] = (byte) (len >> (8 * i));
+            hdr = 5;
+        }
+        System.arraycopy(str, 0, data, hdr, len);
+        return withBacklen(data);
+    }
+
+    /**
+     * 在 encoding+data 之后追加backlen
+     */
+    private static byte[] withBacklen(byte[] data) {
+        int l = data.length;
+        int n = backlenSize(l);
+        byte[] entry = new byte[l + n];
+        System.arraycopy(data, 0, entry, 0, l);
+        // 高位在前，除最高位字节外都置位0x80
+        for (int i = 0; i < n; i++) {
+            int shift = 7 * (n - 1 - i);
+            int b = (l >>> shift) & 127;
+            if (i > 0) b |= 128;
+            entry[l + i] = (byte) b;
+        }
+        return entry;
+    }
 }
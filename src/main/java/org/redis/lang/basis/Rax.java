@@ -1,11 +1,465 @@
 package org.redis.lang.basis;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * @author zsy
  * @Description Streams的底层实现结构之一，和ListPack结合使用
+ *
+ * 基数树(压缩前缀树)：
+ *      1. 每个节点的入边保存一段字符串(prefix)，只有一个子节点且自身不是键的节点会与子节点合并；
+ *      2. 子节点按入边首字符有序排列，按字节序遍历即得到有序的键，支持 >= / > 定位后顺序迭代；
+ *      3. 从根节点沿key向下走一遍，就能找到所有 是key前缀的键，复杂度只与key的长度有关。
+ * 键按字符比较，配合ISO-8859-1编码的字符串时与按无符号字节比较一致。
+ *
  * @ClassName Rax
  * @date 2024/3/28 16:55
  * @Version 1.0
  */
-public class Rax {
+public class Rax<V> {
+
+    @SuppressWarnings("rawtypes")
+    private static final RaxNode[] EMPTY_CHILDREN = new RaxNode[0];
+
+    private final RaxNode<V> head = new RaxNode<>("");
+
+    /** 键的数量 */
+    private long numele;
+
+    /** 节点数量 */
+    private long numnodes = 1;
+
+    /**
+     * 基数树节点
+     */
+    private static class RaxNode<V> {
+
+        /** 入边上的字符串，根节点为空串 */
+        private String prefix;
+
+        /** 从根到此节点是否构成一个键 */
+        private boolean iskey;
+
+        private V data;
+
+        /** 按prefix首字符升序排列的子节点 */
+        @SuppressWarnings("unchecked")
+        private RaxNode<V>[] children = EMPTY_CHILDREN;
+
+        private RaxNode(String prefix) {
+            this.prefix = prefix;
+        }
+
+        /**
+         * 二分查找首字符为c的子节点下标，不存在时返回 -(插入位置)-1
+         */
+        private int childIndex(char c) {
+            int low = 0;
+            int high = children.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                char m = children[mid].prefix.charAt(0);
+                if (m < c) {
+                    low = mid + 1;
+                } else if (m > c) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private void addChild(int pos, RaxNode<V> child) {
+            RaxNode<V>[] n = new RaxNode[children.length + 1];
+            System.arraycopy(children, 0, n, 0, pos);
+            n[pos] = child;
+            System.arraycopy(children, pos, n, pos + 1, children.length - pos);
+            children = n;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private void removeChild(int pos) {
+            RaxNode<V>[] n = children.length == 1 ? EMPTY_CHILDREN : new RaxNode[children.length - 1];
+            System.arraycopy(children, 0, n, 0, pos);
+            System.arraycopy(children, pos + 1, n, pos, children.length - pos - 1);
+            children = n;
+        }
+    }
+
+    private static int commonPrefixLength(String a, int aoff, String b) {
+        int n = Math.min(a.length() - aoff, b.length());
+        int i = 0;
+        while (i < n && a.charAt(aoff + i) == b.charAt(i)) i++;
+        return i;
+    }
+
+    public long size() {
+        return numele;
+    }
+
+    public long numNodes() {
+        return numnodes;
+    }
+
+    /**
+     * 删除所有键
+     */
+    @SuppressWarnings("unchecked")
+    public void clear() {
+        head.children = EMPTY_CHILDREN;
+        head.iskey = false;
+        head.data = null;
+        numele = 0;
+        numnodes = 1;
+    }
+
+    /**
+     * 插入或覆盖
+     *
+     * @return 键原来对应的值，新键返回null
+     */
+    public V insert(String key, V data) {
+        RaxNode<V> node = head;
+        int i = 0;
+        while (i < key.length()) {
+            int idx = node.childIndex(key.charAt(i));
+            if (idx < 0) {
+                // 没有共同前缀的子节点，剩余部分整体作为一条新边
+                RaxNode<V> child = new RaxNode<>(key.substring(i));
+                child.iskey = true;
+                child.data = data;
+                node.addChild(-idx - 1, child);
+                numnodes++;
+                numele++;
+                return null;
+            }
+            RaxNode<V> child = node.children[idx];
+            int common = commonPrefixLength(key, i, child.prefix);
+            if (common < child.prefix.length()) {
+                // 在公共前缀处分裂子节点的入边
+                RaxNode<V> split = new RaxNode<>(child.prefix.substring(0, common));
+                child.prefix = child.prefix.substring(common);
+                split.addChild(0, child);
+                node.children[idx] = split;
+                numnodes++;
+                child = split;
+            }
+            node = child;
+            i += common;
+        }
+
+        V old = node.data;
+        if (!node.iskey) {
+            node.iskey = true;
+            numele++;
+            old = null;
+        }
+        node.data = data;
+        return old;
+    }
+
+    private RaxNode<V> lowWalk(String key) {
+        RaxNode<V> node = head;
+        int i = 0;
+        while (i < key.length()) {
+            int idx = node.childIndex(key.charAt(i));
+            if (idx < 0) return null;
+            RaxNode<V> child = node.children[idx];
+            if (!key.startsWith(child.prefix, i)) return null;
+            i += child.prefix.length();
+            node = child;
+        }
+        return node;
+    }
+
+    /**
+     * 查找键对应的值，不存在返回null
+     */
+    public V find(String key) {
+        RaxNode<V> node = lowWalk(key);
+        return node != null && node.iskey ? node.data : null;
+    }
+
+    public boolean exists(String key) {
+        RaxNode<V> node = lowWalk(key);
+        return node != null && node.iskey;
+    }
+
+    /**
+     * 删除键，删除后把不再需要的节点与子节点合并，保持树的压缩形态
+     *
+     * @return 键原来对应的值，键不存在返回null
+     */
+    public V remove(String key) {
+        // 记录路径，用于向上清理
+        List<RaxNode<V>> path = new ArrayList<>();
+        RaxNode<V> node = head;
+        int i = 0;
+        path.add(node);
+        while (i < key.length()) {
+            int idx = node.childIndex(key.charAt(i));
+            if (idx < 0) return null;
+            RaxNode<V> child = node.children[idx];
+            if (!key.startsWith(child.prefix, i)) return null;
+            i += child.prefix.length();
+            node = child;
+            path.add(node);
+        }
+        if (!node.iskey) return null;
+
+        V old = node.data;
+        node.iskey = false;
+        node.data = null;
+        numele--;
+
+        for (int p = path.size() - 1; p > 0; p--) {
+            RaxNode<V> n = path.get(p);
+            RaxNode<V> parent = path.get(p - 1);
+            if (n.iskey) break;
+            if (n.children.length == 0) {
+                // 叶子节点不再是键，直接删除
+                parent.removeChild(parent.childIndex(n.prefix.charAt(0)));
+                numnodes--;
+                continue;
+            }
+            if (n.children.length == 1) {
+                // 只剩一个子节点，与子节点合并
+                RaxNode<V> only = n.children[0];
+                only.prefix = n.prefix + only.prefix;
+                parent.children[parent.childIndex(n.prefix.charAt(0))] = only;
+                numnodes--;
+            }
+            break;
+        }
+        // 父节点删除叶子后可能只剩一个子节点，再尝试合并一次
+        for (int p = path.size() - 2; p > 0; p--) {
+            RaxNode<V> n = path.get(p);
+            if (n.iskey || n.children.length != 1) break;
+            RaxNode<V> parent = path.get(p - 1);
+            int idx = parent.childIndex(n.prefix.charAt(0));
+            if (idx < 0 || parent.children[idx] != n) break;
+            RaxNode<V> only = n.children[0];
+            only.prefix = n.prefix + only.prefix;
+            parent.children[idx] = only;
+            numnodes--;
+            break;
+        }
+        return old;
+    }
+
+    /**
+     * 沿key向下走，把所有 是key的前缀(包括key本身) 的键对应的值加入out
+     */
+    public void collectPrefixesOf(String key, List<V> out) {
+        RaxNode<V> node = head;
+        int i = 0;
+        while (true) {
+            if (node.iskey) out.add(node.data);
+            if (i >= key.length()) return;
+            int idx = node.childIndex(key.charAt(i));
+            if (idx < 0) return;
+            RaxNode<V> child = node.children[idx];
+            if (!key.startsWith(child.prefix, i)) return;
+            i += child.prefix.length();
+            node = child;
+        }
+    }
+
+    /**
+     * 小于等于key的最大键，不存在返回null
+     */
+    public String floorKey(String key) {
+        RaxNode<V> node = head;
+        StringBuilder path = new StringBuilder();
+        // 候选：candPrefix + candNode子树中的最大键，candNode为null时candPrefix本身就是键
+        String candPrefix = null;
+        RaxNode<V> candNode = null;
+        int i = 0;
+        while (true) {
+            if (i == key.length()) {
+                if (node.iskey) return key;
+                break;
+            }
+            int idx = node.childIndex(key.charAt(i));
+            int pos = idx < 0 ? -idx - 1 : idx;
+            // 左侧兄弟子树中的键都小于key，且大于当前节点的键
+            if (pos > 0) {
+                candPrefix = path.toString();
+                candNode = node.children[pos - 1];
+            } else if (node.iskey) {
+                candPrefix = path.toString();
+                candNode = null;
+            }
+            if (idx < 0) break;
+            RaxNode<V> child = node.children[idx];
+            String seg = child.prefix;
+            int common = commonPrefixLength(key, i, seg);
+            if (common == seg.length()) {
+                path.append(seg);
+                i += seg.length();
+                node = child;
+                continue;
+            }
+            if (i + common < key.length() && seg.charAt(common) < key.charAt(i + common)) {
+                // 在分叉处入边更小：整个子树都小于key
+                candPrefix = path.toString();
+                candNode = child;
+            }
+            break;
+        }
+        if (candPrefix == null || candNode == null) return candPrefix;
+        // 一直走最右侧的子节点，叶子节点一定是键
+        StringBuilder max = new StringBuilder(candPrefix).append(candNode.prefix);
+        while (candNode.children.length > 0) {
+            candNode = candNode.children[candNode.children.length - 1];
+            max.append(candNode.prefix);
+        }
+        return max.toString();
+    }
+
+    public RaxIterator iterator() {
+        return new RaxIterator();
+    }
+
+    /**
+     * 有序迭代器：先用seek定位，再不断调用next()
+     * 迭代期间不能修改基数树
+     */
+    public class RaxIterator {
+
+        /** 当前路径上的节点，next为下一个要访问的子节点下标 */
+        private final List<Frame> stack = new ArrayList<>();
+
+        private final StringBuilder keyBuf = new StringBuilder();
+
+        /** seek时定位到的、需要首先返回的节点 */
+        private RaxNode<V> pending;
+
+        private String key;
+
+        private V data;
+
+        private class Frame {
+
+            private final RaxNode<V> node;
+
+            /** 从根到此节点(包含)的键长度 */
+            private final int keyLen;
+
+            private int next;
+
+            private Frame(RaxNode<V> node, int keyLen) {
+                this.node = node;
+                this.keyLen = keyLen;
+            }
+        }
+
+        /**
+         * 定位到第一个键
+         */
+        public RaxIterator seekFirst() {
+            stack.clear();
+            keyBuf.setLength(0);
+            stack.add(new Frame(head, 0));
+            pending = head.iskey ? head : null;
+            return this;
+        }
+
+        /**
+         * 定位到第一个 >= target (inclusive为true) 或 > target 的键
+         */
+        public RaxIterator seek(String target, boolean inclusive) {
+            stack.clear();
+            keyBuf.setLength(0);
+            pending = null;
+
+            RaxNode<V> node = head;
+            Frame frame = new Frame(head, 0);
+            stack.add(frame);
+            int i = 0;
+            while (true) {
+                if (i == target.length()) {
+                    // 当前节点的键恰好等于target，子树中的键都大于target
+                    if (inclusive && node.iskey) pending = node;
+                    frame.next = 0;
+                    return this;
+                }
+                int idx = node.childIndex(target.charAt(i));
+                if (idx < 0) {
+                    // 从插入位置开始的子树都大于target
+                    frame.next = -idx - 1;
+                    return this;
+                }
+                RaxNode<V> child = node.children[idx];
+                String seg = child.prefix;
+                int common = commonPrefixLength(target, i, seg);
+                if (common == seg.length()) {
+                    // 入边完全匹配，继续向下
+                    frame.next = idx + 1;
+                    keyBuf.append(seg);
+                    i += seg.length();
+                    node = child;
+                    frame = new Frame(child, keyBuf.length());
+                    stack.add(frame);
+                    continue;
+                }
+                if (i + common == target.length() || seg.charAt(common) > target.charAt(i + common)) {
+                    // target是入边的前缀，或在分叉处入边更大：整个子树都大于target
+                    frame.next = idx;
+                } else {
+                    frame.next = idx + 1;
+                }
+                return this;
+            }
+        }
+
+        /**
+         * 前进到下一个键
+         *
+         * @return 没有更多键时返回false
+         */
+        public boolean next() {
+            if (pending != null) {
+                emit(pending);
+                pending = null;
+                return true;
+            }
+            while (!stack.isEmpty()) {
+                Frame top = stack.get(stack.size() - 1);
+                if (top.next < top.node.children.length) {
+                    RaxNode<V> child = top.node.children[top.next++];
+                    keyBuf.setLength(top.keyLen);
+                    keyBuf.append(child.prefix);
+                    stack.add(new Frame(child, keyBuf.length()));
+                    if (child.iskey) {
+                        emit(child);
+                        return true;
+                    }
+                } else {
+                    stack.remove(stack.size() - 1);
+                }
+            }
+            key = null;
+            data = null;
+            return false;
+        }
+
+        private void emit(RaxNode<V> node) {
+            Frame top = stack.get(stack.size() - 1);
+            keyBuf.setLength(top.keyLen);
+            key = keyBuf.toString();
+            data = node.data;
+        }
+
+        public String key() {
+            return key;
+        }
+
+        public V data() {
+            return data;
+        }
+    }
 }
@@ -1,10 +1,275 @@
 package org.redis.lang.basis;
 
+import org.redis.utils.NumberUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
 /**
  * @author zsy
  * @Description 压缩列表
+ *
+ * 与Redis ziplist.c的内存布局一致，用于直接加载旧版本RDB中的ziplist编码：
+ *      <zlbytes:uint32 LE> <zltail:uint32 LE> <zllen:uint16 LE> <entry> ... <zlend:0xFF>
+ *      entry = <prevlen> <encoding> <data>
+ * prevlen小于254时占1字节，否则为 0xFE + 4字节长度。
+ * 编码：
+ *      00pppppp                          长度不超过63的字符串
+ *      01pppppp qqqqqqqq                 长度不超过16383的字符串(长度大端序)
+ *      10000000 <len:uint32 BE>          长字符串
+ *      11000000/11010000/11100000        16/32/64位有符号整数(小端)
+ *      11110000/11111110                 24/8位有符号整数
+ *      1111xxxx                          0到12的立即数，值为xxxx-1
+ * 新版本Redis已改用listpack，这里只提供读取；需要修改时由上层转换为其他编码。
+ *
  * @ClassName ZipList
  * @Version 1.0
  */
 public class ZipList {
+
+    public static final int ZIPLIST_HEADER_SIZE = 10;
+
+    public static final int ZIP_END = 0xFF;
+
+    private static final int ZIP_BIG_PREVLEN = 0xFE;
+
+    private static final int ZIP_STR_06B = 0;
+    private static final int ZIP_STR_14B = 1 << 6;
+    private static final int ZIP_STR_32B = 2 << 6;
+    private static final int ZIP_INT_16B = 0xC0;
+    private static final int ZIP_INT_32B = 0xD0;
+    private static final int ZIP_INT_64B = 0xE0;
+    private static final int ZIP_INT_24B = 0xF0;
+    private static final int ZIP_INT_8B = 0xFE;
+    private static final int ZIP_INT_IMM_MIN = 0xF1;
+    private static final int ZIP_INT_IMM_MAX = 0xFD;
+
+    private final ByteBuffer buf;
+
+    private ZipList(ByteBuffer buf) {
+        this.buf = buf;
+    }
+
+    /**
+     * 直接使用已有的ziplist字节，不复制。
+     * 先完整遍历一次所有元素，之后的读取不再检查边界
+     *
+     * @throws IllegalArgumentException 头部、元素或结束符不合法
+     */
+    public static ZipList adopt(ByteBuffer slice) {
+        ByteBuffer b = slice.slice().order(ByteOrder.LITTLE_ENDIAN);
+        if (b.limit() < ZIPLIST_HEADER_SIZE + 1 || b.getInt(0) != b.limit()
+                || (b.get(b.limit() - 1) & 0xFF) != ZIP_END) {
+            throw new IllegalArgumentException("invalid ziplist");
+        }
+        ZipList zl = new ZipList(b);
+        if (!zl.validateEntries()) throw new IllegalArgumentException("invalid ziplist");
+        return zl;
+    }
+
+    /**
+     * 对应ziplistValidateIntegrity的深度检查：每个元素的编码合法、长度不越界、
+     * prevlen等于前一个元素的长度，并且元素数量和zltail与头部一致
+     */
+    private boolean validateEntries() {
+        int end = buf.limit() - 1;
+        int count = 0;
+        int prev = -1;
+        int p = ZIPLIST_HEADER_SIZE;
+        while ((buf.get(p) & 0xFF) != ZIP_END) {
+            int enc = p + prevlenSize(p);
+            if (enc >= end) return false;
+            long prevlen = enc - p == 1 ? buf.get(p) & 0xFF : buf.getInt(p + 1) & 0xFFFFFFFFL;
+            if (prevlen != (prev < 0 ? 0 : p - prev)) return false;
+
+            int b = buf.get(enc) & 0xFF;
+            if (b >= ZIP_INT_16B && b != ZIP_INT_16B && b != ZIP_INT_32B && b != ZIP_INT_64B
+                    && b != ZIP_INT_24B && b != ZIP_INT_8B && (b < ZIP_INT_IMM_MIN || b > ZIP_INT_IMM_MAX)) {
+                return false;
+            }
+            int data = dataOffset(p);
+            if (data > end) return false;
+            long len = dataLength(enc);
+            if (len < 0 || data + len > end) return false;
+
+            prev = p;
+            p = data + (int) len;
+            count++;
+        }
+        if (p != end) return false;
+        int n = buf.getShort(8) & 0xFFFF;
+        if (n != 0xFFFF && n != count) return false;
+        return buf.getInt(4) == (prev < 0 ? ZIPLIST_HEADER_SIZE : prev);
+    }
+
+    public int bytes() {
+        return buf.getInt(0);
+    }
+
+    /**
+     * 元素数量，头部计数溢出(65535)时遍历统计
+     */
+    public int size() {
+        int n = buf.getShort(8) & 0xFFFF;
+        if (n != 0xFFFF) return n;
+        int count = 0;
+        for (int p = first(); p >= 0; p = next(p)) count++;
+        return count;
+    }
+
+    /**
+     * 第一个元素的偏移，没有元素返回-1
+     */
+    public int first() {
+        return (buf.get(ZIPLIST_HEADER_SIZE) & 0xFF) == ZIP_END ? -1 : ZIPLIST_HEADER_SIZE;
+    }
+
+    /**
+     * 下一个元素的偏移，p是最后一个元素时返回-1
+     */
+    public int next(int p) {
+        p = dataOffset(p) + dataLength(p + prevlenSize(p));
+        return (buf.get(p) & 0xFF) == ZIP_END ? -1 : p;
+    }
+
+    private int prevlenSize(int p) {
+        return (buf.get(p) & 0xFF) < ZIP_BIG_PREVLEN ? 1 : 5;
+    }
+
+    /**
+     * 编码占用的字节数，p为元素起始位置
+     */
+    private int encodingSize(int p) {
+        int b = buf.get(p + prevlenSize(p)) & 0xFF;
+        switch (b & 0xC0) {
+            case ZIP_STR_06B:
+                return 1;
+            case ZIP_STR_14B:
+                return 2;
+            case ZIP_STR_32B:
+                return 5;
+            default:
+                return 1;
+        }
+    }
+
+    private int dataOffset(int p) {
+        return p + prevlenSize(p) + encodingSize(p);
+    }
+
+    /**
+     * 数据部分的字节数，enc为编码的起始位置
+     */
+    private int dataLength(int enc) {
+        int b = buf.get(enc) & 0xFF;
+        switch (b & 0xC0) {
+            case ZIP_STR_06B:
+                return b & 0x3F;
+            case ZIP_STR_14B:
+                return ((b & 0x3F) << 8) | (buf.get(enc + 1) & 0xFF);
+            case ZIP_STR_32B:
+                return ((buf.get(enc + 1) & 0xFF) << 24) | ((buf.get(enc + 2) & 0xFF) << 16)
+                        | ((buf.get(enc + 3) & 0xFF) << 8) | (buf.get(enc + 4) & 0xFF);
+            default:
+                break;
+        }
+        switch (b) {
+            case ZIP_INT_16B:
+                return 2;
+            case ZIP_INT_32B:
+                return 4;
+            case ZIP_INT_64B:
+                return 8;
+            case ZIP_INT_24B:
+                return 3;
+            case ZIP_INT_8B:
+                return 1;
+            default:
+                if (b >= ZIP_INT_IMM_MIN && b <= ZIP_INT_IMM_MAX) return 0;
+                throw new IllegalStateException("invalid ziplist encoding " + b);
+        }
+    }
+
+    public boolean isInteger(int p) {
+        return (buf.get(p + prevlenSize(p)) & 0xC0) == 0xC0;
+    }
+
+    /**
+     * 读取整数元素
+     */
+    public long getInteger(int p) {
+        int enc = p + prevlenSize(p);
+        int b = buf.get(enc) & 0xFF;
+        int data = enc + 1;
+        switch (b) {
+            case ZIP_INT_8B:
+                return buf.get(data);
+            case ZIP_INT_16B:
+                return buf.getShort(data);
+            case ZIP_INT_24B: {
+                int v = (buf.get(data) & 0xFF) | ((buf.get(data + 1) & 0xFF) << 8) | ((buf.get(data + 2) & 0xFF) << 16);
+                return (v << 8) >> 8;
+            }
+            case ZIP_INT_32B:
+                return buf.getInt(data);
+            case ZIP_INT_64B:
+                return buf.getLong(data);
+            default:
+                if (b >= ZIP_INT_IMM_MIN && b <= ZIP_INT_IMM_MAX) return (b & 0x0F) - 1;
+                // 字符串元素按十进制解析
+                return Long.parseLong(get(p));
+        }
+    }
+
+    /**
+     * 读取元素，整数元素返回十进制字符串
+     */
+    public String get(int p) {
+        if (isInteger(p)) return Long.toString(getInteger(p));
+        int data = dataOffset(p);
+        int len = dataLength(p + prevlenSize(p));
+        byte[] s = new byte[len];
+        for (int i = 0; i < len; i++) s[i] = buf.get(data + i);
+        return new String(s, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * 从第一个元素开始，每隔skip个元素比较一次，返回与s相等的元素的偏移，不存在返回-1。
+     * 字符串元素逐字节比较，不创建临时对象
+     */
+    public int find(String s, int skip) {
+        Long sval = NumberUtil.string2ll(s);
+        int skipcnt = 0;
+        for (int p = first(); p >= 0; p = next(p)) {
+            if (skipcnt > 0) {
+                skipcnt--;
+                continue;
+            }
+            if (isInteger(p)) {
+                if (sval != null && sval == getInteger(p)) return p;
+            } else if (stringEquals(p, s)) {
+                return p;
+            }
+            skipcnt = skip;
+        }
+        return -1;
+    }
+
+    private boolean stringEquals(int p, String s) {
+        int data = dataOffset(p);
+        int len = dataLength(p + prevlenSize(p));
+        if (len != s.length()) return false;
+        for (int i = 0; i < len; i++) {
+            if ((buf.get(data + i) & 0xFF) != s.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * ziplist的全部字节，只读视图
+     */
+    public ByteBuffer buffer() {
+        return buf.duplicate().asReadOnlyBuffer();
+    }
 }
@@ -67,9 +67,12 @@ public class SkipList
     /**
      * 创建跳表的Node节点
      */
-    public static SkipNode createZslNode(int level,double score,Integer value) {
+    public static SkipNode createZslNode(int level,double score,String value) {
         SkipNode node = new SkipNode();
         node.level = new SkipNode.SkipNodeLevel[level];
+        for (int i = 0; i < level; i++) {
+            node.level[i] = new SkipNode.SkipNodeLevel();
+        }
         node.score = score;
         node.value = value;
 
@@ -114,18 +117,36 @@ public class SkipList
         /** 存储排序分值:权重 */
         private double score;
 
-        /** 存储类型的值: 默认存储Int类型*/
-        private Integer value;
+        /** 存储成员的值：对应Redis中的sds ele，分值相同时按成员字典序排序 */
+        private String value;
 
         private SkipNode () {
 
         }
 
-        private SkipNode (double score,Integer value) {
+        private SkipNode (double score,String value) {
            this.score = score;
            this.value = value;
         }
 
+        public double getScore() {
+            return score;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        /** 最底层的下一个节点，正序遍历时使用 */
+        public SkipNode next() {
+            return level[0].forward;
+        }
+
+        /** 前一个节点，倒序遍历时使用 */
+        public SkipNode previous() {
+            return backward;
+        }
+
         /**
          * 后退指针：
          * 只能指向当前节点最底层的前一个节点，
@@ -206,7 +227,7 @@ public class SkipList
      * @param score 分数、排序权重
      * @param value 值
      */
-    public SkipNode add(double score, Integer value) {
+    public SkipNode add(double score, String value) {
         // 1. 查找要插入的位置 (节点位置以及层级位置)
         SkipNode[] update = new SkipNode[SKIP_MAX_LEVEL]; // 用于保存每层需要更新的节点
         long[] rank = new long[SKIP_MAX_LEVEL];
@@ -223,7 +244,7 @@ public class SkipList
             while (temp.level[i].forward != null &&
                     (temp.level[i].forward.score < score ||
                             (temp.level[i].forward.score == score &&
-                                    temp.level[i].forward.score < score))) // 分数权重比较
+                                    temp.level[i].forward.value.compareTo(value) < 0))) // 分数相同时比较成员
             {
                 rank[i] += temp.level[i].span;
                 temp = temp.level[i].forward;
@@ -246,10 +267,6 @@ public class SkipList
         // 创建新节点
         temp = createZslNode(level, score, value);
         for (int i = 0; i < level; i++) {
-            if (temp.level[i] == null) {
-                continue;
-            }
-
             temp.level[i].forward = update[i].level[i].forward;
             update[i].level[i].forward = temp;
 
@@ -265,7 +282,7 @@ public class SkipList
 
         // 更新新节点的 backward 指针
         temp.backward = (update[0] == this.header) ? null : update[0];
-        if (temp.level[0] != null && temp.level[0].forward != null) {
+        if (temp.level[0].forward != null) {
             temp.level[0].forward.backward = temp;
         } else {
             this.tail = temp;
@@ -278,6 +295,146 @@ public class SkipList
     }
 
 
+    /**
+     * 删除节点时使用：update数组保存了每一层指向待删除节点x的节点
+     */
+    private void deleteNode(SkipNode x, SkipNode[] update) {
+        for (int i = 0; i < this.level; i++) {
+            if (update[i].level[i].forward == x) {
+                update[i].level[i].span += x.level[i].span - 1;
+                update[i].level[i].forward = x.level[i].forward;
+            } else {
+                update[i].level[i].span -= 1;
+            }
+        }
+        if (x.level[0].forward != null) {
+            x.level[0].forward.backward = x.backward;
+        } else {
+            this.tail = x.backward;
+        }
+        // 删除的是最高层的节点时，降低跳表层级
+        while (this.level > 1 && this.header.level[this.level - 1].forward == null) {
+            this.level--;
+        }
+        this.length--;
+    }
+
+    /**
+     * 删除分值为score、成员为value的节点
+     *
+     * @return 找到并删除返回true
+     */
+    public boolean delete(double score, String value) {
+        SkipNode[] update = new SkipNode[SKIP_MAX_LEVEL];
+        SkipNode x = this.header;
+        for (int i = this.level - 1; i >= 0; i--) {
+            while (x.level[i].forward != null &&
+                    (x.level[i].forward.score < score ||
+                            (x.level[i].forward.score == score &&
+                                    x.level[i].forward.value.compareTo(value) < 0))) {
+                x = x.level[i].forward;
+            }
+            update[i] = x;
+        }
+        // 分值相同的节点可能有多个，必须同时匹配成员
+        x = x.level[0].forward;
+        if (x != null && score == x.score && x.value.equals(value)) {
+            deleteNode(x, update);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 分值区间：对应Redis中的zrangespec，minex/maxex表示是否为开区间
+     */
+    public static class RangeSpec {
+
+        private final double min;
+
+        private final double max;
+
+        private final boolean minex;
+
+        private final boolean maxex;
+
+        public RangeSpec(double min, boolean minex, double max, boolean maxex) {
+            this.min = min;
+            this.minex = minex;
+            this.max = max;
+            this.maxex = maxex;
+        }
+
+        public boolean valueGteMin(double value) {
+            return minex ? (value > min) : (value >= min);
+        }
+
+        public boolean valueLteMax(double value) {
+            return maxex ? (value < max) : (value <= max);
+        }
+    }
+
+    /**
+     * 跳表中是否存在落在区间内的节点：只需比较首尾节点，O(1)
+     */
+    public boolean isInRange(RangeSpec range) {
+        // 区间本身为空
+        if (range.min > range.max || (range.min == range.max && (range.minex || range.maxex))) {
+            return false;
+        }
+        SkipNode x = this.tail;
+        if (x == null || !range.valueGteMin(x.score)) return false;
+        x = this.header.level[0].forward;
+        return x != null && range.valueLteMax(x.score);
+    }
+
+    /**
+     * 返回第一个落在区间内的节点，没有则返回null
+     * 从最高层开始跳过所有小于min的节点，复杂度 O(logN)
+     */
+    public SkipNode firstInRange(RangeSpec range) {
+        if (!isInRange(range)) return null;
+
+        SkipNode x = this.header;
+        for (int i = this.level - 1; i >= 0; i--) {
+            while (x.level[i].forward != null && !range.valueGteMin(x.level[i].forward.score)) {
+                x = x.level[i].forward;
+            }
+        }
+        // isInRange保证了此处的节点不为空
+        x = x.level[0].forward;
+        return range.valueLteMax(x.score) ? x : null;
+    }
+
+    /**
+     * 返回最后一个落在区间内的节点，没有则返回null
+     */
+    public SkipNode lastInRange(RangeSpec range) {
+        if (!isInRange(range)) return null;
+
+        SkipNode x = this.header;
+        for (int i = this.level - 1; i >= 0; i--) {
+            while (x.level[i].forward != null && range.valueLteMax(x.level[i].forward.score)) {
+                x = x.level[i].forward;
+            }
+        }
+        return range.valueGteMin(x.score) ? x : null;
+    }
+
+    /** 第一个节点(分值最小) */
+    public SkipNode first() {
+        return this.header.level[0].forward;
+    }
+
+    /** 最后一个节点(分值最大) */
+    public SkipNode last() {
+        return this.tail;
+    }
+
+    public int length() {
+        return this.length;
+    }
+
     /**
      * 查询跳表本层中，大于等于该节点的最近节点，如果没有返回当前层级最后一个节点
      * (从当前节点开始，一次进入下一 节点)
@@ -0,0 +1,231 @@
+package org.redis.lang.geo;
+
+/**
+ * @author zsy
+ * @Description 地理位置哈希编码
+ *
+ * 1. 把经度、纬度分别在各自的区间内做step次二分，得到两个step位的整数；
+ * 2. 两个整数按位交错(纬度占偶数位，经度占奇数位)，得到 2*step 位的geohash；
+ * 3. step=26时得到52位整数，可以被double精确表示，直接作为有序集合的分值；
+ * 4. 前缀相同的geohash在空间上彼此相邻，因此一个网格对应跳表中一段连续的分值区间。
+ *
+ * @ClassName GeoHash
+ * @Version 1.0
+ */
+public class GeoHash {
+
+    /** 最大精度：26*2 = 52位 */
+    public static final int GEO_STEP_MAX = 26;
+
+    /** Web墨卡托投影下的有效纬度范围 */
+    public static final double GEO_LAT_MIN = -85.05112878;
+    public static final double GEO_LAT_MAX = 85.05112878;
+
+    public static final double GEO_LONG_MIN = -180;
+    public static final double GEO_LONG_MAX = 180;
+
+    /** geohash值，step为每个维度的二分次数 */
+    public long bits;
+
+    public int step;
+
+    public GeoHash(long bits, int step) {
+        this.bits = bits;
+        this.step = step;
+    }
+
+    /** 被排除的网格，对应Redis中的GZERO */
+    public boolean isZero() {
+        return bits == 0 && step == 0;
+    }
+
+    public void zero() {
+        bits = 0;
+        step = 0;
+    }
+
+    /**
+     * 网格对应的经纬度区域
+     */
+    public static class Area {
+
+        public double longMin;
+        public double longMax;
+        public double latMin;
+        public double latMax;
+    }
+
+    /**
+     * 当前网格及其周围8个网格，共9个
+     */
+    public static class Neighbors {
+
+        public GeoHash north;
+        public GeoHash east;
+        public GeoHash west;
+        public GeoHash south;
+        public GeoHash northEast;
+        public GeoHash southEast;
+        public GeoHash northWest;
+        public GeoHash southWest;
+    }
+
+    /**
+     * 把x的低32位分散到偶数位，y的低32位分散到奇数位
+     */
+    static long interleave64(int xlo, int ylo) {
+        return spread(xlo) | (spread(ylo) << 1);
+    }
+
+    private static long spread(int v) {
+        long x = v & 0xFFFFFFFFL;
+        x = (x | (x << 16)) & 0x0000FFFF0000FFFFL;
+        x = (x | (x << 8)) & 0x00FF00FF00FF00FFL;
+        x = (x | (x << 4)) & 0x0F0F0F0F0F0F0F0FL;
+        x = (x | (x << 2)) & 0x3333333333333333L;
+        x = (x | (x << 1)) & 0x5555555555555555L;
+        return x;
+    }
+
+    /**
+     * interleave64的逆操作：返回值低32位为偶数位(纬度)，高32位为奇数位(经度)
+     */
+    static long deinterleave64(long interleaved) {
+        return squash(interleaved) | (squash(interleaved >>> 1) << 32);
+    }
+
+    private static long squash(long x) {
+        x &= 0x5555555555555555L;
+        x = (x | (x >>> 1)) & 0x3333333333333333L;
+        x = (x | (x >>> 2)) & 0x0F0F0F0F0F0F0F0FL;
+        x = (x | (x >>> 4)) & 0x00FF00FF00FF00FFL;
+        x = (x | (x >>> 8)) & 0x0000FFFF0000FFFFL;
+        x = (x | (x >>> 16)) & 0x00000000FFFFFFFFL;
+        return x;
+    }
+
+    public static boolean isValidLongLat(double longitude, double latitude) {
+        return longitude >= GEO_LONG_MIN && longitude <= GEO_LONG_MAX
+                && latitude >= GEO_LAT_MIN && latitude <= GEO_LAT_MAX;
+    }
+
+    /**
+     * 按WGS84坐标范围编码，超出范围返回null
+     */
+    public static GeoHash encodeWGS84(double longitude, double latitude, int step) {
+        if (step > 32 || step == 0 || !isValidLongLat(longitude, latitude)) return null;
+
+        double latOffset = (latitude - GEO_LAT_MIN) / (GEO_LAT_MAX - GEO_LAT_MIN);
+        double longOffset = (longitude - GEO_LONG_MIN) / (GEO_LONG_MAX - GEO_LONG_MIN);
+
+        // 转换为step位的定点数
+        latOffset *= (1L << step);
+        longOffset *= (1L << step);
+        return new GeoHash(interleave64((int) (long) latOffset, (int) (long) longOffset), step);
+    }
+
+    /**
+     * 解码为网格对应的经纬度区域
+     */
+    public static Area decode(GeoHash hash, Area area) {
+        long hashSep = deinterleave64(hash.bits);
+        double latScale = GEO_LAT_MAX - GEO_LAT_MIN;
+        double longScale = GEO_LONG_MAX - GEO_LONG_MIN;
+        long ilato = hashSep & 0xFFFFFFFFL;
+        long ilono = hashSep >>> 32;
+        double cells = 1L << hash.step;
+
+        area.latMin = GEO_LAT_MIN + (ilato / cells) * latScale;
+        area.latMax = GEO_LAT_MIN + ((ilato + 1) / cells) * latScale;
+        area.longMin = GEO_LONG_MIN + (ilono / cells) * longScale;
+        area.longMax = GEO_LONG_MIN + ((ilono + 1) / cells) * longScale;
+        return area;
+    }
+
+    /**
+     * 把52位的分值解码为网格中心点的经纬度，写入xy[0](经度)和xy[1](纬度)
+     * 调用方可以复用xy数组，范围查询逐个解码成员时不产生额外对象
+     */
+    public static void decodeToLongLatWGS84(long bits, double[] xy) {
+        long hashSep = deinterleave64(bits);
+        double cells = 1L << GEO_STEP_MAX;
+        long ilato = hashSep & 0xFFFFFFFFL;
+        long ilono = hashSep >>> 32;
+
+        double latMin = GEO_LAT_MIN + (ilato / cells) * (GEO_LAT_MAX - GEO_LAT_MIN);
+        double latMax = GEO_LAT_MIN + ((ilato + 1) / cells) * (GEO_LAT_MAX - GEO_LAT_MIN);
+        double longMin = GEO_LONG_MIN + (ilono / cells) * (GEO_LONG_MAX - GEO_LONG_MIN);
+        double longMax = GEO_LONG_MIN + ((ilono + 1) / cells) * (GEO_LONG_MAX - GEO_LONG_MIN);
+
+        xy[0] = Math.max(GEO_LONG_MIN, Math.min(GEO_LONG_MAX, (longMin + longMax) / 2));
+        xy[1] = Math.max(GEO_LAT_MIN, Math.min(GEO_LAT_MAX, (latMin + latMax) / 2));
+    }
+
+    /**
+     * 把任意精度的geohash左移对齐到52位，作为跳表分值区间的端点
+     */
+    public long align52Bits() {
+        return bits << (GEO_STEP_MAX * 2 - step * 2);
+    }
+
+    /**
+     * 经度(奇数位)方向移动一格，d>0向东，d<0向西
+     */
+    private void moveX(int d) {
+        if (d == 0) return;
+        long x = bits & 0xaaaaaaaaaaaaaaaaL;
+        long y = bits & 0x5555555555555555L;
+        long zz = 0x5555555555555555L >>> (64 - step * 2);
+
+        if (d > 0) {
+            x = x + (zz + 1);
+        } else {
+            x = x | zz;
+            x = x - (zz + 1);
+        }
+        x &= (0xaaaaaaaaaaaaaaaaL >>> (64 - step * 2));
+        bits = x | y;
+    }
+
+    /**
+     * 纬度(偶数位)方向移动一格，d>0向北，d<0向南
+     */
+    private void moveY(int d) {
+        if (d == 0) return;
+        long x = bits & 0xaaaaaaaaaaaaaaaaL;
+        long y = bits & 0x5555555555555555L;
+        long zz = 0xaaaaaaaaaaaaaaaaL >>> (64 - step * 2);
+
+        if (d > 0) {
+            y = y + (zz + 1);
+        } else {
+            y = y | zz;
+            y = y - (zz + 1);
+        }
+        y &= (0x5555555555555555L >>> (64 - step * 2));
+        bits = x | y;
+    }
+
+    private GeoHash moved(int dx, int dy) {
+        GeoHash h = new GeoHash(bits, step);
+        h.moveX(dx);
+        h.moveY(dy);
+        return h;
+    }
+
+    /**
+     * 计算周围8个网格
+     */
+    public Neighbors neighbors() {
+        Neighbors n = new Neighbors();
+        n.east = moved(1, 0);
+        n.west = moved(-1, 0);
+        n.south = moved(0, -1);
+        n.north = moved(0, 1);
+        n.southEast = moved(1, -1);
+        n.northEast = moved(1, 1);
+        n.southWest = moved(-1, -1);
+        n.northWest = moved(-1, 1);
+        return n;
+    }
+}
@@ -0,0 +1,246 @@
+package org.redis.lang.geo;
+
+/**
+ * @author zsy
+ * @Description geohash辅助计算
+ *
+ * 1. 根据搜索半径估算geohash精度step，使得中心网格+周围8个网格刚好覆盖搜索区域；
+ * 2. 使用haversine公式计算球面距离，对候选成员做精确过滤。
+ *
+ * @ClassName GeoHashHelper
+ * @Version 1.0
+ */
+public class GeoHashHelper {
+
+    /** 地球半径(米)，与Redis保持一致 */
+    public static final double EARTH_RADIUS_IN_METERS = 6372797.560856;
+
+    /** 墨卡托投影的最大范围(米) */
+    public static final double MERCATOR_MAX = 20037726.37;
+
+    /**
+     * 搜索形状：圆形(BYRADIUS)或矩形(BYBOX)
+     */
+    public static class Shape {
+
+        /** 中心点经度 */
+        public double longitude;
+
+        /** 中心点纬度 */
+        public double latitude;
+
+        /** 单位换算为米的系数 */
+        public double conversion = 1;
+
+        /** true为矩形，false为圆形 */
+        public boolean box;
+
+        public double radius;
+
+        public double width;
+
+        public double height;
+
+        public static Shape circle(double longitude, double latitude, double radius, double conversion) {
+            Shape shape = new Shape();
+            shape.longitude = longitude;
+            shape.latitude = latitude;
+            shape.radius = radius;
+            shape.conversion = conversion;
+            return shape;
+        }
+
+        public static Shape box(double longitude, double latitude, double width, double height, double conversion) {
+            Shape shape = new Shape();
+            shape.longitude = longitude;
+            shape.latitude = latitude;
+            shape.width = width;
+            shape.height = height;
+            shape.conversion = conversion;
+            shape.box = true;
+            return shape;
+        }
+    }
+
+    /**
+     * 覆盖搜索区域的9个网格
+     */
+    public static class Radius {
+
+        public GeoHash hash;
+
+        public GeoHash.Area area;
+
+        public GeoHash.Neighbors neighbors;
+    }
+
+    private static double degRad(double ang) {
+        return ang * (Math.PI / 180.0);
+    }
+
+    private static double radDeg(double ang) {
+        return ang / (Math.PI / 180.0);
+    }
+
+    /**
+     * 根据半径估算精度：半径每缩小一半，精度加一
+     */
+    public static int estimateStepsByRadius(double rangeMeters, double lat) {
+        if (rangeMeters == 0) return GeoHash.GEO_STEP_MAX;
+        int step = 1;
+        while (rangeMeters < MERCATOR_MAX) {
+            rangeMeters *= 2;
+            step++;
+        }
+        // 多退两级，保证大多数情况下9个网格能覆盖搜索区域
+        step -= 2;
+
+        // 高纬度地区经线汇聚，网格在经度方向更窄，需要进一步降低精度
+        if (lat > 66 || lat < -66) {
+            step--;
+            if (lat > 80 || lat < -80) step--;
+        }
+
+        if (step < 1) step = 1;
+        if (step > GeoHash.GEO_STEP_MAX) step = GeoHash.GEO_STEP_MAX;
+        return step;
+    }
+
+    /**
+     * 搜索区域的外接经纬度矩形：bounds = {minLon, minLat, maxLon, maxLat}
+     */
+    public static double[] boundingBox(Shape shape) {
+        double longitude = shape.longitude;
+        double latitude = shape.latitude;
+        double height = shape.conversion * (shape.box ? shape.height / 2 : shape.radius);
+        double width = shape.conversion * (shape.box ? shape.width / 2 : shape.radius);
+
+        double latDelta = radDeg(height / EARTH_RADIUS_IN_METERS);
+        double longDeltaTop = radDeg(width / EARTH_RADIUS_IN_METERS / Math.cos(degRad(latitude + latDelta)));
+        double longDeltaBottom = radDeg(width / EARTH_RADIUS_IN_METERS / Math.cos(degRad(latitude - latDelta)));
+        // 北半球矩形的上边更窄，南半球相反，取较宽的一边
+        boolean southernHemisphere = latitude < 0;
+
+        double[] bounds = new double[4];
+        bounds[0] = southernHemisphere ? longitude - longDeltaBottom : longitude - longDeltaTop;
+        bounds[2] = southernHemisphere ? longitude + longDeltaBottom : longitude + longDeltaTop;
+        bounds[1] = latitude - latDelta;
+        bounds[3] = latitude + latDelta;
+        return bounds;
+    }
+
+    /**
+     * 计算覆盖搜索区域的9个网格，并排除与搜索区域不相交的网格
+     */
+    public static Radius calculateAreasByShapeWGS84(Shape shape) {
+        double[] bounds = boundingBox(shape);
+        double minLon = bounds[0];
+        double minLat = bounds[1];
+        double maxLon = bounds[2];
+        double maxLat = bounds[3];
+
+        double radiusMeters = shape.box
+                ? Math.sqrt((shape.width / 2) * (shape.width / 2) + (shape.height / 2) * (shape.height / 2)) * shape.conversion
+                : shape.radius * shape.conversion;
+
+        int steps = estimateStepsByRadius(radiusMeters, shape.latitude);
+        GeoHash hash = GeoHash.encodeWGS84(shape.longitude, shape.latitude, steps);
+        GeoHash.Neighbors neighbors = hash.neighbors();
+        GeoHash.Area area = GeoHash.decode(hash, new GeoHash.Area());
+
+        // 估算的精度在边界处可能不足以覆盖整个区域，此时降低一级精度
+        boolean decreaseStep = false;
+        {
+            GeoHash.Area north = GeoHash.decode(neighbors.north, new GeoHash.Area());
+            GeoHash.Area south = GeoHash.decode(neighbors.south, new GeoHash.Area());
+            GeoHash.Area east = GeoHash.decode(neighbors.east, new GeoHash.Area());
+            GeoHash.Area west = GeoHash.decode(neighbors.west, new GeoHash.Area());
+
+            if (north.latMax < maxLat) decreaseStep = true;
+            if (south.latMin > minLat) decreaseStep = true;
+            if (east.longMax < maxLon) decreaseStep = true;
+            if (west.longMin > minLon) decreaseStep = true;
+        }
+
+        if (steps > 1 && decreaseStep) {
+            steps--;
+            hash = GeoHash.encodeWGS84(shape.longitude, shape.latitude, steps);
+            neighbors = hash.neighbors();
+            GeoHash.decode(hash, area);
+        }
+
+        // 中心网格已经覆盖了某一侧的边界时，该侧的邻居网格不需要搜索
+        if (steps >= 2) {
+            if (area.latMin < minLat) {
+                neighbors.south.zero();
+                neighbors.southWest.zero();
+                neighbors.southEast.zero();
+            }
+            if (area.latMax > maxLat) {
+                neighbors.north.zero();
+                neighbors.northEast.zero();
+                neighbors.northWest.zero();
+            }
+            if (area.longMin < minLon) {
+                neighbors.west.zero();
+                neighbors.southWest.zero();
+                neighbors.northWest.zero();
+            }
+            if (area.longMax > maxLon) {
+                neighbors.east.zero();
+                neighbors.southEast.zero();
+                neighbors.northEast.zero();
+            }
+        }
+
+        Radius radius = new Radius();
+        radius.hash = hash;
+        radius.area = area;
+        radius.neighbors = neighbors;
+        return radius;
+    }
+
+    /**
+     * 纬度方向的距离，经度相同时无需三角函数
+     */
+    public static double getLatDistance(double lat1d, double lat2d) {
+        return EARTH_RADIUS_IN_METERS * Math.abs(degRad(lat2d) - degRad(lat1d));
+    }
+
+    /**
+     * haversine公式计算两点间的球面距离(米)
+     */
+    public static double getDistance(double lon1d, double lat1d, double lon2d, double lat2d) {
+        double lon1r = degRad(lon1d);
+        double lon2r = degRad(lon2d);
+        double v = Math.sin((lon2r - lon1r) / 2);
+        // 经度相同时退化为纬度距离
+        if (v == 0.0) return getLatDistance(lat1d, lat2d);
+        double lat1r = degRad(lat1d);
+        double lat2r = degRad(lat2d);
+        double u = Math.sin((lat2r - lat1r) / 2);
+        double a = u * u + Math.cos(lat1r) * Math.cos(lat2r) * v * v;
+        return 2.0 * EARTH_RADIUS_IN_METERS * Math.asin(Math.sqrt(a));
+    }
+
+    /**
+     * 判断点(x2,y2)是否在以(x1,y1)为圆心的圆内，是则返回距离，否则返回-1
+     */
+    public static double getDistanceIfInRadius(double x1, double y1, double x2, double y2, double radius) {
+        double distance = getDistance(x1, y1, x2, y2);
+        return distance > radius ? -1 : distance;
+    }
+
+    /**
+     * 判断点(x2,y2)是否在以(x1,y1)为中心的矩形内，是则返回距离，否则返回-1
+     * 纬度距离的计算代价更低，先做纬度判断
+     */
+    public static double getDistanceIfInRectangle(double widthM, double heightM,
+                                                  double x1, double y1, double x2, double y2) {
+        double latDistance = getLatDistance(y2, y1);
+        if (latDistance > heightM / 2) return -1;
+        double lonDistance = getDistance(x2, y2, x1, y2);
+        if (lonDistance > widthM / 2) return -1;
+        return getDistance(x1, y1, x2, y2);
+    }
+}
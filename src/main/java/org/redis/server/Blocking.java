@@ -0,0 +1,357 @@
+package org.redis.server;
+
+import org.redis.db.RedisDB;
+import org.redis.lang.RedisList;
+import org.redis.lang.RedisObject;
+import org.redis.lang.RedisStream;
+import org.redis.lang.RedisZSet;
+import org.redis.lang.basis.Dict;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author zsy
+ * @Description 阻塞命令：BLPOP、BRPOP、BLMOVE、BZPOPMIN、BZPOPMAX、XREAD BLOCK
+ *
+ * 对应Redis中的blocked.c：
+ *      1. 每个数据库维护 键 -> 阻塞在该键上的客户端队列，队列按阻塞的先后顺序排列(先阻塞先服务)；
+ *         客户端记录自己在每个队列中的节点，解除阻塞时O(1)摘除；
+ *      2. 写命令修改键时(keyModified)，如果该键上有阻塞的客户端，把键加入ready keys(同一个键只加入一次)；
+ *         每轮事件循环在beforeSleep中统一处理ready keys：按队列顺序解除阻塞并重新执行客户端的命令，
+ *         此时键中已经有数据，命令会正常执行、回复并按非阻塞版本传播(BLPOP -> LPOP)；
+ *         执行过程中又被修改的键(例如BLMOVE的目标键)加入新的ready keys，直到没有新的ready keys为止；
+ *      3. 超时由哈希时间轮管理，每轮事件循环只处理到期的槽位，不扫描全部阻塞客户端。
+ * 解除阻塞的客户端在查询缓冲区中可能还有后续命令，在ready keys处理完之后继续执行。
+ *
+ * @ClassName Blocking
+ * @Version 1.0
+ */
+public class Blocking {
+
+    public static final int BLOCKED_LIST = 1;
+
+    public static final int BLOCKED_ZSET = 2;
+
+    public static final int BLOCKED_STREAM = 3;
+
+    /**
+     * 阻塞队列中的节点
+     */
+    private static class Waiter {
+
+        private final RedisClient client;
+
+        private Waiter prev;
+
+        private Waiter next;
+
+        private Waiter(RedisClient client) {
+            this.client = client;
+        }
+    }
+
+    /**
+     * 阻塞在同一个键上的客户端
+     */
+    private static class BlockedQueue {
+
+        private Waiter head;
+
+        private Waiter tail;
+
+        private int size;
+
+        private void addTail(Waiter w) {
+            w.prev = tail;
+            if (tail != null) {
+                tail.next = w;
+            } else {
+                head = w;
+            }
+            tail = w;
+            size++;
+        }
+
+        private void unlink(Waiter w) {
+            if (w.prev != null) {
+                w.prev.next = w.next;
+            } else {
+                head = w.next;
+            }
+            if (w.next != null) {
+                w.next.prev = w.prev;
+            } else {
+                tail = w.prev;
+            }
+            w.prev = w.next = null;
+            size--;
+        }
+    }
+
+    /**
+     * 客户端的阻塞状态
+     */
+    static class BlockingState {
+
+        private final int btype;
+
+        private final RedisDB db;
+
+        /** 阻塞的命令，键就绪后重新执行 */
+        private final RedisCommand cmd;
+
+        private final String[] argv;
+
+        /** 键 -> 客户端在该键阻塞队列中的节点 */
+        private final Dict<String, Waiter> keys = new Dict<>();
+
+        /** XREAD：键 -> 只等待大于该ID的消息 */
+        private final Dict<String, RedisStream.StreamID> streamIds;
+
+        private final TimingWheel.Timer<RedisClient> timer;
+
+        private BlockingState(RedisClient c, int btype, Dict<String, RedisStream.StreamID> streamIds) {
+            this.btype = btype;
+            this.db = c.getDb();
+            this.cmd = c.getCmd();
+            this.argv = c.getArgv();
+            this.streamIds = streamIds;
+            this.timer = new TimingWheel.Timer<>(c);
+        }
+    }
+
+    /**
+     * 被修改的、有客户端阻塞的键
+     */
+    private static class ReadyKey {
+
+        private final RedisDB db;
+
+        private final String key;
+
+        private ReadyKey(RedisDB db, String key) {
+            this.db = db;
+            this.key = key;
+        }
+    }
+
+    private final RedisServer server;
+
+    /** 每个数据库：键 -> 阻塞队列 */
+    private final List<Dict<String, BlockedQueue>> blockingKeys = new ArrayList<>();
+
+    /** 每个数据库中已加入readyKeys的键，用于去重 */
+    private final List<Dict<String, Boolean>> readyKeysSet = new ArrayList<>();
+
+    private List<ReadyKey> readyKeys = new ArrayList<>();
+
+    /** 已解除阻塞、需要继续处理查询缓冲区的客户端 */
+    private final ArrayDeque<RedisClient> unblockedClients = new ArrayDeque<>();
+
+    private final TimingWheel<RedisClient> timeouts = new TimingWheel<>(System.currentTimeMillis());
+
+    private int blockedClients;
+
+    Blocking(RedisServer server) {
+        this.server = server;
+        for (int j = 0; j < server.getDbnum(); j++) {
+            blockingKeys.add(new Dict<String, BlockedQueue>());
+            readyKeysSet.add(new Dict<String, Boolean>());
+        }
+    }
+
+    /**
+     * 解析阻塞命令的超时参数：BLPOP等以秒为单位(可以是小数)，XREAD BLOCK以毫秒为单位
+     *
+     * @return 超时的毫秒时间戳，0表示一直阻塞
+     */
+    static long parseTimeout(String arg, boolean seconds) {
+        long tval;
+        if (seconds) {
+            double d;
+            try {
+                d = Double.parseDouble(arg);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("ERR timeout is not a float or out of range");
+            }
+            if (Double.isNaN(d) || Double.isInfinite(d) || d * 1000 > Long.MAX_VALUE) {
+                throw new IllegalArgumentException("ERR timeout is not a float or out of range");
+            }
+            tval = (long) (d * 1000);
+        } else {
+            try {
+                tval = Long.parseLong(arg);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("ERR timeout is not an integer or out of range");
+            }
+        }
+        if (tval < 0) throw new IllegalArgumentException("ERR timeout is negative");
+        if (tval > 0) {
+            long now = System.currentTimeMillis();
+            if (tval > Long.MAX_VALUE - now) throw new IllegalArgumentException("ERR timeout is out of range");
+            tval += now;
+        }
+        return tval;
+    }
+
+    public int getBlockedClients() {
+        return blockedClients;
+    }
+
+    /**
+     * 阻塞客户端，直到keys中的某个键可以服务或超时
+     *
+     * @param timeout  超时的毫秒时间戳，0表示一直阻塞
+     * @param streamIds XREAD等待的起始ID，其他类型为null
+     */
+    void blockForKeys(RedisClient c, int btype, String[] keys, long timeout,
+                      Dict<String, RedisStream.StreamID> streamIds) {
+        BlockingState bs = new BlockingState(c, btype, streamIds);
+        Dict<String, BlockedQueue> table = blockingKeys.get(bs.db.getId());
+        for (String key : keys) {
+            // 同一个键在参数中出现多次时只阻塞一次
+            if (bs.keys.find(key) != null) continue;
+            BlockedQueue queue = table.fetchValue(key);
+            if (queue == null) {
+                queue = new BlockedQueue();
+                table.add(key, queue);
+            }
+            Waiter w = new Waiter(c);
+            queue.addTail(w);
+            bs.keys.add(key, w);
+        }
+        if (timeout > 0) timeouts.add(bs.timer, timeout);
+        c.setBlockingState(bs);
+        c.addFlags(RedisClient.CLIENT_BLOCKED);
+        blockedClients++;
+    }
+
+    /**
+     * 解除阻塞：从所有阻塞队列中摘除，取消超时
+     */
+    void unblockClient(RedisClient c) {
+        BlockingState bs = c.getBlockingState();
+        if (bs == null) return;
+        Dict<String, BlockedQueue> table = blockingKeys.get(bs.db.getId());
+        for (Dict.DictEntry<String, Waiter> de : bs.keys) {
+            BlockedQueue queue = table.fetchValue(de.getKey());
+            queue.unlink(de.getVal());
+            if (queue.size == 0) table.delete(de.getKey());
+        }
+        timeouts.cancel(bs.timer);
+        c.setBlockingState(null);
+        c.removeFlags(RedisClient.CLIENT_BLOCKED);
+        blockedClients--;
+        unblockedClients.add(c);
+    }
+
+    /**
+     * 客户端释放时解除阻塞，不回复
+     */
+    void freeClient(RedisClient c) {
+        unblockClient(c);
+        unblockedClients.remove(c);
+    }
+
+    /**
+     * 键被修改：有客户端阻塞在该键上时加入ready keys
+     */
+    void signalKeyAsReady(RedisDB db, String key) {
+        if (blockedClients == 0) return;
+        if (blockingKeys.get(db.getId()).find(key) == null) return;
+        if (!readyKeysSet.get(db.getId()).add(key, Boolean.TRUE)) return;
+        readyKeys.add(new ReadyKey(db, key));
+    }
+
+    boolean hasReadyKeys() {
+        return !readyKeys.isEmpty();
+    }
+
+    /**
+     * 处理所有ready keys，服务过程中产生的新ready keys在下一轮循环中处理
+     */
+    void handleClientsBlockedOnKeys() {
+        while (!readyKeys.isEmpty()) {
+            List<ReadyKey> ready = readyKeys;
+            readyKeys = new ArrayList<>();
+            for (ReadyKey rk : ready) {
+                // 先移出去重集合，服务过程中再次被修改的键可以重新加入
+                readyKeysSet.get(rk.db.getId()).delete(rk.key);
+                serveClientsBlockedOnKey(rk.db, rk.key);
+            }
+        }
+    }
+
+    /**
+     * 按阻塞顺序服务阻塞在key上的客户端，直到键中没有可以弹出的数据
+     */
+    private void serveClientsBlockedOnKey(RedisDB db, String key) {
+        BlockedQueue queue = blockingKeys.get(db.getId()).fetchValue(key);
+        if (queue == null) return;
+        int count = queue.size;
+        Waiter w = queue.head;
+        while (w != null && count-- > 0) {
+            // 键已被取空删除，后面的客户端都无法服务
+            if (db.lookupKeyWrite(key) == null) break;
+            Waiter next = w.next;
+            RedisClient c = w.client;
+            if (canServe(c.getBlockingState(), db, key)) {
+                BlockingState bs = c.getBlockingState();
+                unblockClient(c);
+                reprocessCommand(c, bs);
+            }
+            w = next;
+        }
+    }
+
+    /**
+     * 键当前的值能否满足客户端的阻塞命令，类型不符时继续阻塞
+     */
+    private static boolean canServe(BlockingState bs, RedisDB db, String key) {
+        RedisObject o = db.lookupKeyWrite(key);
+        if (o == null) return false;
+        switch (bs.btype) {
+            case BLOCKED_LIST:
+                return o.getType() == RedisObject.OBJ_LIST && ((RedisList) o.getPtr()).length() > 0;
+            case BLOCKED_ZSET:
+                return o.getType() == RedisObject.OBJ_ZSET && ((RedisZSet) o.getPtr()).zcard() > 0;
+            case BLOCKED_STREAM:
+                return o.getType() == RedisObject.OBJ_STREAM
+                        && ((RedisStream) o.getPtr()).getLastId().compareTo(bs.streamIds.fetchValue(key)) > 0;
+            default:
+                return false;
+        }
+    }
+
+    private void reprocessCommand(RedisClient c, BlockingState bs) {
+        c.setArgv(bs.argv);
+        server.call(c, bs.cmd);
+        c.setArgv(null);
+    }
+
+    /**
+     * 处理到期的阻塞客户端：回复空值并解除阻塞
+     */
+    void handleBlockedClientsTimeout(long now) {
+        if (blockedClients == 0) return;
+        for (TimingWheel.Timer<RedisClient> timer : timeouts.advance(now)) {
+            RedisClient c = timer.getOwner();
+            c.addReplyNullArray();
+            unblockClient(c);
+        }
+    }
+
+    /**
+     * 解除阻塞的客户端继续执行查询缓冲区中的命令
+     */
+    void processUnblockedClients() {
+        while (!unblockedClients.isEmpty()) {
+            RedisClient c = unblockedClients.poll();
+            if ((c.getFlags() & (RedisClient.CLIENT_BLOCKED | RedisClient.CLIENT_CLOSE_ASAP)) == 0) {
+                c.processInputBuffer();
+            }
+        }
+    }
+}
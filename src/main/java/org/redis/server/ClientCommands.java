@@ -0,0 +1,181 @@
+package org.redis.server;
+
+import org.redis.utils.NumberUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author zsy
+ * @Description 连接相关命令：CLIENT ID|TRACKING|CACHING|GETREDIR、HELLO
+ * @ClassName ClientCommands
+ * @Version 1.0
+ */
+public class ClientCommands {
+
+    static void register(RedisServer server) {
+        server.addCommand(new RedisCommand("client", -2, RedisCommand.CMD_ADMIN | RedisCommand.CMD_LOADING) {
+            @Override
+            public void proc(RedisClient c) {
+                clientCommand(c);
+            }
+        });
+        server.addCommand(new RedisCommand("hello", -1, RedisCommand.CMD_ADMIN | RedisCommand.CMD_LOADING) {
+            @Override
+            public void proc(RedisClient c) {
+                helloCommand(c);
+            }
+        });
+    }
+
+    private static void clientCommand(RedisClient c) {
+        String sub = c.arg(1).toLowerCase();
+        if (sub.equals("id") && c.getArgc() == 2) {
+            c.addReplyLongLong(c.getId());
+        } else if (sub.equals("tracking") && c.getArgc() >= 3) {
+            clientTrackingCommand(c);
+        } else if (sub.equals("caching") && c.getArgc() == 3) {
+            clientCachingCommand(c);
+        } else if (sub.equals("getredir") && c.getArgc() == 2) {
+            if ((c.getFlags() & RedisClient.CLIENT_TRACKING) == 0) {
+                c.addReplyLongLong(-1);
+            } else {
+                c.addReplyLongLong(c.getTrackingRedirection());
+            }
+        } else {
+            c.addReplyError("ERR unknown subcommand or wrong number of arguments for '" + c.arg(1) + "'");
+        }
+    }
+
+    /**
+     * CLIENT TRACKING on|off [REDIRECT id] [PREFIX prefix ...] [BCAST] [OPTIN] [OPTOUT] [NOLOOP]
+     */
+    private static void clientTrackingCommand(RedisClient c) {
+        long redir = 0;
+        int options = 0;
+        List<String> prefixes = new ArrayList<>();
+        for (int j = 3; j < c.getArgc(); j++) {
+            String opt = c.arg(j).toLowerCase();
+            boolean moreargs = j + 1 < c.getArgc();
+            if (opt.equals("redirect") && moreargs) {
+                j++;
+                if (redir != 0) throw new IllegalArgumentException("ERR A client can only redirect to a single other client");
+                redir = NumberUtil.parseLong(c.arg(j));
+                // 转发给自己等同于不转发
+                if (redir == c.getId()) {
+                    redir = 0;
+                } else if (c.getServer().lookupClient(redir) == null) {
+                    throw new IllegalArgumentException("ERR The client ID you want redirect to does not exist");
+                }
+            } else if (opt.equals("bcast")) {
+                options |= RedisClient.CLIENT_TRACKING_BCAST;
+            } else if (opt.equals("optin")) {
+                options |= RedisClient.CLIENT_TRACKING_OPTIN;
+            } else if (opt.equals("optout")) {
+                options |= RedisClient.CLIENT_TRACKING_OPTOUT;
+            } else if (opt.equals("noloop")) {
+                options |= RedisClient.CLIENT_TRACKING_NOLOOP;
+            } else if (opt.equals("prefix") && moreargs) {
+                prefixes.add(c.arg(++j));
+            } else {
+                throw new IllegalArgumentException(Protocol.SYNTAX_ERR);
+            }
+        }
+
+        Tracking tracking = c.getServer().getTracking();
+        String onoff = c.arg(2).toLowerCase();
+        if (onoff.equals("on")) {
+            boolean tracked = (c.getFlags() & RedisClient.CLIENT_TRACKING) != 0;
+            if ((options & RedisClient.CLIENT_TRACKING_BCAST) == 0 && !prefixes.isEmpty()) {
+                throw new IllegalArgumentException("ERR PREFIX option requires BCAST mode to be enabled");
+            }
+            if (tracked) {
+                boolean oldbcast = (c.getFlags() & RedisClient.CLIENT_TRACKING_BCAST) != 0;
+                boolean newbcast = (options & RedisClient.CLIENT_TRACKING_BCAST) != 0;
+                if (oldbcast != newbcast) {
+                    throw new IllegalArgumentException("ERR You can't switch BCAST mode on/off before disabling "
+                            + "tracking for this client, and then re-enabling it with a different mode.");
+                }
+            }
+            if ((options & RedisClient.CLIENT_TRACKING_OPTIN) != 0
+                    && (options & RedisClient.CLIENT_TRACKING_OPTOUT) != 0) {
+                throw new IllegalArgumentException("ERR You can't use both OPTIN and OPTOUT");
+            }
+            if ((options & (RedisClient.CLIENT_TRACKING_OPTIN | RedisClient.CLIENT_TRACKING_OPTOUT)) != 0
+                    && (options & RedisClient.CLIENT_TRACKING_BCAST) != 0) {
+                throw new IllegalArgumentException("ERR OPTIN and OPTOUT are not compatible with BCAST");
+            }
+            int oldopt = c.getFlags() & (RedisClient.CLIENT_TRACKING_OPTIN | RedisClient.CLIENT_TRACKING_OPTOUT);
+            int newopt = options & (RedisClient.CLIENT_TRACKING_OPTIN | RedisClient.CLIENT_TRACKING_OPTOUT);
+            if (tracked && oldopt != newopt) {
+                throw new IllegalArgumentException("ERR You can't switch OPTIN/OPTOUT mode before disabling "
+                        + "tracking for this client, and then re-enabling it with a different mode.");
+            }
+            if ((options & RedisClient.CLIENT_TRACKING_BCAST) != 0) tracking.checkPrefixCollisions(c, prefixes);
+            tracking.enableTracking(c, redir, options, prefixes);
+        } else if (onoff.equals("off")) {
+            tracking.disableTracking(c);
+        } else {
+            throw new IllegalArgumentException(Protocol.SYNTAX_ERR);
+        }
+        c.addReply(Protocol.OK);
+    }
+
+    /**
+     * CLIENT CACHING yes|no：只对下一条命令有效
+     */
+    private static void clientCachingCommand(RedisClient c) {
+        int flags = c.getFlags();
+        if ((flags & RedisClient.CLIENT_TRACKING) == 0) {
+            throw new IllegalArgumentException("ERR CLIENT CACHING can be called only when the client is in "
+                    + "tracking mode with OPTIN or OPTOUT mode enabled");
+        }
+        String opt = c.arg(2).toLowerCase();
+        if (opt.equals("yes")) {
+            if ((flags & RedisClient.CLIENT_TRACKING_OPTIN) == 0) {
+                throw new IllegalArgumentException("ERR CLIENT CACHING YES is only valid when tracking is enabled in OPTIN mode.");
+            }
+        } else if (opt.equals("no")) {
+            if ((flags & RedisClient.CLIENT_TRACKING_OPTOUT) == 0) {
+                throw new IllegalArgumentException("ERR CLIENT CACHING NO is only valid when tracking is enabled in OPTOUT mode.");
+            }
+        } else {
+            throw new IllegalArgumentException(Protocol.SYNTAX_ERR);
+        }
+        c.addFlags(RedisClient.CLIENT_TRACKING_CACHING);
+        c.addReply(Protocol.OK);
+    }
+
+    /**
+     * HELLO [protover]：切换协议版本，回复服务端信息
+     */
+    private static void helloCommand(RedisClient c) {
+        int ver = c.getResp();
+        if (c.getArgc() >= 2) {
+            long v;
+            try {
+                v = NumberUtil.parseLong(c.arg(1));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("ERR Protocol version is not an integer or out of range");
+            }
+            if (v < 2 || v > 3) throw new IllegalArgumentException("NOPROTO unsupported protocol version");
+            ver = (int) v;
+        }
+        if (c.getArgc() > 2) throw new IllegalArgumentException(Protocol.SYNTAX_ERR);
+        c.setResp(ver);
+
+        c.addReplyMapLen(6);
+        c.addReplyBulk("server");
+        c.addReplyBulk("redis");
+        c.addReplyBulk("version");
+        c.addReplyBulk(RedisServer.REDIS_VERSION);
+        c.addReplyBulk("proto");
+        c.addReplyLongLong(ver);
+        c.addReplyBulk("id");
+        c.addReplyLongLong(c.getId());
+        c.addReplyBulk("mode");
+        c.addReplyBulk("standalone");
+        c.addReplyBulk("role");
+        c.addReplyBulk(c.getServer().getReplication().isReplica() ? "replica" : "master");
+    }
+}
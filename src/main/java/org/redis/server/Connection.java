@@ -0,0 +1,38 @@
+package org.redis.server;
+
+/**
+ * @author zsy
+ * @Description 连接抽象
+ *
+ * 对应Redis中的connection.h：服务端只通过该接口读写字节流，
+ * 底层可以是TCP套接字，也可以是进程内的回环连接(LoopbackConnection)。
+ *
+ * @ClassName Connection
+ * @Version 1.0
+ */
+public interface Connection {
+
+    /**
+     * 读事件处理器：连接上有数据到达或连接关闭时回调
+     */
+    interface Handler {
+
+        void onRead(byte[] buf, int off, int len);
+
+        void onClose();
+    }
+
+    void setHandler(Handler handler);
+
+    /**
+     * 按顺序写出buf中[off, off+len)的数据，不阻塞：底层暂时无法接受全部数据时(例如套接字发送缓冲区已满)
+     * 只写出前面的一部分，剩余部分由调用方保留并稍后重试。返回后buf可以被调用方复用
+     *
+     * @return 实际写出的字节数，连接已关闭时返回0
+     */
+    int write(byte[] buf, int off, int len);
+
+    void close();
+
+    boolean isConnected();
+}
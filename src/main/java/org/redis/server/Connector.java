@@ -0,0 +1,15 @@
+package org.redis.server;
+
+/**
+ * @author zsy
+ * @Description 主动建立连接，从节点通过它连接(或重连)主节点
+ * @ClassName Connector
+ * @Version 1.0
+ */
+public interface Connector {
+
+    /**
+     * 建立一条新连接，失败返回null
+     */
+    Connection connect();
+}
@@ -0,0 +1,190 @@
+package org.redis.server;
+
+import org.redis.db.RedisDB;
+import org.redis.lang.RedisObject;
+import org.redis.utils.NumberUtil;
+
+/**
+ * @author zsy
+ * @Description 键空间相关命令：DEL、EXISTS、SELECT、FLUSHDB、EXPIRE、TTL等
+ * @ClassName DbCommands
+ * @Version 1.0
+ */
+public class DbCommands {
+
+    /**
+     * 类型检查，类型不符时抛出WRONGTYPE错误
+     */
+    public static void checkType(RedisObject o, int type) {
+        if (o != null && o.getType() != type) {
+            throw new IllegalArgumentException(Protocol.WRONGTYPE_ERR);
+        }
+    }
+
+    static void register(RedisServer server) {
+        server.addCommand(new RedisCommand("del", -2, RedisCommand.CMD_WRITE, 1, -1, 1) {
+            @Override
+            public void proc(RedisClient c) {
+                delCommand(c);
+            }
+        });
+        server.addCommand(new RedisCommand("exists", -2, RedisCommand.CMD_READONLY, 1, -1, 1) {
+            @Override
+            public void proc(RedisClient c) {
+                existsCommand(c);
+            }
+        });
+        server.addCommand(new RedisCommand("select", 2, RedisCommand.CMD_READONLY | RedisCommand.CMD_LOADING) {
+            @Override
+            public void proc(RedisClient c) {
+                c.selectDb((int) NumberUtil.parseLong(c.arg(1)));
+                c.addReply(Protocol.OK);
+            }
+        });
+        server.addCommand(new RedisCommand("dbsize", 1, RedisCommand.CMD_READONLY) {
+            @Override
+            public void proc(RedisClient c) {
+                c.addReplyLongLong(c.getDb().dbSize());
+            }
+        });
+        server.addCommand(new RedisCommand("flushdb", 1, RedisCommand.CMD_WRITE) {
+            @Override
+            public void proc(RedisClient c) {
+                flushdbCommand(c);
+            }
+        });
+        server.addCommand(new RedisCommand("flushall", 1, RedisCommand.CMD_WRITE) {
+            @Override
+            public void proc(RedisClient c) {
+                flushallCommand(c);
+            }
+        });
+        server.addCommand(new RedisCommand("expire", 3, RedisCommand.CMD_WRITE, 1, 1, 1) {
+            @Override
+            public void proc(RedisClient c) {
+                expireGenericCommand(c, System.currentTimeMillis(), 1000);
+            }
+        });
+        server.addCommand(new RedisCommand("pexpire", 3, RedisCommand.CMD_WRITE, 1, 1, 1) {
+            @Override
+            public void proc(RedisClient c) {
+                expireGenericCommand(c, System.currentTimeMillis(), 1);
+            }
+        });
+        server.addCommand(new RedisCommand("pexpireat", 3, RedisCommand.CMD_WRITE, 1, 1, 1) {
+            @Override
+            public void proc(RedisClient c) {
+                expireGenericCommand(c, 0, 1);
+            }
+        });
+        server.addCommand(new RedisCommand("ttl", 2, RedisCommand.CMD_READONLY, 1, 1, 1) {
+            @Override
+            public void proc(RedisClient c) {
+                ttlGenericCommand(c, false);
+            }
+        });
+        server.addCommand(new RedisCommand("pttl", 2, RedisCommand.CMD_READONLY, 1, 1, 1) {
+            @Override
+            public void proc(RedisClient c) {
+                ttlGenericCommand(c, true);
+            }
+        });
+        server.addCommand(new RedisCommand("persist", 2, RedisCommand.CMD_WRITE, 1, 1, 1) {
+            @Override
+            public void proc(RedisClient c) {
+                persistCommand(c);
+            }
+        });
+    }
+
+    private static void delCommand(RedisClient c) {
+        RedisDB db = c.getDb();
+        int deleted = 0;
+        for (int j = 1; j < c.getArgc(); j++) {
+            db.expireIfNeeded(c.arg(j));
+            if (db.dbDelete(c.arg(j))) {
+                db.signalModifiedKey(c.arg(j));
+                c.getServer().incrDirty(1);
+                deleted++;
+            }
+        }
+        c.addReplyLongLong(deleted);
+    }
+
+    private static void existsCommand(RedisClient c) {
+        int count = 0;
+        for (int j = 1; j < c.getArgc(); j++) {
+            if (c.getDb().lookupKeyRead(c.arg(j)) != null) count++;
+        }
+        c.addReplyLongLong(count);
+    }
+
+    private static void flushdbCommand(RedisClient c) {
+        long removed = c.getDb().emptyData();
+        c.getServer().incrDirty(removed + 1);
+        c.addReply(Protocol.OK);
+    }
+
+    private static void flushallCommand(RedisClient c) {
+        long removed = 0;
+        for (RedisDB db : c.getServer().getDbs()) removed += db.emptyData();
+        c.getServer().incrDirty(removed + 1);
+        c.addReply(Protocol.OK);
+    }
+
+    /**
+     * EXPIRE / PEXPIRE / PEXPIREAT
+     *
+     * @param basetime 相对时间的基准，绝对时间为0
+     * @param unit     1表示毫秒，1000表示秒
+     */
+    private static void expireGenericCommand(RedisClient c, long basetime, long unit) {
+        RedisDB db = c.getDb();
+        String key = c.arg(1);
+        long when = NumberUtil.parseLong(c.arg(2)) * unit + basetime;
+
+        if (db.lookupKeyWrite(key) == null) {
+            c.addReply(Protocol.CZERO);
+            return;
+        }
+
+        // 过期时间已经过去：主节点直接删除并以DEL传播，从节点等待主节点的DEL
+        if (when <= System.currentTimeMillis() && !c.getServer().getReplication().isReplica()) {
+            db.dbDelete(key);
+            c.rewriteArgv("DEL", key);
+        } else {
+            db.setExpire(key, when);
+            // 相对时间改写为绝对时间，避免复制延迟造成主从过期时间不一致
+            c.rewriteArgv("PEXPIREAT", key, String.valueOf(when));
+        }
+        db.signalModifiedKey(key);
+        c.getServer().incrDirty(1);
+        c.addReply(Protocol.CONE);
+    }
+
+    private static void ttlGenericCommand(RedisClient c, boolean outputMs) {
+        String key = c.arg(1);
+        if (c.getDb().lookupKeyRead(key) == null) {
+            c.addReplyLongLong(-2);
+            return;
+        }
+        long expire = c.getDb().getExpire(key);
+        if (expire == -1) {
+            c.addReplyLongLong(-1);
+            return;
+        }
+        long ttl = Math.max(expire - System.currentTimeMillis(), 0);
+        c.addReplyLongLong(outputMs ? ttl : (ttl + 500) / 1000);
+    }
+
+    private static void persistCommand(RedisClient c) {
+        String key = c.arg(1);
+        if (c.getDb().lookupKeyWrite(key) != null && c.getDb().removeExpire(key)) {
+            c.getDb().signalModifiedKey(key);
+            c.getServer().incrDirty(1);
+            c.addReply(Protocol.CONE);
+        } else {
+            c.addReply(Protocol.CZERO);
+        }
+    }
+}
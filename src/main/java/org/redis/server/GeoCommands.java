@@ -0,0 +1,237 @@
+package org.redis.server;
+
+import org.redis.lang.RedisGeo;
+import org.redis.lang.RedisZSet;
+import org.redis.lang.geo.GeoHash;
+import org.redis.lang.geo.GeoHashHelper;
+import org.redis.utils.NumberUtil;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * @author zsy
+ * @Description 地理位置命令：GEOADD、GEOPOS、GEODIST、GEOSEARCH
+ * @ClassName GeoCommands
+ * @Version 1.0
+ */
+public class GeoCommands {
+
+    static void register(RedisServer server) {
+        server.addCommand(new RedisCommand("geoadd", -5, RedisCommand.CMD_WRITE, 1, 1, 1) {
+            @Override
+            public void proc(RedisClient c) {
+                geoaddCommand(c);
+            }
+        });
+        server.addCommand(new RedisCommand("geopos", -2, RedisCommand.CMD_READONLY, 1, 1, 1) {
+            @Override
+            public void proc(RedisClient c) {
+                geoposCommand(c);
+            }
+        });
+        server.addCommand(new RedisCommand("geodist", -4, RedisCommand.CMD_READONLY, 1, 1, 1) {
+            @Override
+            public void proc(RedisClient c) {
+                geodistCommand(c);
+            }
+        });
+        server.addCommand(new RedisCommand("geosearch", -7, RedisCommand.CMD_READONLY, 1, 1, 1) {
+            @Override
+            public void proc(RedisClient c) {
+                geosearchCommand(c);
+            }
+        });
+    }
+
+    /**
+     * GEOADD key [NX|XX] [CH] longitude latitude member [longitude latitude member ...]
+     */
+    private static void geoaddCommand(RedisClient c) {
+        boolean nx = false;
+        boolean xx = false;
+        boolean ch = false;
+        int longidx = 2;
+        while (longidx < c.getArgc()) {
+            String opt = c.arg(longidx).toLowerCase();
+            if (opt.equals("nx")) {
+                nx = true;
+            } else if (opt.equals("xx")) {
+                xx = true;
+            } else if (opt.equals("ch")) {
+                ch = true;
+            } else {
+                break;
+            }
+            longidx++;
+        }
+        int elements = c.getArgc() - longidx;
+        if (elements == 0 || elements % 3 != 0 || (nx && xx)) {
+            throw new IllegalArgumentException(Protocol.SYNTAX_ERR);
+        }
+        // 先完成全部编码，任一坐标非法时不做任何修改
+        double[] scores = new double[elements / 3];
+        for (int j = 0; j < scores.length; j++) {
+            double longitude = NumberUtil.parseDouble(c.arg(longidx + j * 3));
+            double latitude = NumberUtil.parseDouble(c.arg(longidx + j * 3 + 1));
+            scores[j] = RedisGeo.encodeScore(longitude, latitude);
+        }
+
+        String key = c.arg(1);
+        if (xx && c.getDb().lookupKeyWrite(key) == null) {
+            c.addReply(Protocol.CZERO);
+            return;
+        }
+        RedisZSet zset = ZSetCommands.lookupZSetWriteOrCreate(c, key);
+        int added = 0;
+        int updated = 0;
+        for (int j = 0; j < scores.length; j++) {
+            String member = c.arg(longidx + j * 3 + 2);
+            Double cur = zset.zscore(member);
+            if ((nx && cur != null) || (xx && cur == null)) continue;
+            if (zset.zadd(scores[j], member)) {
+                added++;
+            } else if (cur != scores[j]) {
+                updated++;
+            }
+        }
+        ZSetCommands.deleteIfEmpty(c, key, zset);
+        if (added + updated > 0) c.getDb().signalModifiedKey(key);
+        c.getServer().incrDirty(added + updated);
+        c.addReplyLongLong(ch ? added + updated : added);
+    }
+
+    private static void geoposCommand(RedisClient c) {
+        RedisZSet zset = ZSetCommands.lookupZSetRead(c, c.arg(1));
+        c.addReplyArrayLen(c.getArgc() - 2);
+        for (int j = 2; j < c.getArgc(); j++) {
+            double[] xy = zset == null ? null : RedisGeo.geoPos(zset, c.arg(j));
+            if (xy == null) {
+                c.addReply(Protocol.NULL_ARRAY);
+            } else {
+                c.addReplyArrayLen(2);
+                c.addReplyDouble(xy[0]);
+                c.addReplyDouble(xy[1]);
+            }
+        }
+    }
+
+    /**
+     * GEODIST key member1 member2 [M|KM|FT|MI]
+     */
+    private static void geodistCommand(RedisClient c) {
+        double toMeters = 1;
+        if (c.getArgc() == 5) {
+            toMeters = RedisGeo.extractUnit(c.arg(4));
+        } else if (c.getArgc() > 5) {
+            throw new IllegalArgumentException(Protocol.SYNTAX_ERR);
+        }
+        RedisZSet zset = ZSetCommands.lookupZSetRead(c, c.arg(1));
+        Double dist = zset == null ? null : RedisGeo.geoDist(zset, c.arg(2), c.arg(3));
+        if (dist == null) {
+            c.addReplyNull();
+        } else {
+            c.addReplyBulk(String.format(Locale.ROOT, "%.4f", dist / toMeters));
+        }
+    }
+
+    /**
+     * GEOSEARCH key FROMMEMBER member | FROMLONLAT longitude latitude
+     *      BYRADIUS radius unit | BYBOX width height unit
+     *      [ASC|DESC] [COUNT count [ANY]] [WITHCOORD] [WITHDIST] [WITHHASH]
+     */
+    private static void geosearchCommand(RedisClient c) {
+        String fromMember = null;
+        double[] fromLonLat = null;
+        GeoHashHelper.Shape shape = null;
+        int sort = RedisGeo.SORT_NONE;
+        int count = 0;
+        boolean any = false;
+        boolean withcoord = false;
+        boolean withdist = false;
+        boolean withhash = false;
+
+        for (int j = 2; j < c.getArgc(); j++) {
+            String opt = c.arg(j).toLowerCase();
+            int remaining = c.getArgc() - j - 1;
+            if (opt.equals("frommember") && remaining >= 1 && fromLonLat == null) {
+                fromMember = c.arg(++j);
+            } else if (opt.equals("fromlonlat") && remaining >= 2 && fromMember == null) {
+                fromLonLat = new double[]{NumberUtil.parseDouble(c.arg(j + 1)), NumberUtil.parseDouble(c.arg(j + 2))};
+                if (!GeoHash.isValidLongLat(fromLonLat[0], fromLonLat[1])) {
+                    throw new IllegalArgumentException(String.format(Locale.ROOT,
+                            "ERR invalid longitude,latitude pair %f,%f", fromLonLat[0], fromLonLat[1]));
+                }
+                j += 2;
+            } else if (opt.equals("byradius") && remaining >= 2 && shape == null) {
+                double radius = NumberUtil.parseDouble(c.arg(j + 1));
+                if (radius < 0) throw new IllegalArgumentException("ERR radius cannot be negative");
+                shape = GeoHashHelper.Shape.circle(0, 0, radius, RedisGeo.extractUnit(c.arg(j + 2)));
+                j += 2;
+            } else if (opt.equals("bybox") && remaining >= 3 && shape == null) {
+                double width = NumberUtil.parseDouble(c.arg(j + 1));
+                double height = NumberUtil.parseDouble(c.arg(j + 2));
+                if (width < 0 || height < 0) throw new IllegalArgumentException("ERR height or width cannot be negative");
+                shape = GeoHashHelper.Shape.box(0, 0, width, height, RedisGeo.extractUnit(c.arg(j + 3)));
+                j += 3;
+            } else if (opt.equals("asc")) {
+                sort = RedisGeo.SORT_ASC;
+            } else if (opt.equals("desc")) {
+                sort = RedisGeo.SORT_DESC;
+            } else if (opt.equals("count") && remaining >= 1) {
+                long n = NumberUtil.parseLong(c.arg(++j));
+                if (n <= 0) throw new IllegalArgumentException("ERR COUNT must be > 0");
+                count = (int) Math.min(n, Integer.MAX_VALUE);
+            } else if (opt.equals("any")) {
+                any = true;
+            } else if (opt.equals("withcoord")) {
+                withcoord = true;
+            } else if (opt.equals("withdist")) {
+                withdist = true;
+            } else if (opt.equals("withhash")) {
+                withhash = true;
+            } else {
+                throw new IllegalArgumentException(Protocol.SYNTAX_ERR);
+            }
+        }
+        if (fromMember == null && fromLonLat == null) {
+            throw new IllegalArgumentException("ERR exactly one of FROMMEMBER or FROMLONLAT can be specified for geosearch");
+        }
+        if (shape == null) {
+            throw new IllegalArgumentException("ERR exactly one of BYRADIUS and BYBOX can be specified for geosearch");
+        }
+        if (any && count == 0) {
+            throw new IllegalArgumentException("ERR the ANY argument requires COUNT argument");
+        }
+
+        RedisZSet zset = ZSetCommands.lookupZSetRead(c, c.arg(1));
+        if (zset == null) {
+            c.addReply(Protocol.EMPTY_ARRAY);
+            return;
+        }
+        if (fromMember != null) {
+            fromLonLat = RedisGeo.geoPos(zset, fromMember);
+            if (fromLonLat == null) throw new IllegalArgumentException("ERR could not decode requested zset member");
+        }
+        shape.longitude = fromLonLat[0];
+        shape.latitude = fromLonLat[1];
+
+        // 只取COUNT个结果且没有指定排序时，默认按距离升序
+        if (count > 0 && sort == RedisGeo.SORT_NONE && !any) sort = RedisGeo.SORT_ASC;
+        List<RedisGeo.GeoPoint> result = RedisGeo.geoSearch(zset, shape, sort, count, any);
+
+        int optionLength = (withcoord ? 1 : 0) + (withdist ? 1 : 0) + (withhash ? 1 : 0);
+        c.addReplyArrayLen(result.size());
+        for (RedisGeo.GeoPoint gp : result) {
+            if (optionLength > 0) c.addReplyArrayLen(optionLength + 1);
+            c.addReplyBulk(gp.member);
+            if (withdist) c.addReplyBulk(String.format(Locale.ROOT, "%.4f", gp.dist / shape.conversion));
+            if (withhash) c.addReplyLongLong((long) gp.score);
+            if (withcoord) {
+                c.addReplyArrayLen(2);
+                c.addReplyDouble(gp.longitude);
+                c.addReplyDouble(gp.latitude);
+            }
+        }
+    }
+}
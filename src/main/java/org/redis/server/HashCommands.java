@@ -0,0 +1,64 @@
+package org.redis.server;
+
+import org.redis.lang.RedisHash;
+import org.redis.lang.RedisObject;
+
+import java.util.List;
+
+/**
+ * @author zsy
+ * @Description 散列表命令：HGET、HLEN、HGETALL
+ * @ClassName HashCommands
+ * @Version 1.0
+ */
+public class HashCommands {
+
+    static void register(RedisServer server) {
+        server.addCommand(new RedisCommand("hget", 3, RedisCommand.CMD_READONLY, 1, 1, 1) {
+            @Override
+            public void proc(RedisClient c) {
+                RedisHash hash = lookupHashRead(c, c.arg(1));
+                String value = hash == null ? null : hash.get(c.arg(2));
+                if (value == null) {
+                    c.addReplyNull();
+                } else {
+                    c.addReplyBulk(value);
+                }
+            }
+        });
+        server.addCommand(new RedisCommand("hlen", 2, RedisCommand.CMD_READONLY, 1, 1, 1) {
+            @Override
+            public void proc(RedisClient c) {
+                RedisHash hash = lookupHashRead(c, c.arg(1));
+                c.addReplyLongLong(hash == null ? 0 : hash.length());
+            }
+        });
+        server.addCommand(new RedisCommand("hgetall", 2, RedisCommand.CMD_READONLY, 1, 1, 1) {
+            @Override
+            public void proc(RedisClient c) {
+                hgetallCommand(c);
+            }
+        });
+    }
+
+    static RedisHash lookupHashRead(RedisClient c, String key) {
+        RedisObject o = c.getDb().lookupKeyRead(key);
+        if (o == null) return null;
+        DbCommands.checkType(o, RedisObject.OBJ_HASH);
+        return (RedisHash) o.getPtr();
+    }
+
+    /**
+     * RESP3回复 field -> value 的映射，RESP2回复 field value 交替的数组
+     */
+    private static void hgetallCommand(RedisClient c) {
+        RedisHash hash = lookupHashRead(c, c.arg(1));
+        if (hash == null) {
+            c.addReplyMapLen(0);
+            return;
+        }
+        List<String> entries = hash.entries();
+        c.addReplyMapLen(entries.size() / 2);
+        for (String s : entries) c.addReplyBulk(s);
+    }
+}
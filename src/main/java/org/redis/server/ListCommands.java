@@ -0,0 +1,236 @@
+package org.redis.server;
+
+import org.redis.lang.RedisList;
+import org.redis.lang.RedisObject;
+import org.redis.utils.NumberUtil;
+
+import java.util.List;
+
+/**
+ * @author zsy
+ * @Description 列表命令：LPUSH、RPUSH、LPOP、RPOP、LLEN、LRANGE、LMOVE、BLPOP、BRPOP、BLMOVE
+ * @ClassName ListCommands
+ * @Version 1.0
+ */
+public class ListCommands {
+
+    static void register(RedisServer server) {
+        server.addCommand(new RedisCommand("lpush", -3, RedisCommand.CMD_WRITE, 1, 1, 1) {
+            @Override
+            public void proc(RedisClient c) {
+                pushGenericCommand(c, RedisList.LIST_HEAD);
+            }
+        });
+        server.addCommand(new RedisCommand("rpush", -3, RedisCommand.CMD_WRITE, 1, 1, 1) {
+            @Override
+            public void proc(RedisClient c) {
+                pushGenericCommand(c, RedisList.LIST_TAIL);
+            }
+        });
+        server.addCommand(new RedisCommand("lpop", -2, RedisCommand.CMD_WRITE, 1, 1, 1) {
+            @Override
+            public void proc(RedisClient c) {
+                popGenericCommand(c, RedisList.LIST_HEAD);
+            }
+        });
+        server.addCommand(new RedisCommand("rpop", -2, RedisCommand.CMD_WRITE, 1, 1, 1) {
+            @Override
+            public void proc(RedisClient c) {
+                popGenericCommand(c, RedisList.LIST_TAIL);
+            }
+        });
+        server.addCommand(new RedisCommand("llen", 2, RedisCommand.CMD_READONLY, 1, 1, 1) {
+            @Override
+            public void proc(RedisClient c) {
+                RedisList list = lookupListRead(c, c.arg(1));
+                c.addReplyLongLong(list == null ? 0 : list.length());
+            }
+        });
+        server.addCommand(new RedisCommand("lrange", 4, RedisCommand.CMD_READONLY, 1, 1, 1) {
+            @Override
+            public void proc(RedisClient c) {
+                lrangeCommand(c);
+            }
+        });
+        server.addCommand(new RedisCommand("lmove", 5, RedisCommand.CMD_WRITE, 1, 2, 1) {
+            @Override
+            public void proc(RedisClient c) {
+                lmoveGenericCommand(c, parseWhere(c.arg(3)), parseWhere(c.arg(4)), -1);
+            }
+        });
+        server.addCommand(new RedisCommand("blpop", -3, RedisCommand.CMD_WRITE, 1, -2, 1) {
+            @Override
+            public void proc(RedisClient c) {
+                blockingPopGenericCommand(c, RedisList.LIST_HEAD);
+            }
+        });
+        server.addCommand(new RedisCommand("brpop", -3, RedisCommand.CMD_WRITE, 1, -2, 1) {
+            @Override
+            public void proc(RedisClient c) {
+                blockingPopGenericCommand(c, RedisList.LIST_TAIL);
+            }
+        });
+        server.addCommand(new RedisCommand("blmove", 6, RedisCommand.CMD_WRITE, 1, 2, 1) {
+            @Override
+            public void proc(RedisClient c) {
+                int wherefrom = parseWhere(c.arg(3));
+                int whereto = parseWhere(c.arg(4));
+                lmoveGenericCommand(c, wherefrom, whereto, Blocking.parseTimeout(c.arg(5), true));
+            }
+        });
+    }
+
+    static RedisList lookupListRead(RedisClient c, String key) {
+        RedisObject o = c.getDb().lookupKeyRead(key);
+        if (o == null) return null;
+        DbCommands.checkType(o, RedisObject.OBJ_LIST);
+        return (RedisList) o.getPtr();
+    }
+
+    private static RedisList lookupListWrite(RedisClient c, String key) {
+        RedisObject o = c.getDb().lookupKeyWrite(key);
+        if (o == null) return null;
+        DbCommands.checkType(o, RedisObject.OBJ_LIST);
+        return (RedisList) o.getPtr();
+    }
+
+    /**
+     * 元素被弹出后：列表为空时删除整个键，通知键被修改
+     */
+    private static void listElementsRemoved(RedisClient c, String key, RedisList list, long removed) {
+        if (list.length() == 0) c.getDb().dbDelete(key);
+        c.getDb().signalModifiedKey(key);
+        c.getServer().incrDirty(removed);
+    }
+
+    private static int parseWhere(String arg) {
+        String where = arg.toLowerCase();
+        if (where.equals("left")) return RedisList.LIST_HEAD;
+        if (where.equals("right")) return RedisList.LIST_TAIL;
+        throw new IllegalArgumentException(Protocol.SYNTAX_ERR);
+    }
+
+    /**
+     * LPUSH/RPUSH key element [element ...]
+     */
+    private static void pushGenericCommand(RedisClient c, int where) {
+        String key = c.arg(1);
+        RedisList list = lookupListWrite(c, key);
+        if (list == null) {
+            RedisObject o = RedisObject.createListObject();
+            c.getDb().dbAdd(key, o);
+            list = (RedisList) o.getPtr();
+        }
+        for (int j = 2; j < c.getArgc(); j++) list.push(c.arg(j), where);
+        // 有客户端阻塞在该键上时，键会加入ready keys
+        c.getDb().signalModifiedKey(key);
+        c.getServer().incrDirty(c.getArgc() - 2);
+        c.addReplyLongLong(list.length());
+    }
+
+    /**
+     * LPOP/RPOP key [count]
+     */
+    private static void popGenericCommand(RedisClient c, int where) {
+        if (c.getArgc() > 3) {
+            throw new IllegalArgumentException("ERR wrong number of arguments for '" + c.arg(0).toLowerCase() + "' command");
+        }
+        boolean hascount = c.getArgc() == 3;
+        long count = 0;
+        if (hascount) {
+            count = NumberUtil.parseLong(c.arg(2));
+            if (count < 0) throw new IllegalArgumentException("ERR value is out of range, must be positive");
+        }
+
+        String key = c.arg(1);
+        RedisList list = lookupListWrite(c, key);
+        if (list == null) {
+            if (hascount) {
+                c.addReplyNullArray();
+            } else {
+                c.addReplyNull();
+            }
+            return;
+        }
+        if (!hascount) {
+            c.addReplyBulk(list.pop(where));
+            listElementsRemoved(c, key, list, 1);
+            return;
+        }
+        long n = Math.min(count, list.length());
+        c.addReplyArrayLen(n);
+        for (long i = 0; i < n; i++) c.addReplyBulk(list.pop(where));
+        if (n > 0) listElementsRemoved(c, key, list, n);
+    }
+
+    /**
+     * LRANGE key start stop
+     */
+    private static void lrangeCommand(RedisClient c) {
+        long start = NumberUtil.parseLong(c.arg(2));
+        long end = NumberUtil.parseLong(c.arg(3));
+        RedisList list = lookupListRead(c, c.arg(1));
+        if (list == null) {
+            c.addReply(Protocol.EMPTY_ARRAY);
+            return;
+        }
+        List<String> range = list.range(start, end);
+        c.addReplyArrayLen(range.size());
+        for (String s : range) c.addReplyBulk(s);
+    }
+
+    /**
+     * BLPOP/BRPOP key [key ...] timeout：从第一个非空的列表弹出，全部为空时阻塞
+     */
+    private static void blockingPopGenericCommand(RedisClient c, int where) {
+        long timeout = Blocking.parseTimeout(c.arg(c.getArgc() - 1), true);
+        for (int j = 1; j < c.getArgc() - 1; j++) {
+            String key = c.arg(j);
+            RedisList list = lookupListWrite(c, key);
+            // 空列表会被删除，存在的列表一定非空
+            if (list == null) continue;
+            c.addReplyArrayLen(2);
+            c.addReplyBulk(key);
+            c.addReplyBulk(list.pop(where));
+            listElementsRemoved(c, key, list, 1);
+            // 从节点上执行非阻塞的版本
+            c.rewriteArgv(where == RedisList.LIST_HEAD ? "LPOP" : "RPOP", key);
+            return;
+        }
+        String[] keys = new String[c.getArgc() - 2];
+        System.arraycopy(c.getArgv(), 1, keys, 0, keys.length);
+        c.getServer().getBlocking().blockForKeys(c, Blocking.BLOCKED_LIST, keys, timeout, null);
+    }
+
+    /**
+     * LMOVE/BLMOVE source destination LEFT|RIGHT LEFT|RIGHT [timeout]
+     *
+     * @param timeout 小于0表示不阻塞
+     */
+    private static void lmoveGenericCommand(RedisClient c, int wherefrom, int whereto, long timeout) {
+        String src = c.arg(1);
+        String dst = c.arg(2);
+        RedisList srclist = lookupListWrite(c, src);
+        if (srclist == null) {
+            if (timeout < 0) {
+                c.addReplyNull();
+            } else {
+                c.getServer().getBlocking().blockForKeys(c, Blocking.BLOCKED_LIST, new String[]{src}, timeout, null);
+            }
+            return;
+        }
+        // 先检查目标键的类型，避免弹出后无法写入
+        RedisList dstlist = lookupListWrite(c, dst);
+        String value = srclist.pop(wherefrom);
+        if (dstlist == null) {
+            RedisObject o = RedisObject.createListObject();
+            c.getDb().dbAdd(dst, o);
+            dstlist = (RedisList) o.getPtr();
+        }
+        dstlist.push(value, whereto);
+        c.getDb().signalModifiedKey(dst);
+        listElementsRemoved(c, src, srclist, 1);
+        c.addReplyBulk(value);
+        if (timeout >= 0) c.rewriteArgv("LMOVE", src, dst, c.arg(3), c.arg(4));
+    }
+}
@@ -0,0 +1,76 @@
+package org.redis.server;
+
+/**
+ * @author zsy
+ * @Description 进程内回环连接
+ *
+ * 成对创建，一端write的数据同步地交给另一端的Handler处理，用于在单个进程内
+ * 搭建主从复制或模拟客户端，便于本地测试。write总是一次全部交给对端；Handler不能持有传入的buf，需要自行拷贝。
+ *
+ * @ClassName LoopbackConnection
+ * @Version 1.0
+ */
+public class LoopbackConnection implements Connection {
+
+    private LoopbackConnection peer;
+
+    private Handler handler;
+
+    private boolean connected = true;
+
+    private LoopbackConnection() {
+    }
+
+    /**
+     * 创建一对互相连接的端点
+     */
+    public static LoopbackConnection[] pair() {
+        LoopbackConnection a = new LoopbackConnection();
+        LoopbackConnection b = new LoopbackConnection();
+        a.peer = b;
+        b.peer = a;
+        return new LoopbackConnection[]{a, b};
+    }
+
+    /**
+     * 连接到server的Connector：server端接受连接并创建客户端，返回另一端
+     */
+    public static Connector connector(final RedisServer server) {
+        return new Connector() {
+            @Override
+            public Connection connect() {
+                LoopbackConnection[] pair = pair();
+                server.acceptConnection(pair[0]);
+                return pair[1];
+            }
+        };
+    }
+
+    @Override
+    public void setHandler(Handler handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    public int write(byte[] buf, int off, int len) {
+        if (!connected) return 0;
+        if (len > 0 && peer.handler != null) peer.handler.onRead(buf, off, len);
+        return len;
+    }
+
+    /**
+     * 关闭连接：两端同时断开，只通知对端
+     */
+    @Override
+    public void close() {
+        if (!connected) return;
+        connected = false;
+        peer.connected = false;
+        if (peer.handler != null) peer.handler.onClose();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return connected;
+    }
+}
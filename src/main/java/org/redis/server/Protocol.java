@@ -0,0 +1,72 @@
+package org.redis.server;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @author zsy
+ * @Description RESP协议编码与共享回复
+ *
+ * 字符串与字节之间统一使用ISO-8859-1转换，每个字符对应一个字节，保证二进制安全。
+ * 常用的固定回复预先编码好，所有客户端共享同一个byte[]，对应Redis中的shared对象。
+ *
+ * @ClassName Protocol
+ * @Version 1.0
+ */
+public class Protocol {
+
+    public static final Charset CHARSET = StandardCharsets.ISO_8859_1;
+
+    public static final byte[] CRLF = toBytes("\r\n");
+
+    public static final byte[] OK = toBytes("+OK\r\n");
+    public static final byte[] PONG = toBytes("+PONG\r\n");
+    public static final byte[] NULL_BULK = toBytes("$-1\r\n");
+    public static final byte[] NULL_ARRAY = toBytes("*-1\r\n");
+    /** RESP3的空值 */
+    public static final byte[] NULL_RESP3 = toBytes("_\r\n");
+    public static final byte[] EMPTY_ARRAY = toBytes("*0\r\n");
+    public static final byte[] CZERO = toBytes(":0\r\n");
+    public static final byte[] CONE = toBytes(":1\r\n");
+
+    public static final String WRONGTYPE_ERR = "WRONGTYPE Operation against a key holding the wrong kind of value";
+    public static final String SYNTAX_ERR = "ERR syntax error";
+
+    public static byte[] toBytes(String s) {
+        return s.getBytes(CHARSET);
+    }
+
+    public static String toString(byte[] buf, int off, int len) {
+        return new String(buf, off, len, CHARSET);
+    }
+
+    /**
+     * 把命令参数编码为RESP多条批量回复：*argc\r\n$len\r\narg\r\n...
+     */
+    public static byte[] encodeCommand(String... argv) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 * (argv.length + 1));
+        writeLine(out, '*', argv.length);
+        for (String arg : argv) {
+            byte[] b = toBytes(arg);
+            writeLine(out, '$', b.length);
+            out.write(b, 0, b.length);
+            out.write(CRLF, 0, 2);
+        }
+        return out.toByteArray();
+    }
+
+    public static byte[] encodeBulk(String s) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(s.length() + 16);
+        byte[] b = toBytes(s);
+        writeLine(out, '$', b.length);
+        out.write(b, 0, b.length);
+        out.write(CRLF, 0, 2);
+        return out.toByteArray();
+    }
+
+    static void writeLine(ByteArrayOutputStream out, char prefix, long n) {
+        byte[] b = toBytes(prefix + Long.toString(n) + "\r\n");
+        out.write(b, 0, b.length);
+    }
+}
@@ -0,0 +1,254 @@
+package org.redis.server;
+
+import org.redis.lang.basis.Dict;
+import org.redis.lang.basis.Rax;
+import org.redis.utils.StringMatchUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author zsy
+ * @Description 发布订阅
+ *
+ * 1. 频道订阅：频道 -> 订阅客户端 的字典，PUBLISH时O(1)找到订阅者；
+ * 2. 模式订阅：模式 -> 订阅客户端 的字典之外，再按模式的字面前缀(第一个通配符之前的部分)建立基数树索引，
+ *    PUBLISH时只需沿频道名在基数树中走一遍，取出 前缀是频道名前缀 的模式做glob匹配，
+ *    不必对所有模式逐一匹配；
+ * 3. 分片频道(SSUBSCRIBE/SPUBLISH)使用独立的字典，不参与模式匹配；
+ * 4. 一条消息对每种协议(RESP2数组/RESP3推送)只编码一次，同一个byte[]追加到所有订阅者的回复队列，
+ *    在beforeSleep中随其他回复合并写出。
+ *
+ * @ClassName PubSub
+ * @Version 1.0
+ */
+public class PubSub {
+
+    private static final byte[] MESSAGE_BULK = Protocol.encodeBulk("message");
+    private static final byte[] PMESSAGE_BULK = Protocol.encodeBulk("pmessage");
+    private static final byte[] SMESSAGE_BULK = Protocol.encodeBulk("smessage");
+
+    /** 频道 -> (客户端ID -> 客户端) */
+    private final Dict<String, Dict<Long, RedisClient>> channels = new Dict<>();
+
+    /** 分片频道 -> (客户端ID -> 客户端) */
+    private final Dict<String, Dict<Long, RedisClient>> shardChannels = new Dict<>();
+
+    /** 模式 -> (客户端ID -> 客户端) */
+    private final Dict<String, Dict<Long, RedisClient>> patterns = new Dict<>();
+
+    /** 字面前缀 -> 具有该前缀的模式 */
+    private final Rax<List<String>> patternIndex = new Rax<>();
+
+    // ------------------------------ 订阅 ------------------------------
+
+    /**
+     * 订阅频道，回复 [subscribe|ssubscribe, channel, count]
+     */
+    void subscribeChannel(RedisClient c, String channel, boolean shard) {
+        Dict<String, Boolean> subscribed = shard ? c.getPubsubShardChannels() : c.getPubsubChannels();
+        if (subscribed.add(channel, Boolean.TRUE)) {
+            Dict<String, Dict<Long, RedisClient>> table = shard ? shardChannels : channels;
+            Dict<Long, RedisClient> clients = table.fetchValue(channel);
+            if (clients == null) {
+                clients = new Dict<>();
+                table.add(channel, clients);
+            }
+            clients.add(c.getId(), c);
+        }
+        addReplyPubsubMessage(c, shard ? "ssubscribe" : "subscribe", channel,
+                shard ? c.getPubsubShardChannels().size() : c.subscriptionCount());
+    }
+
+    /**
+     * 退订频道，notify为false时不回复(客户端释放时)
+     */
+    void unsubscribeChannel(RedisClient c, String channel, boolean notify, boolean shard) {
+        Dict<String, Boolean> subscribed = shard ? c.getPubsubShardChannels() : c.getPubsubChannels();
+        if (subscribed.delete(channel) != null) {
+            Dict<String, Dict<Long, RedisClient>> table = shard ? shardChannels : channels;
+            Dict<Long, RedisClient> clients = table.fetchValue(channel);
+            clients.delete(c.getId());
+            // 最后一个订阅者退订后删除频道
+            if (clients.size() == 0) table.delete(channel);
+        }
+        if (notify) {
+            addReplyPubsubMessage(c, shard ? "sunsubscribe" : "unsubscribe", channel,
+                    shard ? c.getPubsubShardChannels().size() : c.subscriptionCount());
+        }
+    }
+
+    void unsubscribeAllChannels(RedisClient c, boolean notify, boolean shard) {
+        Dict<String, Boolean> subscribed = shard ? c.getPubsubShardChannels() : c.getPubsubChannels();
+        if (subscribed.size() == 0) {
+            // 没有订阅任何频道时也要回复一次
+            if (notify) {
+                addReplyPubsubMessage(c, shard ? "sunsubscribe" : "unsubscribe", null,
+                        shard ? 0 : c.subscriptionCount());
+            }
+            return;
+        }
+        for (String channel : keys(subscribed)) unsubscribeChannel(c, channel, notify, shard);
+    }
+
+    void subscribePattern(RedisClient c, String pattern) {
+        if (c.getPubsubPatterns().add(pattern, Boolean.TRUE)) {
+            Dict<Long, RedisClient> clients = patterns.fetchValue(pattern);
+            if (clients == null) {
+                clients = new Dict<>();
+                patterns.add(pattern, clients);
+                String prefix = StringMatchUtil.literalPrefix(pattern);
+                List<String> group = patternIndex.find(prefix);
+                if (group == null) {
+                    group = new ArrayList<>(1);
+                    patternIndex.insert(prefix, group);
+                }
+                group.add(pattern);
+            }
+            clients.add(c.getId(), c);
+        }
+        addReplyPubsubMessage(c, "psubscribe", pattern, c.subscriptionCount());
+    }
+
+    void unsubscribePattern(RedisClient c, String pattern, boolean notify) {
+        if (c.getPubsubPatterns().delete(pattern) != null) {
+            Dict<Long, RedisClient> clients = patterns.fetchValue(pattern);
+            clients.delete(c.getId());
+            if (clients.size() == 0) {
+                patterns.delete(pattern);
+                String prefix = StringMatchUtil.literalPrefix(pattern);
+                List<String> group = patternIndex.find(prefix);
+                group.remove(pattern);
+                if (group.isEmpty()) patternIndex.remove(prefix);
+            }
+        }
+        if (notify) addReplyPubsubMessage(c, "punsubscribe", pattern, c.subscriptionCount());
+    }
+
+    void unsubscribeAllPatterns(RedisClient c, boolean notify) {
+        if (c.getPubsubPatterns().size() == 0) {
+            if (notify) addReplyPubsubMessage(c, "punsubscribe", null, c.subscriptionCount());
+            return;
+        }
+        for (String pattern : keys(c.getPubsubPatterns())) unsubscribePattern(c, pattern, notify);
+    }
+
+    /**
+     * 客户端释放时退订全部频道和模式
+     */
+    void freeClient(RedisClient c) {
+        unsubscribeAllChannels(c, false, false);
+        unsubscribeAllChannels(c, false, true);
+        unsubscribeAllPatterns(c, false);
+    }
+
+    private static List<String> keys(Dict<String, Boolean> dict) {
+        List<String> keys = new ArrayList<>(dict.size());
+        for (Dict.DictEntry<String, Boolean> de : dict) keys.add(de.getKey());
+        return keys;
+    }
+
+    private static void addReplyPubsubMessage(RedisClient c, String kind, String channel, long count) {
+        c.addReplyPushLen(3);
+        c.addReplyBulk(kind);
+        if (channel == null) {
+            c.addReplyNull();
+        } else {
+            c.addReplyBulk(channel);
+        }
+        c.addReplyLongLong(count);
+    }
+
+    // ------------------------------ 发布 ------------------------------
+
+    /**
+     * 向频道发布消息
+     *
+     * @return 收到消息的客户端数量
+     */
+    public int publishMessage(String channel, String message, boolean shard) {
+        int receivers = 0;
+
+        Dict<Long, RedisClient> clients = (shard ? shardChannels : channels).fetchValue(channel);
+        if (clients != null) {
+            // 每种协议最多编码一次
+            byte[][] msg = new byte[2][];
+            for (Dict.DictEntry<Long, RedisClient> de : clients) {
+                addReplyMessage(de.getVal(), msg, shard ? SMESSAGE_BULK : MESSAGE_BULK, null, channel, message);
+                receivers++;
+            }
+        }
+        if (shard || patterns.size() == 0) return receivers;
+
+        // 只有字面前缀是频道名前缀的模式才可能匹配
+        List<List<String>> candidates = new ArrayList<>();
+        patternIndex.collectPrefixesOf(channel, candidates);
+        for (List<String> group : candidates) {
+            for (String pattern : group) {
+                if (!StringMatchUtil.stringmatch(pattern, channel, false)) continue;
+                byte[][] msg = new byte[2][];
+                for (Dict.DictEntry<Long, RedisClient> de : patterns.fetchValue(pattern)) {
+                    addReplyMessage(de.getVal(), msg, PMESSAGE_BULK, pattern, channel, message);
+                    receivers++;
+                }
+            }
+        }
+        return receivers;
+    }
+
+    /**
+     * 按客户端的协议取出已编码的消息，第一次用到时才编码：msg[0]为RESP2数组，msg[1]为RESP3推送
+     */
+    private static void addReplyMessage(RedisClient c, byte[][] msg, byte[] kind,
+                                        String pattern, String channel, String message) {
+        int idx = c.getResp() >= 3 ? 1 : 0;
+        if (msg[idx] == null) msg[idx] = encodeMessage(kind, pattern, channel, message, idx == 1);
+        c.addReply(msg[idx]);
+    }
+
+    /**
+     * 编码 [message, channel, payload] 或 [pmessage, pattern, channel, payload]
+     */
+    private static byte[] encodeMessage(byte[] kind, String pattern, String channel, String message, boolean push) {
+        byte[] header = Protocol.toBytes((push ? ">" : "*") + (pattern == null ? "3\r\n" : "4\r\n"));
+        byte[] pat = pattern == null ? null : Protocol.encodeBulk(pattern);
+        byte[] ch = Protocol.encodeBulk(channel);
+        byte[] payload = Protocol.encodeBulk(message);
+        int len = header.length + kind.length + (pat == null ? 0 : pat.length) + ch.length + payload.length;
+        byte[] buf = new byte[len];
+        int pos = 0;
+        for (byte[] part : new byte[][]{header, kind, pat, ch, payload}) {
+            if (part == null) continue;
+            System.arraycopy(part, 0, buf, pos, part.length);
+            pos += part.length;
+        }
+        return buf;
+    }
+
+    // ------------------------------ PUBSUB 命令 ------------------------------
+
+    /**
+     * 活跃频道(至少有一个订阅者)，pattern为null时返回全部
+     */
+    public List<String> activeChannels(String pattern, boolean shard) {
+        List<String> result = new ArrayList<>();
+        for (Dict.DictEntry<String, Dict<Long, RedisClient>> de : shard ? shardChannels : channels) {
+            if (pattern == null || StringMatchUtil.stringmatch(pattern, de.getKey(), false)) {
+                result.add(de.getKey());
+            }
+        }
+        return result;
+    }
+
+    public int numSubscribers(String channel, boolean shard) {
+        Dict<Long, RedisClient> clients = (shard ? shardChannels : channels).fetchValue(channel);
+        return clients == null ? 0 : clients.size();
+    }
+
+    /**
+     * 被订阅的模式数量
+     */
+    public int numPatterns() {
+        return patterns.size();
+    }
+}
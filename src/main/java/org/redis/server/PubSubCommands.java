@@ -0,0 +1,127 @@
+package org.redis.server;
+
+import java.util.List;
+
+/**
+ * @author zsy
+ * @Description 发布订阅命令：(P|S)SUBSCRIBE、(P|S)UNSUBSCRIBE、PUBLISH、SPUBLISH、PUBSUB
+ * @ClassName PubSubCommands
+ * @Version 1.0
+ */
+public class PubSubCommands {
+
+    /** 订阅状态下允许执行的命令 */
+    private static final int SUBSCRIBED_OK = RedisCommand.CMD_ADMIN | RedisCommand.CMD_PUBSUB_CONTEXT;
+
+    static void register(RedisServer server) {
+        server.addCommand(new RedisCommand("subscribe", -2, SUBSCRIBED_OK) {
+            @Override
+            public void proc(RedisClient c) {
+                for (int j = 1; j < c.getArgc(); j++) {
+                    c.getServer().getPubSub().subscribeChannel(c, c.arg(j), false);
+                }
+            }
+        });
+        server.addCommand(new RedisCommand("unsubscribe", -1, SUBSCRIBED_OK) {
+            @Override
+            public void proc(RedisClient c) {
+                unsubscribeCommand(c, false);
+            }
+        });
+        server.addCommand(new RedisCommand("psubscribe", -2, SUBSCRIBED_OK) {
+            @Override
+            public void proc(RedisClient c) {
+                for (int j = 1; j < c.getArgc(); j++) {
+                    c.getServer().getPubSub().subscribePattern(c, c.arg(j));
+                }
+            }
+        });
+        server.addCommand(new RedisCommand("punsubscribe", -1, SUBSCRIBED_OK) {
+            @Override
+            public void proc(RedisClient c) {
+                PubSub pubsub = c.getServer().getPubSub();
+                if (c.getArgc() == 1) {
+                    pubsub.unsubscribeAllPatterns(c, true);
+                } else {
+                    for (int j = 1; j < c.getArgc(); j++) pubsub.unsubscribePattern(c, c.arg(j), true);
+                }
+            }
+        });
+        server.addCommand(new RedisCommand("ssubscribe", -2, SUBSCRIBED_OK) {
+            @Override
+            public void proc(RedisClient c) {
+                for (int j = 1; j < c.getArgc(); j++) {
+                    c.getServer().getPubSub().subscribeChannel(c, c.arg(j), true);
+                }
+            }
+        });
+        server.addCommand(new RedisCommand("sunsubscribe", -1, SUBSCRIBED_OK) {
+            @Override
+            public void proc(RedisClient c) {
+                unsubscribeCommand(c, true);
+            }
+        });
+        server.addCommand(new RedisCommand("publish", 3, RedisCommand.CMD_ADMIN) {
+            @Override
+            public void proc(RedisClient c) {
+                publishCommand(c, false);
+            }
+        });
+        server.addCommand(new RedisCommand("spublish", 3, RedisCommand.CMD_ADMIN) {
+            @Override
+            public void proc(RedisClient c) {
+                publishCommand(c, true);
+            }
+        });
+        server.addCommand(new RedisCommand("pubsub", -2, RedisCommand.CMD_ADMIN) {
+            @Override
+            public void proc(RedisClient c) {
+                pubsubCommand(c);
+            }
+        });
+    }
+
+    private static void unsubscribeCommand(RedisClient c, boolean shard) {
+        PubSub pubsub = c.getServer().getPubSub();
+        if (c.getArgc() == 1) {
+            pubsub.unsubscribeAllChannels(c, true, shard);
+        } else {
+            for (int j = 1; j < c.getArgc(); j++) pubsub.unsubscribeChannel(c, c.arg(j), true, shard);
+        }
+    }
+
+    /**
+     * PUBLISH channel message，消息同时传播给从节点，让从节点上的订阅者也能收到
+     */
+    private static void publishCommand(RedisClient c, boolean shard) {
+        int receivers = c.getServer().getPubSub().publishMessage(c.arg(1), c.arg(2), shard);
+        c.addFlags(RedisClient.CLIENT_FORCE_REPL);
+        c.addReplyLongLong(receivers);
+    }
+
+    /**
+     * PUBSUB CHANNELS [pattern] | NUMSUB [channel ...] | NUMPAT
+     *        | SHARDCHANNELS [pattern] | SHARDNUMSUB [channel ...]
+     */
+    private static void pubsubCommand(RedisClient c) {
+        PubSub pubsub = c.getServer().getPubSub();
+        String sub = c.arg(1).toLowerCase();
+        if ((sub.equals("channels") || sub.equals("shardchannels")) && c.getArgc() <= 3) {
+            List<String> list = pubsub.activeChannels(c.getArgc() == 3 ? c.arg(2) : null,
+                    sub.equals("shardchannels"));
+            c.addReplyArrayLen(list.size());
+            for (String channel : list) c.addReplyBulk(channel);
+        } else if (sub.equals("numsub") || sub.equals("shardnumsub")) {
+            boolean shard = sub.equals("shardnumsub");
+            c.addReplyArrayLen((c.getArgc() - 2) * 2L);
+            for (int j = 2; j < c.getArgc(); j++) {
+                c.addReplyBulk(c.arg(j));
+                c.addReplyLongLong(pubsub.numSubscribers(c.arg(j), shard));
+            }
+        } else if (sub.equals("numpat") && c.getArgc() == 2) {
+            c.addReplyLongLong(pubsub.numPatterns());
+        } else {
+            c.addReplyError("ERR unknown subcommand or wrong number of arguments for '" + c.arg(1) + "'");
+        }
+    }
+}
@@ -0,0 +1,607 @@
+package org.redis.server;
+
+import org.redis.db.RedisDB;
+import org.redis.lang.basis.Dict;
+import org.redis.lang.basis.Rax;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * @author zsy
+ * @Description 客户端
+ *
+ * 1. 读：连接上的数据追加到querybuf，按RESP协议解析出完整命令后交给服务端执行；
+ * 2. 写：回复以byte[]为单位追加到reply队列，同一份回复(例如复制流)可以被多个客户端共享，
+ *    在beforeSleep中统一写回连接，一次事件循环内的多个回复合并为一次写操作；
+ *    全量同步的RDB在队列中只占一个标记位置，写到该位置时才边生成边写出。
+ *
+ * @ClassName RedisClient
+ * @Version 1.0
+ */
+public class RedisClient implements Connection.Handler {
+
+    /** 该客户端是连接到本节点的从节点 */
+    public static final int CLIENT_SLAVE = 1;
+
+    /** 该客户端代表本节点的主节点，执行复制流中的命令，不回复 */
+    public static final int CLIENT_MASTER = 1 << 1;
+
+    /** 客户端已释放或需要尽快关闭，不再处理查询缓冲区 */
+    public static final int CLIENT_CLOSE_ASAP = 1 << 2;
+
+    /** 当前命令没有修改数据集也要传播给从节点，例如PUBLISH */
+    public static final int CLIENT_FORCE_REPL = 1 << 3;
+
+    /** 开启了客户端缓存跟踪(CLIENT TRACKING on) */
+    public static final int CLIENT_TRACKING = 1 << 4;
+
+    /** 失效消息的转发目标客户端已断开 */
+    public static final int CLIENT_TRACKING_BROKEN_REDIR = 1 << 5;
+
+    /** 广播模式：按前缀订阅失效消息，不记录读取过的键 */
+    public static final int CLIENT_TRACKING_BCAST = 1 << 6;
+
+    /** 只跟踪 CLIENT CACHING yes 之后的下一条命令读取的键 */
+    public static final int CLIENT_TRACKING_OPTIN = 1 << 7;
+
+    /** 不跟踪 CLIENT CACHING no 之后的下一条命令读取的键 */
+    public static final int CLIENT_TRACKING_OPTOUT = 1 << 8;
+
+    /** 收到了CLIENT CACHING，只对下一条命令有效 */
+    public static final int CLIENT_TRACKING_CACHING = 1 << 9;
+
+    /** 不接收自己修改的键的失效消息 */
+    public static final int CLIENT_TRACKING_NOLOOP = 1 << 10;
+
+    /** 阻塞在BLPOP/BZPOPMIN/XREAD BLOCK等命令上，暂停处理查询缓冲区 */
+    public static final int CLIENT_BLOCKED = 1 << 11;
+
+    /** 协议错误等情况下，不再处理输入和追加回复，已有的回复全部写出后关闭 */
+    public static final int CLIENT_CLOSE_AFTER_REPLY = 1 << 12;
+
+    /** 回复队列中小于该长度的连续回复合并为一次写操作 */
+    private static final int PROTO_IOBUF_LEN = 16 * 1024;
+
+    /** 回复队列中全量同步RDB的位置，按引用比较 */
+    private static final byte[] RDB_TRANSFER = new byte[0];
+
+    private final long id;
+
+    private final RedisServer server;
+
+    /** 为null时是内部使用的伪客户端，回复保留在reply队列中 */
+    private final Connection conn;
+
+    private RedisDB db;
+
+    /** 当前命令的参数，argv[0]为命令名 */
+    private String[] argv;
+
+    /** 命令执行时改写的传播参数，为null时按原样传播argv */
+    private String[] propagateArgv;
+
+    private RedisCommand cmd;
+
+    private int flags;
+
+    /** 查询缓冲区，[qbPos, qbLen)为尚未解析的数据 */
+    private byte[] querybuf = new byte[1024];
+
+    private int qbLen;
+
+    private int qbPos;
+
+    /** 回复队列 */
+    private final ArrayDeque<byte[]> reply = new ArrayDeque<>();
+
+    private long replyBytes;
+
+    /** 回复队列头部已经写出的字节数 */
+    private int sentlen;
+
+    /** 是否已加入服务端的待写客户端列表 */
+    private boolean pendingWrite;
+
+    /** 正在发送的全量同步RDB，对应回复队列中的RDB_TRANSFER */
+    private Replication.RdbTransfer rdbTransfer;
+
+    /** 从节点上报的复制偏移量(REPLCONF ACK) */
+    private long replAckOff;
+
+    private long replAckTime;
+
+    /** 订阅的频道、模式和分片频道，值固定为Boolean.TRUE */
+    private final Dict<String, Boolean> pubsubChannels = new Dict<>();
+
+    private final Dict<String, Boolean> pubsubPatterns = new Dict<>();
+
+    private final Dict<String, Boolean> pubsubShardChannels = new Dict<>();
+
+    /** 协议版本，HELLO 3 切换为RESP3 */
+    private int resp = 2;
+
+    /** 失效消息转发到的客户端ID，0表示发给自己 */
+    private long trackingRedirection;
+
+    /** 广播模式下订阅的前缀 */
+    private Rax<Boolean> trackingPrefixes;
+
+    /** 阻塞状态，未阻塞时为null */
+    private Blocking.BlockingState blockingState;
+
+    RedisClient(long id, RedisServer server, Connection conn) {
+        this.id = id;
+        this.server = server;
+        this.conn = conn;
+        this.db = server.getDb(0);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public RedisServer getServer() {
+        return server;
+    }
+
+    public Connection getConn() {
+        return conn;
+    }
+
+    public RedisDB getDb() {
+        return db;
+    }
+
+    public void selectDb(int id) {
+        if (id < 0 || id >= server.getDbnum()) {
+            throw new IllegalArgumentException("ERR DB index is out of range");
+        }
+        db = server.getDb(id);
+    }
+
+    public String[] getArgv() {
+        return argv;
+    }
+
+    public int getArgc() {
+        return argv.length;
+    }
+
+    public String arg(int i) {
+        return argv[i];
+    }
+
+    void setArgv(String[] argv) {
+        this.argv = argv;
+        this.propagateArgv = null;
+    }
+
+    /**
+     * 改写传播给从节点的命令，例如把EXPIRE改写为PEXPIREAT，保证主从的过期时间一致
+     */
+    public void rewriteArgv(String... argv) {
+        this.propagateArgv = argv;
+    }
+
+    String[] getPropagateArgv() {
+        return propagateArgv != null ? propagateArgv : argv;
+    }
+
+    public RedisCommand getCmd() {
+        return cmd;
+    }
+
+    void setCmd(RedisCommand cmd) {
+        this.cmd = cmd;
+    }
+
+    public int getFlags() {
+        return flags;
+    }
+
+    public void addFlags(int flag) {
+        flags |= flag;
+    }
+
+    public void removeFlags(int flag) {
+        flags &= ~flag;
+    }
+
+    public boolean isMaster() {
+        return (flags & CLIENT_MASTER) != 0;
+    }
+
+    public boolean isSlave() {
+        return (flags & CLIENT_SLAVE) != 0;
+    }
+
+    public long getReplAckOff() {
+        return replAckOff;
+    }
+
+    void setReplAck(long offset, long time) {
+        replAckOff = offset;
+        replAckTime = time;
+    }
+
+    public long getReplAckTime() {
+        return replAckTime;
+    }
+
+    public int getResp() {
+        return resp;
+    }
+
+    void setResp(int resp) {
+        this.resp = resp;
+    }
+
+    public long getTrackingRedirection() {
+        return trackingRedirection;
+    }
+
+    void setTrackingRedirection(long trackingRedirection) {
+        this.trackingRedirection = trackingRedirection;
+    }
+
+    Rax<Boolean> getTrackingPrefixes() {
+        return trackingPrefixes;
+    }
+
+    void setTrackingPrefixes(Rax<Boolean> trackingPrefixes) {
+        this.trackingPrefixes = trackingPrefixes;
+    }
+
+    Blocking.BlockingState getBlockingState() {
+        return blockingState;
+    }
+
+    void setBlockingState(Blocking.BlockingState blockingState) {
+        this.blockingState = blockingState;
+    }
+
+    public boolean isBlocked() {
+        return (flags & CLIENT_BLOCKED) != 0;
+    }
+
+    Dict<String, Boolean> getPubsubChannels() {
+        return pubsubChannels;
+    }
+
+    Dict<String, Boolean> getPubsubPatterns() {
+        return pubsubPatterns;
+    }
+
+    Dict<String, Boolean> getPubsubShardChannels() {
+        return pubsubShardChannels;
+    }
+
+    /**
+     * 订阅的频道和模式总数，分片频道单独计数
+     */
+    public int subscriptionCount() {
+        return pubsubChannels.size() + pubsubPatterns.size();
+    }
+
+    /**
+     * 是否处于订阅状态
+     */
+    public boolean isPubSub() {
+        return subscriptionCount() + pubsubShardChannels.size() > 0;
+    }
+
+    // ------------------------------ 读 ------------------------------
+
+    @Override
+    public void onRead(byte[] buf, int off, int len) {
+        if (qbLen + len > querybuf.length) {
+            byte[] newbuf = new byte[Math.max(querybuf.length * 2, qbLen + len)];
+            System.arraycopy(querybuf, 0, newbuf, 0, qbLen);
+            querybuf = newbuf;
+        }
+        System.arraycopy(buf, off, querybuf, qbLen, len);
+        qbLen += len;
+        processInputBuffer();
+    }
+
+    @Override
+    public void onClose() {
+        server.freeClient(this);
+    }
+
+    /**
+     * 循环解析并执行querybuf中所有完整的命令，客户端被阻塞后暂停，解除阻塞后继续
+     */
+    void processInputBuffer() {
+        while (qbPos < qbLen && (flags & (CLIENT_CLOSE_ASAP | CLIENT_CLOSE_AFTER_REPLY | CLIENT_BLOCKED)) == 0) {
+            int start = qbPos;
+            String[] args;
+            try {
+                args = parseCommand();
+            } catch (IllegalArgumentException e) {
+                addReplyError(e.getMessage());
+                flags |= CLIENT_CLOSE_AFTER_REPLY;
+                break;
+            }
+            // 命令还不完整，等待更多数据
+            if (args == null) break;
+
+            if (args.length > 0) {
+                setArgv(args);
+                server.processCommand(this);
+                argv = null;
+            }
+            // 主节点的复制流：已执行的部分原样追加到自己的积压缓冲区，并转发给子从节点
+            if ((flags & CLIENT_MASTER) != 0) {
+                server.getReplication().feedStreamFromMasterStream(querybuf, start, qbPos - start);
+            }
+        }
+
+        // 压缩缓冲区，丢弃已处理的数据
+        if (qbPos == qbLen) {
+            qbPos = qbLen = 0;
+        } else if (qbPos > 0) {
+            System.arraycopy(querybuf, qbPos, querybuf, 0, qbLen - qbPos);
+            qbLen -= qbPos;
+            qbPos = 0;
+        }
+        // 错误回复在beforeSleep中写出后再关闭；没有待写回复(例如主节点客户端)时直接关闭
+        if ((flags & CLIENT_CLOSE_AFTER_REPLY) != 0 && !pendingWrite) server.freeClient(this);
+    }
+
+    /**
+     * 解析一条命令，数据不完整时返回null且不移动qbPos
+     */
+    private String[] parseCommand() {
+        if (querybuf[qbPos] != '*') return parseInlineCommand();
+
+        int pos = qbPos;
+        int nl = indexOfCrlf(pos);
+        if (nl < 0) return null;
+        int count = (int) parseNumber(pos + 1, nl, "invalid multibulk length");
+        pos = nl + 2;
+        if (count <= 0) {
+            qbPos = pos;
+            return new String[0];
+        }
+
+        String[] args = new String[count];
+        for (int i = 0; i < count; i++) {
+            if (pos >= qbLen) return null;
+            if (querybuf[pos] != '$') {
+                throw new IllegalArgumentException("ERR Protocol error: expected '$', got '" + (char) querybuf[pos] + "'");
+            }
+            nl = indexOfCrlf(pos);
+            if (nl < 0) return null;
+            int bulklen = (int) parseNumber(pos + 1, nl, "invalid bulk length");
+            pos = nl + 2;
+            if (pos + bulklen + 2 > qbLen) return null;
+            args[i] = Protocol.toString(querybuf, pos, bulklen);
+            pos += bulklen + 2;
+        }
+        qbPos = pos;
+        return args;
+    }
+
+    /**
+     * 内联命令：以空格分隔的一行，空行用作心跳
+     */
+    private String[] parseInlineCommand() {
+        int nl = qbPos;
+        while (nl < qbLen && querybuf[nl] != '\n') nl++;
+        if (nl == qbLen) return null;
+        String line = Protocol.toString(querybuf, qbPos, nl - qbPos).trim();
+        qbPos = nl + 1;
+        return line.isEmpty() ? new String[0] : line.split(" +");
+    }
+
+    private int indexOfCrlf(int from) {
+        for (int i = from; i + 1 < qbLen; i++) {
+            if (querybuf[i] == '\r' && querybuf[i + 1] == '\n') return i;
+        }
+        return -1;
+    }
+
+    private long parseNumber(int from, int to, String err) {
+        try {
+            return Long.parseLong(Protocol.toString(querybuf, from, to - from));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("ERR Protocol error: " + err);
+        }
+    }
+
+    // ------------------------------ 写 ------------------------------
+
+    /**
+     * 主节点客户端不需要回复；有连接的客户端加入待写列表，在beforeSleep中统一写出
+     */
+    private boolean prepareClientToWrite() {
+        if ((flags & (CLIENT_MASTER | CLIENT_CLOSE_AFTER_REPLY)) != 0) return false;
+        if (conn != null && !pendingWrite) {
+            pendingWrite = true;
+            server.addPendingWrite(this);
+        }
+        return true;
+    }
+
+    /**
+     * 追加一段已编码的回复，buf会被直接引用，调用方之后不能再修改它
+     */
+    public void addReply(byte[] buf) {
+        if (!prepareClientToWrite()) return;
+        reply.add(buf);
+        replyBytes += buf.length;
+    }
+
+    /**
+     * 在回复队列的当前位置发送全量同步的RDB，之后追加的回复在RDB发送完毕后写出
+     */
+    void addRdbTransfer(Replication.RdbTransfer transfer) {
+        if (!prepareClientToWrite()) {
+            transfer.abort();
+            return;
+        }
+        rdbTransfer = transfer;
+        reply.add(RDB_TRANSFER);
+    }
+
+    void abortRdbTransfer() {
+        if (rdbTransfer == null) return;
+        rdbTransfer.abort();
+        rdbTransfer = null;
+    }
+
+    public void addReplyStatus(String status) {
+        addReply(Protocol.toBytes("+" + status + "\r\n"));
+    }
+
+    public void addReplyError(String err) {
+        addReply(Protocol.toBytes("-" + err + "\r\n"));
+    }
+
+    public void addReplyBulk(String s) {
+        addReply(Protocol.encodeBulk(s));
+    }
+
+    public void addReplyLongLong(long ll) {
+        if (ll == 0) {
+            addReply(Protocol.CZERO);
+        } else if (ll == 1) {
+            addReply(Protocol.CONE);
+        } else {
+            addReply(Protocol.toBytes(":" + ll + "\r\n"));
+        }
+    }
+
+    public void addReplyArrayLen(long len) {
+        addReply(Protocol.toBytes("*" + len + "\r\n"));
+    }
+
+    public void addReplyNull() {
+        addReply(resp >= 3 ? Protocol.NULL_RESP3 : Protocol.NULL_BULK);
+    }
+
+    /**
+     * 空数组：阻塞命令超时等情况
+     */
+    public void addReplyNullArray() {
+        addReply(resp >= 3 ? Protocol.NULL_RESP3 : Protocol.NULL_ARRAY);
+    }
+
+    /**
+     * RESP3的推送类型，RESP2下退化为数组
+     */
+    public void addReplyPushLen(long len) {
+        addReply(Protocol.toBytes((resp >= 3 ? ">" : "*") + len + "\r\n"));
+    }
+
+    /**
+     * RESP3的映射类型，RESP2下退化为 2*len 个元素的数组
+     */
+    public void addReplyMapLen(long len) {
+        addReply(Protocol.toBytes(resp >= 3 ? "%" + len + "\r\n" : "*" + len * 2 + "\r\n"));
+    }
+
+    /**
+     * 浮点数以批量字符串回复，整数值不带小数部分
+     */
+    public void addReplyDouble(double d) {
+        if (d == Math.rint(d) && Math.abs(d) < 1e17) {
+            addReplyBulk(Long.toString((long) d));
+        } else if (Double.isInfinite(d)) {
+            addReplyBulk(d > 0 ? "inf" : "-inf");
+        } else {
+            addReplyBulk(Double.toString(d));
+        }
+    }
+
+    public boolean hasPendingReplies() {
+        return !reply.isEmpty();
+    }
+
+    /**
+     * 伪客户端取出一条回复
+     */
+    public byte[] pollReply() {
+        byte[] buf = reply.poll();
+        if (buf != null) replyBytes -= buf.length;
+        return buf;
+    }
+
+    public long getReplyBytes() {
+        return replyBytes;
+    }
+
+    /**
+     * 把回复队列写入连接。
+     * 连接只写出一部分时，剩余的回复留在队列中，客户端重新加入待写列表，在下一次beforeSleep中继续写出
+     */
+    void writeToClient() {
+        pendingWrite = false;
+        if (conn == null) return;
+        // 连接已断开，释放客户端(从节点会从复制列表中移除)
+        if (!conn.isConnected()) {
+            server.freeClient(this);
+            return;
+        }
+        // 大块回复直接写出；连续的小块回复(例如大量发布订阅消息)先拷贝到同一个缓冲区，合并为一次写操作
+        byte[] iobuf = null;
+        while (!reply.isEmpty()) {
+            byte[] buf = reply.peek();
+            if (buf == RDB_TRANSFER) {
+                if (!writeRdbTransfer()) break;
+                reply.poll();
+                continue;
+            }
+            if (sentlen > 0 || buf.length >= PROTO_IOBUF_LEN || reply.size() == 1) {
+                int nwritten = conn.write(buf, sentlen, buf.length - sentlen);
+                sentlen += nwritten;
+                replyBytes -= nwritten;
+                if (sentlen < buf.length) break;
+                reply.poll();
+                sentlen = 0;
+                continue;
+            }
+            if (iobuf == null) iobuf = new byte[PROTO_IOBUF_LEN];
+            int bufpos = 0;
+            while ((buf = reply.peek()) != null && buf != RDB_TRANSFER && bufpos + buf.length <= PROTO_IOBUF_LEN) {
+                System.arraycopy(buf, 0, iobuf, bufpos, buf.length);
+                bufpos += buf.length;
+                reply.poll();
+            }
+            int nwritten = conn.write(iobuf, 0, bufpos);
+            replyBytes -= nwritten;
+            if (nwritten < bufpos) {
+                // 合并缓冲区没有写完，剩余部分放回队列头部
+                reply.addFirst(Arrays.copyOfRange(iobuf, nwritten, bufpos));
+                break;
+            }
+        }
+
+        if ((flags & CLIENT_CLOSE_ASAP) != 0) return;
+        if (!reply.isEmpty()) {
+            pendingWrite = true;
+            server.addPendingWrite(this);
+        } else if ((flags & CLIENT_CLOSE_AFTER_REPLY) != 0) {
+            server.freeClient(this);
+        }
+    }
+
+    /**
+     * 写出全量同步的RDB，每次最多发送REPL_TRANSFER_BYTES_PER_CALL字节，剩余部分在之后的beforeSleep中继续
+     *
+     * @return RDB全部写出返回true
+     */
+    private boolean writeRdbTransfer() {
+        try {
+            if (!rdbTransfer.writeTo(conn, Replication.REPL_TRANSFER_BYTES_PER_CALL)) return false;
+        } catch (IOException e) {
+            server.freeClient(this);
+            return false;
+        }
+        rdbTransfer = null;
+        return true;
+    }
+}
@@ -0,0 +1,94 @@
+package org.redis.server;
+
+/**
+ * @author zsy
+ * @Description Redis命令
+ *
+ * 对应Redis中的redisCommand结构：命令名、参数个数和标志位，proc为命令的实现。
+ * arity为正数表示参数个数必须相等，负数表示参数个数至少为 -arity (都包含命令名本身)。
+ * firstkey/lastkey/keystep描述键参数的位置，用于客户端缓存跟踪命令读取了哪些键。
+ *
+ * @ClassName RedisCommand
+ * @Version 1.0
+ */
+public abstract class RedisCommand {
+
+    /** 写命令：会修改数据集，需要传播给从节点，只读从节点上拒绝执行 */
+    public static final int CMD_WRITE = 1;
+
+    /** 只读命令 */
+    public static final int CMD_READONLY = 1 << 1;
+
+    /** 管理类命令，不涉及键空间 */
+    public static final int CMD_ADMIN = 1 << 2;
+
+    /** RESP2协议下，客户端处于订阅状态时仍允许执行的命令 */
+    public static final int CMD_PUBSUB_CONTEXT = 1 << 3;
+
+    /** 加载数据期间允许执行的命令 */
+    public static final int CMD_LOADING = 1 << 4;
+
+    private final String name;
+
+    private final int arity;
+
+    private final int flags;
+
+    /** 第一个键参数的位置，0表示命令不涉及键 */
+    private final int firstkey;
+
+    /** 最后一个键参数的位置，负数表示从末尾倒数 */
+    private final int lastkey;
+
+    /** 相邻键参数的间隔 */
+    private final int keystep;
+
+    public RedisCommand(String name, int arity, int flags) {
+        this(name, arity, flags, 0, 0, 0);
+    }
+
+    public RedisCommand(String name, int arity, int flags, int firstkey, int lastkey, int keystep) {
+        this.name = name;
+        this.arity = arity;
+        this.flags = flags;
+        this.firstkey = firstkey;
+        this.lastkey = lastkey;
+        this.keystep = keystep;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getArity() {
+        return arity;
+    }
+
+    public int getFlags() {
+        return flags;
+    }
+
+    public boolean isWrite() {
+        return (flags & CMD_WRITE) != 0;
+    }
+
+    public boolean isReadonly() {
+        return (flags & CMD_READONLY) != 0;
+    }
+
+    /**
+     * 按firstkey/lastkey/keystep从参数中取出键，对应Redis中的getKeysFromCommand
+     */
+    public String[] getKeys(String[] argv) {
+        if (firstkey == 0) return new String[0];
+        int last = lastkey < 0 ? argv.length + lastkey : lastkey;
+        String[] keys = new String[(last - firstkey) / keystep + 1];
+        for (int j = firstkey, i = 0; j <= last; j += keystep, i++) keys[i] = argv[j];
+        return keys;
+    }
+
+    /**
+     * 命令实现
+     */
+    public abstract void proc(RedisClient c);
+}
@@ -0,0 +1,373 @@
+package org.redis.server;
+
+import org.redis.db.KeyspaceListener;
+import org.redis.db.MappedRDBLoader;
+import org.redis.db.RedisDB;
+import org.redis.lang.basis.Dict;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author zsy
+ * @Description Redis服务端
+ *
+ * 单线程事件循环模型：
+ *      1. 连接上的数据到达后立即解析并执行命令(processCommand -> call)，回复只写入客户端的回复队列；
+ *      2. 每轮事件循环进入等待前调用beforeSleep：处理阻塞命令的超时和就绪的键，
+ *         再把所有待写客户端的回复一次性写回连接(包括客户端缓存的失效消息)；
+ *      3. serverCron周期执行：定期删除过期键、主从复制的重连与心跳等。
+ * 写命令执行后如果修改了数据集(dirty增加)，会被传播给从节点；PUBLISH等命令可以强制传播。
+ * 以内存映射方式加载RDB时，每轮事件循环加载一批键值对，加载完成前只执行带CMD_LOADING标志的命令。
+ *
+ * @ClassName RedisServer
+ * @Version 1.0
+ */
+public class RedisServer implements KeyspaceListener {
+
+    public static final String REDIS_VERSION = "7.0.0";
+
+    public static final int CONFIG_DEFAULT_DBNUM = 16;
+
+    /** 定期删除每个数据库每次抽样的键数量 */
+    private static final int ACTIVE_EXPIRE_CYCLE_KEYS_PER_LOOP = 20;
+
+    private final RedisDB[] db;
+
+    /** 命令表：命令名(小写) -> 命令 */
+    private final Dict<String, RedisCommand> commands = new Dict<>();
+
+    /** 客户端ID -> 客户端 */
+    private final Dict<Long, RedisClient> clients = new Dict<>();
+
+    /** 有回复等待写出的客户端 */
+    private final List<RedisClient> clientsPendingWrite = new ArrayList<>();
+
+    private long nextClientId = 1;
+
+    /** 上次保存以来数据集的修改次数 */
+    private long dirty;
+
+    /** 正在执行命令的客户端 */
+    private RedisClient currentClient;
+
+    private final Replication replication;
+
+    private final PubSub pubsub = new PubSub();
+
+    private final Tracking tracking = new Tracking(this);
+
+    private final Blocking blocking;
+
+    /** 正在分批加载的RDB文件，加载完成后为null */
+    private MappedRDBLoader loading;
+
+    public RedisServer() {
+        this(CONFIG_DEFAULT_DBNUM);
+    }
+
+    public RedisServer(int dbnum) {
+        db = new RedisDB[dbnum];
+        for (int j = 0; j < dbnum; j++) {
+            db[j] = new RedisDB(j);
+            db[j].setListener(this);
+        }
+        replication = new Replication(this);
+        blocking = new Blocking(this);
+        populateCommandTable();
+    }
+
+    private void populateCommandTable() {
+        addCommand(new RedisCommand("ping", -1, RedisCommand.CMD_READONLY | RedisCommand.CMD_PUBSUB_CONTEXT
+                | RedisCommand.CMD_LOADING) {
+            @Override
+            public void proc(RedisClient c) {
+                if (c.getArgc() > 2) {
+                    c.addReplyError("ERR wrong number of arguments for 'ping' command");
+                } else if (c.isPubSub() && c.getResp() == 2) {
+                    // 订阅状态下以消息的格式回复 [pong, message]
+                    c.addReplyArrayLen(2);
+                    c.addReplyBulk("pong");
+                    c.addReplyBulk(c.getArgc() == 2 ? c.arg(1) : "");
+                } else if (c.getArgc() == 2) {
+                    c.addReplyBulk(c.arg(1));
+                } else {
+                    c.addReply(Protocol.PONG);
+                }
+            }
+        });
+        DbCommands.register(this);
+        StringCommands.register(this);
+        ZSetCommands.register(this);
+        HashCommands.register(this);
+        SetCommands.register(this);
+        ListCommands.register(this);
+        StreamCommands.register(this);
+        GeoCommands.register(this);
+        ReplicationCommands.register(this);
+        PubSubCommands.register(this);
+        ClientCommands.register(this);
+    }
+
+    public void addCommand(RedisCommand cmd) {
+        commands.replace(cmd.getName(), cmd);
+    }
+
+    public RedisCommand lookupCommand(String name) {
+        return commands.fetchValue(name.toLowerCase());
+    }
+
+    public RedisDB getDb(int id) {
+        return db[id];
+    }
+
+    public RedisDB[] getDbs() {
+        return db;
+    }
+
+    public int getDbnum() {
+        return db.length;
+    }
+
+    public Replication getReplication() {
+        return replication;
+    }
+
+    public PubSub getPubSub() {
+        return pubsub;
+    }
+
+    public Tracking getTracking() {
+        return tracking;
+    }
+
+    public Blocking getBlocking() {
+        return blocking;
+    }
+
+    public boolean isLoading() {
+        return loading != null;
+    }
+
+    public MappedRDBLoader getLoading() {
+        return loading;
+    }
+
+    public RedisClient getCurrentClient() {
+        return currentClient;
+    }
+
+    public long getDirty() {
+        return dirty;
+    }
+
+    /**
+     * 记录数据集被修改
+     */
+    public void incrDirty(long n) {
+        dirty += n;
+    }
+
+    /**
+     * 以内存映射的方式加载RDB文件：建立索引后清空所有数据库并立即返回，之后每轮事件循环加载一批键值对。
+     * 加载完成前GET可以直接从映射的文件中读取，其他不带CMD_LOADING标志的命令回复LOADING错误
+     */
+    public void loadMappedRdb(File file) throws IOException {
+        MappedRDBLoader loader = MappedRDBLoader.open(file, db);
+        for (RedisDB d : db) d.emptyData();
+        loading = loader;
+    }
+
+    // ------------------------------ 客户端 ------------------------------
+
+    /**
+     * 创建客户端，conn为null时创建不关联连接的伪客户端
+     */
+    public RedisClient createClient(Connection conn) {
+        RedisClient c = new RedisClient(nextClientId++, this, conn);
+        clients.add(c.getId(), c);
+        return c;
+    }
+
+    /**
+     * 接受一条新连接
+     */
+    public RedisClient acceptConnection(Connection conn) {
+        RedisClient c = createClient(conn);
+        conn.setHandler(c);
+        return c;
+    }
+
+    Dict<Long, RedisClient> getClients() {
+        return clients;
+    }
+
+    public RedisClient lookupClient(long id) {
+        return clients.fetchValue(id);
+    }
+
+    /**
+     * 释放客户端，可以重复调用
+     */
+    public void freeClient(RedisClient c) {
+        if (clients.delete(c.getId()) == null) return;
+        c.addFlags(RedisClient.CLIENT_CLOSE_ASAP);
+        if (c.isSlave()) replication.removeSlave(c);
+        if (c.isMaster()) replication.masterClientFreed(c);
+        pubsub.freeClient(c);
+        tracking.disableTracking(c);
+        blocking.freeClient(c);
+        clientsPendingWrite.remove(c);
+        if (c.getConn() != null) c.getConn().close();
+    }
+
+    void addPendingWrite(RedisClient c) {
+        clientsPendingWrite.add(c);
+    }
+
+    // ------------------------------ 命令执行 ------------------------------
+
+    /**
+     * 查找命令并检查参数个数、只读从节点等限制，然后执行
+     */
+    public void processCommand(RedisClient c) {
+        RedisCommand cmd = lookupCommand(c.arg(0));
+        if (cmd == null) {
+            c.addReplyError("ERR unknown command '" + c.arg(0) + "'");
+            return;
+        }
+        int arity = cmd.getArity();
+        if ((arity > 0 && arity != c.getArgc()) || (c.getArgc() < -arity)) {
+            c.addReplyError("ERR wrong number of arguments for '" + cmd.getName() + "' command");
+            return;
+        }
+        if (loading != null && (cmd.getFlags() & RedisCommand.CMD_LOADING) == 0) {
+            c.addReplyError("LOADING Redis is loading the dataset in memory");
+            return;
+        }
+        // RESP2的订阅状态下只能执行订阅相关的命令，RESP3的推送消息与普通回复可以共存
+        if (c.getResp() == 2 && c.isPubSub() && (cmd.getFlags() & RedisCommand.CMD_PUBSUB_CONTEXT) == 0) {
+            c.addReplyError("ERR Can't execute '" + cmd.getName() + "': only (P|S)SUBSCRIBE / "
+                    + "(P|S)UNSUBSCRIBE / PING / QUIT / RESET are allowed in this context");
+            return;
+        }
+        // 只读从节点拒绝普通客户端的写命令，主节点复制流中的命令除外
+        if (replication.isReplica() && replication.isReplSlaveReadOnly()
+                && !c.isMaster() && cmd.isWrite()) {
+            c.addReplyError("READONLY You can't write against a read only replica.");
+            return;
+        }
+        call(c, cmd);
+    }
+
+    /**
+     * 执行命令，修改了数据集的命令传播给从节点
+     */
+    public void call(RedisClient c, RedisCommand cmd) {
+        long prevDirty = dirty;
+        RedisClient prevClient = currentClient;
+        currentClient = c;
+        c.setCmd(cmd);
+        c.removeFlags(RedisClient.CLIENT_FORCE_REPL);
+        // CLIENT CACHING只对紧随其后的一条命令有效
+        boolean cachingGiven = (c.getFlags() & RedisClient.CLIENT_TRACKING_CACHING) != 0;
+        try {
+            cmd.proc(c);
+            // 只读命令读取的键记录到跟踪表
+            if (cmd.isReadonly() && (c.getFlags() & RedisClient.CLIENT_TRACKING) != 0
+                    && (c.getFlags() & RedisClient.CLIENT_TRACKING_BCAST) == 0) {
+                tracking.rememberKeys(c);
+            }
+        } catch (IllegalArgumentException e) {
+            c.addReplyError(e.getMessage());
+        } finally {
+            currentClient = prevClient;
+        }
+        if (cachingGiven) c.removeFlags(RedisClient.CLIENT_TRACKING_CACHING);
+        tracking.handlePendingKeyInvalidations(c);
+
+        // 主节点发来的命令由复制流原样转发，这里不再传播
+        boolean force = (c.getFlags() & RedisClient.CLIENT_FORCE_REPL) != 0;
+        if ((dirty != prevDirty || force) && !c.isMaster()) {
+            propagate(c.getDb().getId(), c.getPropagateArgv());
+        }
+    }
+
+    /**
+     * 把命令传播给从节点
+     */
+    public void propagate(int dbid, String[] argv) {
+        replication.feedSlaves(dbid, argv);
+    }
+
+    /**
+     * 主节点上的过期键删除以DEL的形式传播，从节点不会自行删除过期键
+     */
+    @Override
+    public void keyExpired(RedisDB db, String key) {
+        propagate(db.getId(), new String[]{"DEL", key});
+        tracking.invalidateKey(key, true);
+    }
+
+    /**
+     * 键被修改：向缓存了该键的客户端发送失效消息，唤醒阻塞在该键上的客户端
+     */
+    @Override
+    public void keyModified(RedisDB db, String key) {
+        tracking.invalidateKey(key, true);
+        blocking.signalKeyAsReady(db, key);
+    }
+
+    @Override
+    public void keyspaceFlushed(RedisDB db) {
+        tracking.invalidateKeysOnFlush();
+    }
+
+    // ------------------------------ 事件循环 ------------------------------
+
+    /**
+     * 每轮事件循环进入等待前调用：
+     * 加载一批RDB数据，处理阻塞命令的超时和就绪的键，淘汰超出上限的跟踪键，广播失效消息，写出所有待写客户端的回复
+     */
+    public void beforeSleep() {
+        if (loading != null) loadDataChunk();
+        if (blocking.getBlockedClients() > 0) blocking.handleBlockedClientsTimeout(System.currentTimeMillis());
+        // 解除阻塞的客户端继续执行后续命令，可能又产生新的就绪键
+        do {
+            blocking.handleClientsBlockedOnKeys();
+            blocking.processUnblockedClients();
+        } while (blocking.hasReadyKeys());
+        if (tracking.getTrackingClients() > 0) tracking.limitUsedSlots();
+        tracking.broadcastInvalidationMessages();
+        handleClientsWithPendingWrites();
+    }
+
+    private void loadDataChunk() {
+        try {
+            if (loading.loadChunk()) loading = null;
+        } catch (IOException e) {
+            // 与Redis一致，文件损坏时无法继续运行
+            throw new IllegalStateException("Short read or corrupted RDB loading DB, aborting", e);
+        }
+    }
+
+    private void handleClientsWithPendingWrites() {
+        if (clientsPendingWrite.isEmpty()) return;
+        List<RedisClient> pending = new ArrayList<>(clientsPendingWrite);
+        clientsPendingWrite.clear();
+        for (RedisClient c : pending) c.writeToClient();
+    }
+
+    /**
+     * 周期任务
+     */
+    public void serverCron() {
+        // 加载期间数据集不完整，不删除过期键
+        if (!replication.isReplica() && loading == null) {
+            for (RedisDB d : db) d.activeExpireCycle(ACTIVE_EXPIRE_CYCLE_KEYS_PER_LOOP);
+        }
+        replication.replicationCron();
+    }
+}
@@ -0,0 +1,644 @@
+package org.redis.server;
+
+import org.redis.db.RDB;
+import org.redis.db.RedisDB;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @author zsy
+ * @Description 主从复制
+ *
+ * 主节点：
+ *      1. 每个写命令执行后编码一次，追加到复制积压缓冲区并发送给所有从节点，复制偏移量随之增加；
+ *      2. PSYNC replid offset：replid匹配且offset仍在积压缓冲区内时回复 +CONTINUE 并补发缺失数据，
+ *         否则回复 +FULLRESYNC，由RDB.Saver边生成边发送RDB(无盘复制)，不落临时文件：
+ *         每次只生成一块，写入连接后再生成下一块，连接写不进去时暂停生成，期间的复制流在回复队列中等待RDB发送完毕；
+ * 从节点：
+ *      1. 握手后接收RDB并加载，之后作为主节点的客户端执行复制流中的命令；
+ *      2. 复制流同样写入自己的积压缓冲区，断线重连或被提升为主节点后，
+ *         其他节点可以用旧的replid(replid2)继续部分重同步(PSYNC2)。
+ *
+ * @ClassName Replication
+ * @Version 1.0
+ */
+public class Replication {
+
+    /** 从节点状态 */
+    public static final int REPL_STATE_NONE = 0;
+    public static final int REPL_STATE_CONNECT = 1;
+    public static final int REPL_STATE_RECEIVE_CAPA = 2;
+    public static final int REPL_STATE_RECEIVE_PSYNC = 3;
+    public static final int REPL_STATE_TRANSFER = 4;
+    public static final int REPL_STATE_CONNECTED = 5;
+
+    public static final int CONFIG_RUN_ID_SIZE = 40;
+
+    public static final int CONFIG_DEFAULT_REPL_BACKLOG_SIZE = 1024 * 1024;
+
+    /** 无盘复制时RDB的分块大小 */
+    private static final int PROTO_IOBUF_LEN = 16 * 1024;
+
+    /** 每轮事件循环向一个从节点最多发送的RDB字节数，避免大数据集的全量同步长时间占用事件循环 */
+    static final int REPL_TRANSFER_BYTES_PER_CALL = 2 * 1024 * 1024;
+
+    private final RedisServer server;
+
+    // ------------------------------ 复制ID与偏移量 ------------------------------
+
+    /** 当前复制历史的ID */
+    private String replid;
+
+    /** 上一个复制历史的ID，被提升为主节点后用于接受旧主节点的从节点 */
+    private String replid2;
+
+    /** 全局复制偏移量 */
+    private long masterReplOffset;
+
+    /** replid2有效的最大偏移量 */
+    private long secondReplidOffset = -1;
+
+    private ReplicationBacklog backlog;
+
+    private int backlogSize = CONFIG_DEFAULT_REPL_BACKLOG_SIZE;
+
+    // ------------------------------ 主节点 ------------------------------
+
+    private final List<RedisClient> slaves = new ArrayList<>();
+
+    /** 复制流中最后一次SELECT的数据库，-1表示下次传播必须先发送SELECT */
+    private int slaveseldb = -1;
+
+    /** 主节点向从节点发送PING的周期(秒) */
+    private int replPingSlavePeriod = 10;
+
+    private long lastPingTime;
+
+    // ------------------------------ 从节点 ------------------------------
+
+    private Connector masterConnector;
+
+    private Connection masterConn;
+
+    private RedisClient master;
+
+    private int replState = REPL_STATE_NONE;
+
+    /** 从节点是否只读 */
+    private boolean replSlaveReadOnly = true;
+
+    private long lastAckTime;
+
+    /** 无盘复制RDB的结束标记 */
+    private byte[] transferMark;
+
+    private byte[] transferBuf;
+
+    private int transferLen;
+
+    Replication(RedisServer server) {
+        this.server = server;
+        this.replid = randomReplid();
+        clearReplicationId2();
+    }
+
+    private static String randomReplid() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        char[] charset = "0123456789abcdef".toCharArray();
+        char[] id = new char[CONFIG_RUN_ID_SIZE];
+        for (int i = 0; i < id.length; i++) id[i] = charset[random.nextInt(charset.length)];
+        return new String(id);
+    }
+
+    private void changeReplicationId() {
+        replid = randomReplid();
+    }
+
+    private void clearReplicationId2() {
+        replid2 = new String(new char[CONFIG_RUN_ID_SIZE]).replace('\0', '0');
+        secondReplidOffset = -1;
+    }
+
+    /**
+     * 当前的复制历史转为replid2，并生成新的replid。
+     * 提升为主节点时调用：复制流到secondReplidOffset为止与旧主节点相同。
+     */
+    private void shiftReplicationId() {
+        replid2 = replid;
+        secondReplidOffset = masterReplOffset + 1;
+        changeReplicationId();
+    }
+
+    private void createReplicationBacklog() {
+        backlog = new ReplicationBacklog(backlogSize, masterReplOffset);
+    }
+
+    public boolean isReplica() {
+        return masterConnector != null;
+    }
+
+    public String getReplid() {
+        return replid;
+    }
+
+    public String getReplid2() {
+        return replid2;
+    }
+
+    public long getMasterReplOffset() {
+        return masterReplOffset;
+    }
+
+    public int getReplState() {
+        return replState;
+    }
+
+    public int getConnectedSlaves() {
+        return slaves.size();
+    }
+
+    public List<RedisClient> getSlaves() {
+        return slaves;
+    }
+
+    public boolean isReplSlaveReadOnly() {
+        return replSlaveReadOnly;
+    }
+
+    public void setReplSlaveReadOnly(boolean replSlaveReadOnly) {
+        this.replSlaveReadOnly = replSlaveReadOnly;
+    }
+
+    /**
+     * 设置积压缓冲区大小，已有的缓冲区会被丢弃，之后的PSYNC只能全量同步
+     */
+    public void setBacklogSize(int backlogSize) {
+        this.backlogSize = backlogSize;
+        if (backlog != null) createReplicationBacklog();
+    }
+
+    public void setReplPingSlavePeriod(int seconds) {
+        this.replPingSlavePeriod = seconds;
+    }
+
+    // ------------------------------ 复制流 ------------------------------
+
+    private void feedBacklog(byte[] p, int off, int len) {
+        masterReplOffset += len;
+        backlog.append(p, off, len, masterReplOffset);
+    }
+
+    /**
+     * 主节点传播写命令：命令只编码一次，同一个byte[]追加到积压缓冲区和每个从节点的回复队列
+     */
+    void feedSlaves(int dictid, String[] argv) {
+        // 没有积压缓冲区也没有从节点，不需要维护复制流
+        if (backlog == null && slaves.isEmpty()) return;
+        // 从节点只转发主节点的复制流，不产生自己的复制流
+        if (isReplica()) return;
+
+        if (slaveseldb != dictid) {
+            feed(Protocol.encodeCommand("SELECT", String.valueOf(dictid)));
+            slaveseldb = dictid;
+        }
+        feed(Protocol.encodeCommand(argv));
+    }
+
+    private void feed(byte[] buf) {
+        if (backlog != null) feedBacklog(buf, 0, buf.length);
+        for (RedisClient slave : slaves) slave.addReply(buf);
+    }
+
+    /**
+     * 从节点把已执行的复制流原样写入自己的积压缓冲区，并转发给子从节点
+     */
+    void feedStreamFromMasterStream(byte[] buf, int off, int len) {
+        if (len == 0) return;
+        if (backlog != null) {
+            feedBacklog(buf, off, len);
+        } else {
+            masterReplOffset += len;
+        }
+        if (!slaves.isEmpty()) {
+            byte[] copy = new byte[len];
+            System.arraycopy(buf, off, copy, 0, len);
+            for (RedisClient slave : slaves) slave.addReply(copy);
+        }
+    }
+
+    // ------------------------------ 主节点：PSYNC ------------------------------
+
+    /**
+     * PSYNC replid offset
+     */
+    void syncCommand(RedisClient c) {
+        if (c.isSlave()) return;
+        if (isReplica() && replState != REPL_STATE_CONNECTED) {
+            c.addReplyError("NOMASTERLINK Can't SYNC while not connected with my master");
+            return;
+        }
+        String psyncReplid = c.arg(1);
+        long psyncOffset;
+        try {
+            psyncOffset = Long.parseLong(c.arg(2));
+        } catch (NumberFormatException e) {
+            psyncOffset = -1;
+        }
+
+        if (tryPartialResynchronization(c, psyncReplid, psyncOffset)) return;
+        fullResynchronization(c);
+    }
+
+    /**
+     * 尝试部分重同步，成功时回复 +CONTINUE 并从积压缓冲区补发数据
+     */
+    private boolean tryPartialResynchronization(RedisClient c, String psyncReplid, long psyncOffset) {
+        // replid不同时，只有当对方跟随的是我们的上一个复制历史，且偏移量不超过分叉点才能继续
+        if (!psyncReplid.equalsIgnoreCase(replid)
+                && (!psyncReplid.equalsIgnoreCase(replid2) || psyncOffset > secondReplidOffset)) {
+            return false;
+        }
+        if (backlog == null || !backlog.contains(psyncOffset)) return false;
+
+        c.addFlags(RedisClient.CLIENT_SLAVE);
+        slaves.add(c);
+        c.addReplyStatus("CONTINUE " + replid);
+        for (byte[] chunk : backlog.readFrom(psyncOffset)) c.addReply(chunk);
+        return true;
+    }
+
+    /**
+     * 全量同步：回复 +FULLRESYNC replid offset，随后以 $EOF:<mark> 格式发送RDB。
+     * RDB在回复队列中占一个位置，由writeToClient按块生成并写出，之后追加的复制流排在RDB之后
+     */
+    private void fullResynchronization(RedisClient c) {
+        if (backlog == null) {
+            // 新建积压缓冲区时开启一段新的复制历史
+            if (!isReplica()) {
+                changeReplicationId();
+                clearReplicationId2();
+            }
+            createReplicationBacklog();
+        }
+        // 新的从节点需要从SELECT开始接收复制流
+        slaveseldb = -1;
+
+        c.addReplyStatus("FULLRESYNC " + replid + " " + masterReplOffset);
+        RdbTransfer transfer;
+        try {
+            transfer = new RdbTransfer(server.getDbs());
+        } catch (IOException e) {
+            server.freeClient(c);
+            return;
+        }
+        c.addRdbTransfer(transfer);
+
+        c.addFlags(RedisClient.CLIENT_SLAVE);
+        slaves.add(c);
+    }
+
+    /**
+     * 全量同步时发送给从节点的 $EOF:<mark>\r\n <RDB> <mark>。
+     * 当前块全部写入连接后才生成下一块，连接写不进去时不再生成(背压)，
+     * 因此内存中只有一块RDB数据，以及快照期间被修改的键提前写出的旧值
+     */
+    static class RdbTransfer {
+
+        private final ChunkBuffer buf = new ChunkBuffer();
+
+        private final byte[] mark;
+
+        private final RDB.Saver saver;
+
+        /** buf中已经写出的字节数 */
+        private int sentlen;
+
+        /** 结束标记已经追加到buf */
+        private boolean eof;
+
+        private RdbTransfer(RedisDB[] dbs) throws IOException {
+            mark = Protocol.toBytes(randomReplid());
+            buf.write(Protocol.toBytes("$EOF:" + Protocol.toString(mark, 0, mark.length) + "\r\n"));
+            saver = new RDB.Saver(buf, dbs);
+        }
+
+        /**
+         * 写入连接，生成新数据前检查本次已写出的字节数是否达到limit
+         *
+         * @return RDB全部写出返回true
+         */
+        boolean writeTo(Connection conn, int limit) throws IOException {
+            while (true) {
+                if (sentlen == buf.size()) {
+                    if (eof) return true;
+                    if (limit <= 0) return false;
+                    buf.reset();
+                    sentlen = 0;
+                    // 至少一个键值对，单个大键会超过分块大小
+                    while (buf.size() < PROTO_IOBUF_LEN) {
+                        if (!saver.saveNext()) {
+                            buf.write(mark);
+                            eof = true;
+                            break;
+                        }
+                    }
+                }
+                int nwritten = conn.write(buf.array(), sentlen, buf.size() - sentlen);
+                sentlen += nwritten;
+                limit -= nwritten;
+                if (sentlen < buf.size()) return false;
+            }
+        }
+
+        /**
+         * 从节点断开，停止生成
+         */
+        void abort() {
+            saver.close();
+        }
+    }
+
+    /**
+     * 可以直接写出内部数组的缓冲区，避免每块RDB再复制一次
+     */
+    private static class ChunkBuffer extends ByteArrayOutputStream {
+
+        private ChunkBuffer() {
+            super(PROTO_IOBUF_LEN * 2);
+        }
+
+        private byte[] array() {
+            return buf;
+        }
+    }
+
+    /**
+     * REPLCONF ACK offset
+     */
+    void replconfAck(RedisClient c, long offset) {
+        if (c.isSlave() && offset > c.getReplAckOff()) {
+            c.setReplAck(offset, System.currentTimeMillis());
+        }
+    }
+
+    void removeSlave(RedisClient c) {
+        c.abortRdbTransfer();
+        slaves.remove(c);
+    }
+
+    private void disconnectSlaves() {
+        for (RedisClient slave : new ArrayList<>(slaves)) server.freeClient(slave);
+    }
+
+    // ------------------------------ 从节点 ------------------------------
+
+    /**
+     * 成为connector所连接节点的从节点
+     */
+    public void replicaOf(Connector connector) {
+        if (isReplica()) {
+            cancelMasterLink();
+        } else if (backlog == null) {
+            // 作为主节点时的数据和偏移量仍然可以用于与新主节点进行部分重同步
+            createReplicationBacklog();
+        }
+        masterConnector = connector;
+        replState = REPL_STATE_CONNECT;
+        for (RedisDB db : server.getDbs()) db.setExpireByMaster(true);
+        // 让子从节点重新同步，以获得新的复制历史
+        disconnectSlaves();
+        connectWithMaster();
+    }
+
+    /**
+     * REPLICAOF NO ONE：断开主节点，提升为主节点
+     */
+    public void replicaOfNoOne() {
+        if (!isReplica()) return;
+        masterConnector = null;
+        cancelMasterLink();
+        shiftReplicationId();
+        replState = REPL_STATE_NONE;
+        slaveseldb = -1;
+        for (RedisDB db : server.getDbs()) db.setExpireByMaster(false);
+    }
+
+    private void cancelMasterLink() {
+        if (master != null) {
+            server.freeClient(master);
+        } else if (masterConn != null) {
+            masterConn.close();
+        }
+        master = null;
+        masterConn = null;
+        transferBuf = null;
+        if (masterConnector != null) replState = REPL_STATE_CONNECT;
+    }
+
+    private void connectWithMaster() {
+        Connection conn = masterConnector.connect();
+        if (conn == null) return;
+        masterConn = conn;
+        replState = REPL_STATE_RECEIVE_CAPA;
+        conn.setHandler(new MasterLinkHandler());
+
+        // 握手：声明支持EOF格式的无盘复制以及PSYNC2，然后请求同步
+        byte[] capa = Protocol.encodeCommand("REPLCONF", "capa", "eof", "capa", "psync2");
+        if (!syncWrite(conn, capa) || conn != masterConn) return;
+
+        byte[] psync = backlog != null
+                ? Protocol.encodeCommand("PSYNC", replid, String.valueOf(masterReplOffset + 1))
+                : Protocol.encodeCommand("PSYNC", "?", "-1");
+        syncWrite(conn, psync);
+    }
+
+    /**
+     * 握手命令和ACK都很短，直接写入与主节点的连接，对应Redis中的connSyncWrite。
+     * 没能一次写完时按连接错误处理：断开连接，由replicationCron重连
+     */
+    private boolean syncWrite(Connection conn, byte[] buf) {
+        if (conn.write(buf, 0, buf.length) == buf.length) return true;
+        cancelMasterLink();
+        return false;
+    }
+
+    /**
+     * 与主节点的连接断开，等待replicationCron重连
+     */
+    void handleMasterDisconnection() {
+        master = null;
+        masterConn = null;
+        transferBuf = null;
+        if (masterConnector != null) replState = REPL_STATE_CONNECT;
+    }
+
+    /**
+     * 握手和RDB传输阶段的读处理器，同步完成后连接交给主节点客户端
+     */
+    private class MasterLinkHandler implements Connection.Handler {
+
+        private final StringBuilder line = new StringBuilder();
+
+        @Override
+        public void onRead(byte[] buf, int off, int len) {
+            int end = off + len;
+            while (off < end) {
+                if (replState == REPL_STATE_CONNECTED) {
+                    master.onRead(buf, off, end - off);
+                    return;
+                }
+                if (replState == REPL_STATE_TRANSFER && transferMark != null) {
+                    off += readSyncPayload(buf, off, end - off);
+                    continue;
+                }
+                if (replState < REPL_STATE_RECEIVE_CAPA) return;
+
+                // 按行读取握手回复
+                int nl = off;
+                while (nl < end && buf[nl] != '\n') nl++;
+                line.append(Protocol.toString(buf, off, nl - off));
+                if (nl == end) return;
+                off = nl + 1;
+                String reply = line.toString().trim();
+                line.setLength(0);
+                // 空行是主节点生成RDB期间发送的心跳
+                if (reply.isEmpty()) continue;
+                if (!processHandshakeReply(reply)) return;
+            }
+        }
+
+        @Override
+        public void onClose() {
+            handleMasterDisconnection();
+        }
+    }
+
+    /**
+     * @return 出错断开连接时返回false
+     */
+    private boolean processHandshakeReply(String reply) {
+        switch (replState) {
+            case REPL_STATE_RECEIVE_CAPA:
+                // 旧版本主节点不认识REPLCONF，忽略错误
+                replState = REPL_STATE_RECEIVE_PSYNC;
+                return true;
+            case REPL_STATE_RECEIVE_PSYNC:
+                if (reply.startsWith("+FULLRESYNC")) {
+                    String[] parts = reply.split(" ");
+                    replid = parts[1];
+                    masterReplOffset = Long.parseLong(parts[2]);
+                    replState = REPL_STATE_TRANSFER;
+                    transferMark = null;
+                    return true;
+                }
+                if (reply.startsWith("+CONTINUE")) {
+                    String[] parts = reply.split(" ");
+                    if (parts.length > 1 && !parts[1].equals(replid)) {
+                        // 主节点换了复制历史(例如发生了故障转移)，旧ID作为replid2保留
+                        replid2 = replid;
+                        secondReplidOffset = masterReplOffset + 1;
+                        replid = parts[1];
+                        disconnectSlaves();
+                    }
+                    createMasterClient();
+                    return true;
+                }
+                break;
+            case REPL_STATE_TRANSFER:
+                if (reply.startsWith("$EOF:")) {
+                    transferMark = Protocol.toBytes(reply.substring(5));
+                    transferBuf = new byte[PROTO_IOBUF_LEN];
+                    transferLen = 0;
+                    return true;
+                }
+                break;
+            default:
+                break;
+        }
+        cancelMasterLink();
+        return false;
+    }
+
+    /**
+     * 接收RDB数据直到结束标记，返回本次消费的字节数
+     */
+    private int readSyncPayload(byte[] buf, int off, int len) {
+        int prevLen = transferLen;
+        if (transferLen + len > transferBuf.length) {
+            byte[] newbuf = new byte[Math.max(transferBuf.length * 2, transferLen + len)];
+            System.arraycopy(transferBuf, 0, newbuf, 0, transferLen);
+            transferBuf = newbuf;
+        }
+        System.arraycopy(buf, off, transferBuf, transferLen, len);
+        transferLen += len;
+
+        // 结束标记可能跨越两次读取，从上次数据末尾往前标记长度处开始查找
+        int markPos = indexOf(transferBuf, transferLen, transferMark, Math.max(0, prevLen - transferMark.length));
+        if (markPos < 0) return len;
+
+        int consumed = markPos + transferMark.length - prevLen;
+        try {
+            for (RedisDB db : server.getDbs()) db.emptyData();
+            RDB.rdbLoad(new ByteArrayInputStream(transferBuf, 0, markPos), server.getDbs());
+        } catch (IOException e) {
+            cancelMasterLink();
+            return len;
+        }
+        transferBuf = null;
+        // 新的复制历史，丢弃旧的积压数据
+        clearReplicationId2();
+        createReplicationBacklog();
+        createMasterClient();
+        return consumed;
+    }
+
+    private static int indexOf(byte[] buf, int len, byte[] target, int from) {
+        outer:
+        for (int i = from; i <= len - target.length; i++) {
+            for (int j = 0; j < target.length; j++) {
+                if (buf[i + j] != target[j]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private void createMasterClient() {
+        master = server.createClient(masterConn);
+        master.addFlags(RedisClient.CLIENT_MASTER);
+        masterConn.setHandler(master);
+        replState = REPL_STATE_CONNECTED;
+        lastAckTime = 0;
+    }
+
+    void masterClientFreed(RedisClient c) {
+        if (c == master) handleMasterDisconnection();
+    }
+
+    // ------------------------------ 定时任务 ------------------------------
+
+    /**
+     * 由serverCron调用：从节点重连主节点并定期上报偏移量，主节点定期PING从节点
+     */
+    void replicationCron() {
+        long now = System.currentTimeMillis();
+        if (isReplica()) {
+            if (replState == REPL_STATE_CONNECT) {
+                connectWithMaster();
+            } else if (replState == REPL_STATE_CONNECTED && now - lastAckTime >= 1000) {
+                lastAckTime = now;
+                byte[] ack = Protocol.encodeCommand("REPLCONF", "ACK", String.valueOf(masterReplOffset));
+                syncWrite(masterConn, ack);
+            }
+        } else if (!slaves.isEmpty() && now - lastPingTime >= replPingSlavePeriod * 1000L) {
+            lastPingTime = now;
+            // PING也进入复制流，使用当前已选择的数据库，避免额外的SELECT
+            feedSlaves(slaveseldb, new String[]{"PING"});
+        }
+    }
+}
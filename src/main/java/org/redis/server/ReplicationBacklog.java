@@ -0,0 +1,95 @@
+package org.redis.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author zsy
+ * @Description 复制积压缓冲区
+ *
+ * 固定大小的环形缓冲区，保存最近写入复制流的数据：
+ *      1. idx为下一个写入位置，写满后从头覆盖最旧的数据；
+ *      2. histlen为有效数据长度，最大为缓冲区大小；
+ *      3. offset为缓冲区中第一个字节对应的全局复制偏移量。
+ * 从节点断线重连时，只要请求的偏移量仍在 [offset, offset+histlen] 内，
+ * 就可以直接从缓冲区补发缺失的数据(部分重同步)，不需要重新传输整个RDB。
+ *
+ * @ClassName ReplicationBacklog
+ * @Version 1.0
+ */
+class ReplicationBacklog {
+
+    private final byte[] buf;
+
+    private int idx;
+
+    private long histlen;
+
+    private long offset;
+
+    /**
+     * @param masterReplOffset 创建时的复制偏移量，缓冲区从下一个字节开始记录
+     */
+    ReplicationBacklog(int size, long masterReplOffset) {
+        this.buf = new byte[size];
+        this.offset = masterReplOffset + 1;
+    }
+
+    /**
+     * 追加数据，masterReplOffset为追加之后的全局复制偏移量
+     */
+    void append(byte[] p, int off, int len, long masterReplOffset) {
+        int size = buf.length;
+        while (len > 0) {
+            int thislen = Math.min(size - idx, len);
+            System.arraycopy(p, off, buf, idx, thislen);
+            idx += thislen;
+            if (idx == size) idx = 0;
+            len -= thislen;
+            off += thislen;
+            histlen += thislen;
+        }
+        if (histlen > size) histlen = size;
+        offset = masterReplOffset - histlen + 1;
+    }
+
+    /**
+     * 请求的偏移量是否还在缓冲区中
+     */
+    boolean contains(long psyncOffset) {
+        return psyncOffset >= offset && psyncOffset <= offset + histlen;
+    }
+
+    /**
+     * 读出从psyncOffset开始到最新的数据，环形缓冲区回绕时分为两段
+     */
+    List<byte[]> readFrom(long psyncOffset) {
+        List<byte[]> chunks = new ArrayList<>(2);
+        int size = buf.length;
+        long skip = psyncOffset - offset;
+        // 最旧数据所在的位置
+        int j = (int) ((idx + (size - histlen)) % size);
+        j = (int) ((j + skip) % size);
+        long len = histlen - skip;
+        while (len > 0) {
+            int thislen = (int) Math.min(size - j, len);
+            chunks.add(Arrays.copyOfRange(buf, j, j + thislen));
+            len -= thislen;
+            j = 0;
+        }
+        return chunks;
+    }
+
+    int size() {
+        return buf.length;
+    }
+
+    long getHistlen() {
+        return histlen;
+    }
+
+    long getOffset() {
+        return offset;
+    }
+}
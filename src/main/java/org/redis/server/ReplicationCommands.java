@@ -0,0 +1,104 @@
+package org.redis.server;
+
+import org.redis.utils.NumberUtil;
+
+/**
+ * @author zsy
+ * @Description 主从复制命令：REPLCONF、PSYNC、REPLICAOF、ROLE
+ * @ClassName ReplicationCommands
+ * @Version 1.0
+ */
+public class ReplicationCommands {
+
+    static void register(RedisServer server) {
+        server.addCommand(new RedisCommand("replconf", -1, RedisCommand.CMD_ADMIN) {
+            @Override
+            public void proc(RedisClient c) {
+                replconfCommand(c);
+            }
+        });
+        server.addCommand(new RedisCommand("psync", 3, RedisCommand.CMD_ADMIN) {
+            @Override
+            public void proc(RedisClient c) {
+                c.getServer().getReplication().syncCommand(c);
+            }
+        });
+        server.addCommand(new RedisCommand("replicaof", 3, RedisCommand.CMD_ADMIN) {
+            @Override
+            public void proc(RedisClient c) {
+                replicaofCommand(c);
+            }
+        });
+        server.addCommand(new RedisCommand("role", 1, RedisCommand.CMD_ADMIN | RedisCommand.CMD_LOADING) {
+            @Override
+            public void proc(RedisClient c) {
+                roleCommand(c);
+            }
+        });
+    }
+
+    /**
+     * REPLCONF <option> <value> [<option> <value> ...]
+     */
+    private static void replconfCommand(RedisClient c) {
+        if (c.getArgc() % 2 == 0) throw new IllegalArgumentException(Protocol.SYNTAX_ERR);
+        for (int j = 1; j < c.getArgc(); j += 2) {
+            String opt = c.arg(j).toLowerCase();
+            if (opt.equals("ack")) {
+                // 从节点上报偏移量，不需要回复
+                c.getServer().getReplication().replconfAck(c, NumberUtil.parseLong(c.arg(j + 1)));
+                return;
+            } else if (!opt.equals("capa") && !opt.equals("listening-port")) {
+                throw new IllegalArgumentException("ERR Unrecognized REPLCONF option: " + c.arg(j));
+            }
+        }
+        c.addReply(Protocol.OK);
+    }
+
+    /**
+     * 进程内的连接无法通过host/port建立，成为从节点需要调用 Replication.replicaOf(Connector)
+     */
+    private static void replicaofCommand(RedisClient c) {
+        if (c.arg(1).equalsIgnoreCase("no") && c.arg(2).equalsIgnoreCase("one")) {
+            c.getServer().getReplication().replicaOfNoOne();
+            c.addReply(Protocol.OK);
+            return;
+        }
+        c.addReplyError("ERR REPLICAOF <host> <port> is not supported, use Replication.replicaOf(Connector)");
+    }
+
+    private static void roleCommand(RedisClient c) {
+        Replication repl = c.getServer().getReplication();
+        if (!repl.isReplica()) {
+            c.addReplyArrayLen(3);
+            c.addReplyBulk("master");
+            c.addReplyLongLong(repl.getMasterReplOffset());
+            c.addReplyArrayLen(repl.getConnectedSlaves());
+            for (RedisClient slave : repl.getSlaves()) {
+                c.addReplyArrayLen(2);
+                c.addReplyBulk(String.valueOf(slave.getId()));
+                c.addReplyBulk(String.valueOf(slave.getReplAckOff()));
+            }
+            return;
+        }
+        String state;
+        switch (repl.getReplState()) {
+            case Replication.REPL_STATE_CONNECTED:
+                state = "connected";
+                break;
+            case Replication.REPL_STATE_TRANSFER:
+                state = "sync";
+                break;
+            case Replication.REPL_STATE_CONNECT:
+                state = "connect";
+                break;
+            default:
+                state = "handshake";
+                break;
+        }
+        c.addReplyArrayLen(3);
+        c.addReplyBulk("slave");
+        c.addReplyBulk(state);
+        c.addReplyLongLong(repl.getMasterReplOffset());
+    }
+}
@@ -0,0 +1,52 @@
+package org.redis.server;
+
+import org.redis.lang.RedisObject;
+import org.redis.lang.RedisSet;
+
+import java.util.List;
+
+/**
+ * @author zsy
+ * @Description 集合命令：SISMEMBER、SCARD、SMEMBERS
+ * @ClassName SetCommands
+ * @Version 1.0
+ */
+public class SetCommands {
+
+    static void register(RedisServer server) {
+        server.addCommand(new RedisCommand("sismember", 3, RedisCommand.CMD_READONLY, 1, 1, 1) {
+            @Override
+            public void proc(RedisClient c) {
+                RedisSet set = lookupSetRead(c, c.arg(1));
+                c.addReply(set != null && set.isMember(c.arg(2)) ? Protocol.CONE : Protocol.CZERO);
+            }
+        });
+        server.addCommand(new RedisCommand("scard", 2, RedisCommand.CMD_READONLY, 1, 1, 1) {
+            @Override
+            public void proc(RedisClient c) {
+                RedisSet set = lookupSetRead(c, c.arg(1));
+                c.addReplyLongLong(set == null ? 0 : set.size());
+            }
+        });
+        server.addCommand(new RedisCommand("smembers", 2, RedisCommand.CMD_READONLY, 1, 1, 1) {
+            @Override
+            public void proc(RedisClient c) {
+                RedisSet set = lookupSetRead(c, c.arg(1));
+                if (set == null) {
+                    c.addReply(Protocol.EMPTY_ARRAY);
+                    return;
+                }
+                List<String> members = set.members();
+                c.addReplyArrayLen(members.size());
+                for (String m : members) c.addReplyBulk(m);
+            }
+        });
+    }
+
+    static RedisSet lookupSetRead(RedisClient c, String key) {
+        RedisObject o = c.getDb().lookupKeyRead(key);
+        if (o == null) return null;
+        DbCommands.checkType(o, RedisObject.OBJ_SET);
+        return (RedisSet) o.getPtr();
+    }
+}
@@ -0,0 +1,282 @@
+package org.redis.server;
+
+import org.redis.lang.RedisObject;
+import org.redis.lang.RedisStream;
+import org.redis.lang.RedisStream.StreamID;
+import org.redis.lang.basis.Dict;
+import org.redis.utils.NumberUtil;
+
+import java.util.List;
+
+/**
+ * @author zsy
+ * @Description 数据流命令：XADD、XLEN、XRANGE、XREAD
+ * @ClassName StreamCommands
+ * @Version 1.0
+ */
+public class StreamCommands {
+
+    static void register(RedisServer server) {
+        server.addCommand(new RedisCommand("xadd", -5, RedisCommand.CMD_WRITE, 1, 1, 1) {
+            @Override
+            public void proc(RedisClient c) {
+                xaddCommand(c);
+            }
+        });
+        server.addCommand(new RedisCommand("xlen", 2, RedisCommand.CMD_READONLY, 1, 1, 1) {
+            @Override
+            public void proc(RedisClient c) {
+                RedisStream s = lookupStreamRead(c, c.arg(1));
+                c.addReplyLongLong(s == null ? 0 : s.length());
+            }
+        });
+        server.addCommand(new RedisCommand("xrange", -4, RedisCommand.CMD_READONLY, 1, 1, 1) {
+            @Override
+            public void proc(RedisClient c) {
+                xrangeCommand(c);
+            }
+        });
+        // 键的位置取决于STREAMS参数，不能用固定的firstkey/lastkey描述
+        server.addCommand(new RedisCommand("xread", -4, RedisCommand.CMD_READONLY) {
+            @Override
+            public void proc(RedisClient c) {
+                xreadCommand(c);
+            }
+
+            @Override
+            public String[] getKeys(String[] argv) {
+                return xreadGetKeys(argv);
+            }
+        });
+    }
+
+    /**
+     * XREAD的键：STREAMS之后参数的前一半，对应Redis中的xreadGetKeys。参数不合法时返回空数组
+     */
+    static String[] xreadGetKeys(String[] argv) {
+        int streamsArg = 0;
+        for (int j = 1; j < argv.length; j++) {
+            String opt = argv[j].toLowerCase();
+            if (opt.equals("block") || opt.equals("count")) {
+                j++;
+            } else if (opt.equals("streams")) {
+                streamsArg = j + 1;
+                break;
+            }
+        }
+        int numstreams = argv.length - streamsArg;
+        if (streamsArg == 0 || numstreams == 0 || numstreams % 2 != 0) return new String[0];
+        String[] keys = new String[numstreams / 2];
+        System.arraycopy(argv, streamsArg, keys, 0, keys.length);
+        return keys;
+    }
+
+    static RedisStream lookupStreamRead(RedisClient c, String key) {
+        RedisObject o = c.getDb().lookupKeyRead(key);
+        if (o == null) return null;
+        DbCommands.checkType(o, RedisObject.OBJ_STREAM);
+        return (RedisStream) o.getPtr();
+    }
+
+    /**
+     * XADD key [NOMKSTREAM] <* | ms-* | ms-seq> field value [field value ...]
+     */
+    private static void xaddCommand(RedisClient c) {
+        String key = c.arg(1);
+        int idpos = 2;
+        boolean nomkstream = false;
+        if (c.arg(idpos).equalsIgnoreCase("nomkstream")) {
+            nomkstream = true;
+            idpos++;
+        }
+        int fieldpos = idpos + 1;
+        if (fieldpos >= c.getArgc() || (c.getArgc() - fieldpos) % 2 != 0) {
+            throw new IllegalArgumentException("ERR wrong number of arguments for 'xadd' command");
+        }
+
+        // 解析ID：* 完全自动生成，ms-* 只自动生成序号
+        String idarg = c.arg(idpos);
+        StreamID given = null;
+        boolean seqGiven = true;
+        if (!idarg.equals("*")) {
+            if (idarg.endsWith("-*")) {
+                given = StreamID.parse(idarg.substring(0, idarg.length() - 2), 0);
+                seqGiven = false;
+            } else {
+                given = StreamID.parse(idarg, 0);
+            }
+            if (seqGiven && given.getMs() == 0 && given.getSeq() == 0) {
+                throw new IllegalArgumentException("ERR The ID specified in XADD must be greater than 0-0");
+            }
+        }
+
+        RedisObject o = c.getDb().lookupKeyWrite(key);
+        if (o == null) {
+            if (nomkstream) {
+                c.addReplyNull();
+                return;
+            }
+            o = RedisObject.createStreamObject();
+            c.getDb().dbAdd(key, o);
+        } else {
+            DbCommands.checkType(o, RedisObject.OBJ_STREAM);
+        }
+        RedisStream s = (RedisStream) o.getPtr();
+
+        StreamID id;
+        if (given == null) {
+            id = s.nextId(System.currentTimeMillis());
+            if (id == null) {
+                throw new IllegalArgumentException("ERR The stream has exhausted the last possible ID, unable to add more items");
+            }
+        } else if (!seqGiven) {
+            // 时间戳小于最后一条消息，或序号已用尽时，append会拒绝
+            StreamID last = s.getLastId();
+            if (given.getMs() > last.getMs()) {
+                id = new StreamID(given.getMs(), 0);
+            } else if (given.getMs() == last.getMs() && last.getSeq() != Long.MAX_VALUE) {
+                id = new StreamID(last.getMs(), last.getSeq() + 1);
+            } else {
+                id = last;
+            }
+        } else {
+            id = given;
+        }
+
+        String[] fieldsValues = new String[c.getArgc() - fieldpos];
+        System.arraycopy(c.getArgv(), fieldpos, fieldsValues, 0, fieldsValues.length);
+        if (!s.append(id, fieldsValues)) {
+            throw new IllegalArgumentException("ERR The ID specified in XADD is equal or smaller than the target stream top item");
+        }
+        c.addReplyBulk(id.toString());
+        c.getDb().signalModifiedKey(key);
+        c.getServer().incrDirty(1);
+
+        // 自动生成的ID原样传播，保证从节点上的ID一致
+        String[] argv = c.getArgv().clone();
+        argv[idpos] = id.toString();
+        c.rewriteArgv(argv);
+    }
+
+    /**
+     * XRANGE key start end [COUNT count]，"-"和"+"表示最小和最大ID，"("前缀表示开区间
+     */
+    private static void xrangeCommand(RedisClient c) {
+        StreamID start = parseRangeId(c.arg(2), true);
+        StreamID end = parseRangeId(c.arg(3), false);
+        long count = -1;
+        if (c.getArgc() > 4) {
+            if (c.getArgc() != 6 || !c.arg(4).equalsIgnoreCase("count")) {
+                throw new IllegalArgumentException(Protocol.SYNTAX_ERR);
+            }
+            count = Math.max(NumberUtil.parseLong(c.arg(5)), 0);
+        }
+        RedisStream s = lookupStreamRead(c, c.arg(1));
+        if (s == null || start == null || end == null || count == 0) {
+            c.addReply(Protocol.EMPTY_ARRAY);
+            return;
+        }
+        addReplyStreamEntries(c, s.range(start, end, count));
+    }
+
+    /**
+     * 开区间端点越过最小或最大ID时返回null
+     */
+    private static StreamID parseRangeId(String arg, boolean isStart) {
+        if (arg.equals("-")) return StreamID.MIN;
+        if (arg.equals("+")) return StreamID.MAX;
+        boolean exclusive = arg.startsWith("(");
+        StreamID id = StreamID.parse(exclusive ? arg.substring(1) : arg, isStart ? 0 : Long.MAX_VALUE);
+        if (!exclusive) return id;
+        return isStart ? id.incr() : id.decr();
+    }
+
+    /**
+     * XREAD [COUNT count] [BLOCK milliseconds] STREAMS key [key ...] id [id ...]
+     */
+    private static void xreadCommand(RedisClient c) {
+        long count = 0;
+        long timeout = -1;
+        int streamsArg = 0;
+        for (int j = 1; j < c.getArgc(); j++) {
+            String opt = c.arg(j).toLowerCase();
+            boolean moreargs = j + 1 < c.getArgc();
+            if (opt.equals("block") && moreargs) {
+                timeout = Blocking.parseTimeout(c.arg(++j), false);
+            } else if (opt.equals("count") && moreargs) {
+                count = Math.max(NumberUtil.parseLong(c.arg(++j)), 0);
+            } else if (opt.equals("streams") && moreargs) {
+                streamsArg = j + 1;
+                break;
+            } else {
+                throw new IllegalArgumentException(Protocol.SYNTAX_ERR);
+            }
+        }
+        if (streamsArg == 0) throw new IllegalArgumentException(Protocol.SYNTAX_ERR);
+        int numstreams = c.getArgc() - streamsArg;
+        if (numstreams % 2 != 0) {
+            throw new IllegalArgumentException("ERR Unbalanced 'xread' list of streams: for each stream key an ID or '$' must be specified.");
+        }
+        numstreams /= 2;
+
+        // 先解析全部ID，"$"表示只读取之后新增的消息
+        String[] keys = new String[numstreams];
+        StreamID[] ids = new StreamID[numstreams];
+        RedisStream[] streams = new RedisStream[numstreams];
+        for (int i = 0; i < numstreams; i++) {
+            keys[i] = c.arg(streamsArg + i);
+            streams[i] = lookupStreamRead(c, keys[i]);
+            String idarg = c.arg(streamsArg + numstreams + i);
+            if (idarg.equals("$")) {
+                ids[i] = streams[i] == null ? StreamID.MIN : streams[i].getLastId();
+            } else {
+                ids[i] = StreamID.parse(idarg, 0);
+            }
+        }
+
+        int arraylen = 0;
+        for (int i = 0; i < numstreams; i++) {
+            if (streams[i] != null && streams[i].getLastId().compareTo(ids[i]) > 0) arraylen++;
+        }
+        if (arraylen > 0) {
+            // RESP3回复 key -> entries 的映射，RESP2回复 [key, entries] 的数组
+            if (c.getResp() >= 3) {
+                c.addReplyMapLen(arraylen);
+            } else {
+                c.addReplyArrayLen(arraylen);
+            }
+            for (int i = 0; i < numstreams; i++) {
+                if (streams[i] == null || streams[i].getLastId().compareTo(ids[i]) <= 0) continue;
+                if (c.getResp() < 3) c.addReplyArrayLen(2);
+                c.addReplyBulk(keys[i]);
+                addReplyStreamEntries(c, streams[i].range(ids[i].incr(), StreamID.MAX, count));
+            }
+            return;
+        }
+
+        if (timeout < 0) {
+            c.addReplyNullArray();
+            return;
+        }
+        // 阻塞前把"$"替换为具体的ID，键就绪后重新执行时读取的是阻塞之后新增的消息
+        Dict<String, StreamID> waiting = new Dict<>();
+        for (int i = 0; i < numstreams; i++) {
+            c.getArgv()[streamsArg + numstreams + i] = ids[i].toString();
+            if (waiting.find(keys[i]) == null) waiting.add(keys[i], ids[i]);
+        }
+        c.getServer().getBlocking().blockForKeys(c, Blocking.BLOCKED_STREAM, keys, timeout, waiting);
+    }
+
+    /**
+     * 每条消息回复为 [id, [field, value, ...]]
+     */
+    private static void addReplyStreamEntries(RedisClient c, List<RedisStream.StreamEntry> entries) {
+        c.addReplyArrayLen(entries.size());
+        for (RedisStream.StreamEntry e : entries) {
+            c.addReplyArrayLen(2);
+            c.addReplyBulk(e.getId().toString());
+            c.addReplyArrayLen(e.getFields().length);
+            for (String s : e.getFields()) c.addReplyBulk(s);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package org.redis.server;
+
+import org.redis.db.RedisDB;
+import org.redis.lang.RedisObject;
+import org.redis.utils.NumberUtil;
+
+/**
+ * @author zsy
+ * @Description 字符串命令：GET、SET
+ * @ClassName StringCommands
+ * @Version 1.0
+ */
+public class StringCommands {
+
+    static void register(RedisServer server) {
+        server.addCommand(new RedisCommand("get", 2, RedisCommand.CMD_READONLY | RedisCommand.CMD_LOADING, 1, 1, 1) {
+            @Override
+            public void proc(RedisClient c) {
+                getCommand(c);
+            }
+        });
+        server.addCommand(new RedisCommand("set", -3, RedisCommand.CMD_WRITE, 1, 1, 1) {
+            @Override
+            public void proc(RedisClient c) {
+                setCommand(c);
+            }
+        });
+    }
+
+    private static void getCommand(RedisClient c) {
+        RedisObject o = c.getDb().lookupKeyRead(c.arg(1));
+        // 热备：加载完成前，尚未加载的键直接从映射的RDB文件中读取
+        if (o == null && c.getServer().isLoading()) {
+            o = c.getServer().getLoading().lookupKey(c.getDb().getId(), c.arg(1));
+        }
+        if (o == null) {
+            c.addReplyNull();
+            return;
+        }
+        DbCommands.checkType(o, RedisObject.OBJ_STRING);
+        c.addReplyBulk((String) o.getPtr());
+    }
+
+    /**
+     * SET key value [NX|XX] [EX seconds|PX milliseconds|PXAT unix-time-ms|KEEPTTL]
+     */
+    private static void setCommand(RedisClient c) {
+        boolean nx = false;
+        boolean xx = false;
+        boolean keepttl = false;
+        long expire = -1;
+
+        for (int j = 3; j < c.getArgc(); j++) {
+            String opt = c.arg(j).toLowerCase();
+            boolean hasNext = j + 1 < c.getArgc();
+            if (opt.equals("nx") && !xx) {
+                nx = true;
+            } else if (opt.equals("xx") && !nx) {
+                xx = true;
+            } else if (opt.equals("keepttl") && expire == -1) {
+                keepttl = true;
+            } else if ((opt.equals("ex") || opt.equals("px") || opt.equals("pxat")) && !keepttl && expire == -1 && hasNext) {
+                long v = NumberUtil.parseLong(c.arg(++j));
+                if (v <= 0) throw new IllegalArgumentException("ERR invalid expire time in 'set' command");
+                expire = opt.equals("ex") ? System.currentTimeMillis() + v * 1000
+                        : opt.equals("px") ? System.currentTimeMillis() + v : v;
+            } else {
+                throw new IllegalArgumentException(Protocol.SYNTAX_ERR);
+            }
+        }
+
+        RedisDB db = c.getDb();
+        String key = c.arg(1);
+        boolean exists = db.lookupKeyWrite(key) != null;
+        if ((nx && exists) || (xx && !exists)) {
+            c.addReplyNull();
+            return;
+        }
+
+        long oldExpire = keepttl ? db.getExpire(key) : -1;
+        db.setKey(key, RedisObject.createStringObject(c.arg(2)));
+        if (oldExpire != -1) db.setExpire(key, oldExpire);
+        c.getServer().incrDirty(1);
+
+        if (expire != -1) {
+            db.setExpire(key, expire);
+            // 相对过期时间统一改写为绝对时间传播
+            c.rewriteArgv("SET", key, c.arg(2), "PXAT", String.valueOf(expire));
+        }
+        c.addReply(Protocol.OK);
+    }
+}
@@ -0,0 +1,135 @@
+package org.redis.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author zsy
+ * @Description 哈希时间轮
+ *
+ * 用于阻塞命令的超时，避免每次都扫描全部阻塞客户端：
+ *      1. 时间按TICK_MS划分为tick，到期时间所在的tick对WHEEL_SIZE取模得到槽位，
+ *         每个槽位是一个双向链表，添加和取消定时器都是O(1)；
+ *      2. advance只访问上次推进之后已经结束的tick对应的槽位，超过一圈时每个槽位最多访问一次；
+ *         槽位中到期tick还在之后几圈的定时器保留不动。
+ * 当前tick结束之后才会处理，定时器最多晚一个tick触发。
+ *
+ * @ClassName TimingWheel
+ * @Version 1.0
+ */
+public class TimingWheel<T> {
+
+    static final int WHEEL_SIZE = 512;
+
+    static final long TICK_MS = 10;
+
+    /**
+     * 定时器，同一个定时器同时只能加入一次
+     */
+    public static class Timer<T> {
+
+        private final T owner;
+
+        private long deadline;
+
+        /** 到期时间所在的tick */
+        private long tick;
+
+        private Timer<T> prev;
+
+        private Timer<T> next;
+
+        /** 是否在时间轮中 */
+        private boolean linked;
+
+        public Timer(T owner) {
+            this.owner = owner;
+        }
+
+        public T getOwner() {
+            return owner;
+        }
+
+        public long getDeadline() {
+            return deadline;
+        }
+    }
+
+    private final Timer<T>[] slots;
+
+    /** 已经处理完的最后一个tick */
+    private long processedTick;
+
+    private int size;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TimingWheel(long now) {
+        slots = new Timer[WHEEL_SIZE];
+        processedTick = now / TICK_MS - 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 加入定时器，在deadline(毫秒时间戳)之后触发
+     */
+    public void add(Timer<T> timer, long deadline) {
+        if (timer.linked) cancel(timer);
+        timer.deadline = deadline;
+        // 已经处理过的tick不会再访问，放到下一个待处理的tick
+        timer.tick = Math.max(deadline / TICK_MS, processedTick + 1);
+        int slot = (int) (timer.tick & (WHEEL_SIZE - 1));
+        timer.prev = null;
+        timer.next = slots[slot];
+        if (slots[slot] != null) slots[slot].prev = timer;
+        slots[slot] = timer;
+        timer.linked = true;
+        size++;
+    }
+
+    /**
+     * 取消定时器，定时器不在时间轮中时什么都不做
+     */
+    public void cancel(Timer<T> timer) {
+        if (!timer.linked) return;
+        if (timer.prev != null) {
+            timer.prev.next = timer.next;
+        } else {
+            slots[(int) (timer.tick & (WHEEL_SIZE - 1))] = timer.next;
+        }
+        if (timer.next != null) timer.next.prev = timer.prev;
+        timer.prev = timer.next = null;
+        timer.linked = false;
+        size--;
+    }
+
+    /**
+     * 推进到now，返回到期的定时器(已从时间轮中移除)
+     */
+    public List<Timer<T>> advance(long now) {
+        List<Timer<T>> expired = new ArrayList<>();
+        long lastTick = now / TICK_MS - 1;
+        if (lastTick <= processedTick) return expired;
+        if (size == 0) {
+            processedTick = lastTick;
+            return expired;
+        }
+        // 落后超过一圈时，每个槽位访问一次就够了
+        long from = Math.max(processedTick + 1, lastTick - WHEEL_SIZE + 1);
+        for (long t = from; t <= lastTick; t++) {
+            Timer<T> timer = slots[(int) (t & (WHEEL_SIZE - 1))];
+            while (timer != null) {
+                Timer<T> next = timer.next;
+                if (timer.tick <= lastTick) {
+                    cancel(timer);
+                    expired.add(timer);
+                }
+                timer = next;
+            }
+        }
+        processedTick = lastTick;
+        return expired;
+    }
+}
@@ -0,0 +1,449 @@
+package org.redis.server;
+
+import org.redis.lang.basis.Dict;
+import org.redis.lang.basis.Rax;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author zsy
+ * @Description 客户端缓存跟踪(CLIENT TRACKING)，对应Redis中的tracking.c
+ *
+ * 1. 默认模式：只读命令执行后，把读取的键记录到 键 -> 客户端ID 的跟踪表中；
+ *    键被修改、过期或删除时，向记录的客户端发送失效消息，并从跟踪表中删除该键，
+ *    之后客户端再次读取时重新记录。跟踪表不区分数据库；
+ * 2. 广播模式(BCAST)：客户端订阅若干前缀，不记录读取的键；
+ *    键被修改时记录到匹配前缀的待广播列表，beforeSleep中每个前缀编码一次，发送给订阅该前缀的所有客户端；
+ * 3. OPTIN/OPTOUT：配合CLIENT CACHING yes/no 控制下一条命令是否被跟踪；NOLOOP：不接收自己修改的键的失效消息；
+ * 4. 失效消息在RESP3下以推送 [invalidate, [key ...]] 发给自己，
+ *    RESP2下需要REDIRECT到一个订阅了 __redis__:invalidate 频道的客户端；
+ * 5. 跟踪表的键数量超过上限时，按基数树的顺序循环淘汰(淘汰的键同样发送失效消息)，
+ *    每次beforeSleep有工作量上限，淘汰不完时下一轮加大工作量。
+ *
+ * @ClassName Tracking
+ * @Version 1.0
+ */
+public class Tracking {
+
+    /** 跟踪表默认最多记录的键数量，0表示不限制 */
+    public static final long TRACKING_TABLE_MAX_KEYS = 1000000;
+
+    public static final String TRACKING_CHANNEL = "__redis__:invalidate";
+
+    private static final byte[] INVALIDATE_PUSH_HDR = Protocol.toBytes(">2\r\n$10\r\ninvalidate\r\n");
+
+    private static final byte[] INVALIDATE_MESSAGE_HDR = concat(Protocol.toBytes("*3\r\n"),
+            Protocol.encodeBulk("message"), Protocol.encodeBulk(TRACKING_CHANNEL));
+
+    /**
+     * 广播模式下一个前缀的状态
+     */
+    private static class BcastState {
+
+        /** 订阅该前缀的客户端 */
+        private final Dict<Long, RedisClient> clients = new Dict<>();
+
+        /** 本轮事件循环中被修改的键 -> 修改它的客户端，被多个客户端修改时为null */
+        private Rax<RedisClient> keys = new Rax<>();
+    }
+
+    private final RedisServer server;
+
+    /** 键 -> 读取过该键的客户端ID */
+    private final Rax<Dict<Long, Boolean>> trackingTable = new Rax<>();
+
+    /** 跟踪表中 (键, 客户端) 的总数 */
+    private long trackingTableTotalItems;
+
+    private long trackingTableMaxKeys = TRACKING_TABLE_MAX_KEYS;
+
+    /** 前缀 -> 广播状态 */
+    private final Rax<BcastState> prefixTable = new Rax<>();
+
+    /** 开启跟踪的客户端数量 */
+    private int trackingClients;
+
+    /** 需要在当前命令回复之后再发给当前客户端的失效键，null表示清空数据库 */
+    private final List<String> pendingKeys = new ArrayList<>();
+
+    /** 上一次淘汰到的键，下一次从它之后继续 */
+    private String evictionCursor;
+
+    /** 连续多少轮没能把跟踪表降到上限以下 */
+    private int timeoutCounter;
+
+    Tracking(RedisServer server) {
+        this.server = server;
+    }
+
+    public long getTrackingTableMaxKeys() {
+        return trackingTableMaxKeys;
+    }
+
+    public void setTrackingTableMaxKeys(long trackingTableMaxKeys) {
+        this.trackingTableMaxKeys = trackingTableMaxKeys;
+    }
+
+    /**
+     * 跟踪表中的键数量
+     */
+    public long getTrackedKeys() {
+        return trackingTable.size();
+    }
+
+    public long getTrackedItems() {
+        return trackingTableTotalItems;
+    }
+
+    public int getTrackingClients() {
+        return trackingClients;
+    }
+
+    // ------------------------------ 开启/关闭 ------------------------------
+
+    /**
+     * 开启跟踪
+     *
+     * @param redirectTo 失效消息转发到的客户端ID，0表示不转发
+     * @param options    CLIENT_TRACKING_BCAST / OPTIN / OPTOUT / NOLOOP 的组合
+     * @param prefixes   广播模式的前缀，为空时订阅所有键
+     */
+    void enableTracking(RedisClient c, long redirectTo, int options, List<String> prefixes) {
+        if ((c.getFlags() & RedisClient.CLIENT_TRACKING) == 0) trackingClients++;
+        c.addFlags(RedisClient.CLIENT_TRACKING);
+        c.removeFlags(RedisClient.CLIENT_TRACKING_BROKEN_REDIR | RedisClient.CLIENT_TRACKING_BCAST
+                | RedisClient.CLIENT_TRACKING_OPTIN | RedisClient.CLIENT_TRACKING_OPTOUT
+                | RedisClient.CLIENT_TRACKING_NOLOOP);
+        c.setTrackingRedirection(redirectTo);
+
+        if ((options & RedisClient.CLIENT_TRACKING_BCAST) != 0) {
+            c.addFlags(RedisClient.CLIENT_TRACKING_BCAST);
+            if (prefixes.isEmpty()) enableBcastTrackingForPrefix(c, "");
+            for (String prefix : prefixes) enableBcastTrackingForPrefix(c, prefix);
+        }
+        c.addFlags(options & (RedisClient.CLIENT_TRACKING_OPTIN | RedisClient.CLIENT_TRACKING_OPTOUT
+                | RedisClient.CLIENT_TRACKING_NOLOOP));
+    }
+
+    private void enableBcastTrackingForPrefix(RedisClient c, String prefix) {
+        BcastState bs = prefixTable.find(prefix);
+        if (bs == null) {
+            bs = new BcastState();
+            prefixTable.insert(prefix, bs);
+        }
+        if (bs.clients.add(c.getId(), c)) {
+            if (c.getTrackingPrefixes() == null) c.setTrackingPrefixes(new Rax<Boolean>());
+            c.getTrackingPrefixes().insert(prefix, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * 关闭跟踪。默认模式下跟踪表中的客户端ID不立即清理，发送失效消息时发现客户端已关闭跟踪会跳过
+     */
+    void disableTracking(RedisClient c) {
+        if ((c.getFlags() & RedisClient.CLIENT_TRACKING) == 0) return;
+        if ((c.getFlags() & RedisClient.CLIENT_TRACKING_BCAST) != 0) {
+            Rax<Boolean>.RaxIterator it = c.getTrackingPrefixes().iterator().seekFirst();
+            List<String> prefixes = new ArrayList<>();
+            while (it.next()) prefixes.add(it.key());
+            for (String prefix : prefixes) {
+                BcastState bs = prefixTable.find(prefix);
+                bs.clients.delete(c.getId());
+                if (bs.clients.size() == 0) prefixTable.remove(prefix);
+            }
+            c.setTrackingPrefixes(null);
+        }
+        c.removeFlags(RedisClient.CLIENT_TRACKING | RedisClient.CLIENT_TRACKING_BROKEN_REDIR
+                | RedisClient.CLIENT_TRACKING_BCAST | RedisClient.CLIENT_TRACKING_OPTIN
+                | RedisClient.CLIENT_TRACKING_OPTOUT | RedisClient.CLIENT_TRACKING_CACHING
+                | RedisClient.CLIENT_TRACKING_NOLOOP);
+        trackingClients--;
+    }
+
+    /**
+     * 同一个客户端的前缀不能互相包含，否则一个键会收到两次失效消息
+     */
+    void checkPrefixCollisions(RedisClient c, List<String> prefixes) {
+        for (int i = 0; i < prefixes.size(); i++) {
+            String prefix = prefixes.get(i);
+            Rax<Boolean> existing = c.getTrackingPrefixes();
+            if (existing != null) {
+                String collision = findPrefixCollision(existing, prefix);
+                if (collision != null) {
+                    throw new IllegalArgumentException("ERR Prefix '" + prefix + "' overlaps with an existing prefix '"
+                            + collision + "'. Prefixes for a single client must not overlap.");
+                }
+            }
+            for (int j = i + 1; j < prefixes.size(); j++) {
+                String other = prefixes.get(j);
+                if (prefix.startsWith(other) || other.startsWith(prefix)) {
+                    throw new IllegalArgumentException("ERR Prefix '" + prefix + "' overlaps with another provided prefix '"
+                            + other + "'. Prefixes for a single client must not overlap.");
+                }
+            }
+        }
+    }
+
+    /**
+     * 查找与prefix互为前缀的已有前缀(重复的前缀不算冲突)
+     */
+    private static String findPrefixCollision(Rax<Boolean> existing, String prefix) {
+        // 已有前缀是prefix的前缀
+        for (int len = 0; len < prefix.length(); len++) {
+            if (existing.exists(prefix.substring(0, len))) return prefix.substring(0, len);
+        }
+        // prefix是已有前缀的前缀：有序迭代中紧跟在prefix之后的键
+        Rax<Boolean>.RaxIterator it = existing.iterator().seek(prefix, false);
+        if (it.next() && it.key().startsWith(prefix)) return it.key();
+        return null;
+    }
+
+    // ------------------------------ 记录与失效 ------------------------------
+
+    /**
+     * 只读命令执行后记录读取的键
+     */
+    void rememberKeys(RedisClient c) {
+        int flags = c.getFlags();
+        boolean optin = (flags & RedisClient.CLIENT_TRACKING_OPTIN) != 0;
+        boolean optout = (flags & RedisClient.CLIENT_TRACKING_OPTOUT) != 0;
+        boolean caching = (flags & RedisClient.CLIENT_TRACKING_CACHING) != 0;
+        if ((optin && !caching) || (optout && caching)) return;
+
+        for (String key : c.getCmd().getKeys(c.getArgv())) {
+            Dict<Long, Boolean> ids = trackingTable.find(key);
+            if (ids == null) {
+                ids = new Dict<>();
+                trackingTable.insert(key, ids);
+            }
+            if (ids.add(c.getId(), Boolean.TRUE)) trackingTableTotalItems++;
+        }
+    }
+
+    /**
+     * 键被修改：通知读取过该键的客户端，并从跟踪表删除该键
+     *
+     * @param bcast 是否同时记录到广播列表，跟踪表淘汰时不需要
+     */
+    void invalidateKey(String key, boolean bcast) {
+        RedisClient modifier = server.getCurrentClient();
+        if (bcast && prefixTable.size() > 0) rememberKeyToBroadcast(modifier, key);
+
+        if (trackingTableTotalItems == 0) return;
+        Dict<Long, Boolean> ids = trackingTable.remove(key);
+        if (ids == null) return;
+        trackingTableTotalItems -= ids.size();
+
+        byte[] keys = null;
+        for (Dict.DictEntry<Long, Boolean> de : ids) {
+            RedisClient target = server.lookupClient(de.getKey());
+            // 客户端已断开、已关闭跟踪，或者切换到了广播模式
+            if (target == null || (target.getFlags() & RedisClient.CLIENT_TRACKING) == 0
+                    || (target.getFlags() & RedisClient.CLIENT_TRACKING_BCAST) != 0) {
+                continue;
+            }
+            if (target == modifier) {
+                if ((target.getFlags() & RedisClient.CLIENT_TRACKING_NOLOOP) != 0) continue;
+                // 当前客户端正在执行命令，失效消息等命令回复之后再发送，避免插在回复中间
+                pendingKeys.add(key);
+                continue;
+            }
+            if (keys == null) keys = encodeKeys(singletonList(key));
+            sendTrackingMessage(target, keys);
+        }
+    }
+
+    private void rememberKeyToBroadcast(RedisClient modifier, String key) {
+        List<BcastState> states = new ArrayList<>();
+        prefixTable.collectPrefixesOf(key, states);
+        for (BcastState bs : states) {
+            if (!bs.keys.exists(key)) {
+                bs.keys.insert(key, modifier);
+            } else if (bs.keys.find(key) != modifier) {
+                bs.keys.insert(key, null);
+            }
+        }
+    }
+
+    /**
+     * 数据库被清空：通知所有开启跟踪的客户端清空缓存(失效消息的键列表为null)，并清空跟踪表
+     */
+    void invalidateKeysOnFlush() {
+        if (trackingClients > 0) {
+            RedisClient current = server.getCurrentClient();
+            for (Dict.DictEntry<Long, RedisClient> de : server.getClients()) {
+                RedisClient c = de.getVal();
+                if ((c.getFlags() & RedisClient.CLIENT_TRACKING) == 0) continue;
+                if (c == current) {
+                    pendingKeys.add(null);
+                } else {
+                    sendTrackingMessage(c, null);
+                }
+            }
+        }
+        trackingTable.clear();
+        trackingTableTotalItems = 0;
+    }
+
+    /**
+     * 命令执行完毕后，向当前客户端发送推迟的失效消息
+     */
+    void handlePendingKeyInvalidations(RedisClient c) {
+        if (pendingKeys.isEmpty()) return;
+        List<String> keys = new ArrayList<>();
+        for (String key : pendingKeys) {
+            if (key == null) {
+                sendTrackingMessage(c, null);
+            } else {
+                keys.add(key);
+            }
+        }
+        pendingKeys.clear();
+        if (!keys.isEmpty()) sendTrackingMessage(c, encodeKeys(keys));
+    }
+
+    /**
+     * 向开启跟踪的客户端发送失效消息
+     *
+     * @param keys 已编码的键数组，null表示全部失效
+     */
+    private void sendTrackingMessage(RedisClient c, byte[] keys) {
+        RedisClient target = c;
+        boolean usingRedirection = false;
+        if (c.getTrackingRedirection() != 0) {
+            RedisClient redir = server.lookupClient(c.getTrackingRedirection());
+            if (redir == null) {
+                // 转发目标已断开，RESP3客户端会收到一次通知
+                if ((c.getFlags() & RedisClient.CLIENT_TRACKING_BROKEN_REDIR) == 0) {
+                    c.addFlags(RedisClient.CLIENT_TRACKING_BROKEN_REDIR);
+                    if (c.getResp() >= 3) {
+                        c.addReplyPushLen(2);
+                        c.addReplyBulk("tracking-redir-broken");
+                        c.addReplyLongLong(c.getTrackingRedirection());
+                    }
+                }
+                return;
+            }
+            target = redir;
+            usingRedirection = true;
+        }
+
+        if (target.getResp() >= 3) {
+            target.addReply(INVALIDATE_PUSH_HDR);
+        } else if (usingRedirection && target.isPubSub()) {
+            target.addReply(INVALIDATE_MESSAGE_HDR);
+        } else {
+            // RESP2且没有转发时无法在同一连接上推送消息
+            return;
+        }
+        if (keys != null) {
+            target.addReply(keys);
+        } else {
+            target.addReply(target.getResp() >= 3 ? Protocol.NULL_RESP3 : Protocol.NULL_ARRAY);
+        }
+    }
+
+    // ------------------------------ beforeSleep ------------------------------
+
+    /**
+     * 广播本轮事件循环中被修改的键：每个前缀的键数组编码一次，发送给订阅该前缀的所有客户端，
+     * NOLOOP客户端需要过滤掉自己修改的键，单独编码
+     */
+    void broadcastInvalidationMessages() {
+        if (prefixTable.size() == 0) return;
+        Rax<BcastState>.RaxIterator it = prefixTable.iterator().seekFirst();
+        while (it.next()) {
+            BcastState bs = it.data();
+            if (bs.keys.size() == 0) continue;
+
+            List<String> keys = new ArrayList<>();
+            List<RedisClient> modifiers = new ArrayList<>();
+            Rax<RedisClient>.RaxIterator ki = bs.keys.iterator().seekFirst();
+            while (ki.next()) {
+                keys.add(ki.key());
+                modifiers.add(ki.data());
+            }
+            bs.keys = new Rax<>();
+
+            byte[] proto = encodeKeys(keys);
+            for (Dict.DictEntry<Long, RedisClient> de : bs.clients) {
+                RedisClient c = de.getVal();
+                if ((c.getFlags() & RedisClient.CLIENT_TRACKING_NOLOOP) == 0) {
+                    sendTrackingMessage(c, proto);
+                    continue;
+                }
+                List<String> filtered = new ArrayList<>();
+                for (int j = 0; j < keys.size(); j++) {
+                    if (modifiers.get(j) != c) filtered.add(keys.get(j));
+                }
+                if (!filtered.isEmpty()) sendTrackingMessage(c, encodeKeys(filtered));
+            }
+        }
+    }
+
+    /**
+     * 跟踪表超过上限时淘汰键，每轮最多处理 100*(timeoutCounter+1) 个键
+     */
+    void limitUsedSlots() {
+        if (trackingTableMaxKeys == 0 || trackingTable.size() <= trackingTableMaxKeys) {
+            timeoutCounter = 0;
+            return;
+        }
+
+        int effort = 100 * (timeoutCounter + 1);
+        long excess = trackingTable.size() - trackingTableMaxKeys;
+        List<String> victims = new ArrayList<>();
+        Rax<Dict<Long, Boolean>>.RaxIterator it = trackingTable.iterator();
+        if (evictionCursor == null) {
+            it.seekFirst();
+        } else {
+            it.seek(evictionCursor, false);
+        }
+        boolean wrapped = false;
+        while (effort > 0 && victims.size() < excess) {
+            if (!it.next()) {
+                // 走到末尾后从头继续，像时钟指针一样循环扫描
+                if (wrapped) break;
+                wrapped = true;
+                it.seekFirst();
+                continue;
+            }
+            victims.add(it.key());
+            effort--;
+        }
+        for (String key : victims) invalidateKey(key, false);
+        if (!victims.isEmpty()) evictionCursor = victims.get(victims.size() - 1);
+
+        if (trackingTable.size() > trackingTableMaxKeys) {
+            timeoutCounter++;
+        } else {
+            timeoutCounter = 0;
+        }
+    }
+
+    // ------------------------------ 编码 ------------------------------
+
+    private static List<String> singletonList(String key) {
+        List<String> list = new ArrayList<>(1);
+        list.add(key);
+        return list;
+    }
+
+    private static byte[] encodeKeys(List<String> keys) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 * (keys.size() + 1));
+        Protocol.writeLine(out, '*', keys.size());
+        for (String key : keys) {
+            byte[] b = Protocol.encodeBulk(key);
+            out.write(b, 0, b.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) out.write(part, 0, part.length);
+        return out.toByteArray();
+    }
+}
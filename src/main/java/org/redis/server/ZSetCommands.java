@@ -0,0 +1,297 @@
+package org.redis.server;
+
+import org.redis.lang.RedisObject;
+import org.redis.lang.RedisZSet;
+import org.redis.lang.basis.skip.SkipList;
+import org.redis.utils.NumberUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author zsy
+ * @Description 有序集合命令：ZADD、ZREM、ZSCORE、ZCARD、ZRANGEBYSCORE、ZPOPMIN、ZPOPMAX、BZPOPMIN、BZPOPMAX
+ * @ClassName ZSetCommands
+ * @Version 1.0
+ */
+public class ZSetCommands {
+
+    static void register(RedisServer server) {
+        server.addCommand(new RedisCommand("zadd", -4, RedisCommand.CMD_WRITE, 1, 1, 1) {
+            @Override
+            public void proc(RedisClient c) {
+                zaddCommand(c);
+            }
+        });
+        server.addCommand(new RedisCommand("zrem", -3, RedisCommand.CMD_WRITE, 1, 1, 1) {
+            @Override
+            public void proc(RedisClient c) {
+                zremCommand(c);
+            }
+        });
+        server.addCommand(new RedisCommand("zscore", 3, RedisCommand.CMD_READONLY, 1, 1, 1) {
+            @Override
+            public void proc(RedisClient c) {
+                RedisZSet zset = lookupZSetRead(c, c.arg(1));
+                Double score = zset == null ? null : zset.zscore(c.arg(2));
+                if (score == null) {
+                    c.addReplyNull();
+                } else {
+                    c.addReplyDouble(score);
+                }
+            }
+        });
+        server.addCommand(new RedisCommand("zcard", 2, RedisCommand.CMD_READONLY, 1, 1, 1) {
+            @Override
+            public void proc(RedisClient c) {
+                RedisZSet zset = lookupZSetRead(c, c.arg(1));
+                c.addReplyLongLong(zset == null ? 0 : zset.zcard());
+            }
+        });
+        server.addCommand(new RedisCommand("zrangebyscore", -4, RedisCommand.CMD_READONLY, 1, 1, 1) {
+            @Override
+            public void proc(RedisClient c) {
+                zrangebyscoreCommand(c);
+            }
+        });
+        server.addCommand(new RedisCommand("zpopmin", -2, RedisCommand.CMD_WRITE, 1, 1, 1) {
+            @Override
+            public void proc(RedisClient c) {
+                zpopGenericCommand(c, false);
+            }
+        });
+        server.addCommand(new RedisCommand("zpopmax", -2, RedisCommand.CMD_WRITE, 1, 1, 1) {
+            @Override
+            public void proc(RedisClient c) {
+                zpopGenericCommand(c, true);
+            }
+        });
+        server.addCommand(new RedisCommand("bzpopmin", -3, RedisCommand.CMD_WRITE, 1, -2, 1) {
+            @Override
+            public void proc(RedisClient c) {
+                blockingZpopGenericCommand(c, false);
+            }
+        });
+        server.addCommand(new RedisCommand("bzpopmax", -3, RedisCommand.CMD_WRITE, 1, -2, 1) {
+            @Override
+            public void proc(RedisClient c) {
+                blockingZpopGenericCommand(c, true);
+            }
+        });
+    }
+
+    static RedisZSet lookupZSetRead(RedisClient c, String key) {
+        RedisObject o = c.getDb().lookupKeyRead(key);
+        if (o == null) return null;
+        DbCommands.checkType(o, RedisObject.OBJ_ZSET);
+        return (RedisZSet) o.getPtr();
+    }
+
+    /**
+     * 查找用于写入的有序集合，不存在时创建
+     */
+    static RedisZSet lookupZSetWriteOrCreate(RedisClient c, String key) {
+        RedisObject o = c.getDb().lookupKeyWrite(key);
+        if (o == null) {
+            o = RedisObject.createZsetObject();
+            c.getDb().dbAdd(key, o);
+        } else {
+            DbCommands.checkType(o, RedisObject.OBJ_ZSET);
+        }
+        return (RedisZSet) o.getPtr();
+    }
+
+    /**
+     * 成员全部删除后删除整个键
+     */
+    static void deleteIfEmpty(RedisClient c, String key, RedisZSet zset) {
+        if (zset.zcard() == 0) c.getDb().dbDelete(key);
+    }
+
+    /**
+     * ZADD key [NX|XX] [CH] score member [score member ...]
+     */
+    private static void zaddCommand(RedisClient c) {
+        boolean nx = false;
+        boolean xx = false;
+        boolean ch = false;
+        int scoreidx = 2;
+        while (scoreidx < c.getArgc()) {
+            String opt = c.arg(scoreidx).toLowerCase();
+            if (opt.equals("nx")) {
+                nx = true;
+            } else if (opt.equals("xx")) {
+                xx = true;
+            } else if (opt.equals("ch")) {
+                ch = true;
+            } else {
+                break;
+            }
+            scoreidx++;
+        }
+        int elements = c.getArgc() - scoreidx;
+        if (elements == 0 || elements % 2 != 0 || (nx && xx)) {
+            throw new IllegalArgumentException(Protocol.SYNTAX_ERR);
+        }
+        // 先解析全部分值，保证出错时不会部分写入
+        double[] scores = new double[elements / 2];
+        for (int j = 0; j < scores.length; j++) {
+            scores[j] = NumberUtil.parseDouble(c.arg(scoreidx + j * 2));
+        }
+
+        String key = c.arg(1);
+        if (xx && c.getDb().lookupKeyWrite(key) == null) {
+            c.addReply(Protocol.CZERO);
+            return;
+        }
+        RedisZSet zset = lookupZSetWriteOrCreate(c, key);
+        int added = 0;
+        int updated = 0;
+        for (int j = 0; j < scores.length; j++) {
+            String member = c.arg(scoreidx + j * 2 + 1);
+            Double cur = zset.zscore(member);
+            if ((nx && cur != null) || (xx && cur == null)) continue;
+            if (zset.zadd(scores[j], member)) {
+                added++;
+            } else if (cur != scores[j]) {
+                updated++;
+            }
+        }
+        deleteIfEmpty(c, key, zset);
+        if (added + updated > 0) c.getDb().signalModifiedKey(key);
+        c.getServer().incrDirty(added + updated);
+        c.addReplyLongLong(ch ? added + updated : added);
+    }
+
+    private static void zremCommand(RedisClient c) {
+        String key = c.arg(1);
+        RedisObject o = c.getDb().lookupKeyWrite(key);
+        if (o == null) {
+            c.addReply(Protocol.CZERO);
+            return;
+        }
+        DbCommands.checkType(o, RedisObject.OBJ_ZSET);
+        RedisZSet zset = (RedisZSet) o.getPtr();
+        int deleted = 0;
+        for (int j = 2; j < c.getArgc(); j++) {
+            if (zset.zrem(c.arg(j))) deleted++;
+        }
+        deleteIfEmpty(c, key, zset);
+        if (deleted > 0) c.getDb().signalModifiedKey(key);
+        c.getServer().incrDirty(deleted);
+        c.addReplyLongLong(deleted);
+    }
+
+    /**
+     * 解析分值区间端点，"(" 前缀表示开区间
+     */
+    static SkipList.RangeSpec parseRange(String min, String max) {
+        boolean minex = min.startsWith("(");
+        boolean maxex = max.startsWith("(");
+        try {
+            return new SkipList.RangeSpec(
+                    NumberUtil.parseDouble(minex ? min.substring(1) : min), minex,
+                    NumberUtil.parseDouble(maxex ? max.substring(1) : max), maxex);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("ERR min or max is not a float");
+        }
+    }
+
+    /**
+     * ZRANGEBYSCORE key min max [WITHSCORES] [LIMIT offset count]
+     */
+    private static void zrangebyscoreCommand(RedisClient c) {
+        SkipList.RangeSpec range = parseRange(c.arg(2), c.arg(3));
+        boolean withscores = false;
+        long offset = 0;
+        long limit = -1;
+        for (int j = 4; j < c.getArgc(); j++) {
+            String opt = c.arg(j).toLowerCase();
+            if (opt.equals("withscores")) {
+                withscores = true;
+            } else if (opt.equals("limit") && j + 2 < c.getArgc()) {
+                offset = NumberUtil.parseLong(c.arg(j + 1));
+                limit = NumberUtil.parseLong(c.arg(j + 2));
+                j += 2;
+            } else {
+                throw new IllegalArgumentException(Protocol.SYNTAX_ERR);
+            }
+        }
+
+        RedisZSet zset = lookupZSetRead(c, c.arg(1));
+        List<SkipList.SkipNode> result = new ArrayList<>();
+        if (zset != null && offset >= 0) {
+            SkipList.SkipNode ln = zset.firstInRange(range);
+            while (ln != null && offset-- > 0) ln = ln.next();
+            while (ln != null && limit != 0 && range.valueLteMax(ln.getScore())) {
+                result.add(ln);
+                ln = ln.next();
+                limit--;
+            }
+        }
+        c.addReplyArrayLen(withscores ? result.size() * 2L : result.size());
+        for (SkipList.SkipNode node : result) {
+            c.addReplyBulk(node.getValue());
+            if (withscores) c.addReplyDouble(node.getScore());
+        }
+    }
+
+    /**
+     * ZPOPMIN/ZPOPMAX key [count]：回复 member score 交替的数组
+     */
+    private static void zpopGenericCommand(RedisClient c, boolean max) {
+        if (c.getArgc() > 3) throw new IllegalArgumentException(Protocol.SYNTAX_ERR);
+        long count = 1;
+        if (c.getArgc() == 3) {
+            count = NumberUtil.parseLong(c.arg(2));
+            if (count < 0) throw new IllegalArgumentException("ERR value is out of range, must be positive");
+        }
+        String key = c.arg(1);
+        RedisObject o = c.getDb().lookupKeyWrite(key);
+        if (o == null) {
+            c.addReply(Protocol.EMPTY_ARRAY);
+            return;
+        }
+        DbCommands.checkType(o, RedisObject.OBJ_ZSET);
+        RedisZSet zset = (RedisZSet) o.getPtr();
+        long n = Math.min(count, zset.zcard());
+        c.addReplyArrayLen(n * 2);
+        for (long i = 0; i < n; i++) {
+            SkipList.SkipNode ln = zset.pop(max);
+            c.addReplyBulk(ln.getValue());
+            c.addReplyDouble(ln.getScore());
+        }
+        if (n > 0) {
+            deleteIfEmpty(c, key, zset);
+            c.getDb().signalModifiedKey(key);
+            c.getServer().incrDirty(n);
+        }
+    }
+
+    /**
+     * BZPOPMIN/BZPOPMAX key [key ...] timeout：回复 [key, member, score]，全部为空时阻塞
+     */
+    private static void blockingZpopGenericCommand(RedisClient c, boolean max) {
+        long timeout = Blocking.parseTimeout(c.arg(c.getArgc() - 1), true);
+        for (int j = 1; j < c.getArgc() - 1; j++) {
+            String key = c.arg(j);
+            RedisObject o = c.getDb().lookupKeyWrite(key);
+            if (o == null) continue;
+            DbCommands.checkType(o, RedisObject.OBJ_ZSET);
+            RedisZSet zset = (RedisZSet) o.getPtr();
+            SkipList.SkipNode ln = zset.pop(max);
+            c.addReplyArrayLen(3);
+            c.addReplyBulk(key);
+            c.addReplyBulk(ln.getValue());
+            c.addReplyDouble(ln.getScore());
+            deleteIfEmpty(c, key, zset);
+            c.getDb().signalModifiedKey(key);
+            c.getServer().incrDirty(1);
+            c.rewriteArgv(max ? "ZPOPMAX" : "ZPOPMIN", key);
+            return;
+        }
+        String[] keys = new String[c.getArgc() - 2];
+        System.arraycopy(c.getArgv(), 1, keys, 0, keys.length);
+        c.getServer().getBlocking().blockForKeys(c, Blocking.BLOCKED_ZSET, keys, timeout, null);
+    }
+}
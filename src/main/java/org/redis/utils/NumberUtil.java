@@ -0,0 +1,56 @@
+package org.redis.utils;
+
+/**
+ * @author zsy
+ * @Description 命令参数的数值解析工具类，解析失败时抛出带Redis错误信息的异常
+ * @ClassName NumberUtil
+ * @Version 1.0
+ */
+public class NumberUtil {
+
+    public static long parseLong(String s) {
+        try {
+            return Long.parseLong(s);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("ERR value is not an integer or out of range");
+        }
+    }
+
+    /**
+     * 支持 inf / +inf / -inf
+     */
+    public static double parseDouble(String s) {
+        String v = s.toLowerCase();
+        if (v.equals("inf") || v.equals("+inf")) return Double.POSITIVE_INFINITY;
+        if (v.equals("-inf")) return Double.NEGATIVE_INFINITY;
+        try {
+            double d = Double.parseDouble(s);
+            if (Double.isNaN(d)) throw new NumberFormatException();
+            return d;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("ERR value is not a valid float");
+        }
+    }
+
+    /**
+     * 严格的整数转换，与Redis的string2ll一致：不接受前导0、'+'号和空白
+     *
+     * @return 不能无损转换为long时返回null
+     */
+    public static Long string2ll(String s) {
+        int len = s.length();
+        if (len == 0 || len > 20) return null;
+        int i = s.charAt(0) == '-' ? 1 : 0;
+        if (i == len) return null;
+        if (s.charAt(i) == '0') return len == 1 ? 0L : null;
+        for (int j = i; j < len; j++) {
+            char ch = s.charAt(j);
+            if (ch < '0' || ch > '9') return null;
+        }
+        try {
+            return Long.parseLong(s);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package org.redis.utils;
+
+/**
+ * @author zsy
+ * @Description glob风格的字符串匹配，对应Redis util.c中的stringmatchlen
+ *
+ * 支持 * ? [abc] [^abc] [a-z] 以及 \ 转义。
+ * 对连续的 * 做了剪枝：内层 * 已经扫描到字符串末尾仍无法匹配时，外层 * 不必再尝试更长的匹配，
+ * 避免形如 "a*a*a*a*b" 的模式出现指数级回溯。
+ *
+ * @ClassName StringMatchUtil
+ * @Version 1.0
+ */
+public class StringMatchUtil {
+
+    /** 递归深度上限 */
+    private static final int MAX_NESTING = 1000;
+
+    public static boolean stringmatch(String pattern, String string, boolean nocase) {
+        return stringmatch(pattern, 0, string, 0, nocase, new boolean[1], 0);
+    }
+
+    /**
+     * 返回模式中第一个通配符(* ? [ \)之前的字面前缀，匹配该模式的字符串一定以此前缀开头
+     */
+    public static String literalPrefix(String pattern) {
+        for (int i = 0; i < pattern.length(); i++) {
+            char ch = pattern.charAt(i);
+            if (ch == '*' || ch == '?' || ch == '[' || ch == '\\') return pattern.substring(0, i);
+        }
+        return pattern;
+    }
+
+    private static boolean stringmatch(String pattern, int p, String string, int s, boolean nocase,
+                                       boolean[] skipLongerMatches, int nesting) {
+        if (nesting > MAX_NESTING) return false;
+        int plen = pattern.length();
+        int slen = string.length();
+
+        while (p < plen && s < slen) {
+            char pc = pattern.charAt(p);
+            switch (pc) {
+                case '*':
+                    while (p + 1 < plen && pattern.charAt(p + 1) == '*') p++;
+                    // 模式以 * 结尾，匹配剩余全部字符
+                    if (p + 1 == plen) return true;
+                    while (s < slen) {
+                        if (stringmatch(pattern, p + 1, string, s, nocase, skipLongerMatches, nesting + 1)) {
+                            return true;
+                        }
+                        if (skipLongerMatches[0]) return false;
+                        s++;
+                    }
+                    skipLongerMatches[0] = true;
+                    return false;
+                case '?':
+                    s++;
+                    break;
+                case '[': {
+                    p++;
+                    boolean not = p < plen && pattern.charAt(p) == '^';
+                    if (not) p++;
+                    boolean match = false;
+                    char c = string.charAt(s);
+                    while (true) {
+                        if (p < plen && pattern.charAt(p) == '\\' && plen - p >= 2) {
+                            p++;
+                            if (equalsChar(pattern.charAt(p), c, nocase)) match = true;
+                        } else if (p < plen && pattern.charAt(p) == ']') {
+                            break;
+                        } else if (p >= plen) {
+                            // 缺少 ]，视为到模式末尾结束
+                            p--;
+                            break;
+                        } else if (plen - p >= 3 && pattern.charAt(p + 1) == '-') {
+                            char start = pattern.charAt(p);
+                            char end = pattern.charAt(p + 2);
+                            char ch = c;
+                            if (start > end) {
+                                char t = start;
+                                start = end;
+                                end = t;
+                            }
+                            if (nocase) {
+                                start = Character.toLowerCase(start);
+                                end = Character.toLowerCase(end);
+                                ch = Character.toLowerCase(ch);
+                            }
+                            p += 2;
+                            if (ch >= start && ch <= end) match = true;
+                        } else if (equalsChar(pattern.charAt(p), c, nocase)) {
+                            match = true;
+                        }
+                        p++;
+                    }
+                    if (not) match = !match;
+                    if (!match) return false;
+                    s++;
+                    break;
+                }
+                case '\\':
+                    // 转义字符：按字面比较下一个字符，位于末尾时比较'\\'本身
+                    if (plen - p >= 2) p++;
+                    if (!equalsChar(pattern.charAt(p), string.charAt(s), nocase)) return false;
+                    s++;
+                    break;
+                default:
+                    if (!equalsChar(pattern.charAt(p), string.charAt(s), nocase)) return false;
+                    s++;
+                    break;
+            }
+            p++;
+            if (s == slen) {
+                while (p < plen && pattern.charAt(p) == '*') p++;
+                break;
+            }
+        }
+        return p == plen && s == slen;
+    }
+
+    private static boolean equalsChar(char a, char b, boolean nocase) {
+        return a == b || (nocase && Character.toLowerCase(a) == Character.toLowerCase(b));
+    }
+}
@@ -0,0 +1,180 @@
+package org.redis.db;
+
+import junit.framework.TestCase;
+import org.redis.lang.RedisHash;
+import org.redis.lang.RedisObject;
+import org.redis.lang.RedisZSet;
+import org.redis.lang.basis.ListPack;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @author zsy
+ * @Description 内存映射加载测试：热备查找、分批加载以及紧凑编码的完整性检查
+ * @ClassName MappedRDBLoaderTest
+ * @Version 1.0
+ */
+public class MappedRDBLoaderTest extends TestCase {
+
+    private static RedisDB[] newDbs() {
+        RedisDB[] dbs = new RedisDB[2];
+        for (int j = 0; j < dbs.length; j++) dbs[j] = new RedisDB(j);
+        return dbs;
+    }
+
+    public void testWarmLookupThenChunkedLoad() throws IOException {
+        RedisDB[] src = newDbs();
+        StringBuilder big = new StringBuilder();
+        for (int i = 0; i < 1000; i++) big.append("0123456789");
+        // 总大小超过一批的字节数，需要分多批加载
+        int n = MappedRDBLoader.LOADING_PROCESS_EVENTS_INTERVAL_BYTES / big.length() * 2;
+        for (int i = 0; i < n; i++) src[0].setKey("key:" + i, RedisObject.createStringObject(big.toString()));
+        RedisObject z = RedisObject.createZsetObject();
+        ((RedisZSet) z.getPtr()).zadd(1, "m");
+        src[1].setKey("z", z);
+        src[1].setKey("expired", RedisObject.createStringObject("x"));
+        src[1].setExpire("expired", System.currentTimeMillis() - 1000);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RDB.rdbSave(out, src);
+
+        RedisDB[] dbs = newDbs();
+        MappedRDBLoader loader = new MappedRDBLoader(ByteBuffer.wrap(out.toByteArray()), dbs);
+        assertEquals(0, dbs[0].dbSize());
+        // 尚未加载的键直接从映射区域解析
+        assertEquals(big.toString(), loader.lookupKey(0, "key:" + (n - 1)).getPtr());
+        assertEquals(Double.valueOf(1), ((RedisZSet) loader.lookupKey(1, "z").getPtr()).zscore("m"));
+        assertNull(loader.lookupKey(0, "missing"));
+        assertNull(loader.lookupKey(1, "expired"));
+
+        int chunks = 0;
+        while (!loader.loadChunk()) chunks++;
+        assertTrue(chunks > 0);
+        assertTrue(loader.isFinished());
+        assertEquals(n, dbs[0].dbSize());
+        assertEquals(big.toString(), dbs[0].lookupKeyRead("key:0").getPtr());
+        assertNull(loader.lookupKey(0, "key:0"));
+    }
+
+    /**
+     * 单个键的RDB：REDIS0011 SELECTDB 0 <type> <key> <blob> EOF <checksum>
+     */
+    private static byte[] singleKeyRdb(int type, String key, byte[] blob) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] header = "REDIS0011".getBytes(StandardCharsets.US_ASCII);
+        out.write(header, 0, header.length);
+        out.write(RDB.RDB_OPCODE_SELECTDB);
+        out.write(0);
+        out.write(type);
+        out.write(key.length());
+        out.write(key.getBytes(StandardCharsets.ISO_8859_1), 0, key.length());
+        out.write(blob.length);
+        out.write(blob, 0, blob.length);
+        out.write(RDB.RDB_OPCODE_EOF);
+        out.write(new byte[8], 0, 8);
+        return out.toByteArray();
+    }
+
+    /**
+     * field=f value=v 的ziplist
+     */
+    private static byte[] hashZipList() {
+        return new byte[]{17, 0, 0, 0, 13, 0, 0, 0, 2, 0,
+                0, 0x01, 'f',
+                3, 0x01, 'v',
+                (byte) 0xFF};
+    }
+
+    public void testAdoptsHashZipList() throws IOException {
+        RedisDB[] dbs = newDbs();
+        MappedRDBLoader loader = new MappedRDBLoader(
+                ByteBuffer.wrap(singleKeyRdb(RDB.RDB_TYPE_HASH_ZIPLIST, "h", hashZipList())), dbs);
+        loader.loadAll();
+        RedisObject o = dbs[0].lookupKeyRead("h");
+        assertEquals(RedisObject.OBJ_HASH, o.getType());
+        RedisHash hash = (RedisHash) o.getPtr();
+        assertEquals(RedisHash.ENCODING_ZIPLIST, hash.getEncoding());
+        assertEquals("v", hash.get("f"));
+    }
+
+    private static byte[] listPack(String... entries) {
+        ListPack lp = ListPack.create();
+        for (String e : entries) lp = lp.append(e);
+        ByteBuffer b = lp.buffer();
+        byte[] out = new byte[b.remaining()];
+        b.get(out);
+        return out;
+    }
+
+    /**
+     * 顺序加载和热备查找都必须拒绝该记录
+     */
+    private static void assertRejected(int type, byte[] blob, String message) throws IOException {
+        byte[] rdb = singleKeyRdb(type, "k", blob);
+        MappedRDBLoader loader = new MappedRDBLoader(ByteBuffer.wrap(rdb), newDbs());
+        try {
+            loader.lookupKey(0, "k");
+            fail("corrupt value served before load");
+        } catch (IllegalStateException expected) {
+            assertEquals(message, expected.getCause().getMessage());
+        }
+        try {
+            loader.loadAll();
+            fail("corrupt value loaded");
+        } catch (IOException expected) {
+            assertEquals(message, expected.getMessage());
+        }
+    }
+
+    public void testCorruptZipListEntryIsRejectedAtLoad() throws IOException {
+        byte[] zl = hashZipList();
+        // 第二个元素声明的长度超出ziplist
+        zl[14] = 0x10;
+        assertRejected(RDB.RDB_TYPE_HASH_ZIPLIST, zl, "Ziplist integrity check failed.");
+    }
+
+    public void testHashListPackWithOddEntryCountIsRejected() throws IOException {
+        assertRejected(RDB.RDB_TYPE_HASH_LISTPACK, listPack("f", "v", "g"), "Hash listpack integrity check failed.");
+    }
+
+    public void testHashListPackWithDuplicateFieldIsRejected() throws IOException {
+        assertRejected(RDB.RDB_TYPE_HASH_LISTPACK, listPack("f", "v", "f", "w"), "Hash listpack integrity check failed.");
+        // 与field相同的value不算重复
+        RedisDB[] dbs = newDbs();
+        new MappedRDBLoader(ByteBuffer.wrap(singleKeyRdb(RDB.RDB_TYPE_HASH_LISTPACK, "h",
+                listPack("f", "g", "g", "f"))), dbs).loadAll();
+        assertEquals("f", ((RedisHash) dbs[0].lookupKeyRead("h").getPtr()).get("g"));
+    }
+
+    public void testHashZipListWithDuplicateFieldIsRejected() throws IOException {
+        byte[] zl = {23, 0, 0, 0, 19, 0, 0, 0, 4, 0,
+                0, 0x01, 'f',
+                3, 0x01, 'v',
+                3, 0x01, 'f',
+                3, 0x01, 'w',
+                (byte) 0xFF};
+        assertRejected(RDB.RDB_TYPE_HASH_ZIPLIST, zl, "Hash ziplist integrity check failed.");
+    }
+
+    public void testZSetListPackWithOddEntryCountIsRejected() throws IOException {
+        assertRejected(RDB.RDB_TYPE_ZSET_LISTPACK, listPack("m", "1", "n"), "Zset listpack integrity check failed.");
+    }
+
+    public void testSetListPackWithDuplicateMemberIsRejected() throws IOException {
+        assertRejected(RDB.RDB_TYPE_SET_LISTPACK, listPack("a", "b", "a"), "Set listpack integrity check failed.");
+    }
+
+    public void testUnsortedIntSetIsRejected() throws IOException {
+        // int16编码，两个元素5、3
+        byte[] is = {2, 0, 0, 0, 2, 0, 0, 0, 5, 0, 3, 0};
+        assertRejected(RDB.RDB_TYPE_SET_INTSET, is, "Intset integrity check failed.");
+        // 重复元素
+        is[10] = 5;
+        assertRejected(RDB.RDB_TYPE_SET_INTSET, is, "Intset integrity check failed.");
+        // 未定义的编码
+        is = new byte[]{3, 0, 0, 0, 1, 0, 0, 0, 5, 0, 0};
+        assertRejected(RDB.RDB_TYPE_SET_INTSET, is, "Intset integrity check failed.");
+    }
+}
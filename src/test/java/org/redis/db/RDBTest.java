@@ -0,0 +1,127 @@
+package org.redis.db;
+
+import junit.framework.TestCase;
+import org.redis.lang.RedisObject;
+import org.redis.lang.RedisZSet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * @author zsy
+ * @Description RDB保存与加载的往返测试
+ * @ClassName RDBTest
+ * @Version 1.0
+ */
+public class RDBTest extends TestCase {
+
+    private static RedisDB[] newDbs() {
+        RedisDB[] dbs = new RedisDB[4];
+        for (int j = 0; j < dbs.length; j++) dbs[j] = new RedisDB(j);
+        return dbs;
+    }
+
+    private static RedisDB[] roundTrip(RedisDB[] dbs) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RDB.rdbSave(out, dbs);
+        RedisDB[] loaded = newDbs();
+        RDB.rdbLoad(new ByteArrayInputStream(out.toByteArray()), loaded);
+        return loaded;
+    }
+
+    private static String getString(RedisDB db, String key) {
+        RedisObject o = db.lookupKeyRead(key);
+        assertNotNull(key, o);
+        assertEquals(RedisObject.OBJ_STRING, o.getType());
+        return (String) o.getPtr();
+    }
+
+    public void testStrings() throws IOException {
+        RedisDB[] dbs = newDbs();
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 1000; i++) large.append("abc");
+        String binary = "\u0000\u00ff\r\n\u0080";
+        dbs[0].setKey("plain", RedisObject.createStringObject("hello"));
+        dbs[0].setKey("int", RedisObject.createStringObject("-12345"));
+        dbs[0].setKey("large", RedisObject.createStringObject(large.toString()));
+        dbs[0].setKey(binary, RedisObject.createStringObject(binary));
+        dbs[3].setKey("other", RedisObject.createStringObject("db3"));
+
+        RedisDB[] loaded = roundTrip(dbs);
+        assertEquals(4, loaded[0].dbSize());
+        assertEquals("hello", getString(loaded[0], "plain"));
+        assertEquals("-12345", getString(loaded[0], "int"));
+        assertEquals(large.toString(), getString(loaded[0], "large"));
+        assertEquals(binary, getString(loaded[0], binary));
+        assertEquals(0, loaded[1].dbSize());
+        assertEquals("db3", getString(loaded[3], "other"));
+    }
+
+    public void testExpires() throws IOException {
+        RedisDB[] dbs = newDbs();
+        long when = System.currentTimeMillis() + 100000;
+        dbs[0].setKey("volatile", RedisObject.createStringObject("v"));
+        dbs[0].setExpire("volatile", when);
+        dbs[0].setKey("persistent", RedisObject.createStringObject("p"));
+
+        RedisDB[] loaded = roundTrip(dbs);
+        assertEquals(when, loaded[0].getExpire("volatile"));
+        assertEquals(-1, loaded[0].getExpire("persistent"));
+        assertEquals(1, loaded[0].expiresSize());
+    }
+
+    public void testZSet() throws IOException {
+        RedisDB[] dbs = newDbs();
+        RedisObject o = RedisObject.createZsetObject();
+        RedisZSet zs = (RedisZSet) o.getPtr();
+        zs.zadd(1.5, "a");
+        zs.zadd(-2, "b");
+        zs.zadd(Double.POSITIVE_INFINITY, "c");
+        dbs[0].setKey("z", o);
+
+        RedisDB[] loaded = roundTrip(dbs);
+        RedisObject lo = loaded[0].lookupKeyRead("z");
+        assertEquals(RedisObject.OBJ_ZSET, lo.getType());
+        RedisZSet lzs = (RedisZSet) lo.getPtr();
+        assertEquals(3, lzs.zcard());
+        assertEquals(1.5, lzs.zscore("a"));
+        assertEquals(-2.0, lzs.zscore("b"));
+        assertEquals(Double.POSITIVE_INFINITY, lzs.zscore("c"));
+    }
+
+    /**
+     * 保存过程中修改、删除、清空，结果仍然是创建Saver时刻的快照
+     */
+    public void testSaverKeepsSnapshotAcrossWrites() throws IOException {
+        RedisDB[] dbs = newDbs();
+        long when = System.currentTimeMillis() + 100000;
+        for (int i = 0; i < 10; i++) dbs[0].setKey("k" + i, RedisObject.createStringObject("old" + i));
+        dbs[0].setExpire("k0", when);
+        dbs[3].setKey("x", RedisObject.createStringObject("x"));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RDB.Saver saver = new RDB.Saver(out, dbs);
+        assertTrue(saver.saveNext());
+        for (int i = 0; i < 10; i++) dbs[0].setKey("k" + i, RedisObject.createStringObject("new" + i));
+        dbs[0].dbDelete("k1");
+        dbs[0].setKey("added", RedisObject.createStringObject("a"));
+        dbs[3].emptyData();
+        dbs[3].setKey("y", RedisObject.createStringObject("y"));
+        while (saver.saveNext()) ;
+
+        // 保存完成后不再跟踪修改
+        int size = out.size();
+        dbs[0].setKey("k2", RedisObject.createStringObject("later"));
+        assertEquals(size, out.size());
+
+        RedisDB[] loaded = newDbs();
+        RDB.rdbLoad(new ByteArrayInputStream(out.toByteArray()), loaded);
+        assertEquals(10, loaded[0].dbSize());
+        for (int i = 0; i < 10; i++) assertEquals("old" + i, getString(loaded[0], "k" + i));
+        assertEquals(when, loaded[0].getExpire("k0"));
+        assertEquals(-1, loaded[0].getExpire("k1"));
+        assertEquals(1, loaded[3].dbSize());
+        assertEquals("x", getString(loaded[3], "x"));
+    }
+}
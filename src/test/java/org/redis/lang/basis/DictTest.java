@@ -0,0 +1,52 @@
+package org.redis.lang.basis;
+
+import junit.framework.TestCase;
+
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * @author zsy
+ * @Description Dict测试
+ * @ClassName DictTest
+ * @Version 1.0
+ */
+public class DictTest extends TestCase {
+
+    public void testAddFindDelete() {
+        Dict<String, Integer> d = new Dict<>();
+        for (int i = 0; i < 1000; i++) assertTrue(d.add("k" + i, i));
+        assertFalse(d.add("k1", -1));
+        assertEquals(1000, d.size());
+        for (int i = 0; i < 1000; i += 2) assertEquals(Integer.valueOf(i), d.delete("k" + i));
+        assertEquals(500, d.size());
+        assertNull(d.fetchValue("k0"));
+        assertEquals(Integer.valueOf(1), d.fetchValue("k1"));
+    }
+
+    public void testIteratorVisitsEveryEntryDuringRehash() {
+        Dict<String, Integer> d = new Dict<>();
+        // 第5个键触发从4扩容到8，渐进式rehash开始
+        for (int i = 0; i < 5; i++) d.add("k" + i, i);
+        Set<String> seen = new HashSet<>();
+        for (Dict.DictEntry<String, Integer> de : d) seen.add(de.getKey());
+        assertEquals(5, seen.size());
+    }
+
+    /**
+     * randomEntry顺带执行的rehash步骤会移动桶，迭代器必须察觉
+     */
+    public void testRandomEntryRehashStepInvalidatesIterator() {
+        Dict<String, Integer> d = new Dict<>();
+        for (int i = 0; i < 5; i++) d.add("k" + i, i);
+        Iterator<Dict.DictEntry<String, Integer>> it = d.iterator();
+        assertNotNull(d.randomEntry());
+        try {
+            it.next();
+            fail("expected ConcurrentModificationException");
+        } catch (ConcurrentModificationException expected) {
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.redis.lang.basis;
+
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+
+/**
+ * @author zsy
+ * @Description 紧凑列表测试：编码往返以及adopt时的完整性检查
+ * @ClassName ListPackTest
+ * @Version 1.0
+ */
+public class ListPackTest extends TestCase {
+
+    private static byte[] bytesOf(ListPack lp) {
+        ByteBuffer b = lp.buffer();
+        byte[] out = new byte[b.remaining()];
+        b.get(out);
+        return out;
+    }
+
+    private static void assertRejected(byte[] lp) {
+        try {
+            ListPack.adopt(ByteBuffer.wrap(lp));
+            fail("corrupt listpack accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testEncodingsRoundTrip() {
+        StringBuilder longStr = new StringBuilder();
+        for (int i = 0; i < 5000; i++) longStr.append('x');
+        String[] values = {"hello", "5", "-4096", "32767", "-8388608", "2147483647", "-9223372036854775808",
+                "007", longStr.substring(0, 100), longStr.toString()};
+        ListPack lp = ListPack.create();
+        for (String v : values) lp = lp.append(v);
+
+        ListPack adopted = ListPack.adopt(ByteBuffer.wrap(bytesOf(lp)));
+        assertEquals(values.length, adopted.size());
+        int p = adopted.first();
+        for (String v : values) {
+            assertEquals(v, adopted.get(p));
+            p = adopted.next(p);
+        }
+        assertEquals(-1, p);
+        assertTrue(adopted.find("-4096", 0) >= 0);
+        assertEquals(-1, adopted.find("7", 0));
+    }
+
+    public void testRejectsStringLengthPastEnd() {
+        byte[] lp = bytesOf(ListPack.create().append("hello").append("x"));
+        lp[6] = (byte) (0x80 | 60);
+        assertRejected(lp);
+    }
+
+    public void testRejectsUndefinedEncoding() {
+        byte[] lp = bytesOf(ListPack.create().append("hello"));
+        lp[6] = (byte) 0xF7;
+        assertRejected(lp);
+    }
+
+    public void testRejectsWrongBacklen() {
+        byte[] lp = bytesOf(ListPack.create().append("hello"));
+        lp[12] = 5;
+        assertRejected(lp);
+    }
+
+    public void testRejectsWrongElementCount() {
+        byte[] lp = bytesOf(ListPack.create().append("hello").appendInteger(5));
+        lp[4] = 3;
+        assertRejected(lp);
+    }
+}
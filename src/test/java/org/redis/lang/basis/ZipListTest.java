@@ -0,0 +1,81 @@
+package org.redis.lang.basis;
+
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+
+/**
+ * @author zsy
+ * @Description 压缩列表测试：读取以及adopt时的完整性检查
+ * @ClassName ZipListTest
+ * @Version 1.0
+ */
+public class ZipListTest extends TestCase {
+
+    /**
+     * "ab"、立即数2、int16 -300 三个元素
+     */
+    private static byte[] sample() {
+        return new byte[]{
+                21, 0, 0, 0, 16, 0, 0, 0, 3, 0,
+                0, 0x02, 'a', 'b',
+                4, (byte) 0xF3,
+                2, (byte) 0xC0, (byte) 0xD4, (byte) 0xFE,
+                (byte) 0xFF};
+    }
+
+    private static void assertRejected(byte[] zl) {
+        try {
+            ZipList.adopt(ByteBuffer.wrap(zl));
+            fail("corrupt ziplist accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testRead() {
+        ZipList zl = ZipList.adopt(ByteBuffer.wrap(sample()));
+        assertEquals(3, zl.size());
+        int p = zl.first();
+        assertEquals("ab", zl.get(p));
+        p = zl.next(p);
+        assertEquals(2, zl.getInteger(p));
+        p = zl.next(p);
+        assertEquals("-300", zl.get(p));
+        assertEquals(-1, zl.next(p));
+        assertEquals(16, zl.find("-300", 0));
+        assertEquals(-1, zl.find("a", 0));
+    }
+
+    public void testRejectsEntryLengthPastEnd() {
+        byte[] zl = sample();
+        zl[11] = 0x3F;
+        assertRejected(zl);
+    }
+
+    public void testRejectsWrongPrevlen() {
+        byte[] zl = sample();
+        zl[14] = 3;
+        assertRejected(zl);
+    }
+
+    public void testRejectsUndefinedEncoding() {
+        byte[] zl = sample();
+        zl[15] = (byte) 0xC5;
+        assertRejected(zl);
+    }
+
+    public void testRejectsWrongHeaderCounts() {
+        byte[] zl = sample();
+        zl[8] = 2;
+        assertRejected(zl);
+        zl = sample();
+        zl[4] = 14;
+        assertRejected(zl);
+    }
+
+    public void testRejectsEarlyTerminator() {
+        byte[] zl = sample();
+        zl[14] = (byte) 0xFF;
+        assertRejected(zl);
+    }
+}
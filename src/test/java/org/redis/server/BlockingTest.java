@@ -0,0 +1,114 @@
+package org.redis.server;
+
+import junit.framework.TestCase;
+
+/**
+ * @author zsy
+ * @Description 阻塞命令测试：唤醒顺序以及beforeSleep中的超时处理
+ * @ClassName BlockingTest
+ * @Version 1.0
+ */
+public class BlockingTest extends TestCase {
+
+    private RedisServer server;
+
+    private TestClient pusher;
+
+    @Override
+    protected void setUp() {
+        server = new RedisServer();
+        pusher = new TestClient(server);
+    }
+
+    /**
+     * 反复执行beforeSleep，直到客户端收到回复或等待超过maxWaitMs
+     */
+    private String awaitReply(TestClient c, long maxWaitMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + maxWaitMs;
+        String reply;
+        while ((reply = c.take()).isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+            server.beforeSleep();
+        }
+        return reply;
+    }
+
+    public void testWakeupInBlockingOrder() {
+        TestClient c1 = new TestClient(server);
+        TestClient c2 = new TestClient(server);
+        TestClient c3 = new TestClient(server);
+        assertEquals("", c1.call("BLPOP", "q", "0"));
+        assertEquals("", c2.call("BLPOP", "q", "0"));
+        assertEquals("", c3.call("BLPOP", "q", "0"));
+        assertEquals(3, server.getBlocking().getBlockedClients());
+
+        // 先阻塞的客户端先被服务，每个客户端只取一个元素
+        assertEquals(":2\r\n", pusher.call("RPUSH", "q", "a", "b"));
+        assertEquals("*2\r\n$1\r\nq\r\n$1\r\na\r\n", c1.take());
+        assertEquals("*2\r\n$1\r\nq\r\n$1\r\nb\r\n", c2.take());
+        assertEquals("", c3.take());
+        assertEquals(1, server.getBlocking().getBlockedClients());
+
+        pusher.call("RPUSH", "q", "c");
+        assertEquals("*2\r\n$1\r\nq\r\n$1\r\nc\r\n", c3.take());
+        assertEquals(0, server.getBlocking().getBlockedClients());
+        assertEquals(":0\r\n", pusher.call("EXISTS", "q"));
+    }
+
+    public void testMultipleKeysAndPipelinedCommand() {
+        TestClient c = new TestClient(server);
+        c.send("BLPOP", "q1", "q2", "0");
+        c.send("PING");
+        server.beforeSleep();
+        // 阻塞期间暂停处理查询缓冲区中后续的命令
+        assertEquals("", c.take());
+
+        pusher.call("RPUSH", "q2", "v");
+        assertEquals("*2\r\n$2\r\nq2\r\n$1\r\nv\r\n+PONG\r\n", c.take());
+    }
+
+    public void testBzpopminWakeup() {
+        TestClient c = new TestClient(server);
+        assertEquals("", c.call("BZPOPMIN", "z", "0"));
+        pusher.call("ZADD", "z", "2", "b", "1", "a");
+        assertEquals("*3\r\n$1\r\nz\r\n$1\r\na\r\n$1\r\n1\r\n", c.take());
+    }
+
+    public void testXreadBlockWakeup() {
+        TestClient c = new TestClient(server);
+        assertEquals("", c.call("XREAD", "BLOCK", "0", "STREAMS", "s", "$"));
+        pusher.call("XADD", "s", "1-1", "f", "v");
+        assertEquals("*1\r\n*2\r\n$1\r\ns\r\n*1\r\n*2\r\n$3\r\n1-1\r\n*2\r\n$1\r\nf\r\n$1\r\nv\r\n", c.take());
+    }
+
+    public void testTimeoutFiresInBeforeSleep() throws InterruptedException {
+        TestClient c = new TestClient(server);
+        long start = System.currentTimeMillis();
+        assertEquals("", c.call("BLPOP", "tq", "0.05"));
+        assertEquals("*-1\r\n", awaitReply(c, 2000));
+        assertTrue(System.currentTimeMillis() - start >= 50);
+        assertEquals(0, server.getBlocking().getBlockedClients());
+
+        // 超时之后再写入的数据不会被已经超时的客户端取走
+        pusher.call("RPUSH", "tq", "late");
+        assertEquals("", c.take());
+        assertEquals(":1\r\n", pusher.call("LLEN", "tq"));
+    }
+
+    public void testTimeoutNotFiredEarly() {
+        TestClient c = new TestClient(server);
+        c.call("BLPOP", "tq", "10");
+        server.beforeSleep();
+        assertEquals("", c.take());
+        assertEquals(1, server.getBlocking().getBlockedClients());
+    }
+
+    public void testDisconnectedClientIsUnblocked() {
+        TestClient c = new TestClient(server);
+        c.call("BLPOP", "q", "0");
+        c.close();
+        assertEquals(0, server.getBlocking().getBlockedClients());
+        pusher.call("RPUSH", "q", "x");
+        assertEquals(":1\r\n", pusher.call("LLEN", "q"));
+    }
+}
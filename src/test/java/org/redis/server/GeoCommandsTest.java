@@ -0,0 +1,68 @@
+package org.redis.server;
+
+import junit.framework.TestCase;
+
+/**
+ * @author zsy
+ * @Description GEO命令测试，坐标和期望结果取自Redis文档中的Sicily示例
+ * @ClassName GeoCommandsTest
+ * @Version 1.0
+ */
+public class GeoCommandsTest extends TestCase {
+
+    private RedisServer server;
+
+    private TestClient c;
+
+    @Override
+    protected void setUp() {
+        server = new RedisServer();
+        c = new TestClient(server);
+        assertEquals(":2\r\n", c.call("GEOADD", "Sicily",
+                "13.361389", "38.115556", "Palermo", "15.087269", "37.502669", "Catania"));
+    }
+
+    public void testGeoDist() {
+        assertEquals("$8\r\n166.2742\r\n", c.call("GEODIST", "Sicily", "Palermo", "Catania", "km"));
+    }
+
+    public void testGeoSearchByRadius() {
+        assertEquals("*1\r\n$7\r\nCatania\r\n",
+                c.call("GEOSEARCH", "Sicily", "FROMLONLAT", "15", "37", "BYRADIUS", "100", "km"));
+        assertEquals("*2\r\n$7\r\nCatania\r\n$7\r\nPalermo\r\n",
+                c.call("GEOSEARCH", "Sicily", "FROMLONLAT", "15", "37", "BYRADIUS", "200", "km", "ASC"));
+        assertEquals("*2\r\n$7\r\nPalermo\r\n$7\r\nCatania\r\n",
+                c.call("GEOSEARCH", "Sicily", "FROMLONLAT", "15", "37", "BYRADIUS", "200", "km", "DESC"));
+    }
+
+    public void testGeoSearchByBoxWithDist() {
+        assertEquals("*2\r\n"
+                        + "*2\r\n$7\r\nCatania\r\n$7\r\n56.4413\r\n"
+                        + "*2\r\n$7\r\nPalermo\r\n$8\r\n190.4424\r\n",
+                c.call("GEOSEARCH", "Sicily", "FROMLONLAT", "15", "37", "BYBOX", "400", "400", "km",
+                        "ASC", "WITHDIST"));
+    }
+
+    public void testGeoSearchFromMember() {
+        assertEquals("*2\r\n"
+                        + "*2\r\n$7\r\nPalermo\r\n$6\r\n0.0000\r\n"
+                        + "*2\r\n$7\r\nCatania\r\n$8\r\n166.2742\r\n",
+                c.call("GEOSEARCH", "Sicily", "FROMMEMBER", "Palermo", "BYRADIUS", "200", "km",
+                        "ASC", "WITHDIST"));
+    }
+
+    public void testGeoSearchCount() {
+        assertEquals("*1\r\n$7\r\nCatania\r\n",
+                c.call("GEOSEARCH", "Sicily", "FROMLONLAT", "15", "37", "BYRADIUS", "200", "km",
+                        "ASC", "COUNT", "1"));
+    }
+
+    public void testGeoSearchRejectsOutOfRangeCenter() {
+        assertEquals("-ERR invalid longitude,latitude pair 0.000000,89.000000\r\n",
+                c.call("GEOSEARCH", "Sicily", "FROMLONLAT", "0", "89", "BYRADIUS", "10", "km"));
+        assertEquals("-ERR invalid longitude,latitude pair 200.000000,0.000000\r\n",
+                c.call("GEOSEARCH", "Sicily", "FROMLONLAT", "200", "0", "BYBOX", "10", "10", "km"));
+        // 错误之后连接仍然可用
+        assertEquals("$8\r\n166.2742\r\n", c.call("GEODIST", "Sicily", "Palermo", "Catania", "km"));
+    }
+}
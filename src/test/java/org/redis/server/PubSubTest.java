@@ -0,0 +1,76 @@
+package org.redis.server;
+
+import junit.framework.TestCase;
+
+/**
+ * @author zsy
+ * @Description 发布订阅测试：频道订阅与模式订阅的消息分发
+ * @ClassName PubSubTest
+ * @Version 1.0
+ */
+public class PubSubTest extends TestCase {
+
+    private RedisServer server;
+
+    private TestClient publisher;
+
+    @Override
+    protected void setUp() {
+        server = new RedisServer();
+        publisher = new TestClient(server);
+    }
+
+    private static String message(String channel, String msg) {
+        return "*3\r\n$7\r\nmessage\r\n$" + channel.length() + "\r\n" + channel + "\r\n$" + msg.length() + "\r\n" + msg + "\r\n";
+    }
+
+    private static String pmessage(String pattern, String channel, String msg) {
+        return "*4\r\n$8\r\npmessage\r\n$" + pattern.length() + "\r\n" + pattern + "\r\n$" + channel.length() + "\r\n"
+                + channel + "\r\n$" + msg.length() + "\r\n" + msg + "\r\n";
+    }
+
+    public void testPatternFanOut() {
+        TestClient c1 = new TestClient(server);
+        TestClient c2 = new TestClient(server);
+        TestClient c3 = new TestClient(server);
+        TestClient other = new TestClient(server);
+        assertEquals("*3\r\n$10\r\npsubscribe\r\n$6\r\nnews.*\r\n:1\r\n"
+                        + "*3\r\n$10\r\npsubscribe\r\n$5\r\nh?llo\r\n:2\r\n",
+                c1.call("PSUBSCRIBE", "news.*", "h?llo"));
+        c2.call("PSUBSCRIBE", "news.*");
+        c2.call("SUBSCRIBE", "news.art");
+        c3.call("PSUBSCRIBE", "*");
+        other.call("PSUBSCRIBE", "sport.*");
+
+        // 每个匹配的(客户端, 模式)收到一条pmessage，频道订阅另外收到message
+        assertEquals(":4\r\n", publisher.call("PUBLISH", "news.art", "x"));
+        assertEquals(pmessage("news.*", "news.art", "x"), c1.take());
+        assertEquals(message("news.art", "x") + pmessage("news.*", "news.art", "x"), c2.take());
+        assertEquals(pmessage("*", "news.art", "x"), c3.take());
+        assertEquals("", other.take());
+
+        assertEquals(":2\r\n", publisher.call("PUBLISH", "hello", "y"));
+        assertEquals(pmessage("h?llo", "hello", "y"), c1.take());
+        assertEquals("", c2.take());
+        assertEquals(pmessage("*", "hello", "y"), c3.take());
+    }
+
+    public void testPunsubscribe() {
+        TestClient c = new TestClient(server);
+        c.call("PSUBSCRIBE", "a*", "b*");
+        assertEquals(":2\r\n", publisher.call("PUBSUB", "NUMPAT"));
+        assertEquals("*3\r\n$12\r\npunsubscribe\r\n$2\r\na*\r\n:1\r\n", c.call("PUNSUBSCRIBE", "a*"));
+        assertEquals(":0\r\n", publisher.call("PUBLISH", "abc", "m"));
+        assertEquals(":1\r\n", publisher.call("PUBLISH", "bcd", "m"));
+        assertEquals(pmessage("b*", "bcd", "m"), c.take());
+        assertEquals(":1\r\n", publisher.call("PUBSUB", "NUMPAT"));
+    }
+
+    public void testDisconnectedSubscriberIsRemoved() {
+        TestClient c = new TestClient(server);
+        c.call("PSUBSCRIBE", "news.*");
+        c.close();
+        assertEquals(":0\r\n", publisher.call("PUBLISH", "news.art", "x"));
+        assertEquals(":0\r\n", publisher.call("PUBSUB", "NUMPAT"));
+    }
+}
@@ -0,0 +1,105 @@
+package org.redis.server;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * @author zsy
+ * @Description 客户端读写测试：协议错误时先回复再关闭，连接部分写出时回复保持顺序
+ * @ClassName RedisClientTest
+ * @Version 1.0
+ */
+public class RedisClientTest extends TestCase {
+
+    public void testProtocolErrorIsRepliedBeforeClose() {
+        RedisServer server = new RedisServer();
+        TestClient c = new TestClient(server);
+        c.write("*1\r\n$x\r\nPING\r\n");
+        assertFalse(c.isClosed());
+        server.beforeSleep();
+        assertEquals("-ERR Protocol error: invalid bulk length\r\n", c.take());
+        assertTrue(c.isClosed());
+        assertNull(server.lookupClient(c.getId()));
+    }
+
+    public void testCommandsBeforeProtocolErrorAreReplied() {
+        RedisServer server = new RedisServer();
+        TestClient c = new TestClient(server);
+        c.write("*1\r\n$4\r\nPING\r\n*1\r\n$4\r\nPING\r\n+junk\r\n");
+        server.beforeSleep();
+        assertEquals("+PONG\r\n+PONG\r\n-ERR unknown command '+junk'\r\n", c.take());
+        assertFalse(c.isClosed());
+
+        c.write("*2\r\n?x\r\n");
+        server.beforeSleep();
+        assertEquals("-ERR Protocol error: expected '$', got '?'\r\n", c.take());
+        assertTrue(c.isClosed());
+    }
+
+    public void testShortWritesKeepReplyOrder() {
+        RedisServer server = new RedisServer();
+        ThrottledConnection conn = new ThrottledConnection(7);
+        server.acceptConnection(conn);
+        StringBuilder big = new StringBuilder();
+        for (int i = 0; i < 20000; i++) big.append((char) ('a' + i % 26));
+
+        conn.send(Protocol.encodeCommand("SET", "big", big.toString()));
+        conn.send(Protocol.encodeCommand("GET", "big"));
+        for (int i = 0; i < 10; i++) conn.send(Protocol.encodeCommand("PING", "m" + i));
+
+        StringBuilder expected = new StringBuilder("+OK\r\n$20000\r\n").append(big).append("\r\n");
+        for (int i = 0; i < 10; i++) expected.append("$2\r\nm").append(i).append("\r\n");
+
+        // 每次write最多写出7字节，需要多轮beforeSleep才能写完
+        int rounds = 0;
+        while (conn.out.size() < expected.length() && rounds++ < 100000) server.beforeSleep();
+        assertTrue(rounds > 1);
+        assertEquals(expected.toString(), conn.output());
+    }
+
+    /**
+     * 每次write最多接受limit字节的连接
+     */
+    private static class ThrottledConnection implements Connection {
+
+        private final int limit;
+
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        private Handler handler;
+
+        private ThrottledConnection(int limit) {
+            this.limit = limit;
+        }
+
+        private void send(byte[] buf) {
+            handler.onRead(buf, 0, buf.length);
+        }
+
+        private String output() {
+            return Protocol.toString(out.toByteArray(), 0, out.size());
+        }
+
+        @Override
+        public void setHandler(Handler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public int write(byte[] buf, int off, int len) {
+            int n = Math.min(len, limit);
+            out.write(buf, off, n);
+            return n;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package org.redis.server;
+
+import junit.framework.TestCase;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @author zsy
+ * @Description 复制积压缓冲区测试
+ * @ClassName ReplicationBacklogTest
+ * @Version 1.0
+ */
+public class ReplicationBacklogTest extends TestCase {
+
+    private long offset;
+
+    private void append(ReplicationBacklog backlog, String s) {
+        byte[] b = s.getBytes(StandardCharsets.ISO_8859_1);
+        offset += b.length;
+        backlog.append(b, 0, b.length, offset);
+    }
+
+    private static String readFrom(ReplicationBacklog backlog, long psyncOffset) {
+        StringBuilder sb = new StringBuilder();
+        for (byte[] chunk : backlog.readFrom(psyncOffset)) sb.append(new String(chunk, StandardCharsets.ISO_8859_1));
+        return sb.toString();
+    }
+
+    public void testReadWithinBuffer() {
+        ReplicationBacklog backlog = new ReplicationBacklog(8, offset);
+        append(backlog, "abc");
+        assertTrue(backlog.contains(1));
+        assertEquals("abc", readFrom(backlog, 1));
+        assertEquals("c", readFrom(backlog, 3));
+        assertEquals("", readFrom(backlog, 4));
+        assertEquals(1, backlog.readFrom(1).size());
+    }
+
+    public void testReadAcrossWraparound() {
+        ReplicationBacklog backlog = new ReplicationBacklog(8, offset);
+        append(backlog, "abcdef");
+        append(backlog, "ghijk");
+        // 偏移量1到11共写入11字节，缓冲区只保留最后8字节：offset 4 到 11
+        assertEquals(8, backlog.getHistlen());
+        assertEquals(4, backlog.getOffset());
+        assertFalse(backlog.contains(3));
+        assertTrue(backlog.contains(4));
+        assertTrue(backlog.contains(12));
+        assertFalse(backlog.contains(13));
+        // 最旧的数据位于下标3，读到数组末尾后回到开头
+        assertEquals("defghijk", readFrom(backlog, 4));
+        assertEquals(2, backlog.readFrom(4).size());
+        assertEquals("ijk", readFrom(backlog, 9));
+    }
+
+    public void testAppendLargerThanBuffer() {
+        ReplicationBacklog backlog = new ReplicationBacklog(4, offset);
+        append(backlog, "0123456789");
+        assertEquals(7, backlog.getOffset());
+        assertEquals("6789", readFrom(backlog, 7));
+    }
+}
@@ -0,0 +1,254 @@
+package org.redis.server;
+
+import junit.framework.TestCase;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @author zsy
+ * @Description 主从复制测试：全量同步、部分重同步、积压缓冲区回绕以及RDB的分块发送
+ * @ClassName ReplicationTest
+ * @Version 1.0
+ */
+public class ReplicationTest extends TestCase {
+
+    private RedisServer master;
+
+    private RedisServer replica;
+
+    private TestClient mc;
+
+    private TestClient rc;
+
+    private RecordingConnector connector;
+
+    @Override
+    protected void setUp() {
+        master = new RedisServer();
+        replica = new RedisServer();
+        mc = new TestClient(master);
+        rc = new TestClient(replica);
+        connector = new RecordingConnector(master);
+    }
+
+    private void sync() {
+        replica.getReplication().replicaOf(connector);
+        master.beforeSleep();
+    }
+
+    /**
+     * 主节点断开与从节点的连接，写入新数据后从节点重连
+     */
+    private void breakLinkAndReconnect(String... writes) {
+        master.getReplication().getSlaves().get(0).getConn().close();
+        for (int i = 0; i < writes.length; i += 2) mc.call("SET", writes[i], writes[i + 1]);
+        connector.received.setLength(0);
+        replica.serverCron();
+        master.beforeSleep();
+    }
+
+    private void assertOffsetsEqual() {
+        assertEquals(master.getReplication().getMasterReplOffset(), replica.getReplication().getMasterReplOffset());
+    }
+
+    public void testFullResyncThenContinue() {
+        mc.call("SET", "k1", "v1");
+        mc.call("ZADD", "z", "1", "a", "2", "b");
+        sync();
+        assertTrue(connector.received.toString().contains("+FULLRESYNC "));
+        assertEquals(Replication.REPL_STATE_CONNECTED, replica.getReplication().getReplState());
+        assertEquals("$2\r\nv1\r\n", rc.call("GET", "k1"));
+        assertEquals(":2\r\n", rc.call("ZCARD", "z"));
+
+        // 已连接时的写命令通过复制流传播
+        mc.call("SET", "k2", "v2");
+        master.beforeSleep();
+        assertEquals("$2\r\nv2\r\n", rc.call("GET", "k2"));
+        assertOffsetsEqual();
+
+        breakLinkAndReconnect("k3", "v3");
+        assertTrue(connector.received.toString().contains("+CONTINUE "));
+        assertFalse(connector.received.toString().contains("$EOF:"));
+        assertEquals("$2\r\nv3\r\n", rc.call("GET", "k3"));
+        assertOffsetsEqual();
+    }
+
+    public void testContinueAfterBacklogWraparound() {
+        master.getReplication().setBacklogSize(64);
+        sync();
+        // 远超积压缓冲区大小的写入，环形缓冲区回绕多次
+        for (int i = 0; i < 20; i++) mc.call("SET", "key" + i, "value" + i);
+        master.beforeSleep();
+        assertOffsetsEqual();
+
+        // 缺失的两条命令共54字节，仍在缓冲区中
+        breakLinkAndReconnect("a", "1", "b", "2");
+        assertTrue(connector.received.toString().contains("+CONTINUE "));
+        assertEquals("$1\r\n1\r\n", rc.call("GET", "a"));
+        assertEquals("$1\r\n2\r\n", rc.call("GET", "b"));
+        assertOffsetsEqual();
+
+        // 缺失的数据超过缓冲区大小，只能全量同步
+        breakLinkAndReconnect("c", "3", "d", "4", "e", "5");
+        assertTrue(connector.received.toString().contains("+FULLRESYNC "));
+        assertEquals("$1\r\n5\r\n", rc.call("GET", "e"));
+        assertEquals("$7\r\nvalue19\r\n", rc.call("GET", "key19"));
+        assertOffsetsEqual();
+    }
+
+    private void fillLists(int n) {
+        StringBuilder big = new StringBuilder();
+        for (int i = 0; i < 1000; i++) big.append('x');
+        for (int i = 0; i < n; i++) mc.call("RPUSH", "list" + i, big.toString());
+    }
+
+    /**
+     * 发送全量同步直到从节点进入CONNECTED状态，再把期间的复制流发送完
+     */
+    private void finishTransfer() {
+        connector.window = Integer.MAX_VALUE;
+        for (int i = 0; i < 1000 && replica.getReplication().getReplState() != Replication.REPL_STATE_CONNECTED; i++) {
+            master.beforeSleep();
+        }
+        master.beforeSleep();
+        assertEquals(Replication.REPL_STATE_CONNECTED, replica.getReplication().getReplState());
+    }
+
+    public void testFullResyncRdbIsGeneratedOnlyAsTheLinkDrains() {
+        fillLists(100);
+        connector.window = 0;
+        sync();
+        // 连接写不进去，RDB一块都没有生成
+        RedisClient slave = master.getReplication().getSlaves().get(0);
+        assertTrue(slave.getReplyBytes() < 1024);
+
+        connector.window = 20000;
+        master.beforeSleep();
+        assertEquals(Replication.REPL_STATE_TRANSFER, replica.getReplication().getReplState());
+        assertTrue(slave.getReplyBytes() < 1024);
+
+        finishTransfer();
+        assertEquals(":1\r\n", rc.call("LLEN", "list99"));
+        assertOffsetsEqual();
+    }
+
+    public void testWritesDuringTransferAreNotAppliedTwice() {
+        fillLists(100);
+        connector.window = 0;
+        sync();
+        connector.window = 20000;
+        master.beforeSleep();
+
+        // 已发送和尚未发送的键都被修改，从节点只能通过复制流看到这些修改一次
+        for (int i = 0; i < 100; i++) mc.call("RPUSH", "list" + i, "tail");
+        mc.call("DEL", "list0", "list50");
+        mc.call("RPUSH", "fresh", "v");
+        finishTransfer();
+
+        assertEquals(":2\r\n", rc.call("LLEN", "list99"));
+        assertEquals(":2\r\n", rc.call("LLEN", "list1"));
+        assertEquals(":0\r\n", rc.call("EXISTS", "list0", "list50"));
+        assertEquals(":1\r\n", rc.call("LLEN", "fresh"));
+        assertEquals(":99\r\n", rc.call("DBSIZE"));
+        assertOffsetsEqual();
+    }
+
+    public void testFlushDuringTransfer() {
+        fillLists(100);
+        connector.window = 0;
+        sync();
+        connector.window = 20000;
+        master.beforeSleep();
+
+        mc.call("FLUSHALL");
+        mc.call("SET", "after", "1");
+        finishTransfer();
+        assertEquals(":1\r\n", rc.call("DBSIZE"));
+        assertEquals("$1\r\n1\r\n", rc.call("GET", "after"));
+        assertOffsetsEqual();
+    }
+
+    public void testReplicaRejectsWrites() {
+        sync();
+        assertTrue(rc.call("SET", "x", "y").startsWith("-READONLY "));
+    }
+
+    /**
+     * 连接到master，并记录master发来的全部数据。
+     * master一侧的连接最多再写出window字节，用来模拟写不进去的连接
+     */
+    private static class RecordingConnector implements Connector {
+
+        private final RedisServer master;
+
+        private final StringBuilder received = new StringBuilder();
+
+        private int window = Integer.MAX_VALUE;
+
+        private RecordingConnector(RedisServer master) {
+            this.master = master;
+        }
+
+        @Override
+        public Connection connect() {
+            LoopbackConnection[] pair = LoopbackConnection.pair();
+            final Connection masterSide = pair[0];
+            master.acceptConnection(new Connection() {
+                @Override
+                public void setHandler(Handler handler) {
+                    masterSide.setHandler(handler);
+                }
+
+                @Override
+                public int write(byte[] buf, int off, int len) {
+                    int n = Math.min(len, window);
+                    if (window != Integer.MAX_VALUE) window -= n;
+                    return masterSide.write(buf, off, n);
+                }
+
+                @Override
+                public void close() {
+                    masterSide.close();
+                }
+
+                @Override
+                public boolean isConnected() {
+                    return masterSide.isConnected();
+                }
+            });
+            final Connection conn = pair[1];
+            return new Connection() {
+                @Override
+                public void setHandler(final Handler handler) {
+                    conn.setHandler(new Handler() {
+                        @Override
+                        public void onRead(byte[] buf, int off, int len) {
+                            received.append(new String(buf, off, len, StandardCharsets.ISO_8859_1));
+                            handler.onRead(buf, off, len);
+                        }
+
+                        @Override
+                        public void onClose() {
+                            handler.onClose();
+                        }
+                    });
+                }
+
+                @Override
+                public int write(byte[] buf, int off, int len) {
+                    return conn.write(buf, off, len);
+                }
+
+                @Override
+                public void close() {
+                    conn.close();
+                }
+
+                @Override
+                public boolean isConnected() {
+                    return conn.isConnected();
+                }
+            };
+        }
+    }
+}
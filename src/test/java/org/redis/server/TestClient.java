@@ -0,0 +1,96 @@
+package org.redis.server;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @author zsy
+ * @Description 测试用客户端
+ *
+ * 通过LoopbackConnection连接服务端，收到的回复按原始RESP文本保存。
+ * call发送命令后执行一轮beforeSleep，回复在这时才会写回连接。
+ *
+ * @ClassName TestClient
+ * @Version 1.0
+ */
+class TestClient implements Connection.Handler {
+
+    private final RedisServer server;
+
+    private final RedisClient client;
+
+    private final Connection conn;
+
+    private final StringBuilder received = new StringBuilder();
+
+    private boolean closed;
+
+    TestClient(RedisServer server) {
+        this.server = server;
+        LoopbackConnection[] pair = LoopbackConnection.pair();
+        client = server.acceptConnection(pair[0]);
+        conn = pair[1];
+        conn.setHandler(this);
+    }
+
+    /**
+     * 服务端对应的客户端
+     */
+    RedisClient getClient() {
+        return client;
+    }
+
+    long getId() {
+        return client.getId();
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * 只发送命令，不执行beforeSleep
+     */
+    void send(String... argv) {
+        write(Protocol.encodeCommand(argv));
+    }
+
+    void write(String raw) {
+        write(raw.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private void write(byte[] buf) {
+        conn.write(buf, 0, buf.length);
+    }
+
+    /**
+     * 发送命令并执行一轮beforeSleep，返回这段时间收到的全部回复
+     */
+    String call(String... argv) {
+        send(argv);
+        server.beforeSleep();
+        return take();
+    }
+
+    /**
+     * 取出目前收到的全部回复
+     */
+    String take() {
+        String s = received.toString();
+        received.setLength(0);
+        return s;
+    }
+
+    void close() {
+        conn.close();
+    }
+
+    @Override
+    public void onRead(byte[] buf, int off, int len) {
+        received.append(new String(buf, off, len, StandardCharsets.ISO_8859_1));
+    }
+
+    @Override
+    public void onClose() {
+        closed = true;
+    }
+}
@@ -0,0 +1,71 @@
+package org.redis.server;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+
+/**
+ * @author zsy
+ * @Description 时间轮测试，时间全部由参数给出，不依赖系统时钟
+ * @ClassName TimingWheelTest
+ * @Version 1.0
+ */
+public class TimingWheelTest extends TestCase {
+
+    private static final long T = TimingWheel.TICK_MS;
+
+    public void testFiresAfterDeadlineTickEnds() {
+        TimingWheel<String> wheel = new TimingWheel<>(0);
+        TimingWheel.Timer<String> timer = new TimingWheel.Timer<>("a");
+        wheel.add(timer, 5 * T + 3);
+        assertTrue(wheel.advance(5 * T + 3).isEmpty());
+        // deadline所在的tick结束后触发
+        List<TimingWheel.Timer<String>> expired = wheel.advance(6 * T);
+        assertEquals(1, expired.size());
+        assertEquals("a", expired.get(0).getOwner());
+        assertEquals(0, wheel.size());
+    }
+
+    public void testCancel() {
+        TimingWheel<String> wheel = new TimingWheel<>(0);
+        TimingWheel.Timer<String> a = new TimingWheel.Timer<>("a");
+        TimingWheel.Timer<String> b = new TimingWheel.Timer<>("b");
+        wheel.add(a, 2 * T);
+        wheel.add(b, 2 * T);
+        wheel.cancel(a);
+        wheel.cancel(a);
+        List<TimingWheel.Timer<String>> expired = wheel.advance(3 * T);
+        assertEquals(1, expired.size());
+        assertEquals("b", expired.get(0).getOwner());
+    }
+
+    /**
+     * 同一槽位中之后几圈才到期的定时器保持不动
+     */
+    public void testLaterRoundsStayInSlot() {
+        TimingWheel<String> wheel = new TimingWheel<>(0);
+        long round = TimingWheel.WHEEL_SIZE * T;
+        wheel.add(new TimingWheel.Timer<>("now"), 3 * T);
+        wheel.add(new TimingWheel.Timer<>("later"), round + 3 * T);
+        assertEquals(1, wheel.advance(4 * T).size());
+        assertEquals(1, wheel.size());
+        assertTrue(wheel.advance(round).isEmpty());
+        List<TimingWheel.Timer<String>> expired = wheel.advance(round + 4 * T);
+        assertEquals(1, expired.size());
+        assertEquals("later", expired.get(0).getOwner());
+    }
+
+    public void testAdvanceFarAheadVisitsEverySlotOnce() {
+        TimingWheel<String> wheel = new TimingWheel<>(0);
+        for (int i = 0; i < 1000; i++) wheel.add(new TimingWheel.Timer<>("t" + i), i * 7L);
+        assertEquals(1000, wheel.advance(100 * TimingWheel.WHEEL_SIZE * T).size());
+        assertEquals(0, wheel.size());
+    }
+
+    public void testDeadlineInThePastFiresOnNextTick() {
+        TimingWheel<String> wheel = new TimingWheel<>(0);
+        wheel.advance(10 * T);
+        wheel.add(new TimingWheel.Timer<>("past"), T);
+        assertEquals(1, wheel.advance(11 * T).size());
+    }
+}
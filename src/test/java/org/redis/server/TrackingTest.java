@@ -0,0 +1,102 @@
+package org.redis.server;
+
+import junit.framework.TestCase;
+
+/**
+ * @author zsy
+ * @Description 客户端缓存跟踪测试：默认模式、NOLOOP以及BCAST广播模式
+ * @ClassName TrackingTest
+ * @Version 1.0
+ */
+public class TrackingTest extends TestCase {
+
+    private RedisServer server;
+
+    private TestClient tracker;
+
+    private TestClient writer;
+
+    @Override
+    protected void setUp() {
+        server = new RedisServer();
+        tracker = new TestClient(server);
+        writer = new TestClient(server);
+        tracker.call("HELLO", "3");
+    }
+
+    private static String invalidate(String... keys) {
+        StringBuilder sb = new StringBuilder(">2\r\n$10\r\ninvalidate\r\n*").append(keys.length).append("\r\n");
+        for (String key : keys) sb.append('$').append(key.length()).append("\r\n").append(key).append("\r\n");
+        return sb.toString();
+    }
+
+    public void testDefaultModeInvalidatesOnce() {
+        assertEquals("+OK\r\n", tracker.call("CLIENT", "TRACKING", "on"));
+        tracker.call("GET", "k");
+        writer.call("SET", "k", "1");
+        assertEquals(invalidate("k"), tracker.take());
+        // 失效后键从跟踪表删除，再次修改不再通知
+        writer.call("SET", "k", "2");
+        assertEquals("", tracker.take());
+        // 没有读取过的键不会通知
+        writer.call("SET", "other", "1");
+        assertEquals("", tracker.take());
+    }
+
+    public void testNoLoopSkipsOwnWrites() {
+        tracker.call("CLIENT", "TRACKING", "on", "NOLOOP");
+        tracker.call("GET", "mine");
+        assertEquals("+OK\r\n", tracker.call("SET", "mine", "1"));
+        assertEquals("", tracker.take());
+
+        tracker.call("GET", "theirs");
+        writer.call("SET", "theirs", "1");
+        assertEquals(invalidate("theirs"), tracker.take());
+    }
+
+    public void testLoopWithoutNoLoop() {
+        tracker.call("CLIENT", "TRACKING", "on");
+        tracker.call("GET", "mine");
+        // 自己修改的键在命令回复之后通知
+        assertEquals("+OK\r\n" + invalidate("mine"), tracker.call("SET", "mine", "1"));
+    }
+
+    public void testBroadcastPrefixes() {
+        assertEquals("+OK\r\n", tracker.call("CLIENT", "TRACKING", "on", "BCAST", "PREFIX", "user:", "PREFIX", "obj:"));
+        writer.call("SET", "user:1", "x");
+        assertEquals(invalidate("user:1"), tracker.take());
+        writer.call("SET", "other", "x");
+        assertEquals("", tracker.take());
+
+        // 同一轮事件循环中修改的键按前缀合并，每个前缀一条失效消息
+        writer.send("SET", "user:2", "x");
+        writer.send("ZADD", "obj:z", "1", "m");
+        writer.send("SET", "user:3", "x");
+        server.beforeSleep();
+        assertEquals(invalidate("obj:z") + invalidate("user:2", "user:3"), tracker.take());
+    }
+
+    public void testBroadcastNoLoop() {
+        tracker.call("CLIENT", "TRACKING", "on", "BCAST", "PREFIX", "obj:", "NOLOOP");
+        tracker.send("SET", "obj:1", "self");
+        writer.send("SET", "obj:2", "other");
+        server.beforeSleep();
+        assertEquals("+OK\r\n" + invalidate("obj:2"), tracker.take());
+    }
+
+    public void testXreadKeysAreTracked() {
+        tracker.call("CLIENT", "TRACKING", "on");
+        tracker.call("XREAD", "COUNT", "10", "STREAMS", "s1", "s2", "0", "0");
+        writer.call("XADD", "s2", "*", "f", "v");
+        assertEquals(invalidate("s2"), tracker.take());
+        writer.call("XADD", "s1", "*", "f", "v");
+        assertEquals(invalidate("s1"), tracker.take());
+    }
+
+    public void testXreadGetKeys() {
+        assertEquals(2, StreamCommands.xreadGetKeys(new String[]{"XREAD", "BLOCK", "0", "STREAMS", "a", "b", "0", "$"}).length);
+        assertEquals("a", StreamCommands.xreadGetKeys(new String[]{"XREAD", "STREAMS", "a", "0"})[0]);
+        assertEquals(0, StreamCommands.xreadGetKeys(new String[]{"XREAD", "STREAMS", "a", "b", "0"}).length);
+        assertEquals(0, StreamCommands.xreadGetKeys(new String[]{"XREAD", "COUNT", "1"}).length);
+    }
+}
@@ -0,0 +1,33 @@
+package org.redis.utils;
+
+import junit.framework.TestCase;
+
+/**
+ * @author zsy
+ * @Description glob风格匹配测试
+ * @ClassName StringMatchUtilTest
+ * @Version 1.0
+ */
+public class StringMatchUtilTest extends TestCase {
+
+    public void testWildcards() {
+        assertTrue(StringMatchUtil.stringmatch("h?llo*[a-c]", "hello_world_b", false));
+        assertFalse(StringMatchUtil.stringmatch("h?llo*[a-c]", "hello_world_d", false));
+        assertTrue(StringMatchUtil.stringmatch("[^x]y", "zy", false));
+        assertFalse(StringMatchUtil.stringmatch("[^x]y", "xy", false));
+        assertTrue(StringMatchUtil.stringmatch("HE*", "hello", true));
+    }
+
+    public void testEscape() {
+        assertTrue(StringMatchUtil.stringmatch("a\\*", "a*", false));
+        assertFalse(StringMatchUtil.stringmatch("a\\*", "ab", false));
+        assertTrue(StringMatchUtil.stringmatch("a\\?b", "a?b", false));
+        // 位于末尾的'\'按字面匹配
+        assertTrue(StringMatchUtil.stringmatch("a\\", "a\\", false));
+        assertFalse(StringMatchUtil.stringmatch("a\\", "ab", false));
+    }
+
+    public void testPathologicalPattern() {
+        assertFalse(StringMatchUtil.stringmatch("a*a*a*a*a*a*a*a*a*b", "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa", false));
+    }
+}